@@ -97,6 +97,25 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   /** Default value for IPC_SERVER_HANDLER_QUEUE_SIZE_KEY */
   public static final int     IPC_SERVER_HANDLER_QUEUE_SIZE_DEFAULT = 100;
 
+  /**
+   * Number of threads that complete deferred responses. When 0, a deferred
+   * response is serialized and sent by whichever thread completes it.
+   */
+  public static final String IPC_SERVER_DEFERRED_RESPONSE_THREADS_KEY =
+      "ipc.server.deferred-response.threads";
+  /** Default value for IPC_SERVER_DEFERRED_RESPONSE_THREADS_KEY. */
+  public static final int IPC_SERVER_DEFERRED_RESPONSE_THREADS_DEFAULT = 0;
+
+  /**
+   * Largest request or response, in bytes, the server reads or serializes
+   * into a pooled direct buffer instead of a new heap array. 0 disables the
+   * pool.
+   */
+  public static final String IPC_SERVER_POOLED_BUFFER_MAX_SIZE_KEY =
+      "ipc.server.pooled-buffer.max-size";
+  /** Default value for IPC_SERVER_POOLED_BUFFER_MAX_SIZE_KEY. */
+  public static final int IPC_SERVER_POOLED_BUFFER_MAX_SIZE_DEFAULT = 0;
+
   /**
    * CallQueue related settings. These are not used directly, but rather
    * combined with a namespace and port. For instance:
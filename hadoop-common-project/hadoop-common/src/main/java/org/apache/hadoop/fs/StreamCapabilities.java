@@ -75,6 +75,14 @@ public interface StreamCapabilities {
    */
   String PREADBYTEBUFFER = "in:preadbytebuffer";
 
+  /**
+   * Stream readVectored capability implemented by
+   * {@link PositionedReadable#readVectored(java.util.List,
+   * java.util.function.IntFunction)}, for streams which do better than the
+   * default implementation.
+   */
+  String VECTOREDIO = "in:readvectored";
+
   /**
    * IOStatisticsSource API.
    */
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.apache.hadoop.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.impl.CombinedFileRange;
+
+/**
+ * Utility class which implements helper methods used
+ * in vectored IO implementation.
+ */
+@InterfaceAudience.LimitedPrivate("Filesystems")
+@InterfaceStability.Unstable
+public final class VectoredReadUtils {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(VectoredReadUtils.class);
+
+  private static final int TMP_BUFFER_MAX_SIZE = 64 * 1024;
+
+  private VectoredReadUtils() {
+  }
+
+  /**
+   * Validate a list of ranges and return them sorted by offset.
+   * @param input input list of ranges
+   * @return a new list with the ranges sorted by offset
+   * @throws IllegalArgumentException if a range has a negative offset or
+   * length, or two ranges overlap
+   */
+  public static List<? extends FileRange> validateAndSortRanges(
+      List<? extends FileRange> input) {
+    List<? extends FileRange> sorted = new ArrayList<>(input);
+    sorted.sort(Comparator.comparingLong(FileRange::getOffset));
+    FileRange prev = null;
+    for (FileRange range : sorted) {
+      if (range.getOffset() < 0 || range.getLength() < 0) {
+        throw new IllegalArgumentException("Invalid range " + range);
+      }
+      if (prev != null
+          && range.getOffset() < prev.getOffset() + prev.getLength()) {
+        throw new IllegalArgumentException("Overlapping ranges "
+            + prev + " and " + range);
+      }
+      prev = range;
+    }
+    return sorted;
+  }
+
+  /**
+   * Merge sorted ranges to optimize the access from the underlying file
+   * system. Ranges closer than minimumSeek are merged, as long as the
+   * merged range is not larger than maxSize.
+   *
+   * @param sortedRanges already sorted list of ranges based on offset.
+   * @param minimumSeek the smallest gap that we should seek over in bytes
+   * @param maxSize the largest combined file range in bytes
+   * @return the list of sorted CombinedFileRanges that cover the input
+   */
+  public static List<CombinedFileRange> mergeSortedRanges(
+      List<? extends FileRange> sortedRanges, int minimumSeek, int maxSize) {
+    CombinedFileRange current = null;
+    List<CombinedFileRange> result = new ArrayList<>(sortedRanges.size());
+    for (FileRange range : sortedRanges) {
+      long start = range.getOffset();
+      long end = range.getOffset() + range.getLength();
+      if (current == null
+          || !current.merge(start, end, range, minimumSeek, maxSize)) {
+        current = new CombinedFileRange(start, end, range);
+        result.add(current);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The default implementation of
+   * {@link PositionedReadable#readVectored(List, IntFunction)}.
+   * Nearby ranges are merged, following the stream's
+   * {@link PositionedReadable#minSeekForVectorReads()} and
+   * {@link PositionedReadable#maxReadSizeForVectorReads()}, and each merged
+   * range is read with a single positioned read, in the calling thread.
+   * @param stream the stream to read the data from
+   * @param ranges the byte ranges to read
+   * @param allocate the byte buffer allocation
+   */
+  public static void readVectored(PositionedReadable stream,
+      List<? extends FileRange> ranges, IntFunction<ByteBuffer> allocate) {
+    List<CombinedFileRange> combinedRanges = mergeSortedRanges(
+        validateAndSortRanges(ranges), stream.minSeekForVectorReads(),
+        stream.maxReadSizeForVectorReads());
+    for (CombinedFileRange combined : combinedRanges) {
+      prepareFutures(combined);
+    }
+    for (CombinedFileRange combined : combinedRanges) {
+      readCombinedRange(stream, combined, allocate);
+    }
+  }
+
+  /**
+   * Give each of the ranges underlying a combined range a new future for
+   * its data. Implementations call this before starting any read, so that
+   * callers can wait for the data as soon as readVectored returns.
+   * @param combined the combined range
+   */
+  public static void prepareFutures(CombinedFileRange combined) {
+    for (FileRange range : combined.getUnderlying()) {
+      range.setData(new CompletableFuture<>());
+    }
+  }
+
+  /**
+   * Read a combined range with a single positioned read and complete the
+   * futures of its underlying ranges, which must have been set with
+   * {@link #prepareFutures(CombinedFileRange)}. If the read fails, each
+   * underlying range is read on its own, so that one range, for instance
+   * past the end of the file, does not fail the others. If the data was
+   * read but could not be copied out, for instance because the allocation
+   * failed, the ranges not completed yet are completed exceptionally.
+   * This method does not throw; failures are reported through the futures.
+   * @param stream the stream to read the data from
+   * @param combined the combined range to read
+   * @param allocate the byte buffer allocation
+   */
+  public static void readCombinedRange(PositionedReadable stream,
+      CombinedFileRange combined, IntFunction<ByteBuffer> allocate) {
+    List<FileRange> underlying = combined.getUnderlying();
+    if (underlying.size() == 1) {
+      readSingleRange(stream, underlying.get(0), allocate);
+      return;
+    }
+    byte[] data;
+    try {
+      data = new byte[combined.getLength()];
+      stream.readFully(combined.getOffset(), data, 0, data.length);
+    } catch (IOException | RuntimeException e) {
+      LOG.debug("Failed to read {}, reading its ranges one by one",
+          combined, e);
+      for (FileRange range : underlying) {
+        readSingleRange(stream, range, allocate);
+      }
+      return;
+    }
+    try {
+      for (FileRange range : underlying) {
+        ByteBuffer buffer = allocate.apply(range.getLength());
+        buffer.put(data, (int) (range.getOffset() - combined.getOffset()),
+            range.getLength());
+        buffer.flip();
+        range.getData().complete(buffer);
+      }
+    } catch (RuntimeException e) {
+      // e.g. the allocation failed: fail the ranges not completed yet
+      for (FileRange range : underlying) {
+        range.getData().completeExceptionally(e);
+      }
+    }
+  }
+
+  private static void readSingleRange(PositionedReadable stream,
+      FileRange range, IntFunction<ByteBuffer> allocate) {
+    try {
+      ByteBuffer buffer = allocate.apply(range.getLength());
+      readInto(stream, range.getOffset(), buffer);
+      range.getData().complete(buffer);
+    } catch (IOException | RuntimeException e) {
+      range.getData().completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Fill a buffer from the given position of a stream, and flip it so
+   * that it is ready to be read.
+   * @param stream the stream to read the data from
+   * @param position the position in the stream
+   * @param buffer the buffer to fill
+   * @throws IOException if the read failed
+   */
+  public static void readInto(PositionedReadable stream, long position,
+      ByteBuffer buffer) throws IOException {
+    if (!buffer.hasArray() && stream instanceof ByteBufferPositionedReadable
+        && stream instanceof StreamCapabilities
+        && ((StreamCapabilities) stream).hasCapability(
+            StreamCapabilities.PREADBYTEBUFFER)) {
+      ((ByteBufferPositionedReadable) stream).readFully(position, buffer);
+    } else if (buffer.hasArray()) {
+      stream.readFully(position, buffer.array(),
+          buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      buffer.position(buffer.limit());
+    } else {
+      byte[] tmp = new byte[Math.min(TMP_BUFFER_MAX_SIZE,
+          buffer.remaining())];
+      while (buffer.hasRemaining()) {
+        int len = Math.min(tmp.length, buffer.remaining());
+        stream.readFully(position, tmp, 0, len);
+        buffer.put(tmp, 0, len);
+        position += len;
+      }
+    }
+    buffer.flip();
+  }
+
+  /**
+   * Slice the data that was read for a combined range into the buffer of
+   * one of its underlying ranges.
+   * @param readData the buffer with the data of the combined range, with
+   *                 its position at the start of the combined range
+   * @param readOffset the offset in the file of readData's position
+   * @param request the underlying range
+   * @return a buffer with the data of the underlying range
+   */
+  public static ByteBuffer sliceTo(ByteBuffer readData, long readOffset,
+      FileRange request) {
+    int start = (int) (request.getOffset() - readOffset);
+    ByteBuffer slice = readData.duplicate();
+    slice.position(readData.position() + start);
+    slice.limit(readData.position() + start + request.getLength());
+    return slice.slice();
+  }
+}
@@ -112,6 +112,20 @@ protected Boolean initialValue() {
     return (AsyncGet<T, IOException>) ASYNC_RPC_RESPONSE.get();
   }
 
+  /**
+   * An external call handler which is told the id of each call that
+   * completes, instead of being notified. It is called by the thread
+   * receiving the response and must not block.
+   */
+  @Unstable
+  public interface CallCompletionHandler {
+    /**
+     * Called when a call is done.
+     * @param id Id of the call.
+     */
+    void callComplete(int id);
+  }
+
   /** Set call id and retry count for the next call. */
   public static void setCallIdAndRetryCount(int cid, int rc,
                                             Object externalHandler) {
@@ -367,7 +381,9 @@ protected synchronized void callComplete() {
       this.done = true;
       notify();                                 // notify caller
 
-      if (externalHandler != null) {
+      if (externalHandler instanceof CallCompletionHandler) {
+        ((CallCompletionHandler) externalHandler).callComplete(id);
+      } else if (externalHandler != null) {
         synchronized (externalHandler) {
           externalHandler.notify();
         }
@@ -408,6 +424,88 @@ public synchronized Writable getRpcResponse() {
     }
   }
 
+  /** A serialized request waiting for the sender of its connection. */
+  private static final class PendingRequest {
+    private final Call call;
+    private final ResponseBuffer buf;
+
+    private PendingRequest(Call call, ResponseBuffer buf) {
+      this.call = call;
+      this.buf = buf;
+    }
+  }
+
+  /**
+   * Statistics of the requests written on a connection. Requests of
+   * concurrent callers are written together and flushed once; the pipeline
+   * depth is the number of calls waiting for a response when a batch is
+   * written, the batch included.
+   */
+  @InterfaceAudience.Private
+  @InterfaceStability.Unstable
+  public static class PipelineStats {
+    private long numRequests;
+    private long numWrites;
+    private int maxBatchSize;
+    private long totalDepth;
+    private int maxDepth;
+
+    synchronized void add(int batchSize, int depth) {
+      numRequests += batchSize;
+      numWrites++;
+      maxBatchSize = Math.max(maxBatchSize, batchSize);
+      totalDepth += depth;
+      maxDepth = Math.max(maxDepth, depth);
+    }
+
+    synchronized PipelineStats copy() {
+      PipelineStats stats = new PipelineStats();
+      stats.numRequests = numRequests;
+      stats.numWrites = numWrites;
+      stats.maxBatchSize = maxBatchSize;
+      stats.totalDepth = totalDepth;
+      stats.maxDepth = maxDepth;
+      return stats;
+    }
+
+    /** @return number of requests written. */
+    public synchronized long getNumRequests() {
+      return numRequests;
+    }
+
+    /** @return number of flushed batches of requests. */
+    public synchronized long getNumWrites() {
+      return numWrites;
+    }
+
+    /** @return average number of requests flushed together. */
+    public synchronized double getMeanBatchSize() {
+      return numWrites == 0 ? 0 : (double) numRequests / numWrites;
+    }
+
+    /** @return largest number of requests flushed together. */
+    public synchronized int getMaxBatchSize() {
+      return maxBatchSize;
+    }
+
+    /** @return average pipeline depth when a batch is written. */
+    public synchronized double getMeanPipelineDepth() {
+      return numWrites == 0 ? 0 : (double) totalDepth / numWrites;
+    }
+
+    /** @return largest pipeline depth when a batch is written. */
+    public synchronized int getMaxPipelineDepth() {
+      return maxDepth;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return String.format("requests=%d, writes=%d, batch size mean=%.2f "
+          + "max=%d, pipeline depth mean=%.2f max=%d", numRequests, numWrites,
+          getMeanBatchSize(), maxBatchSize, getMeanPipelineDepth(), maxDepth);
+    }
+  }
+
   /** Thread that reads responses and notifies callers.  Each connection owns a
    * socket connected to a remote address.  Calls are multiplexed through this
    * socket: responses may be delivered out of order. */
@@ -442,6 +540,11 @@ private class Connection extends Thread {
     private IOException closeException; // close reason
     
     private final Object sendRpcRequestLock = new Object();
+    // requests waiting to be written, and the task that is going to write
+    // them; both guarded by sendRpcRequestLock
+    private final List<PendingRequest> pendingRequests = new ArrayList<>();
+    private Future<?> pendingSender;
+    private final PipelineStats pipelineStats = new PipelineStats();
 
     private AtomicReference<Thread> connectingThread = new AtomicReference<>();
     private final Consumer<Connection> removeMethod;
@@ -1179,47 +1282,77 @@ public void sendRpcRequest(final Call call)
       header.writeDelimitedTo(buf);
       RpcWritable.wrap(call.rpcRequest).writeTo(buf);
 
+      // Queue the request for the next sender of this connection. A sender
+      // writes all the requests queued when it starts and flushes them at
+      // once, so concurrent callers share a socket write.
+      Future<?> senderFuture;
       synchronized (sendRpcRequestLock) {
-        Future<?> senderFuture = sendParamsExecutor.submit(new Runnable() {
-          @Override
-          public void run() {
-            try {
-              synchronized (ipcStreams.out) {
-                if (shouldCloseConnection.get()) {
-                  return;
-                }
-                if (LOG.isDebugEnabled()) {
-                  LOG.debug(getName() + " sending #" + call.id
-                      + " " + call.rpcRequest);
-                }
-                // RpcRequestHeader + RpcRequest
-                ipcStreams.sendRequest(buf.toByteArray());
-                ipcStreams.flush();
-              }
-            } catch (IOException e) {
-              // exception at this point would leave the connection in an
-              // unrecoverable state (eg half a call left on the wire).
-              // So, close the connection, killing any outstanding calls
-              markClosed(e);
-            } finally {
-              //the buffer is just an in-memory buffer, but it is still polite to
-              // close early
-              IOUtils.closeStream(buf);
+        PendingRequest request = new PendingRequest(call, buf);
+        pendingRequests.add(request);
+        if (pendingSender == null) {
+          try {
+            pendingSender =
+                sendParamsExecutor.submit(this::sendPendingRequests);
+          } catch (RejectedExecutionException e) {
+            pendingRequests.remove(request);
+            throw e;
+          }
+        }
+        senderFuture = pendingSender;
+      }
+
+      try {
+        senderFuture.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+
+        // cause should only be a RuntimeException as sendPendingRequests
+        // catches IOException
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else {
+          throw new RuntimeException("unexpected checked exception", cause);
+        }
+      }
+    }
+
+    /**
+     * Write the queued requests and flush them. Runs in the sendParamsExecutor.
+     */
+    private void sendPendingRequests() {
+      List<PendingRequest> batch = null;
+      try {
+        synchronized (ipcStreams.out) {
+          synchronized (sendRpcRequestLock) {
+            batch = new ArrayList<>(pendingRequests);
+            pendingRequests.clear();
+            pendingSender = null;
+          }
+          if (shouldCloseConnection.get()) {
+            return;
+          }
+          for (PendingRequest request : batch) {
+            if (LOG.isDebugEnabled()) {
+              LOG.debug(getName() + " sending #" + request.call.id
+                  + " " + request.call.rpcRequest);
             }
+            // RpcRequestHeader + RpcRequest
+            request.buf.writeTo(ipcStreams.out);
           }
-        });
-      
-        try {
-          senderFuture.get();
-        } catch (ExecutionException e) {
-          Throwable cause = e.getCause();
-          
-          // cause should only be a RuntimeException as the Runnable above
-          // catches IOException
-          if (cause instanceof RuntimeException) {
-            throw (RuntimeException) cause;
-          } else {
-            throw new RuntimeException("unexpected checked exception", cause);
+          ipcStreams.flush();
+          pipelineStats.add(batch.size(), calls.size());
+        }
+      } catch (IOException e) {
+        // exception at this point would leave the connection in an
+        // unrecoverable state (eg half a call left on the wire).
+        // So, close the connection, killing any outstanding calls
+        markClosed(e);
+      } finally {
+        //the buffers are just in-memory buffers, but it is still polite to
+        // close early
+        if (batch != null) {
+          for (PendingRequest request : batch) {
+            IOUtils.closeStream(request.buf);
           }
         }
       }
@@ -1591,6 +1724,20 @@ int getAsyncCallCount() {
     return asyncCallCounter.get();
   }
 
+  /**
+   * Get the pipelining statistics of the open connections of this client.
+   * @return snapshot of the statistics of each connection.
+   */
+  @InterfaceAudience.Private
+  @Unstable
+  public Map<ConnectionId, PipelineStats> getPipelineStats() {
+    Map<ConnectionId, PipelineStats> stats = new HashMap<>();
+    for (Entry<ConnectionId, Connection> e : connections.entrySet()) {
+      stats.put(e.getKey(), e.getValue().pipelineStats.copy());
+    }
+    return stats;
+  }
+
   /** @return the rpc response or, in case of timeout, null. */
   private Writable getRpcResponse(final Call call, final Connection connection,
       final long timeout, final TimeUnit unit) throws IOException {
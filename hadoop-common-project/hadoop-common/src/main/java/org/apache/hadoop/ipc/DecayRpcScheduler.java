@@ -28,7 +28,6 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -43,6 +42,7 @@
 
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.util.Preconditions;
+import org.apache.hadoop.util.Timer;
 import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.AtomicDoubleArray;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.hadoop.conf.Configuration;
@@ -68,7 +68,9 @@
  * The decay RPC scheduler tracks the cost of incoming requests in a map, then
  * decays the costs at a fixed time interval. The scheduler is optimized
  * for large periods (on the order of seconds), as it offloads work to the
- * decay sweep.
+ * decay sweep. Optionally, each user also gets a token bucket which is
+ * charged with the cost of every finished call, so that a user exceeding its
+ * budget is throttled without waiting for the next sweep.
  */
 public class DecayRpcScheduler implements RpcScheduler,
     DecayRpcSchedulerMXBean, MetricsSource {
@@ -143,6 +145,22 @@ public class DecayRpcScheduler implements RpcScheduler,
       "decay-scheduler.metrics.top.user.count";
   public static final int DECAYSCHEDULER_METRICS_TOP_USER_COUNT_DEFAULT = 10;
 
+  // Specifies the cost, per second, each user may spend before its calls are
+  // moved to the lowest priority queue (and backed off, if backoff is
+  // enabled). The cost is the one reported by the cost provider, e.g. the
+  // weighted lock hold time in nanoseconds for WeightedTimeCostProvider.
+  // 0 disables the per-user token buckets.
+  public static final String IPC_DECAYSCHEDULER_TOKEN_BUCKET_RATE_KEY =
+      "decay-scheduler.token-bucket.rate";
+  public static final long IPC_DECAYSCHEDULER_TOKEN_BUCKET_RATE_DEFAULT = 0;
+
+  // Specifies the largest cost a user may accumulate while idle and then
+  // spend in a burst. 0 means one second worth of the rate.
+  public static final String IPC_DECAYSCHEDULER_TOKEN_BUCKET_CAPACITY_KEY =
+      "decay-scheduler.token-bucket.capacity";
+  public static final long IPC_DECAYSCHEDULER_TOKEN_BUCKET_CAPACITY_DEFAULT =
+      0;
+
   public static final Logger LOG =
       LoggerFactory.getLogger(DecayRpcScheduler.class);
 
@@ -154,6 +172,10 @@ public class DecayRpcScheduler implements RpcScheduler,
   private final ConcurrentHashMap<Object, List<AtomicLong>> callCosts =
       new ConcurrentHashMap<Object, List<AtomicLong>>();
 
+  // Per-user token buckets, only populated when the rate is positive
+  private final ConcurrentHashMap<Object, CostBucket> costBuckets =
+      new ConcurrentHashMap<Object, CostBucket>();
+
   // Should be the sum of all AtomicLongs in decayed callCosts except
   // service-user.
   private final AtomicLong totalDecayedCallCost = new AtomicLong();
@@ -198,6 +220,9 @@ public class DecayRpcScheduler implements RpcScheduler,
   private final CostProvider costProvider;
   private final Map<String, Integer> staticPriorities = new HashMap<>();
   private Set<String> serviceUserNames;
+  private final long tokenBucketRate; // cost units per second
+  private final long tokenBucketCapacity;
+  private Timer bucketTimer = new Timer();
 
   /**
    * This TimerTask will call decayCurrentCosts until
@@ -205,9 +230,9 @@ public class DecayRpcScheduler implements RpcScheduler,
    */
   public static class DecayTask extends TimerTask {
     private WeakReference<DecayRpcScheduler> schedulerRef;
-    private Timer timer;
+    private java.util.Timer timer;
 
-    public DecayTask(DecayRpcScheduler scheduler, Timer timer) {
+    public DecayTask(DecayRpcScheduler scheduler, java.util.Timer timer) {
       this.schedulerRef = new WeakReference<DecayRpcScheduler>(scheduler);
       this.timer = timer;
     }
@@ -250,6 +275,15 @@ public DecayRpcScheduler(int numLevels, String ns, Configuration conf) {
     this.backOffResponseTimeThresholds =
         parseBackOffResponseTimeThreshold(ns, conf, numLevels);
     this.serviceUserNames = this.parseServiceUserNames(ns, conf);
+    this.tokenBucketRate = conf.getLong(ns + "." +
+        IPC_DECAYSCHEDULER_TOKEN_BUCKET_RATE_KEY,
+        IPC_DECAYSCHEDULER_TOKEN_BUCKET_RATE_DEFAULT);
+    long capacity = conf.getLong(ns + "." +
+        IPC_DECAYSCHEDULER_TOKEN_BUCKET_CAPACITY_KEY,
+        IPC_DECAYSCHEDULER_TOKEN_BUCKET_CAPACITY_DEFAULT);
+    Preconditions.checkArgument(tokenBucketRate >= 0 && capacity >= 0,
+        "Token bucket rate and capacity must not be negative");
+    this.tokenBucketCapacity = capacity > 0 ? capacity : tokenBucketRate;
 
     // Setup response time metrics
     responseTimeTotalInCurrWindow = new AtomicLongArray(numLevels);
@@ -270,7 +304,7 @@ public DecayRpcScheduler(int numLevels, String ns, Configuration conf) {
     metricsTimeUnit = RpcMetrics.getMetricsTimeUnit(conf);
 
     // Setup delay timer
-    Timer timer = new Timer(true);
+    java.util.Timer timer = new java.util.Timer(true);
     DecayTask task = new DecayTask(this, timer);
     timer.scheduleAtFixedRate(task, decayPeriodMillis, decayPeriodMillis);
 
@@ -517,6 +551,10 @@ private void decayCurrentCosts() {
         }
       }
 
+      // Forget the buckets which refilled completely; a new one starts full
+      long now = bucketTimer.monotonicNowNanos();
+      costBuckets.values().removeIf(bucket -> bucket.isFull(now));
+
       // Update the total so that we remain in sync
       totalDecayedCallCost.set(totalDecayedCost);
       totalRawCallCost.set(totalRawCost);
@@ -680,14 +718,56 @@ public int getPriorityLevel(Schedulable obj) {
     String identity = getIdentity(obj);
     // highest priority users may have a negative priority but their
     // calls will be priority 0.
-    return Math.max(0, cachedOrComputedPriorityLevel(identity));
+    return Math.max(0, throttledPriorityLevel(identity));
   }
 
   @VisibleForTesting
   int getPriorityLevel(UserGroupInformation ugi) {
     String identity = getIdentity(newSchedulable(ugi));
     // returns true priority of the user.
-    return cachedOrComputedPriorityLevel(identity);
+    return throttledPriorityLevel(identity);
+  }
+
+  /**
+   * Returns the priority level for a given identity, demoted to the lowest
+   * level while the identity has spent more than its token bucket allows.
+   */
+  private int throttledPriorityLevel(String identity) {
+    int priority = cachedOrComputedPriorityLevel(identity);
+    if (priority < numLevels - 1 && isOverBudget(identity)) {
+      LOG.debug("Identity {} is over its cost budget", identity);
+      return numLevels - 1;
+    }
+    return priority;
+  }
+
+  /**
+   * Whether the identity has spent more than its token bucket holds. Calls
+   * are charged once they finish, so a bucket may go into debt; the identity
+   * stays throttled until the debt is paid back by the refill.
+   */
+  private boolean isOverBudget(String identity) {
+    if (tokenBucketRate <= 0) {
+      return false;
+    }
+    CostBucket bucket = costBuckets.get(identity);
+    return bucket != null
+        && bucket.getTokens(bucketTimer.monotonicNowNanos()) < 0;
+  }
+
+  /**
+   * Charge the cost of a finished call to the token bucket of its identity.
+   * Service users and users with a static priority are never throttled.
+   */
+  private void chargeBucket(String identity, long cost) {
+    if (tokenBucketRate <= 0 || identity == null || cost <= 0
+        || isServiceUser(identity) || staticPriorities.containsKey(identity)) {
+      return;
+    }
+    long now = bucketTimer.monotonicNowNanos();
+    CostBucket bucket = costBuckets.computeIfAbsent(identity,
+        k -> new CostBucket(now));
+    bucket.charge(cost, now);
   }
 
   @VisibleForTesting
@@ -720,6 +800,11 @@ private boolean isServiceUser(String userName) {
   @Override
   public boolean shouldBackOff(Schedulable obj) {
     Boolean backOff = false;
+    if (tokenBucketRate > 0 && isOverBudget(getIdentity(obj))) {
+      LOG.debug("Backing off caller {} over its cost budget",
+          obj.getUserGroupInformation());
+      return true;
+    }
     if (backOffByResponseTimeEnabled) {
       int priorityLevel = obj.getPriorityLevel();
       if (LOG.isDebugEnabled()) {
@@ -750,6 +835,7 @@ public void addResponseTime(String callName, Schedulable schedulable,
     String user = identityProvider.makeIdentity(schedulable);
     long processingCost = costProvider.getCost(details);
     addCost(user, processingCost);
+    chargeBucket(user, processingCost);
 
     int priorityLevel = schedulable.getPriorityLevel();
     long queueTime = details.get(Timing.QUEUE, metricsTimeUnit);
@@ -769,6 +855,44 @@ public void addResponseTime(String callName, Schedulable schedulable,
         processingTime);
   }
 
+  /**
+   * A token bucket holding the cost an identity may still spend. It is
+   * refilled lazily, from the time elapsed since it was last looked at.
+   */
+  private final class CostBucket {
+    private double tokens;
+    private long lastRefillNanos;
+
+    CostBucket(long now) {
+      this.tokens = tokenBucketCapacity;
+      this.lastRefillNanos = now;
+    }
+
+    private void refill(long now) {
+      long elapsed = now - lastRefillNanos;
+      if (elapsed > 0) {
+        tokens = Math.min(tokenBucketCapacity,
+            tokens + (double) tokenBucketRate * elapsed / 1e9);
+        lastRefillNanos = now;
+      }
+    }
+
+    synchronized double getTokens(long now) {
+      refill(now);
+      return tokens;
+    }
+
+    synchronized void charge(long cost, long now) {
+      refill(now);
+      tokens -= cost;
+    }
+
+    synchronized boolean isFull(long now) {
+      refill(now);
+      return tokens >= tokenBucketCapacity;
+    }
+  }
+
   // Update the cached average response time at the end of the decay window
   void updateAverageResponseTime(boolean enableDecay) {
     for (int i = 0; i < numLevels; i++) {
@@ -824,6 +948,16 @@ void forceDecay() {
     decayCurrentCosts();
   }
 
+  @VisibleForTesting
+  void setBucketTimer(Timer timer) {
+    this.bucketTimer = timer;
+  }
+
+  @VisibleForTesting
+  int getCostBucketCount() {
+    return costBuckets.size();
+  }
+
   @VisibleForTesting
   Map<Object, Long> getCallCostSnapshot() {
     HashMap<Object, Long> snapshot = new HashMap<Object, Long>();
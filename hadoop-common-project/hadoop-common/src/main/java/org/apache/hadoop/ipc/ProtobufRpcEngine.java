@@ -507,6 +507,16 @@ RequestHeaderProto getRequestHeader() throws IOException {
       return requestHeader;
     }
 
+    @Override
+    void detach() {
+      try {
+        getRequestHeader();
+      } catch (IOException e) {
+        // not a valid request; there is no header to keep.
+      }
+      super.detach();
+    }
+
     @Override
     public void writeTo(ResponseBuffer out) throws IOException {
       requestHeader.writeDelimitedTo(out);
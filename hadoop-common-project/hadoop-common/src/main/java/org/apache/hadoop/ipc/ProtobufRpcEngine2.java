@@ -49,6 +49,8 @@
 import java.lang.reflect.Proxy;
 import java.net.InetSocketAddress;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -421,7 +423,8 @@ public String getMethodName() {
       @Override
       public void setResponse(Message message) {
         long processingTime = Time.now() - setupTime;
-        call.setDeferredResponse(RpcWritable.wrap(message));
+        server.completeDeferred(
+            () -> call.setDeferredResponse(RpcWritable.wrap(message)));
         server.updateDeferredMetrics(methodName, processingTime);
       }
 
@@ -430,7 +433,7 @@ public void error(Throwable t) {
         long processingTime = Time.now() - setupTime;
         String detailedMetricsName = t.getClass().getSimpleName();
         server.updateDeferredMetrics(detailedMetricsName, processingTime);
-        call.setDeferredError(t);
+        server.completeDeferred(() -> call.setDeferredError(t));
       }
     }
 
@@ -441,6 +444,37 @@ public static ProtobufRpcEngineCallback2 registerForDeferredResponse2() {
       return callback;
     }
 
+    /**
+     * Respond to the current call with the outcome of a future instead of
+     * the handler's return value. The handler thread is released as soon as
+     * the method returns, which should then return null; the response is
+     * sent once the future completes, from the thread that completes it or
+     * from the server's deferred response executor if one is configured.
+     * A failure is returned to the client as if the method had thrown it,
+     * unwrapping {@link CompletionException} and {@link ServiceException}.
+     *
+     * @param result the future response of the current call.
+     */
+    @InterfaceStability.Unstable
+    public static void deferResponse(
+        CompletableFuture<? extends Message> result) {
+      final ProtobufRpcEngineCallback2 callback =
+          registerForDeferredResponse2();
+      result.whenComplete((message, t) -> {
+        if (t == null) {
+          callback.setResponse(message);
+          return;
+        }
+        if (t instanceof CompletionException && t.getCause() != null) {
+          t = t.getCause();
+        }
+        if (t instanceof ServiceException && t.getCause() != null) {
+          t = t.getCause();
+        }
+        callback.error(t);
+      });
+    }
+
     /**
      * Construct an RPC server.
      *
@@ -647,6 +681,16 @@ RequestHeaderProto getRequestHeader() throws IOException {
       return requestHeader;
     }
 
+    @Override
+    void detach() {
+      try {
+        getRequestHeader();
+      } catch (IOException e) {
+        // not a valid request; there is no header to keep.
+      }
+      super.detach();
+    }
+
     @Override
     public void writeTo(ResponseBuffer out) throws IOException {
       requestHeader.writeDelimitedTo(out);
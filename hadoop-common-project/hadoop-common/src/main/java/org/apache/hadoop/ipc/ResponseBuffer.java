@@ -22,6 +22,7 @@
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -53,6 +54,15 @@ byte[] toByteArray() {
     return getFramedBuffer().toByteArray();
   }
 
+  // copy the framed bytes into a buffer of at least framedSize() bytes.
+  void writeTo(ByteBuffer bb) {
+    getFramedBuffer().writeTo(bb);
+  }
+
+  int framedSize() {
+    return ((FramedBuffer)out).framedSize();
+  }
+
   int capacity() {
     return ((FramedBuffer)out).capacity();
   }
@@ -89,6 +99,12 @@ void setSize(int size) {
       buf[2] = (byte)((size >>>  8) & 0xFF);
       buf[3] = (byte)((size >>>  0) & 0xFF);
     }
+    int framedSize() {
+      return count;
+    }
+    void writeTo(ByteBuffer bb) {
+      bb.put(buf, 0, count);
+    }
     int capacity() {
       return buf.length - FRAMING_BYTES;
     }
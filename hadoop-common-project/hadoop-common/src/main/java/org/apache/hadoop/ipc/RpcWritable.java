@@ -27,6 +27,7 @@
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputByteBuffer;
 import org.apache.hadoop.io.Writable;
 
 import org.apache.hadoop.thirdparty.protobuf.CodedInputStream;
@@ -80,6 +81,13 @@ public void writeTo(ResponseBuffer out) throws IOException {
     @SuppressWarnings("unchecked")
     @Override
     <T> T readFrom(ByteBuffer bb) throws IOException {
+      if (!bb.hasArray()) {
+        // a pooled direct buffer; the stream advances the buffer itself.
+        DataInputByteBuffer in = new DataInputByteBuffer();
+        in.reset(bb);
+        writable.readFields(in);
+        return (T)writable;
+      }
       // create a stream that may consume up to the entire ByteBuffer.
       DataInputStream in = new DataInputStream(new ByteArrayInputStream(
           bb.array(), bb.position() + bb.arrayOffset(), bb.remaining()));
@@ -119,9 +127,12 @@ <T> T readFrom(ByteBuffer bb) throws IOException {
       // using the parser with a byte[]-backed coded input stream is the
       // most efficient way to deserialize a protobuf.  it has a direct
       // path to the PB ctor that doesn't create multi-layered streams
-      // that internally buffer.
-      CodedInputStream cis = CodedInputStream.newInstance(
-          bb.array(), bb.position() + bb.arrayOffset(), bb.remaining());
+      // that internally buffer.  a pooled direct buffer is decoded in place
+      // too, without copying the request to the heap first.
+      CodedInputStream cis = bb.hasArray()
+          ? CodedInputStream.newInstance(
+              bb.array(), bb.position() + bb.arrayOffset(), bb.remaining())
+          : CodedInputStream.newInstance(bb.duplicate());
       try {
         cis.pushLimit(cis.readRawVarint32());
         message = message.getParserForType().parseFrom(cis);
@@ -162,9 +173,16 @@ <T> T readFrom(ByteBuffer bb) throws IOException {
       // most efficient way to deserialize a protobuf.  it has a direct
       // path to the PB ctor that doesn't create multi-layered streams
       // that internally buffer.
-      com.google.protobuf.CodedInputStream cis =
-          com.google.protobuf.CodedInputStream.newInstance(
-              bb.array(), bb.position() + bb.arrayOffset(), bb.remaining());
+      com.google.protobuf.CodedInputStream cis;
+      if (bb.hasArray()) {
+        cis = com.google.protobuf.CodedInputStream.newInstance(
+            bb.array(), bb.position() + bb.arrayOffset(), bb.remaining());
+      } else {
+        // the legacy stream cannot decode a direct buffer in place.
+        byte[] bytes = new byte[bb.remaining()];
+        bb.duplicate().get(bytes);
+        cis = com.google.protobuf.CodedInputStream.newInstance(bytes);
+      }
       try {
         cis.pushLimit(cis.readRawVarint32());
         message = message.getParserForType().parseFrom(cis);
@@ -200,7 +218,14 @@ ByteBuffer getByteBuffer() {
     @Override
     void writeTo(ResponseBuffer out) throws IOException {
       out.ensureCapacity(bb.remaining());
-      out.write(bb.array(), bb.position() + bb.arrayOffset(), bb.remaining());
+      if (bb.hasArray()) {
+        out.write(bb.array(), bb.position() + bb.arrayOffset(),
+            bb.remaining());
+      } else {
+        byte[] bytes = new byte[bb.remaining()];
+        bb.duplicate().get(bytes);
+        out.write(bytes);
+      }
     }
 
     @SuppressWarnings("unchecked")
@@ -235,5 +260,14 @@ public <T> T getValue(T value) throws IOException {
     public int remaining() {
       return bb.remaining();
     }
+
+    /**
+     * Drop the reference to the underlying buffer before it is reused for
+     * another request. Subclasses first decode anything they may still be
+     * asked for, e.g. by toString.
+     */
+    void detach() {
+      bb = null;
+    }
   }
 }
\ No newline at end of file
@@ -64,7 +64,10 @@
 import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -83,6 +86,8 @@
 import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
 import org.apache.hadoop.ha.HealthCheckFailedException;
+import org.apache.hadoop.io.ByteBufferPool;
+import org.apache.hadoop.io.ElasticByteBufferPool;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableUtils;
@@ -127,6 +132,7 @@
 import org.apache.hadoop.tracing.TraceUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hadoop.thirdparty.protobuf.ByteString;
 import org.apache.hadoop.thirdparty.protobuf.CodedOutputStream;
 import org.apache.hadoop.thirdparty.protobuf.Message;
@@ -480,6 +486,10 @@ protected ResponseBuffer initialValue() {
           return new ResponseBuffer(INITIAL_RESP_BUF_SIZE);
         }
   };
+  // pool of direct buffers for requests and responses up to
+  // maxPooledBufferSize bytes; null when pooling is disabled
+  private final ByteBufferPool bufferPool;
+  private final int maxPooledBufferSize;
   private int socketSendBufferSize;
   private final int maxDataLength;
   private final boolean tcpNoDelay; // if T then disable Nagle's Algorithm
@@ -499,6 +509,8 @@ protected ResponseBuffer initialValue() {
   private Responder responder = null;
   private Handler[] handlers = null;
   private final AtomicInteger numInProcessHandler = new AtomicInteger();
+  // completes deferred calls; null to complete them on the caller's thread
+  private ExecutorService deferredResponseExecutor = null;
 
   private boolean logSlowRPC = false;
 
@@ -619,6 +631,25 @@ void updateDeferredMetrics(String name, long processingTime) {
     rpcDetailedMetrics.addDeferredProcessingTime(name, processingTime);
   }
 
+  /**
+   * Run the completion of a deferred call, which sets up and sends its
+   * response. This runs on the deferred response executor when the server
+   * has one, so that the thread completing the call, e.g. one that
+   * received a downstream response, is not held up by a slow client.
+   */
+  void completeDeferred(Runnable completion) {
+    if (deferredResponseExecutor == null) {
+      completion.run();
+      return;
+    }
+    try {
+      deferredResponseExecutor.execute(completion);
+    } catch (RejectedExecutionException e) {
+      // the server is stopping and would not send the response anyway
+      LOG.debug("Dropping deferred response of a stopped server", e);
+    }
+  }
+
   /**
    * A convenience method to bind to a given address and report 
    * better exceptions if the address is not a valid host.
@@ -1091,6 +1122,8 @@ private class RpcCall extends Call {
     final Connection connection;  // connection to client
     final Writable rpcRequest;    // Serialized Rpc request from client
     ByteBuffer rpcResponse;       // the response for this call
+    // pooled buffer the request was read into, returned once handled
+    private ByteBuffer requestBuffer;
 
     private ResponseParams responseParams; // the response params
     private Writable rv;                   // the byte response
@@ -1152,8 +1185,34 @@ public int getRemotePort() {
       return connection.getRemotePort();
     }
 
+    void setRequestBuffer(ByteBuffer buffer) {
+      this.requestBuffer = buffer;
+    }
+
+    /**
+     * Return the pooled buffer of the request. The request must be decoded
+     * by now; a deferred response only relies on the decoded request.
+     */
+    void releaseRequestBuffer() {
+      if (requestBuffer != null) {
+        if (rpcRequest instanceof RpcWritable.Buffer) {
+          ((RpcWritable.Buffer) rpcRequest).detach();
+        }
+        releaseBuffer(requestBuffer);
+        requestBuffer = null;
+      }
+    }
+
     @Override
     public Void run() throws Exception {
+      try {
+        return doRun();
+      } finally {
+        releaseRequestBuffer();
+      }
+    }
+
+    private Void doRun() throws Exception {
       if (!connection.channel.isOpen()) {
         Server.LOG.info(Thread.currentThread().getName() + ": skipped " + this);
         return null;
@@ -1798,7 +1857,8 @@ private boolean processResponse(LinkedList<RpcCall> responseQueue,
             return true;
           }
           if (!call.rpcResponse.hasRemaining()) {
-            //Clear out the response buffer so it can be collected
+            //Clear out the response buffer so it can be collected or reused
+            releaseBuffer(call.rpcResponse);
             call.rpcResponse = null;
             call.connection.decRpcCount();
             if (numElements == 1) {    // last call fully processes.
@@ -1979,6 +2039,8 @@ public class Connection {
 
     private boolean sentNegotiate = false;
     private boolean useWrap = false;
+    // pooled buffer of the request being processed, until a call takes it
+    private ByteBuffer requestBuffer;
     
     public Connection(SocketChannel channel, long lastContact,
         int ingressPort, boolean isOnAuxiliaryPort) {
@@ -2447,7 +2509,7 @@ public int readAndProcess() throws IOException, InterruptedException {
           dataLength = dataLengthBuffer.getInt();
           checkDataLength(dataLength);
           // Set buffer for reading EXACTLY the RPC-packet length and no more.
-          data = ByteBuffer.allocate(dataLength);
+          data = allocateBuffer(dataLength);
         }
         // Now read the RPC packet
         count = channelRead(channel, data);
@@ -2458,7 +2520,14 @@ public int readAndProcess() throws IOException, InterruptedException {
           ByteBuffer requestData = data;
           data = null; // null out in case processOneRpc throws.
           boolean isHeaderRead = connectionContextRead;
-          processOneRpc(requestData);
+          requestBuffer = requestData;
+          try {
+            processOneRpc(requestData);
+          } finally {
+            // not queued as a call, so the request is no longer needed.
+            releaseBuffer(requestBuffer);
+            requestBuffer = null;
+          }
           // the last rpc-request we processed could have simply been the
           // connectionContext; if so continue to read the first RPC.
           if (!isHeaderRead) {
@@ -2868,11 +2937,16 @@ private void processRpcRequest(RpcRequestHeaderProto header,
         }
       }
 
+      // the call decodes the request later, so it takes over the buffer.
+      call.setRequestBuffer(requestBuffer);
+      requestBuffer = null;
       try {
         internalQueueCall(call);
       } catch (RpcServerException rse) {
+        call.releaseRequestBuffer();
         throw rse;
       } catch (IOException ioe) {
+        call.releaseRequestBuffer();
         throw new FatalRpcServerException(
             RpcErrorCodeProto.ERROR_RPC_SERVER, ioe);
       }
@@ -3227,6 +3301,11 @@ protected Server(String bindAddress, int port,
     this.maxRespSize = conf.getInt(
         CommonConfigurationKeys.IPC_SERVER_RPC_MAX_RESPONSE_SIZE_KEY,
         CommonConfigurationKeys.IPC_SERVER_RPC_MAX_RESPONSE_SIZE_DEFAULT);
+    this.maxPooledBufferSize = conf.getInt(
+        CommonConfigurationKeys.IPC_SERVER_POOLED_BUFFER_MAX_SIZE_KEY,
+        CommonConfigurationKeys.IPC_SERVER_POOLED_BUFFER_MAX_SIZE_DEFAULT);
+    this.bufferPool = maxPooledBufferSize > 0
+        ? new ElasticByteBufferPool() : null;
     if (numReaders != -1) {
       this.readThreads = numReaders;
     } else {
@@ -3262,6 +3341,17 @@ protected Server(String bindAddress, int port,
     connectionManager = new ConnectionManager();
     this.rpcMetrics = RpcMetrics.create(this, conf);
     this.rpcDetailedMetrics = RpcDetailedMetrics.create(this.port);
+    int deferredResponseThreads = conf.getInt(
+        CommonConfigurationKeys.IPC_SERVER_DEFERRED_RESPONSE_THREADS_KEY,
+        CommonConfigurationKeys.IPC_SERVER_DEFERRED_RESPONSE_THREADS_DEFAULT);
+    if (deferredResponseThreads > 0) {
+      this.deferredResponseExecutor = Executors.newFixedThreadPool(
+          deferredResponseThreads, new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("IPC Server deferred responder %d on default port "
+                  + this.port)
+              .build());
+    }
     this.tcpNoDelay = conf.getBoolean(
         CommonConfigurationKeysPublic.IPC_SERVER_TCPNODELAY_KEY,
         CommonConfigurationKeysPublic.IPC_SERVER_TCPNODELAY_DEFAULT);
@@ -3412,20 +3502,20 @@ private void setupResponse(
 
   private void setupResponse(RpcCall call,
       RpcResponseHeaderProto header, Writable rv) throws IOException {
-    final byte[] response;
+    final ByteBuffer response;
     if (rv == null || (rv instanceof RpcWritable.ProtobufWrapper)) {
-      response = setupResponseForProtobuf(header, rv);
+      response = setupResponseForProtobuf(call, header, rv);
     } else {
-      response = setupResponseForWritable(header, rv);
+      response = setupResponseForWritable(call, header, rv);
     }
-    if (response.length > maxRespSize) {
-      LOG.warn("Large response size " + response.length + " for call "
+    if (response.remaining() > maxRespSize) {
+      LOG.warn("Large response size " + response.remaining() + " for call "
           + call.toString());
     }
-    call.setResponse(ByteBuffer.wrap(response));
+    call.setResponse(response);
   }
 
-  private byte[] setupResponseForWritable(
+  private ByteBuffer setupResponseForWritable(RpcCall call,
       RpcResponseHeaderProto header, Writable rv) throws IOException {
     ResponseBuffer buf = responseBuffer.get().reset();
     try {
@@ -3433,7 +3523,10 @@ private byte[] setupResponseForWritable(
       if (rv != null) {
         RpcWritable.wrap(rv).writeTo(buf);
       }
-      return buf.toByteArray();
+      ByteBuffer response = allocateResponseBuffer(call, buf.framedSize());
+      buf.writeTo(response);
+      response.flip();
+      return response;
     } finally {
       // Discard a large buf and reset it back to smaller size
       // to free up heap.
@@ -3444,9 +3537,9 @@ private byte[] setupResponseForWritable(
   }
 
 
-  // writing to a pre-allocated array is the most efficient way to construct
+  // writing to a pre-allocated buffer is the most efficient way to construct
   // a protobuf response.
-  private byte[] setupResponseForProtobuf(
+  private ByteBuffer setupResponseForProtobuf(RpcCall call,
       RpcResponseHeaderProto header, Writable rv) throws IOException {
     Message payload = (rv != null)
         ? ((RpcWritable.ProtobufWrapper)rv).getMessage() : null;
@@ -3454,7 +3547,7 @@ private byte[] setupResponseForProtobuf(
     if (payload != null) {
       length += getDelimitedLength(payload);
     }
-    byte[] buf = new byte[length + 4];
+    ByteBuffer buf = allocateResponseBuffer(call, length + 4);
     CodedOutputStream cos = CodedOutputStream.newInstance(buf);
     // the stream only supports little endian ints
     cos.writeRawByte((byte)((length >>> 24) & 0xFF));
@@ -3467,9 +3560,43 @@ private byte[] setupResponseForProtobuf(
       cos.writeUInt32NoTag(payload.getSerializedSize());
       payload.writeTo(cos);
     }
+    cos.flush();
+    buf.flip();
     return buf;
   }
 
+  /**
+   * Get a buffer with exactly the given bytes remaining for a request or a
+   * response, from the pool if it is enabled and the length is within its
+   * limit.
+   */
+  private ByteBuffer allocateBuffer(int length) {
+    if (bufferPool == null || length > maxPooledBufferSize) {
+      return ByteBuffer.allocate(length);
+    }
+    // round up to a power of two so buffers are reused across lengths.
+    int capacity = Math.max(1, Integer.highestOneBit(length - 1) << 1);
+    ByteBuffer buffer = bufferPool.getBuffer(true, capacity);
+    buffer.limit(length);
+    return buffer;
+  }
+
+  private ByteBuffer allocateResponseBuffer(RpcCall call, int length) {
+    // a response to be wrapped by SASL must have an accessible array.
+    return call.connection.useWrap
+        ? ByteBuffer.allocate(length) : allocateBuffer(length);
+  }
+
+  /**
+   * Return a buffer to the pool once nothing refers to its content anymore.
+   * Only pooled buffers are direct; others are left to the garbage collector.
+   */
+  private void releaseBuffer(ByteBuffer buffer) {
+    if (buffer != null && buffer.isDirect() && bufferPool != null) {
+      bufferPool.putBuffer(buffer);
+    }
+  }
+
   private static int getDelimitedLength(Message message) {
     int length = message.getSerializedSize();
     return length + CodedOutputStream.computeUInt32SizeNoTag(length);
@@ -3504,7 +3631,14 @@ private void setupResponseOldVersionFatal(ByteArrayOutputStream response,
 
   private void wrapWithSasl(RpcCall call) throws IOException {
     if (call.connection.saslServer != null) {
-      byte[] token = call.rpcResponse.array();
+      byte[] token;
+      if (call.rpcResponse.hasArray()) {
+        token = call.rpcResponse.array();
+      } else {
+        token = new byte[call.rpcResponse.remaining()];
+        call.rpcResponse.get(token);
+        releaseBuffer(call.rpcResponse);
+      }
       // synchronization may be needed since there can be multiple Handler
       // threads using saslServer to wrap responses.
       synchronized (call.connection.saslServer) {
@@ -3575,6 +3709,9 @@ public synchronized void stop() {
       }
     }
     responder.interrupt();
+    if (deferredResponseExecutor != null) {
+      deferredResponseExecutor.shutdownNow();
+    }
     notifyAll();
     this.rpcMetrics.shutdown();
     this.rpcDetailedMetrics.shutdown();
@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import org.apache.hadoop.fs.impl.CombinedFileRange;
+import org.apache.hadoop.test.HadoopTestBase;
+
+import static org.apache.hadoop.test.LambdaTestUtils.intercept;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the helpers and the default implementation of vectored reads.
+ */
+public class TestVectoredReadUtils extends HadoopTestBase {
+
+  private static final byte[] DATA = new byte[64 * 1024];
+
+  static {
+    for (int i = 0; i < DATA.length; i++) {
+      DATA[i] = (byte) i;
+    }
+  }
+
+  /**
+   * A stream over {@link #DATA}, which counts its positioned reads.
+   */
+  private static class CountingStream implements PositionedReadable {
+    private final AtomicInteger reads = new AtomicInteger();
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int length) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void readFully(long position, byte[] buffer, int offset,
+        int length) throws IOException {
+      reads.incrementAndGet();
+      if (position + length > DATA.length) {
+        throw new EOFException("Read past the end of the data");
+      }
+      System.arraycopy(DATA, (int) position, buffer, offset, length);
+    }
+
+    @Override
+    public void readFully(long position, byte[] buffer) throws IOException {
+      readFully(position, buffer, 0, buffer.length);
+    }
+  }
+
+  private static void assertData(FileRange range) throws Exception {
+    ByteBuffer buffer = range.getData().get();
+    assertEquals(range.getLength(), buffer.remaining());
+    for (int i = 0; i < range.getLength(); i++) {
+      assertEquals("byte " + i + " of " + range,
+          DATA[(int) range.getOffset() + i], buffer.get());
+    }
+  }
+
+  @Test
+  public void testMergeSortedRanges() {
+    List<FileRange> ranges = Arrays.asList(
+        FileRange.createFileRange(0, 100),
+        FileRange.createFileRange(200, 100),
+        FileRange.createFileRange(10000, 100));
+    List<CombinedFileRange> merged =
+        VectoredReadUtils.mergeSortedRanges(ranges, 4096, 1024 * 1024);
+    assertEquals(2, merged.size());
+    assertEquals(0, merged.get(0).getOffset());
+    assertEquals(300, merged.get(0).getLength());
+    assertEquals(2, merged.get(0).getUnderlying().size());
+    assertEquals(10000, merged.get(1).getOffset());
+    assertEquals(100, merged.get(1).getLength());
+
+    // Ranges are not merged over a seek of minimumSeek bytes or more
+    assertEquals(3,
+        VectoredReadUtils.mergeSortedRanges(ranges, 100, 1024).size());
+    // nor beyond maxSize bytes
+    assertEquals(3,
+        VectoredReadUtils.mergeSortedRanges(ranges, 4096, 250).size());
+  }
+
+  @Test
+  public void testValidateAndSortRanges() throws Exception {
+    List<? extends FileRange> sorted = VectoredReadUtils.validateAndSortRanges(
+        Arrays.asList(FileRange.createFileRange(500, 10),
+            FileRange.createFileRange(0, 10)));
+    assertEquals(0, sorted.get(0).getOffset());
+    assertEquals(500, sorted.get(1).getOffset());
+
+    intercept(IllegalArgumentException.class, "Overlapping",
+        () -> VectoredReadUtils.validateAndSortRanges(
+            Arrays.asList(FileRange.createFileRange(0, 100),
+                FileRange.createFileRange(50, 100))));
+    intercept(IllegalArgumentException.class, "Invalid range",
+        () -> VectoredReadUtils.validateAndSortRanges(
+            Arrays.asList(FileRange.createFileRange(-1, 100))));
+  }
+
+  @Test
+  public void testSliceTo() {
+    ByteBuffer data = ByteBuffer.wrap(DATA, 100, 1000).slice();
+    ByteBuffer slice = VectoredReadUtils.sliceTo(data, 100,
+        FileRange.createFileRange(150, 20));
+    assertEquals(20, slice.remaining());
+    assertEquals(DATA[150], slice.get(0));
+    assertEquals(0, data.position());
+  }
+
+  @Test
+  public void testReadVectoredMergesRanges() throws Exception {
+    CountingStream stream = new CountingStream();
+    List<FileRange> ranges = Arrays.asList(
+        FileRange.createFileRange(30000, 100),
+        FileRange.createFileRange(0, 100),
+        FileRange.createFileRange(1000, 200),
+        FileRange.createFileRange(40000, 0));
+    stream.readVectored(ranges, ByteBuffer::allocate);
+    for (FileRange range : ranges) {
+      assertData(range);
+    }
+    // one read for the first two ranges, one for each of the others
+    assertEquals(3, stream.reads.get());
+
+    List<FileRange> direct = Arrays.asList(
+        FileRange.createFileRange(0, 100),
+        FileRange.createFileRange(200, 100));
+    stream.readVectored(direct, ByteBuffer::allocateDirect);
+    for (FileRange range : direct) {
+      assertTrue(range.getData().get().isDirect());
+      assertData(range);
+    }
+  }
+
+  @Test
+  public void testReadPastEofFailsOnlyThatRange() throws Exception {
+    CountingStream stream = new CountingStream();
+    FileRange valid = FileRange.createFileRange(DATA.length - 200, 100);
+    FileRange pastEof = FileRange.createFileRange(DATA.length - 50, 100);
+    stream.readVectored(Arrays.asList(valid, pastEof), ByteBuffer::allocate);
+    assertData(valid);
+    intercept(EOFException.class, () -> {
+      try {
+        return pastEof.getData().join();
+      } catch (CompletionException e) {
+        throw (Exception) e.getCause();
+      }
+    });
+  }
+
+  /**
+   * Runtime exceptions from the stream or the allocation are reported through
+   * the futures of every range instead of leaving some of them incomplete.
+   */
+  @Test
+  public void testRuntimeExceptionsFailTheRanges() throws Exception {
+    List<FileRange> ranges = Arrays.asList(
+        FileRange.createFileRange(0, 100),
+        FileRange.createFileRange(200, 100));
+    // the merged read fails, so each range is read on its own
+    CountingStream failingStream = new CountingStream() {
+      @Override
+      public void readFully(long position, byte[] buffer, int offset,
+          int length) throws IOException {
+        if (length > 100) {
+          throw new IllegalStateException("merged read failed");
+        }
+        super.readFully(position, buffer, offset, length);
+      }
+    };
+    failingStream.readVectored(ranges, ByteBuffer::allocate);
+    for (FileRange range : ranges) {
+      assertData(range);
+    }
+
+    // the second allocation fails after the merged read succeeded
+    CountingStream stream = new CountingStream();
+    AtomicInteger allocations = new AtomicInteger();
+    stream.readVectored(ranges, size -> {
+      if (allocations.incrementAndGet() > 1) {
+        throw new IllegalStateException("out of buffers");
+      }
+      return ByteBuffer.allocate(size);
+    });
+    assertEquals(1, stream.reads.get());
+    assertData(ranges.get(0));
+    intercept(IllegalStateException.class, "out of buffers", () -> {
+      try {
+        return ranges.get(1).getData().join();
+      } catch (CompletionException e) {
+        throw (Exception) e.getCause();
+      }
+    });
+  }
+}
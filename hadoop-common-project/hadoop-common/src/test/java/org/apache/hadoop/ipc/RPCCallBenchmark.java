@@ -28,6 +28,7 @@
 import org.apache.commons.cli.ParseException;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
 import org.apache.hadoop.ipc.RPC.Server;
 import org.apache.hadoop.ipc.protobuf.TestProtos.EchoRequestProto;
 import org.apache.hadoop.ipc.protobuf.TestProtos.EchoResponseProto;
@@ -61,6 +62,7 @@ private static class MyOptions {
     private int serverThreads = 0;
     private int serverReaderThreads = 1;
     private int clientThreads = 0;
+    private int connections = 0;
     private String host = "0.0.0.0";
     private int port = 0;
     public int secondsToRun = 15;
@@ -108,6 +110,12 @@ private Options buildOptions() {
         .withArgName("numthreads")
         .withDescription("number of client threads to run (or 0 to not run client)")
         .create("c"));
+      opts.addOption(
+        OptionBuilder.withLongOpt("connections").hasArg(true)
+        .withArgName("num")
+        .withDescription("number of connections the client threads share "
+            + "(default one per thread)")
+        .create("n"));
 
       opts.addOption(
         OptionBuilder.withLongOpt("messageSize").hasArg(true)
@@ -166,6 +174,9 @@ private void processOptions(CommandLine line, Options opts)
       if (line.hasOption('c')) {
         clientThreads = Integer.parseInt(line.getOptionValue('c'));
       }
+      if (line.hasOption('n')) {
+        connections = Integer.parseInt(line.getOptionValue('n'));
+      }
       if (line.hasOption('t')) {
         secondsToRun = Integer.parseInt(line.getOptionValue('t'));
       }
@@ -194,6 +205,11 @@ private void processOptions(CommandLine line, Options opts)
       }
     }
     
+    public int getConnections() {
+      return connections > 0 ? Math.min(connections, clientThreads)
+          : clientThreads;
+    }
+
     public int getPort() {
       if (port == 0) {
         port = NetUtils.getFreeSocketPort();
@@ -208,7 +224,8 @@ public int getPort() {
     public String toString() {
       return "rpcEngine=" + rpcEngine + "\nserverThreads=" + serverThreads
           + "\nserverReaderThreads=" + serverReaderThreads + "\nclientThreads="
-          + clientThreads + "\nhost=" + host + "\nport=" + getPort()
+          + clientThreads + "\nconnections=" + getConnections()
+          + "\nhost=" + host + "\nport=" + getPort()
           + "\nsecondsToRun=" + secondsToRun + "\nmsgSize=" + msgSize;
     }
   }
@@ -258,6 +275,10 @@ public int run(String[] args) throws Exception {
     
     // Set RPC engine to the configured RPC engine
     RPC.setProtocolEngine(conf, TestRpcService.class, opts.rpcEngine);
+    // Use the default socket factory, so the proxies share the client
+    // whose pipeline statistics are printed
+    conf.set(CommonConfigurationKeysPublic
+        .HADOOP_RPC_SOCKET_FACTORY_CLASS_DEFAULT_KEY, "");
 
     Server server = startServer(opts);
     try {
@@ -300,6 +321,7 @@ public int run(String[] args) throws Exception {
             System.out.println("CPU time per call on server: " +
                 (cpuNanosServer / totalCalls) + " ns");
           }
+          printPipelineStats();
         } else {
           System.out.println("No calls!");
         }
@@ -320,15 +342,22 @@ public int run(String[] args) throws Exception {
   }
 
 
+  private void printPipelineStats() {
+    Client client = ProtobufRpcEngine2.getClient(conf);
+    for (Client.PipelineStats stats : client.getPipelineStats().values()) {
+      System.out.println("Connection pipeline: " + stats);
+    }
+  }
+
   private TestContext setupClientTestContext(final MyOptions opts)
       throws IOException, InterruptedException {
     if (opts.clientThreads <= 0) {
       return null;
     }
 
-    // Set up a separate proxy for each client thread,
-    // rather than making them share TCP pipes.
-    int numProxies = opts.clientThreads;
+    // Set up a separate proxy for each connection; by default one for each
+    // client thread, rather than making them share TCP pipes.
+    int numProxies = opts.getConnections();
     final RpcServiceWrapper proxies[] = new RpcServiceWrapper[numProxies];
     for (int i = 0; i < numProxies; i++) {
       proxies[i] =
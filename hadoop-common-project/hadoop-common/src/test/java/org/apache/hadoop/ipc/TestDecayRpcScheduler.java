@@ -35,6 +35,7 @@
 import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.FakeTimer;
 import org.apache.hadoop.conf.Configuration;
 
 import javax.management.MBeanServer;
@@ -421,6 +422,106 @@ public void testUsingWeightedTimeCostProviderNoRequests() {
     assertEquals(0, scheduler.getPriorityLevel(mockCall("A")));
   }
 
+  @Test
+  public void testTokenBucketThrottlesLockHolder() {
+    String ns = "ipc.21";
+    Configuration conf = new Configuration();
+    conf.setClass(ns + "." + CommonConfigurationKeys.IPC_COST_PROVIDER_KEY,
+        WeightedTimeCostProvider.class, CostProvider.class);
+    conf.setLong(ns + "."
+        + DecayRpcScheduler.IPC_SCHEDULER_DECAYSCHEDULER_PERIOD_KEY, 999999);
+    conf.set(ns + "." + DecayRpcScheduler.IPC_DECAYSCHEDULER_SERVICE_USERS_KEY,
+        "service");
+    // 100ms of exclusive lock per second, with the default weight of 100
+    conf.setLong(ns + "."
+        + DecayRpcScheduler.IPC_DECAYSCHEDULER_TOKEN_BUCKET_RATE_KEY,
+        TimeUnit.MILLISECONDS.toNanos(100) * 100);
+    scheduler = new DecayRpcScheduler(4, ns, conf);
+    FakeTimer timer = new FakeTimer();
+    scheduler.setBucketTimer(timer);
+
+    ProcessingDetails writeLock = new ProcessingDetails(TimeUnit.NANOSECONDS);
+    writeLock.set(ProcessingDetails.Timing.LOCKEXCLUSIVE, 60,
+        TimeUnit.MILLISECONDS);
+
+    // Other users share the load, so the decayed cost alone keeps the heavy
+    // user in a high priority queue
+    for (int i = 0; i < 10; i++) {
+      scheduler.addResponseTime("mkdir", mockCall("light" + i), writeLock);
+    }
+
+    // The first call fits in the bucket
+    scheduler.addResponseTime("delete", mockCall("heavy"), writeLock);
+    scheduler.addResponseTime("delete", mockCall("service"), writeLock);
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("heavy")));
+    assertFalse(scheduler.shouldBackOff(mockCall("heavy")));
+
+    // The second one does not; the user is throttled right away, without
+    // waiting for the decay sweep to recompute the priorities
+    scheduler.addResponseTime("delete", mockCall("heavy"), writeLock);
+    scheduler.addResponseTime("delete", mockCall("service"), writeLock);
+    assertEquals(3, scheduler.getPriorityLevel(mockCall("heavy")));
+    assertTrue(scheduler.shouldBackOff(mockCall("heavy")));
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("light0")));
+    assertFalse(scheduler.shouldBackOff(mockCall("light0")));
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("service")));
+    assertFalse(scheduler.shouldBackOff(mockCall("service")));
+
+    // The debt is paid back by the refill
+    timer.advance(100);
+    assertEquals(3, scheduler.getPriorityLevel(mockCall("heavy")));
+    timer.advance(100);
+    assertEquals(1, scheduler.getPriorityLevel(mockCall("heavy")));
+    assertFalse(scheduler.shouldBackOff(mockCall("heavy")));
+
+    // Full buckets are forgotten by the decay sweep
+    assertEquals(11, scheduler.getCostBucketCount());
+    timer.advance(1000);
+    scheduler.forceDecay();
+    assertEquals(0, scheduler.getCostBucketCount());
+  }
+
+  @Test
+  public void testTokenBucketCapacity() {
+    String ns = "ipc.22";
+    Configuration conf = new Configuration();
+    conf.setLong(ns + "."
+        + DecayRpcScheduler.IPC_SCHEDULER_DECAYSCHEDULER_PERIOD_KEY, 999999);
+    conf.setLong(ns + "."
+        + DecayRpcScheduler.IPC_DECAYSCHEDULER_TOKEN_BUCKET_RATE_KEY, 10);
+    conf.setLong(ns + "."
+        + DecayRpcScheduler.IPC_DECAYSCHEDULER_TOKEN_BUCKET_CAPACITY_KEY, 50);
+    scheduler = new DecayRpcScheduler(2, ns, conf);
+    FakeTimer timer = new FakeTimer();
+    scheduler.setBucketTimer(timer);
+
+    // A burst of 50 calls is allowed, the next one is over budget
+    for (int i = 0; i < 50; i++) {
+      getPriorityIncrementCallCount("user1");
+      getPriorityIncrementCallCount("user2");
+    }
+    assertFalse(scheduler.shouldBackOff(mockCall("user1")));
+    getPriorityIncrementCallCount("user1");
+    assertTrue(scheduler.shouldBackOff(mockCall("user1")));
+
+    // Idle time never saves up more than the capacity
+    timer.advance(TimeUnit.MINUTES.toMillis(1));
+    for (int i = 0; i < 50; i++) {
+      getPriorityIncrementCallCount("user2");
+    }
+    assertFalse(scheduler.shouldBackOff(mockCall("user2")));
+    getPriorityIncrementCallCount("user2");
+    assertTrue(scheduler.shouldBackOff(mockCall("user2")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeTokenBucketRate() {
+    Configuration conf = new Configuration();
+    conf.setLong("ipc.23."
+        + DecayRpcScheduler.IPC_DECAYSCHEDULER_TOKEN_BUCKET_RATE_KEY, -1);
+    new DecayRpcScheduler(2, "ipc.23", conf);
+  }
+
   /**
    * Get a scheduler that uses {@link WeightedTimeCostProvider} and has
    * normal decaying disabled.
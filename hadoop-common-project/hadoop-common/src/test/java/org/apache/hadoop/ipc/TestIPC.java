@@ -52,6 +52,7 @@
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.BrokenBarrierException;
@@ -364,6 +365,39 @@ public void internalTestSerial(int handlerCount, boolean handlerSleep,
     server.stop();
   }
 
+  @Test(timeout=60000)
+  public void testPipelineStats() throws IOException, InterruptedException {
+    Server server = new TestServer(5, false);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(LongWritable.class, conf);
+    try {
+      // all the callers share the connection of the client
+      SerialCaller[] callers = new SerialCaller[10];
+      for (int i = 0; i < callers.length; i++) {
+        callers[i] = new SerialCaller(client, addr, 20);
+        callers[i].start();
+      }
+      for (SerialCaller caller : callers) {
+        caller.join();
+        assertFalse(caller.failed);
+      }
+
+      Map<ConnectionId, Client.PipelineStats> stats =
+          client.getPipelineStats();
+      assertEquals(1, stats.size());
+      Client.PipelineStats connStats = stats.values().iterator().next();
+      assertEquals(200, connStats.getNumRequests());
+      assertTrue(connStats.getNumWrites() <= connStats.getNumRequests());
+      assertTrue(connStats.getMaxBatchSize() <= callers.length);
+      assertTrue(connStats.getMaxPipelineDepth() <= callers.length);
+      assertTrue(connStats.getMeanPipelineDepth() >= 1);
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
   @Test
   public void testAuxiliaryPorts() throws IOException, InterruptedException {
     int defaultPort = 9000;
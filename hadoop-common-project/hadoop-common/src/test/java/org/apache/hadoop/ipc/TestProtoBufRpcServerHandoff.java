@@ -18,8 +18,13 @@
 
 package org.apache.hadoop.ipc;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
@@ -30,8 +35,10 @@
 import org.apache.hadoop.thirdparty.protobuf.RpcController;
 import org.apache.hadoop.thirdparty.protobuf.ServiceException;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.ipc.protobuf.TestProtos;
 import org.apache.hadoop.ipc.protobuf.TestRpcServiceProtos.TestProtobufRpcHandoffProto;
+import org.apache.hadoop.test.LambdaTestUtils;
 import org.junit.Assert;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -93,6 +100,53 @@ public void test() throws Exception {
 
   }
 
+  @Test(timeout = 20000)
+  public void testDeferResponse() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(
+        CommonConfigurationKeys.IPC_SERVER_DEFERRED_RESPONSE_THREADS_KEY, 1);
+
+    BlockingService blockingService =
+        TestProtobufRpcHandoffProto.newReflectiveBlockingService(
+            new TestProtoBufRpcServerFutureServer());
+
+    RPC.setProtocolEngine(conf, TestProtoBufRpcServerHandoffProtocol.class,
+        ProtobufRpcEngine2.class);
+    RPC.Server server = new RPC.Builder(conf)
+        .setProtocol(TestProtoBufRpcServerHandoffProtocol.class)
+        .setInstance(blockingService)
+        .setNumHandlers(1)
+        .build();
+    server.start();
+    ExecutorService executorService = Executors.newFixedThreadPool(3);
+    try {
+      final TestProtoBufRpcServerHandoffProtocol client = RPC.getProxy(
+          TestProtoBufRpcServerHandoffProtocol.class, 1,
+          server.getListenerAddress(), conf);
+
+      // Three overlapping calls on one handler all finish in about the time
+      // of one of them.
+      long submitTime = System.currentTimeMillis();
+      List<Future<ClientInvocationCallable>> futures = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        futures.add(executorService.submit(
+            new ClientInvocationCallable(client, 3000L)));
+      }
+      for (Future<ClientInvocationCallable> future : futures) {
+        Assert.assertNotNull(future.get().result);
+      }
+      Assert.assertTrue(System.currentTimeMillis() - submitTime < 6000L);
+
+      // A failed future is returned to the client as the handler's error.
+      LambdaTestUtils.intercept(ServiceException.class, "negative sleep",
+          () -> client.sleep(null, TestProtos.SleepRequestProto2.newBuilder()
+              .setSleepTime(-1).build()));
+    } finally {
+      executorService.shutdownNow();
+      server.stop();
+    }
+  }
+
   private static class ClientInvocationCallable
       implements Callable<ClientInvocationCallable> {
     final TestProtoBufRpcServerHandoffProtocol client;
@@ -164,4 +218,35 @@ public void run() {
       return null;
     }
   }
+
+  /** Completes each call from a future instead of the handler's thread. */
+  public static class TestProtoBufRpcServerFutureServer
+      implements TestProtoBufRpcServerHandoffProtocol {
+    private final ExecutorService sleepers = Executors.newCachedThreadPool();
+
+    @Override
+    public TestProtos.SleepResponseProto2 sleep(RpcController controller,
+        TestProtos.SleepRequestProto2 request) throws ServiceException {
+      final long startTime = System.currentTimeMillis();
+      final long sleepTime = request.getSleepTime();
+      CompletableFuture<TestProtos.SleepResponseProto2> result;
+      if (sleepTime < 0) {
+        result = new CompletableFuture<>();
+        result.completeExceptionally(new IOException("negative sleep"));
+      } else {
+        result = CompletableFuture.supplyAsync(() -> {
+          try {
+            Thread.sleep(sleepTime);
+          } catch (InterruptedException e) {
+            throw new CompletionException(e);
+          }
+          return TestProtos.SleepResponseProto2.newBuilder()
+              .setReceiveTime(startTime)
+              .setResponseTime(System.currentTimeMillis()).build();
+        }, sleepers);
+      }
+      ProtobufRpcEngine2.Server.deferResponse(result);
+      return null;
+    }
+  }
 }
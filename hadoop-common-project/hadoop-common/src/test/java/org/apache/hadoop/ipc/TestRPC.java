@@ -537,6 +537,49 @@ private void testCallsInternal(Configuration myConf) throws Exception {
     }
   }
 
+  @Test(timeout=60000)
+  public void testCallsWithPooledBuffers() throws Exception {
+    Configuration myConf = new Configuration(conf);
+    // messages up to 4KB go through the pool, larger ones use the heap
+    myConf.setInt(
+        CommonConfigurationKeys.IPC_SERVER_POOLED_BUFFER_MAX_SIZE_KEY, 4096);
+    Server server = setupTestServer(myConf, 5);
+    TestRpcService proxy = null;
+    ExecutorService executor = Executors.newFixedThreadPool(10);
+    try {
+      final TestRpcService client = getClient(addr, myConf);
+      proxy = client;
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < 100; j++) {
+            // reused buffers must not leak bytes of a previous call
+            char[] chars = new char[ThreadLocalRandom.current().nextInt(8192)];
+            Arrays.fill(chars, (char) ('a' + j % 26));
+            String msg = new String(chars);
+            assertEquals(msg, client.echo(null, newEchoRequest(msg))
+                .getMessage());
+          }
+          return null;
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+
+      try {
+        proxy.error(null, newEmptyRequest());
+        fail("Expected a ServiceException");
+      } catch (ServiceException e) {
+        assertTrue(e.getCause() instanceof RemoteException);
+      }
+      assertEquals("", proxy.echo(null, newEchoRequest("")).getMessage());
+    } finally {
+      executor.shutdownNow();
+      stop(server, proxy);
+    }
+  }
+
   @Test
   public void testClientWithoutServer() throws Exception {
     TestRpcService proxy;
@@ -37,4 +37,19 @@ public void testBenchmarkWithProto() throws Exception {
       "--engine", "protobuf"});
     assertEquals(0, rc);
   }
+
+  @Test(timeout=20000)
+  public void testBenchmarkWithSharedConnections() throws Exception {
+    // many callers on few connections get their requests flushed together
+    int rc = ToolRunner.run(new RPCCallBenchmark(),
+        new String[] {
+      "--clientThreads", "100",
+      "--connections", "2",
+      "--serverThreads", "30",
+      "--time", "5",
+      "--serverReaderThreads", "4",
+      "--messageSize", "128",
+      "--engine", "protobuf"});
+    assertEquals(0, rc);
+  }
 }
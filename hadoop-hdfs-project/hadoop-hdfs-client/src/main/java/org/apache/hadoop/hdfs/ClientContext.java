@@ -20,6 +20,7 @@
 import static org.apache.hadoop.fs.CommonConfigurationKeys.FS_CLIENT_TOPOLOGY_RESOLUTION_ENABLED;
 import static org.apache.hadoop.fs.CommonConfigurationKeys.FS_CLIENT_TOPOLOGY_RESOLUTION_ENABLED_DEFAULT;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -31,6 +32,7 @@
 import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf.ShortCircuitConf;
+import org.apache.hadoop.hdfs.client.impl.LocalBlockCache;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.shortcircuit.DomainSocketFactory;
 import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitCache;
@@ -146,6 +148,12 @@ public class ClientContext {
    */
   private volatile LocatedBlocksRefresher locatedBlocksRefresher = null;
 
+  /**
+   * Caches block data read from remote datanodes on a local disk, or null if
+   * the cache is disabled.
+   */
+  private final LocalBlockCache localBlockCache;
+
   /**
    * Count the reference of ClientContext.
    */
@@ -182,6 +190,10 @@ private ClientContext(String name, DfsClientConf conf,
         conf.getWriteByteArrayManagerConf());
     this.deadNodeDetectionEnabled = conf.isDeadNodeDetectionEnabled();
     this.locatedBlocksRefresherEnabled = conf.isLocatedBlocksRefresherEnabled();
+    this.localBlockCache = conf.isLocalCacheEnabled()
+        ? LocalBlockCache.create(new File(conf.getLocalCacheDir()),
+            conf.getLocalCacheCapacity(), conf.getLocalCacheChunkSize())
+        : null;
     initTopologyResolution(config);
   }
 
@@ -334,6 +346,14 @@ public LocatedBlocksRefresher getLocatedBlocksRefresher() {
     return locatedBlocksRefresher;
   }
 
+  /**
+   * Obtain the LocalBlockCache shared by the clients of this context, or
+   * null if it is disabled.
+   */
+  public LocalBlockCache getLocalBlockCache() {
+    return localBlockCache;
+  }
+
   /**
    * Increment the counter. Start the dead node detector thread if there is no
    * reference.
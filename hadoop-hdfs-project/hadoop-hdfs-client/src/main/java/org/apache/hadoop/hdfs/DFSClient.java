@@ -46,6 +46,7 @@
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -134,8 +135,11 @@
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsPathHandle;
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
+import org.apache.hadoop.hdfs.protocol.ListingProjection;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.MetadataOp;
+import org.apache.hadoop.hdfs.protocol.MetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.NSQuotaExceededException;
 import org.apache.hadoop.hdfs.protocol.NoECPolicySetException;
 import org.apache.hadoop.hdfs.protocol.OpenFileEntry;
@@ -233,6 +237,12 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
   final short dtpReplaceDatanodeOnFailureReplication;
   private final FileSystem.Statistics stats;
   private final URI namenodeUri;
+  /**
+   * Caches the LocatedBlocks of closed files opened for read, or null if
+   * the cache is disabled. It is not shared with other clients, since the
+   * blocks carry the access tokens of this client's user.
+   */
+  private final LocatedBlocksCache locatedBlocksCache;
   private final Random r = new Random();
   private SocketAddress[] localInterfaceAddrs;
   private DataEncryptionKey encryptionKey;
@@ -245,6 +255,8 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
       new DFSHedgedReadMetrics();
   private static ThreadPoolExecutor HEDGED_READ_THREAD_POOL;
   private static volatile ThreadPoolExecutor STRIPED_READ_THREAD_POOL;
+  private static volatile ThreadPoolExecutor VECTORED_READ_THREAD_POOL;
+  private static volatile ThreadPoolExecutor ASYNC_READ_THREAD_POOL;
   private final long serverDefaultsValidityPeriod;
 
   /**
@@ -401,6 +413,10 @@ public DFSClient(URI nameNodeUri, ClientProtocol rpcNamenode,
     this.clientContext = ClientContext.get(
         conf.get(DFS_CLIENT_CONTEXT, DFS_CLIENT_CONTEXT_DEFAULT),
         dfsClientConf, conf);
+    this.locatedBlocksCache = dfsClientConf.isLocatedBlocksCacheEnabled()
+        ? new LocatedBlocksCache(dfsClientConf.getLocatedBlocksCacheSize(),
+            dfsClientConf.getLocatedBlocksCacheExpiryMs())
+        : null;
 
     if (dfsClientConf.getHedgedReadThreadpoolSize() > 0) {
       this.initThreadsNumForHedgedReads(dfsClientConf.
@@ -409,6 +425,10 @@ public DFSClient(URI nameNodeUri, ClientProtocol rpcNamenode,
 
     this.initThreadsNumForStripedReads(dfsClientConf.
         getStripedReadThreadpoolSize());
+    this.initThreadsNumForVectoredReads(dfsClientConf.
+        getVectoredReadThreadpoolSize());
+    this.initThreadsNumForAsyncReads(dfsClientConf.
+        getAsyncReadThreadpoolSize(), dfsClientConf.getAsyncReadQueueSize());
     this.saslClient = new SaslDataTransferClient(
         conf, DataTransferSaslUtil.getSaslPropertiesResolver(conf),
         TrustedChannelResolver.getInstance(conf), nnFallbackToSimpleAuth);
@@ -895,6 +915,52 @@ public LocatedBlocks getLocatedBlocks(String src, long start, long length)
     }
   }
 
+  /**
+   * Get the locations of the blocks of a file for a read starting at the
+   * given offset. If this client caches located blocks, they are served
+   * from the cache when possible, and what the NameNode returns is added to
+   * it.
+   *
+   * @param src the file path.
+   * @param start the offset that is going to be read.
+   * @return LocatedBlocks, which the caller may modify
+   * @throws IOException
+   */
+  LocatedBlocks getLocatedBlocksForRead(String src, long start)
+      throws IOException {
+    final LocatedBlocksCache cache = locatedBlocksCache;
+    if (cache == null) {
+      return getLocatedBlocks(src, start);
+    }
+    LocatedBlocks blocks = cache.get(src, start);
+    if (blocks != null) {
+      LOG.debug("Using cached block locations of {} at offset {}", src,
+          start);
+      return blocks;
+    }
+    blocks = getLocatedBlocks(src, start);
+    if (blocks != null) {
+      cache.put(src, blocks);
+    }
+    return blocks;
+  }
+
+  /**
+   * Drop the cached block locations of a file, if any. Called when the file
+   * is modified through this client, or when reading from the cached
+   * locations failed.
+   */
+  void invalidateLocatedBlocks(String src) {
+    if (locatedBlocksCache != null) {
+      locatedBlocksCache.invalidate(src);
+    }
+  }
+
+  @VisibleForTesting
+  LocatedBlocksCache getLocatedBlocksCache() {
+    return locatedBlocksCache;
+  }
+
   /**
    * @see ClientProtocol#getBlockLocations(String, long, long)
    */
@@ -1047,7 +1113,7 @@ public DFSInputStream open(String src, int buffersize, boolean verifyChecksum)
     checkOpen();
     //    Get block info from namenode
     try (TraceScope ignored = newPathTraceScope("newDFSInputStream", src)) {
-      LocatedBlocks locatedBlocks = getLocatedBlocks(src, 0);
+      LocatedBlocks locatedBlocks = getLocatedBlocksForRead(src, 0);
       return openInternal(locatedBlocks, src, verifyChecksum);
     }
   }
@@ -1269,6 +1335,7 @@ public DFSOutputStream create(String src, FsPermission permission,
       String ecPolicyName, String storagePolicy)
       throws IOException {
     checkOpen();
+    invalidateLocatedBlocks(src);
     final FsPermission masked = applyUMask(permission);
     LOG.debug("{}: masked={}", src, masked);
     final DFSOutputStream result = DFSOutputStream.newStreamForCreate(this,
@@ -1403,6 +1470,7 @@ private LastBlockWithStatus callAppend(String src,
   private DFSOutputStream callAppend(String src, EnumSet<CreateFlag> flag,
       Progressable progress, String[] favoredNodes) throws IOException {
     CreateFlag.validateForAppend(flag);
+    invalidateLocatedBlocks(src);
     try {
       final LastBlockWithStatus blkWithStatus = callAppend(src,
           new EnumSetWritable<>(flag, CreateFlag.class));
@@ -1574,6 +1642,8 @@ public BlockStoragePolicy[] getStoragePolicies() throws IOException {
   @Deprecated
   public boolean rename(String src, String dst) throws IOException {
     checkOpen();
+    invalidateLocatedBlocks(src);
+    invalidateLocatedBlocks(dst);
     try (TraceScope ignored = newSrcDstTraceScope("rename", src, dst)) {
       return namenode.rename(src, dst);
     } catch (RemoteException re) {
@@ -1593,6 +1663,10 @@ public boolean rename(String src, String dst) throws IOException {
    */
   public void concat(String trg, String [] srcs) throws IOException {
     checkOpen();
+    invalidateLocatedBlocks(trg);
+    for (String src : srcs) {
+      invalidateLocatedBlocks(src);
+    }
     try (TraceScope ignored = tracer.newScope("concat")) {
       namenode.concat(trg, srcs);
     } catch (RemoteException re) {
@@ -1609,6 +1683,8 @@ public void concat(String trg, String [] srcs) throws IOException {
   public void rename(String src, String dst, Options.Rename... options)
       throws IOException {
     checkOpen();
+    invalidateLocatedBlocks(src);
+    invalidateLocatedBlocks(dst);
     try (TraceScope ignored = newSrcDstTraceScope("rename2", src, dst)) {
       namenode.rename2(src, dst, options);
     } catch (RemoteException re) {
@@ -1635,6 +1711,7 @@ public boolean truncate(String src, long newLength) throws IOException {
       throw new HadoopIllegalArgumentException(
           "Cannot truncate to a negative file size: " + newLength + ".");
     }
+    invalidateLocatedBlocks(src);
     try (TraceScope ignored = newPathTraceScope("truncate", src)) {
       return namenode.truncate(src, newLength, clientName);
     } catch (RemoteException re) {
@@ -1662,6 +1739,7 @@ public boolean delete(String src) throws IOException {
    */
   public boolean delete(String src, boolean recursive) throws IOException {
     checkOpen();
+    invalidateLocatedBlocks(src);
     try (TraceScope ignored = newPathTraceScope("delete", src)) {
       return namenode.delete(src, recursive);
     } catch (RemoteException re) {
@@ -1712,6 +1790,27 @@ public DirectoryListing listPaths(String src,  byte[] startAfter,
     }
   }
 
+  /**
+   * Get a partial listing of the entries of the indicated directory whose
+   * names match <code>nameFilter</code>, with only the attributes selected
+   * by <code>projection</code>.
+   *
+   * @see ClientProtocol#getFilteredListing(String, byte[], String,
+   *      ListingProjection)
+   */
+  public DirectoryListing listPaths(String src, byte[] startAfter,
+      String nameFilter, ListingProjection projection) throws IOException {
+    checkOpen();
+    try (TraceScope ignored = newPathTraceScope("listPaths", src)) {
+      return namenode.getFilteredListing(src, startAfter, nameFilter,
+          projection);
+    } catch (RemoteException re) {
+      throw re.unwrapRemoteException(AccessControlException.class,
+          FileNotFoundException.class,
+          UnresolvedPathException.class);
+    }
+  }
+
   /**
    * Get a batched listing for the indicated directories
    *
@@ -2542,6 +2641,40 @@ public boolean primitiveMkdir(String src, FsPermission absPermission,
     }
   }
 
+  /**
+   * Run a batch of metadata operations under a single NameNode lock
+   * acquisition. The permissions of created files and directories are
+   * masked against the umask first, as for {@link #create} and
+   * {@link #mkdirs(String, FsPermission, boolean)}.
+   *
+   * @see ClientProtocol#batchMetadataOps(String, List)
+   */
+  public List<MetadataOpResult> batchMetadataOps(List<MetadataOp> ops)
+      throws IOException {
+    checkOpen();
+    List<MetadataOp> maskedOps = new ArrayList<>(ops.size());
+    for (MetadataOp op : ops) {
+      switch (op.getType()) {
+      case MKDIRS:
+        maskedOps.add(MetadataOp.mkdirs(op.getSrc(),
+            applyUMaskDir(op.getPermission()), op.isCreateParent()));
+        break;
+      case CREATE_EMPTY:
+        maskedOps.add(MetadataOp.createEmpty(op.getSrc(),
+            applyUMask(op.getPermission()), op.isCreateParent()));
+        break;
+      default:
+        maskedOps.add(op);
+      }
+    }
+    try (TraceScope ignored = tracer.newScope("batchMetadataOps")) {
+      return namenode.batchMetadataOps(clientName, maskedOps);
+    } catch (RemoteException re) {
+      throw re.unwrapRemoteException(AccessControlException.class,
+          SafeModeException.class);
+    }
+  }
+
   /**
    * Get {@link ContentSummary} rooted at the specified directory.
    * @param src The string representation of the path
@@ -3129,6 +3262,57 @@ private void initThreadsNumForStripedReads(int numThreads) {
     }
   }
 
+  /**
+   * Create thread pool for reading the ranges of vectored reads in parallel,
+   * VECTORED_READ_THREAD_POOL, if it does not already exist.
+   * @param numThreads Number of threads for vectored reads thread pool.
+   * If zero, skip vectored reads thread pool creation.
+   */
+  private void initThreadsNumForVectoredReads(int numThreads) {
+    if (numThreads <= 0 || VECTORED_READ_THREAD_POOL != null) {
+      return;
+    }
+    synchronized (DFSClient.class) {
+      if (VECTORED_READ_THREAD_POOL == null) {
+        // Only after thread pool is fully constructed then save it to
+        // volatile field.
+        ThreadPoolExecutor threadPool = DFSUtilClient.getThreadPoolExecutor(1,
+            numThreads, 60, "VectoredRead-", true);
+        threadPool.allowCoreThreadTimeOut(true);
+        VECTORED_READ_THREAD_POOL = threadPool;
+      }
+    }
+  }
+
+  /**
+   * Create thread pool for asynchronous positional reads,
+   * ASYNC_READ_THREAD_POOL, if it does not already exist. Reads beyond the
+   * capacity of its queue run in the calling thread.
+   * @param numThreads Number of threads for async reads thread pool.
+   * If zero, skip async reads thread pool creation.
+   * @param queueSize Number of reads which may be queued for the threads.
+   */
+  private void initThreadsNumForAsyncReads(int numThreads, int queueSize) {
+    if (numThreads <= 0 || ASYNC_READ_THREAD_POOL != null) {
+      return;
+    }
+    synchronized (DFSClient.class) {
+      if (ASYNC_READ_THREAD_POOL == null) {
+        // Only after thread pool is fully constructed then save it to
+        // volatile field.
+        ThreadPoolExecutor threadPool = DFSUtilClient.getThreadPoolExecutor(
+            numThreads, numThreads, 60, new LinkedBlockingQueue<>(queueSize),
+            "AsyncRead-", false);
+        // A full queue is expected under load, so reads running in the
+        // calling thread are not logged.
+        threadPool.setRejectedExecutionHandler(
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        threadPool.allowCoreThreadTimeOut(true);
+        ASYNC_READ_THREAD_POOL = threadPool;
+      }
+    }
+  }
+
   ThreadPoolExecutor getHedgedReadsThreadPool() {
     return HEDGED_READ_THREAD_POOL;
   }
@@ -3137,6 +3321,14 @@ ThreadPoolExecutor getStripedReadsThreadPool() {
     return STRIPED_READ_THREAD_POOL;
   }
 
+  ThreadPoolExecutor getVectoredReadsThreadPool() {
+    return VECTORED_READ_THREAD_POOL;
+  }
+
+  ThreadPoolExecutor getAsyncReadsThreadPool() {
+    return ASYNC_READ_THREAD_POOL;
+  }
+
   boolean isHedgedReadsEnabled() {
     return (HEDGED_READ_THREAD_POOL != null) &&
         HEDGED_READ_THREAD_POOL.getMaximumPoolSize() > 0;
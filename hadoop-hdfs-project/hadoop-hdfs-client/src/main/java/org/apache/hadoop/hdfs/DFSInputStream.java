@@ -36,14 +36,17 @@
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.fs.ByteBufferPositionedReadable;
@@ -56,10 +59,13 @@
 import org.apache.hadoop.fs.FSExceptionMessages;
 import org.apache.hadoop.fs.FSInputStream;
 import org.apache.hadoop.fs.FileEncryptionInfo;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.HasEnhancedByteBufferAccess;
 import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.fs.StreamCapabilities;
+import org.apache.hadoop.fs.VectoredReadUtils;
+import org.apache.hadoop.fs.impl.CombinedFileRange;
 import org.apache.hadoop.hdfs.DFSUtilClient.CorruptedBlocks;
 import org.apache.hadoop.hdfs.client.impl.BlockReaderFactory;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
@@ -89,6 +95,7 @@
 import org.apache.hadoop.util.StopWatch;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.functional.CallableRaisingIOE;
 
 import org.apache.hadoop.classification.VisibleForTesting;
 
@@ -286,7 +293,9 @@ private void waitFor(int waitTime) throws IOException {
 
   private LocatedBlocks fetchAndCheckLocatedBlocks(LocatedBlocks existing)
       throws IOException {
-    LocatedBlocks newInfo = dfsClient.getLocatedBlocks(src, 0);
+    // the locations are being refreshed, don't trust cached ones
+    dfsClient.invalidateLocatedBlocks(src);
+    LocatedBlocks newInfo = dfsClient.getLocatedBlocksForRead(src, 0);
 
     DFSClient.LOG.debug("newInfo = {}", newInfo);
     if (newInfo == null) {
@@ -299,6 +308,7 @@ private LocatedBlocks fetchAndCheckLocatedBlocks(LocatedBlocks existing)
       Iterator<LocatedBlock> newIter = newInfo.getLocatedBlocks().iterator();
       while (oldIter.hasNext() && newIter.hasNext()) {
         if (!oldIter.next().getBlock().equals(newIter.next().getBlock())) {
+          dfsClient.invalidateLocatedBlocks(src);
           throw new IOException("Blocklist for " + src + " has changed!");
         }
       }
@@ -509,10 +519,14 @@ private LocatedBlock fetchBlockAt(long offset, long length, boolean useCache)
       if (targetBlockIdx < 0) { // block is not cached
         targetBlockIdx = LocatedBlocks.getInsertIndex(targetBlockIdx);
         useCache = false;
+      } else if (!useCache) {
+        // refreshing a block we have, e.g. after a read error, so the
+        // locations cached for the file may be stale too
+        dfsClient.invalidateLocatedBlocks(src);
       }
       if (!useCache) { // fetch blocks
         final LocatedBlocks newBlocks = (length == 0)
-            ? dfsClient.getLocatedBlocks(src, offset)
+            ? dfsClient.getLocatedBlocksForRead(src, offset)
             : dfsClient.getLocatedBlocks(src, offset, length);
         if (newBlocks == null || newBlocks.locatedBlockCount() == 0) {
           throw new EOFException("Could not find target position " + offset);
@@ -1694,6 +1708,82 @@ public void readFully(long position, final ByteBuffer buf)
     }
   }
 
+  /**
+   * Asynchronous version of {@link #read(long, ByteBuffer)}: the read runs on
+   * the async reads thread pool, which is shared by all the streams of the
+   * JVM, so a stream may have many reads outstanding at a time. Like any
+   * positioned read, each read is hedged if hedged reads are enabled, and
+   * returns its datanode connection to the peer cache when it completes.
+   * The buffer must not be used by the caller until the future completes.
+   *
+   * @param position position in the file to read from
+   * @param buf the buffer to read into
+   * @return a future of the number of bytes read, or -1 at the end of file
+   */
+  public CompletableFuture<Integer> readAsync(long position, ByteBuffer buf) {
+    return submitAsyncRead(() -> read(position, buf));
+  }
+
+  /**
+   * Run a read of this stream on the async reads thread pool, or in the
+   * calling thread if there is no pool.
+   * @param read the read to run, which must only use positioned reads
+   * @return a future of the result of the read
+   */
+  @InterfaceAudience.Private
+  public <T> CompletableFuture<T> submitAsyncRead(CallableRaisingIOE<T> read) {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    if (closed.get()) {
+      result.completeExceptionally(
+          new IOException(FSExceptionMessages.STREAM_IS_CLOSED));
+      return result;
+    }
+    Runnable task = () -> {
+      try {
+        result.complete(read.apply());
+      } catch (Throwable t) {
+        result.completeExceptionally(t);
+      }
+    };
+    final ThreadPoolExecutor pool = dfsClient.getAsyncReadsThreadPool();
+    if (pool == null) {
+      task.run();
+    } else {
+      pool.execute(task);
+    }
+    return result;
+  }
+
+  /**
+   * Read the ranges in parallel on the vectored reads thread pool. Nearby
+   * ranges are merged, and each merged range is read with a positioned
+   * read, which is hedged if hedged reads are enabled.
+   */
+  @Override
+  public void readVectored(List<? extends FileRange> ranges,
+      IntFunction<ByteBuffer> allocate) throws IOException {
+    final ThreadPoolExecutor pool = dfsClient.getVectoredReadsThreadPool();
+    if (pool == null) {
+      super.readVectored(ranges, allocate);
+      return;
+    }
+    dfsClient.checkOpen();
+    if (closed.get()) {
+      throw new IOException("Stream closed");
+    }
+    List<CombinedFileRange> combinedRanges =
+        VectoredReadUtils.mergeSortedRanges(
+            VectoredReadUtils.validateAndSortRanges(ranges),
+            minSeekForVectorReads(), maxReadSizeForVectorReads());
+    for (CombinedFileRange combined : combinedRanges) {
+      VectoredReadUtils.prepareFutures(combined);
+    }
+    for (CombinedFileRange combined : combinedRanges) {
+      pool.execute(() ->
+          VectoredReadUtils.readCombinedRange(this, combined, allocate));
+    }
+  }
+
   /** Utility class to encapsulate data node info and its address. */
   static final class DNAddrPair {
     final DatanodeInfo info;
@@ -1914,6 +2004,7 @@ public boolean hasCapability(String capability) {
     case StreamCapabilities.UNBUFFER:
     case StreamCapabilities.READBYTEBUFFER:
     case StreamCapabilities.PREADBYTEBUFFER:
+    case StreamCapabilities.VECTOREDIO:
       return true;
     default:
       return false;
@@ -98,6 +98,9 @@
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsPathHandle;
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
+import org.apache.hadoop.hdfs.protocol.ListingProjection;
+import org.apache.hadoop.hdfs.protocol.MetadataOp;
+import org.apache.hadoop.hdfs.protocol.MetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.OpenFileEntry;
 import org.apache.hadoop.hdfs.protocol.OpenFilesIterator.OpenFilesType;
 import org.apache.hadoop.hdfs.protocol.ZoneReencryptionStatus;
@@ -1242,6 +1245,43 @@ public RemoteIterator<FileStatus> next(final FileSystem fs, final Path p)
 
   }
 
+  /**
+   * Returns a remote iterator over the entries of a directory whose local
+   * names match a glob, with the matching done by the NameNode. Only the
+   * attributes selected by <code>projection</code> are filled in; the others
+   * keep their defaults. Followup calls are made on demand as with
+   * {@link #listStatusIterator(Path)}.
+   *
+   * @param p target path
+   * @param nameFilter glob matched against the local name of each entry, or
+   *                   null to return every entry
+   * @param projection the attributes to return for each entry
+   * @return remote iterator
+   */
+  public RemoteIterator<FileStatus> listStatusIterator(final Path p,
+      final String nameFilter, final ListingProjection projection)
+      throws IOException {
+    Path absF = fixRelativePart(p);
+    return new FileSystemLinkResolver<RemoteIterator<FileStatus>>() {
+      @Override
+      public RemoteIterator<FileStatus> doCall(final Path p)
+          throws IOException {
+        return new DirListingIterator<>(p, nameFilter, projection);
+      }
+
+      @Override
+      public RemoteIterator<FileStatus> next(final FileSystem fs, final Path p)
+          throws IOException {
+        if (fs instanceof DistributedFileSystem) {
+          return ((DistributedFileSystem)fs).listStatusIterator(p,
+              nameFilter, projection);
+        }
+        throw new IOException("Link resolution does not work with multiple " +
+            "file systems for listStatusIterator() with a filter: " + p);
+      }
+    }.resolve(this, absF);
+  }
+
   /**
    * This class defines an iterator that returns
    * the file status of each file/subdirectory of a directory
@@ -1260,16 +1300,30 @@ public RemoteIterator<FileStatus> next(final FileSystem fs, final Path p)
     private T curStat = null;
     private PathFilter filter;
     private boolean needLocation;
+    private String nameFilter;
+    private ListingProjection projection;
 
     private DirListingIterator(Path p, PathFilter filter,
         boolean needLocation) throws IOException {
+      this(p, filter, needLocation, null, null);
+    }
+
+    private DirListingIterator(Path p, String nameFilter,
+        ListingProjection projection) throws IOException {
+      this(p, null, false, nameFilter, projection);
+    }
+
+    private DirListingIterator(Path p, PathFilter filter,
+        boolean needLocation, String nameFilter, ListingProjection projection)
+        throws IOException {
       this.p = p;
       this.src = getPathName(p);
       this.filter = filter;
       this.needLocation = needLocation;
+      this.nameFilter = nameFilter;
+      this.projection = projection;
       // fetch the first batch of entries in the directory
-      thisListing = dfs.listPaths(src, HdfsFileStatus.EMPTY_NAME,
-          needLocation);
+      thisListing = listPaths(HdfsFileStatus.EMPTY_NAME);
       statistics.incrementReadOps(1);
       if (needLocation) {
         storageStatistics.incrementOpCounter(OpType.LIST_LOCATED_STATUS);
@@ -1307,16 +1361,23 @@ public boolean hasNext() throws IOException {
       return curStat != null;
     }
 
+    private DirectoryListing listPaths(byte[] startAfter) throws IOException {
+      if (projection == null) {
+        return dfs.listPaths(src, startAfter, needLocation);
+      }
+      return dfs.listPaths(src, startAfter, nameFilter, projection);
+    }
+
     /** Check if there is a next item before applying the given filter */
     private boolean hasNextNoFilter() throws IOException {
       if (thisListing == null) {
         return false;
       }
-      if (i >= thisListing.getPartialListing().length
+      // a filtered listing may come back empty while entries remain
+      while (i >= thisListing.getPartialListing().length
           && thisListing.hasMore()) {
         // current listing is exhausted & fetch a new listing
-        thisListing = dfs.listPaths(src, thisListing.getLastName(),
-            needLocation);
+        thisListing = listPaths(thisListing.getLastName());
         statistics.incrementReadOps(1);
         if (thisListing == null) {
           throw new FileNotFoundException("File " + p + " does not exist.");
@@ -3816,6 +3877,99 @@ public HdfsDataOutputStreamBuilder createFile(Path path) {
     return new HdfsDataOutputStreamBuilder(this, path).create().overwrite(true);
   }
 
+  /**
+   * Create a MetadataBatchBuilder to run several metadata operations in a
+   * single RPC. The NameNode runs them in order under a single lock
+   * acquisition and with a single edit log sync.
+   *
+   * @return A MetadataBatchBuilder collecting the operations to run.
+   */
+  public MetadataBatchBuilder createMetadataBatch() {
+    return new MetadataBatchBuilder(this);
+  }
+
+  /**
+   * MetadataBatchBuilder collects metadata operations to run in a single
+   * RPC, e.g. to create or stat many small files. Symlinks in the paths are
+   * not resolved across file systems.
+   * <p>
+   * The batch is not atomic: every operation gets its own
+   * {@link MetadataOpResult}, which holds either the outcome of the
+   * operation or the exception it failed with.
+   */
+  public static final class MetadataBatchBuilder {
+    private final DistributedFileSystem dfs;
+    private final List<MetadataOp> ops = new ArrayList<>();
+
+    private MetadataBatchBuilder(DistributedFileSystem dfs) {
+      this.dfs = dfs;
+    }
+
+    private String getPathName(Path path) {
+      return dfs.getPathName(dfs.fixRelativePart(path));
+    }
+
+    /**
+     * Create a directory and its missing parents.
+     * @see DistributedFileSystem#mkdirs(Path, FsPermission)
+     */
+    public MetadataBatchBuilder mkdirs(Path path, FsPermission permission) {
+      ops.add(MetadataOp.mkdirs(getPathName(path), permission, true));
+      return this;
+    }
+
+    /**
+     * Create an empty file and its missing parents. The file must not exist
+     * yet. A null permission stands for the default file permission.
+     */
+    public MetadataBatchBuilder createEmptyFile(Path path,
+        FsPermission permission) {
+      ops.add(MetadataOp.createEmpty(getPathName(path), permission, true));
+      return this;
+    }
+
+    /** @see DistributedFileSystem#setPermission(Path, FsPermission) */
+    public MetadataBatchBuilder setPermission(Path path,
+        FsPermission permission) {
+      ops.add(MetadataOp.setPermission(getPathName(path), permission));
+      return this;
+    }
+
+    /** @see DistributedFileSystem#setTimes(Path, long, long) */
+    public MetadataBatchBuilder setTimes(Path path, long mtime, long atime) {
+      ops.add(MetadataOp.setTimes(getPathName(path), mtime, atime));
+      return this;
+    }
+
+    /**
+     * Get the status of a path. Its result holds a null status if the path
+     * does not exist.
+     */
+    public MetadataBatchBuilder getFileStatus(Path path) {
+      ops.add(MetadataOp.getFileInfo(getPathName(path)));
+      return this;
+    }
+
+    /** @see DistributedFileSystem#delete(Path, boolean) */
+    public MetadataBatchBuilder delete(Path path, boolean recursive) {
+      ops.add(MetadataOp.delete(getPathName(path), recursive));
+      return this;
+    }
+
+    /**
+     * Run the collected operations.
+     *
+     * @return one result per operation, in the order they were added.
+     * @throws IOException if the batch as a whole failed, e.g. because the
+     *         NameNode is in safe mode.
+     */
+    public List<MetadataOpResult> execute() throws IOException {
+      dfs.statistics.incrementWriteOps(1);
+      dfs.storageStatistics.incrementOpCounter(OpType.BATCH_METADATA_OPS);
+      return dfs.dfs.batchMetadataOps(ops);
+    }
+  }
+
   /**
    * Returns a RemoteIterator which can be used to list all open files
    * currently managed by the NameNode. For large numbers of open files,
@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.thirdparty.com.google.common.cache.Cache;
+import org.apache.hadoop.thirdparty.com.google.common.cache.CacheBuilder;
+
+/**
+ * Caches the {@link LocatedBlocks} of closed files, so that opening the same
+ * file again, or reading past the prefetched range of a file, does not need
+ * another getBlockLocations call to the NameNode. The cache belongs to a
+ * single {@link DFSClient}: the blocks carry the access tokens of the
+ * client's user, and the NameNode checked that user's permissions.
+ *
+ * An entry is only valid for one version of a file: it is replaced as soon
+ * as the NameNode reports a different length or last block generation stamp
+ * for the path, and it is invalidated when a reader hits an error reading
+ * from the locations it returned. Entries also expire after a fixed time, so
+ * that changes made by other clients are eventually seen.
+ *
+ * Lookups return a copy of the cached block list, which the caller is free
+ * to modify.
+ */
+@InterfaceAudience.Private
+public class LocatedBlocksCache {
+
+  private final Cache<String, LocatedBlocks> cache;
+
+  public LocatedBlocksCache(long maxSize, long expiryMs) {
+    cache = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(expiryMs, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /**
+   * Get the cached blocks of a file if they include the given offset.
+   *
+   * @param src the path of the file.
+   * @param offset the offset that the caller is going to read.
+   * @return a copy of the cached blocks, starting with the block which
+   * includes the offset, or null if there is no entry for the file or the
+   * entry does not include the offset.
+   */
+  public LocatedBlocks get(String src, long offset) {
+    LocatedBlocks cached = cache.getIfPresent(src);
+    if (cached == null) {
+      return null;
+    }
+    synchronized (cached) {
+      int idx = cached.findBlock(offset);
+      if (idx < 0) {
+        return null;
+      }
+      return copy(cached, idx);
+    }
+  }
+
+  /**
+   * Add the blocks of a file returned by the NameNode. Blocks of files that
+   * are still being written are not cached. If there is already an entry
+   * for the same version of the file, the blocks are merged into it,
+   * otherwise they replace it.
+   */
+  public void put(String src, LocatedBlocks blocks) {
+    if (!isCacheable(blocks)) {
+      cache.invalidate(src);
+      return;
+    }
+    LocatedBlocks cached = cache.getIfPresent(src);
+    if (cached != null && isSameVersion(cached, blocks)) {
+      synchronized (cached) {
+        List<LocatedBlock> newBlocks = blocks.getLocatedBlocks();
+        int idx = cached.findBlock(newBlocks.get(0).getStartOffset());
+        if (idx < 0) {
+          idx = LocatedBlocks.getInsertIndex(idx);
+        }
+        cached.insertRange(idx, newBlocks);
+      }
+      return;
+    }
+    cache.put(src, copy(blocks, 0));
+  }
+
+  /**
+   * Remove the entry of a file, if any.
+   */
+  public void invalidate(String src) {
+    cache.invalidate(src);
+  }
+
+  @VisibleForTesting
+  long size() {
+    cache.cleanUp();
+    return cache.size();
+  }
+
+  private static boolean isCacheable(LocatedBlocks blocks) {
+    return !blocks.isUnderConstruction() && blocks.isLastBlockComplete()
+        && blocks.locatedBlockCount() > 0;
+  }
+
+  private static boolean isSameVersion(LocatedBlocks a, LocatedBlocks b) {
+    if (a.getFileLength() != b.getFileLength()) {
+      return false;
+    }
+    LocatedBlock lastA = a.getLastLocatedBlock();
+    LocatedBlock lastB = b.getLastLocatedBlock();
+    if (lastA == null || lastB == null) {
+      return lastA == lastB;
+    }
+    return Block.matchingIdAndGenStamp(lastA.getBlock().getLocalBlock(),
+        lastB.getBlock().getLocalBlock());
+  }
+
+  private static LocatedBlocks copy(LocatedBlocks blocks, int fromIndex) {
+    List<LocatedBlock> blockList = blocks.getLocatedBlocks();
+    return new LocatedBlocks(blocks.getFileLength(),
+        blocks.isUnderConstruction(),
+        new ArrayList<>(blockList.subList(fromIndex, blockList.size())),
+        blocks.getLastLocatedBlock(), blocks.isLastBlockComplete(),
+        blocks.getFileEncryptionInfo(), blocks.getErasureCodingPolicy());
+  }
+}
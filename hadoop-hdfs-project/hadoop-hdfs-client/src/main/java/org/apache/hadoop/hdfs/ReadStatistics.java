@@ -27,6 +27,9 @@ public class ReadStatistics {
   private long totalLocalBytesRead;
   private long totalShortCircuitBytesRead;
   private long totalZeroCopyBytesRead;
+  private long totalLocalCacheBytesRead;
+  private long localCacheHits;
+  private long localCacheMisses;
 
   private BlockType blockType = BlockType.CONTIGUOUS;
   private long totalEcDecodingTimeMillis;
@@ -40,6 +43,9 @@ public ReadStatistics(ReadStatistics rhs) {
     this.totalLocalBytesRead = rhs.getTotalLocalBytesRead();
     this.totalShortCircuitBytesRead = rhs.getTotalShortCircuitBytesRead();
     this.totalZeroCopyBytesRead = rhs.getTotalZeroCopyBytesRead();
+    this.totalLocalCacheBytesRead = rhs.getTotalLocalCacheBytesRead();
+    this.localCacheHits = rhs.getLocalCacheHits();
+    this.localCacheMisses = rhs.getLocalCacheMisses();
   }
 
   /**
@@ -73,6 +79,29 @@ public synchronized long getTotalZeroCopyBytesRead() {
     return totalZeroCopyBytesRead;
   }
 
+  /**
+   * @return The total number of bytes read from the local block cache.
+   * These are also counted as local bytes.
+   */
+  public synchronized long getTotalLocalCacheBytesRead() {
+    return totalLocalCacheBytesRead;
+  }
+
+  /**
+   * @return The number of block chunks found in the local block cache.
+   */
+  public synchronized long getLocalCacheHits() {
+    return localCacheHits;
+  }
+
+  /**
+   * @return The number of block chunks which were read from a datanode
+   * because they were not in the local block cache.
+   */
+  public synchronized long getLocalCacheMisses() {
+    return localCacheMisses;
+  }
+
   /**
    * @return The total number of bytes read which were not local.
    */
@@ -117,6 +146,17 @@ public synchronized void addZeroCopyBytes(long amt) {
     this.totalZeroCopyBytesRead += amt;
   }
 
+  public synchronized void addLocalCacheBytes(long amt) {
+    this.totalBytesRead += amt;
+    this.totalLocalBytesRead += amt;
+    this.totalLocalCacheBytesRead += amt;
+  }
+
+  public synchronized void addLocalCacheLookups(long hits, long misses) {
+    this.localCacheHits += hits;
+    this.localCacheMisses += misses;
+  }
+
   public synchronized void addErasureCodingDecodingTime(long millis) {
     this.totalEcDecodingTimeMillis += millis;
   }
@@ -130,6 +170,9 @@ public synchronized void clear() {
     this.totalLocalBytesRead = 0;
     this.totalShortCircuitBytesRead = 0;
     this.totalZeroCopyBytesRead = 0;
+    this.totalLocalCacheBytesRead = 0;
+    this.localCacheHits = 0;
+    this.localCacheMisses = 0;
     this.totalEcDecodingTimeMillis = 0;
   }
 }
@@ -218,6 +218,18 @@ public interface HdfsClientConfigKeys {
       "dfs.client.refresh.read-block-locations.register-automatically";
   boolean DFS_CLIENT_REFRESH_READ_BLOCK_LOCATIONS_AUTOMATICALLY_DEFAULT = true;
 
+  // Number of files whose LocatedBlocks are cached for reads by each
+  // DFSClient. A value of 0 disables the cache.
+  String DFS_CLIENT_LOCATED_BLOCKS_CACHE_SIZE_KEY =
+      "dfs.client.located-blocks.cache.size";
+  long DFS_CLIENT_LOCATED_BLOCKS_CACHE_SIZE_DEFAULT = 0L;
+
+  // How long the cached LocatedBlocks of a file are used before they are
+  // fetched from the NameNode again.
+  String DFS_CLIENT_LOCATED_BLOCKS_CACHE_EXPIRY_MS_KEY =
+      "dfs.client.located-blocks.cache.expiry.ms";
+  long DFS_CLIENT_LOCATED_BLOCKS_CACHE_EXPIRY_MS_DEFAULT = 60 * 1000; // 60s
+
   String  DFS_DATANODE_KERBEROS_PRINCIPAL_KEY =
       "dfs.datanode.kerberos.principal";
   String  DFS_DATANODE_READAHEAD_BYTES_KEY = "dfs.datanode.readahead.bytes";
@@ -509,6 +521,55 @@ interface StripedRead {
     int     THREADPOOL_SIZE_DEFAULT = 18;
   }
 
+  /** dfs.client.read.vectored configuration properties */
+  interface VectoredRead {
+    String PREFIX = Read.PREFIX + "vectored.";
+
+    /**
+     * Maximum number of ranges of vectored reads which are read in parallel,
+     * shared by all the DFSClients of the JVM. A value of 0 reads the ranges
+     * one after the other, in the calling thread.
+     */
+    String  THREADPOOL_SIZE_KEY = PREFIX + "threadpool.size";
+    int     THREADPOOL_SIZE_DEFAULT = 16;
+  }
+
+  /** dfs.client.read.async configuration properties */
+  interface AsyncRead {
+    String PREFIX = Read.PREFIX + "async.";
+
+    /**
+     * Number of threads running asynchronous positional reads, shared by all
+     * the DFSClients of the JVM. A value of 0 runs them in the calling thread.
+     */
+    String  THREADPOOL_SIZE_KEY = PREFIX + "threadpool.size";
+    int     THREADPOOL_SIZE_DEFAULT = 16;
+    /**
+     * Maximum number of asynchronous reads queued for the threads; further
+     * reads run in the calling thread.
+     */
+    String  QUEUE_SIZE_KEY = PREFIX + "queue.size";
+    int     QUEUE_SIZE_DEFAULT = 1024;
+  }
+
+  /** dfs.client.read.local-cache configuration properties */
+  interface LocalCache {
+    String PREFIX = Read.PREFIX + "local-cache.";
+
+    /**
+     * Directory on a local disk in which to cache the block data read from
+     * remote datanodes. The cache is disabled if empty.
+     */
+    String  DIR_KEY = PREFIX + "dir";
+    String  DIR_DEFAULT = "";
+    /** Maximum number of bytes in the cache. */
+    String  CAPACITY_KEY = PREFIX + "capacity";
+    long    CAPACITY_DEFAULT = 10L * 1024 * 1024 * 1024;
+    /** Size of the chunks in which blocks are cached. */
+    String  CHUNK_SIZE_KEY = PREFIX + "chunk.size";
+    int     CHUNK_SIZE_DEFAULT = 1024 * 1024;
+  }
+
   /** dfs.http.client configuration properties */
   interface HttpClient {
     String  PREFIX = "dfs.http.client.";
@@ -19,7 +19,9 @@
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -111,4 +113,37 @@ public ReadStatistics getReadStatistics() {
   public void clearReadStatistics() {
     getDFSInputStream().clearReadStatistics();
   }
+
+  /**
+   * Read from the given position into the buffer without blocking the
+   * caller, like {@link #read(long, ByteBuffer)}. The buffer must not be
+   * used until the returned future completes.
+   *
+   * @param position position in the file to read from
+   * @param buf the buffer to read into
+   * @return a future of the number of bytes read, or -1 at the end of file
+   * @see DFSInputStream#readAsync(long, ByteBuffer)
+   */
+  public CompletableFuture<Integer> readAsync(long position, ByteBuffer buf) {
+    // reads through this stream so that encrypted files are decrypted.
+    return getDFSInputStream().submitAsyncRead(() -> read(position, buf));
+  }
+
+  /**
+   * Fill the buffer from the given position without blocking the caller,
+   * like {@link #readFully(long, ByteBuffer)}. The buffer must not be used
+   * until the returned future completes.
+   *
+   * @param position position in the file to read from
+   * @param buf the buffer to read into
+   * @return a future which fails with an EOFException if the end of the file
+   * is reached before the buffer is full
+   */
+  public CompletableFuture<Void> readFullyAsync(long position,
+      ByteBuffer buf) {
+    return getDFSInputStream().submitAsyncRead(() -> {
+      readFully(position, buf);
+      return null;
+    });
+  }
 }
@@ -364,16 +364,46 @@ public BlockReader build() throws IOException {
           }
         }
       }
-      if (scConf.isDomainSocketDataTraffic()) {
-        reader = getRemoteBlockReaderFromDomain();
+    } catch (IOException e) {
+      LOG.debug("Block read failed. Getting remote block reader using TCP", e);
+      return buildRemoteBlockReader(false);
+    }
+    return buildRemoteBlockReader(scConf.isDomainSocketDataTraffic());
+  }
+
+  /**
+   * Build a reader of a remote replica, reading through the local block
+   * cache if there is one.
+   */
+  private BlockReader buildRemoteBlockReader(boolean tryDomainSocket)
+      throws IOException {
+    LocalBlockCache localCache = clientContext.getLocalBlockCache();
+    if (localCache == null) {
+      return newRemoteBlockReader(tryDomainSocket);
+    }
+    LOG.trace("{}: returning new block reader through {}", this, localCache);
+    return LocalCacheBlockReader.create(localCache, block, startOffset,
+        length, verifyChecksum, (offset, len) -> {
+          this.startOffset = offset;
+          this.length = len;
+          return newRemoteBlockReader(tryDomainSocket);
+        });
+  }
+
+  private BlockReader newRemoteBlockReader(boolean tryDomainSocket)
+      throws IOException {
+    if (tryDomainSocket) {
+      try {
+        BlockReader reader = getRemoteBlockReaderFromDomain();
         if (reader != null) {
           LOG.trace("{}: returning new remote block reader using UNIX domain "
               + "socket on {}", this, pathInfo.getPath());
           return reader;
         }
+      } catch (IOException e) {
+        LOG.debug("Block read failed. Getting remote block reader using TCP",
+            e);
       }
-    } catch (IOException e) {
-      LOG.debug("Block read failed. Getting remote block reader using TCP", e);
     }
     Preconditions.checkState(!DFSInputStream.tcpReadsDisabledForTesting,
         "TCP reads were disabled for testing, but we failed to " +
@@ -149,6 +149,11 @@ public class DfsClientConf {
   /** wait time window before refreshing blocklocation for inputstream. */
   private final long refreshReadBlockLocationsMS;
   private final boolean refreshReadBlockLocationsAutomatically;
+  private final long locatedBlocksCacheSize;
+  private final long locatedBlocksCacheExpiryMs;
+  private final String localCacheDir;
+  private final long localCacheCapacity;
+  private final int localCacheChunkSize;
 
   private final ShortCircuitConf shortCircuitConf;
   private final int clientShortCircuitNum;
@@ -159,6 +164,9 @@ public class DfsClientConf {
       replicaAccessorBuilderClasses;
 
   private final int stripedReadThreadpoolSize;
+  private final int vectoredReadThreadpoolSize;
+  private final int asyncReadThreadpoolSize;
+  private final int asyncReadQueueSize;
 
   private final boolean dataTransferTcpNoDelay;
 
@@ -278,6 +286,27 @@ public DfsClientConf(Configuration conf) {
         HdfsClientConfigKeys.DFS_CLIENT_REFRESH_READ_BLOCK_LOCATIONS_AUTOMATICALLY_KEY,
         HdfsClientConfigKeys.DFS_CLIENT_REFRESH_READ_BLOCK_LOCATIONS_AUTOMATICALLY_DEFAULT);
 
+    locatedBlocksCacheSize = conf.getLong(
+        HdfsClientConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_SIZE_KEY,
+        HdfsClientConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_SIZE_DEFAULT);
+    locatedBlocksCacheExpiryMs = conf.getTimeDuration(
+        HdfsClientConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_EXPIRY_MS_KEY,
+        HdfsClientConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_EXPIRY_MS_DEFAULT,
+        TimeUnit.MILLISECONDS);
+
+    localCacheDir = conf.getTrimmed(
+        HdfsClientConfigKeys.LocalCache.DIR_KEY,
+        HdfsClientConfigKeys.LocalCache.DIR_DEFAULT);
+    localCacheCapacity = conf.getLongBytes(
+        HdfsClientConfigKeys.LocalCache.CAPACITY_KEY,
+        HdfsClientConfigKeys.LocalCache.CAPACITY_DEFAULT);
+    localCacheChunkSize = (int) conf.getLongBytes(
+        HdfsClientConfigKeys.LocalCache.CHUNK_SIZE_KEY,
+        HdfsClientConfigKeys.LocalCache.CHUNK_SIZE_DEFAULT);
+    Preconditions.checkArgument(localCacheChunkSize > 0, "The value of " +
+        HdfsClientConfigKeys.LocalCache.CHUNK_SIZE_KEY +
+        " must be greater than 0.");
+
     hedgedReadThresholdMillis = conf.getLong(
         HedgedRead.THRESHOLD_MILLIS_KEY,
         HedgedRead.THRESHOLD_MILLIS_DEFAULT);
@@ -295,6 +324,18 @@ public DfsClientConf(Configuration conf) {
     Preconditions.checkArgument(stripedReadThreadpoolSize > 0, "The value of " +
         HdfsClientConfigKeys.StripedRead.THREADPOOL_SIZE_KEY +
         " must be greater than 0.");
+    vectoredReadThreadpoolSize = conf.getInt(
+        HdfsClientConfigKeys.VectoredRead.THREADPOOL_SIZE_KEY,
+        HdfsClientConfigKeys.VectoredRead.THREADPOOL_SIZE_DEFAULT);
+    asyncReadThreadpoolSize = conf.getInt(
+        HdfsClientConfigKeys.AsyncRead.THREADPOOL_SIZE_KEY,
+        HdfsClientConfigKeys.AsyncRead.THREADPOOL_SIZE_DEFAULT);
+    asyncReadQueueSize = conf.getInt(
+        HdfsClientConfigKeys.AsyncRead.QUEUE_SIZE_KEY,
+        HdfsClientConfigKeys.AsyncRead.QUEUE_SIZE_DEFAULT);
+    Preconditions.checkArgument(asyncReadQueueSize > 0, "The value of " +
+        HdfsClientConfigKeys.AsyncRead.QUEUE_SIZE_KEY +
+        " must be greater than 0.");
     replicaAccessorBuilderClasses = loadReplicaAccessorBuilderClasses(conf);
 
     leaseHardLimitPeriod =
@@ -690,6 +731,27 @@ public int getStripedReadThreadpoolSize() {
     return stripedReadThreadpoolSize;
   }
 
+  /**
+   * @return the vectoredReadThreadpoolSize
+   */
+  public int getVectoredReadThreadpoolSize() {
+    return vectoredReadThreadpoolSize;
+  }
+
+  /**
+   * @return the asyncReadThreadpoolSize
+   */
+  public int getAsyncReadThreadpoolSize() {
+    return asyncReadThreadpoolSize;
+  }
+
+  /**
+   * @return the asyncReadQueueSize
+   */
+  public int getAsyncReadQueueSize() {
+    return asyncReadQueueSize;
+  }
+
   /**
    * @return the deadNodeDetectionEnabled
    */
@@ -731,6 +793,49 @@ public boolean isRefreshReadBlockLocationsAutomatically() {
     return refreshReadBlockLocationsAutomatically;
   }
 
+  public boolean isLocatedBlocksCacheEnabled() {
+    return locatedBlocksCacheSize > 0;
+  }
+
+  /**
+   * @return the maximum number of files in the located blocks cache
+   */
+  public long getLocatedBlocksCacheSize() {
+    return locatedBlocksCacheSize;
+  }
+
+  /**
+   * @return the time after which cached located blocks expire
+   */
+  public long getLocatedBlocksCacheExpiryMs() {
+    return locatedBlocksCacheExpiryMs;
+  }
+
+  public boolean isLocalCacheEnabled() {
+    return !localCacheDir.isEmpty() && localCacheCapacity > 0;
+  }
+
+  /**
+   * @return the directory of the local block cache
+   */
+  public String getLocalCacheDir() {
+    return localCacheDir;
+  }
+
+  /**
+   * @return the maximum number of bytes in the local block cache
+   */
+  public long getLocalCacheCapacity() {
+    return localCacheCapacity;
+  }
+
+  /**
+   * @return the size of the chunks of the local block cache
+   */
+  public int getLocalCacheChunkSize() {
+    return localCacheChunkSize;
+  }
+
   /**
    * @return the shortCircuitConf
    */
@@ -0,0 +1,498 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.client.impl;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Checksum;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.util.DataChecksum;
+import org.apache.hadoop.util.Preconditions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of block data on a local disk, typically an SSD, shared by the
+ * clients of a {@link org.apache.hadoop.hdfs.ClientContext}.
+ *
+ * Blocks are cached in chunks of a fixed size, each in a file of its own
+ * named after the block pool, block ID, generation stamp, chunk index and
+ * chunk size. Chunks cached with another chunk size, e.g. before the chunk
+ * size was reconfigured, cover other byte ranges of the block; they are
+ * deleted when the cache is created.
+ * The bytes of a replica with a given generation stamp never change, so a
+ * cached chunk stays valid until it is evicted; the last chunk of a block
+ * may be cached with fewer bytes than the chunk size, and is then only
+ * used for reads it covers.
+ *
+ * Each file holds the length and a CRC32 of the chunk data ahead of the
+ * data, which is verified whenever the chunk is read from the cache.
+ * Chunks are only added after they were read with checksum verification.
+ *
+ * Eviction is segmented LRU: new chunks enter a probationary segment and
+ * are promoted to a protected segment, of up to
+ * {@link #PROTECTED_RATIO} of the capacity, when they are read again, so a
+ * single scan of a large file does not evict the chunks which are read
+ * repeatedly. The cached chunks are reloaded when the cache is created, so
+ * the cache persists across client restarts. The directory is locked while
+ * in use, and may not be shared by several caches.
+ *
+ * The cached data is only accessible to the user running the client: the
+ * directories are created with permission 700 and the chunk files with 600.
+ */
+@InterfaceAudience.Private
+public class LocalBlockCache {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(LocalBlockCache.class);
+
+  /** Share of the capacity taken by the protected segment. */
+  static final double PROTECTED_RATIO = 0.8;
+
+  private static final String LOCK_FILE = "in_use.lock";
+  private static final String CHUNK_PREFIX = "blk_";
+  private static final String TMP_SUFFIX = ".tmp";
+  /** Length of the data and its CRC32, ahead of the data. */
+  private static final int HEADER_LEN = 8;
+  private static final boolean POSIX = FileSystems.getDefault()
+      .supportedFileAttributeViews().contains("posix");
+  private static final Set<PosixFilePermission> DIR_PERMISSIONS =
+      PosixFilePermissions.fromString("rwx------");
+  private static final Set<PosixFilePermission> FILE_PERMISSIONS =
+      PosixFilePermissions.fromString("rw-------");
+
+  private final File dir;
+  private final long capacity;
+  private final long protectedCapacity;
+  private final int chunkSize;
+  private final FileLock lock;
+
+  /** Chunk file path, relative to the dir, to the length of its data. */
+  private final LinkedHashMap<String, Integer> probation =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private final LinkedHashMap<String, Integer> protectedSegment =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private long probationBytes;
+  private long protectedBytes;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Create the cache in the given directory, reloading the chunks it holds.
+   * @return the cache, or null if the directory cannot be used
+   */
+  public static LocalBlockCache create(File dir, long capacity,
+      int chunkSize) {
+    try {
+      return new LocalBlockCache(dir, capacity, chunkSize);
+    } catch (IOException e) {
+      LOG.warn("Not using the local block cache in {}", dir, e);
+      return null;
+    }
+  }
+
+  @VisibleForTesting
+  LocalBlockCache(File dir, long capacity, int chunkSize)
+      throws IOException {
+    Preconditions.checkArgument(capacity > 0,
+        "capacity must be positive: %s", capacity);
+    Preconditions.checkArgument(chunkSize > 0,
+        "chunkSize must be positive: %s", chunkSize);
+    this.dir = dir;
+    this.capacity = capacity;
+    this.protectedCapacity = (long) (capacity * PROTECTED_RATIO);
+    this.chunkSize = chunkSize;
+    mkdirs(dir);
+    this.lock = lock(dir);
+    load();
+    LOG.info("Local block cache in {}: capacity={}, chunkSize={}, "
+        + "loaded {} bytes", dir, capacity, chunkSize, getUsed());
+  }
+
+  private static void mkdirs(File d) throws IOException {
+    if (d.isDirectory()) {
+      return;
+    }
+    if (POSIX) {
+      Files.createDirectories(d.toPath(),
+          PosixFilePermissions.asFileAttribute(DIR_PERMISSIONS));
+    } else {
+      Files.createDirectories(d.toPath());
+    }
+  }
+
+  private static File createTempFile(File d, String prefix)
+      throws IOException {
+    FileAttribute<?>[] attrs = POSIX
+        ? new FileAttribute<?>[] {
+            PosixFilePermissions.asFileAttribute(FILE_PERMISSIONS)}
+        : new FileAttribute<?>[0];
+    return Files.createTempFile(d.toPath(), prefix, TMP_SUFFIX, attrs)
+        .toFile();
+  }
+
+  private static FileLock lock(File dir) throws IOException {
+    FileChannel channel =
+        new RandomAccessFile(new File(dir, LOCK_FILE), "rws").getChannel();
+    FileLock fileLock;
+    try {
+      fileLock = channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      fileLock = null;
+    }
+    if (fileLock == null) {
+      IOUtils.closeStream(channel);
+      throw new IOException(
+          "Directory " + dir + " is in use by another cache");
+    }
+    return fileLock;
+  }
+
+  /**
+   * Reload the chunk files in the directory, oldest first, and remove the
+   * temporary files of interrupted fills and the chunks of another chunk
+   * size.
+   */
+  private void load() {
+    List<File> chunks = new ArrayList<>();
+    int mismatched = 0;
+    File[] poolDirs = dir.listFiles(File::isDirectory);
+    for (File poolDir : poolDirs == null ? new File[0] : poolDirs) {
+      File[] files = poolDir.listFiles();
+      for (File file : files == null ? new File[0] : files) {
+        if (file.getName().endsWith(TMP_SUFFIX)) {
+          deleteQuietly(file);
+        } else if (file.getName().startsWith(CHUNK_PREFIX)) {
+          if (!isChunkOfSize(file.getName(), chunkSize)) {
+            mismatched++;
+            deleteQuietly(file);
+          } else if (file.length() > HEADER_LEN) {
+            chunks.add(file);
+          }
+        }
+      }
+    }
+    if (mismatched > 0) {
+      LOG.info("Deleted {} cached chunks of another chunk size than {} "
+          + "from {}", mismatched, chunkSize, dir);
+    }
+    chunks.sort(Comparator.comparingLong(File::lastModified));
+    List<File> victims;
+    synchronized (this) {
+      for (File file : chunks) {
+        String key = file.getParentFile().getName() + File.separator
+            + file.getName();
+        int length = (int) (file.length() - HEADER_LEN);
+        probation.put(key, length);
+        probationBytes += size(length);
+      }
+      victims = evict();
+    }
+    deleteQuietly(victims);
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * @return the index of the chunk containing the given offset of a block
+   */
+  public long getChunkIndex(long offsetInBlock) {
+    return offsetInBlock / chunkSize;
+  }
+
+  private String key(ExtendedBlock block, long chunkIndex) {
+    return block.getBlockPoolId() + File.separator + CHUNK_PREFIX
+        + block.getBlockId() + "_" + block.getGenerationStamp() + "_"
+        + chunkIndex + "_" + chunkSize;
+  }
+
+  /**
+   * @return whether the chunk file name, blk_(id)_(gs)_(index)_(chunkSize),
+   * is that of a chunk of the given size
+   */
+  private static boolean isChunkOfSize(String name, int size) {
+    String[] parts = name.split("_");
+    return parts.length == 5 && parts[4].equals(Integer.toString(size));
+  }
+
+  private static long size(int length) {
+    return HEADER_LEN + (long) length;
+  }
+
+  /**
+   * @return whether a chunk holding at least minLength bytes is cached
+   */
+  public synchronized boolean contains(ExtendedBlock block, long chunkIndex,
+      int minLength) {
+    String key = key(block, chunkIndex);
+    Integer length = protectedSegment.containsKey(key)
+        ? protectedSegment.get(key) : probation.get(key);
+    return length != null && length >= minLength;
+  }
+
+  /**
+   * Read a chunk from the cache.
+   * @param block the block
+   * @param chunkIndex the index of the chunk in the block
+   * @param minLength the number of bytes of the chunk which are needed
+   * @return the data of the chunk, or null if it is not cached with at least
+   * minLength bytes, or could not be read back intact
+   */
+  public ByteBuffer get(ExtendedBlock block, long chunkIndex, int minLength) {
+    String key = key(block, chunkIndex);
+    List<File> victims;
+    synchronized (this) {
+      Integer length = protectedSegment.get(key);
+      if (length == null) {
+        length = probation.remove(key);
+        if (length != null) {
+          // read again while on probation: promote it.
+          probationBytes -= size(length);
+          protectedSegment.put(key, length);
+          protectedBytes += size(length);
+        }
+      }
+      if (length == null || length < minLength) {
+        misses++;
+        return null;
+      }
+      victims = demote();
+    }
+    deleteQuietly(victims);
+    ByteBuffer data = read(new File(dir, key));
+    synchronized (this) {
+      if (data == null || data.remaining() < minLength) {
+        misses++;
+        remove(key);
+        return null;
+      }
+      hits++;
+    }
+    return data;
+  }
+
+  private ByteBuffer read(File file) {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      int length = raf.readInt();
+      int crc = raf.readInt();
+      if (length < 0 || length != raf.length() - HEADER_LEN) {
+        throw new IOException("Unexpected length " + length);
+      }
+      byte[] data = new byte[length];
+      raf.readFully(data);
+      if (crc != crc(data, length)) {
+        throw new IOException("Checksum mismatch");
+      }
+      return ByteBuffer.wrap(data);
+    } catch (FileNotFoundException e) {
+      LOG.debug("Cached chunk {} is gone", file);
+    } catch (IOException e) {
+      LOG.warn("Dropping unreadable cached chunk {}", file, e);
+      deleteQuietly(file);
+    }
+    return null;
+  }
+
+  private static int crc(byte[] data, int length) {
+    Checksum checksum = DataChecksum.newCrc32();
+    checksum.update(data, 0, length);
+    return (int) checksum.getValue();
+  }
+
+  /**
+   * Add a chunk, unless it is already cached with as much data.
+   * The data must have been verified against the block checksums.
+   * @param block the block
+   * @param chunkIndex the index of the chunk in the block
+   * @param data the data of the chunk
+   * @param length the number of bytes of data, up to the chunk size
+   */
+  public void put(ExtendedBlock block, long chunkIndex, byte[] data,
+      int length) {
+    Preconditions.checkArgument(length > 0 && length <= chunkSize);
+    if (size(length) > capacity || contains(block, chunkIndex, length)) {
+      return;
+    }
+    String key = key(block, chunkIndex);
+    File file = new File(dir, key);
+    File tmp = null;
+    try {
+      File poolDir = file.getParentFile();
+      mkdirs(poolDir);
+      // a name of its own, as several readers may fill the same chunk.
+      tmp = createTempFile(poolDir, file.getName() + ".");
+      try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+        raf.writeInt(length);
+        raf.writeInt(crc(data, length));
+        raf.write(data, 0, length);
+      }
+      // never expose a partially written chunk, even after a crash.
+      Files.move(tmp.toPath(), file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOG.warn("Failed to cache chunk {}", file, e);
+      if (tmp != null) {
+        deleteQuietly(tmp);
+      }
+      return;
+    }
+    List<File> victims;
+    synchronized (this) {
+      remove(key);
+      probation.put(key, length);
+      probationBytes += size(length);
+      victims = evict();
+    }
+    deleteQuietly(victims);
+  }
+
+  private void remove(String key) {
+    Integer length = probation.remove(key);
+    if (length != null) {
+      probationBytes -= size(length);
+    }
+    length = protectedSegment.remove(key);
+    if (length != null) {
+      protectedBytes -= size(length);
+    }
+  }
+
+  /**
+   * Move the least recently used chunks of the protected segment back to
+   * probation while it is over its capacity, then evict.
+   * @return the files to delete
+   */
+  private List<File> demote() {
+    Iterator<Map.Entry<String, Integer>> it =
+        protectedSegment.entrySet().iterator();
+    while (protectedBytes > protectedCapacity && it.hasNext()) {
+      Map.Entry<String, Integer> e = it.next();
+      it.remove();
+      protectedBytes -= size(e.getValue());
+      probation.put(e.getKey(), e.getValue());
+      probationBytes += size(e.getValue());
+    }
+    return evict();
+  }
+
+  /**
+   * Remove the least recently used chunks, from probation first, until the
+   * cache is within its capacity.
+   * @return the files to delete
+   */
+  private List<File> evict() {
+    List<File> victims = new ArrayList<>();
+    while (probationBytes + protectedBytes > capacity) {
+      LinkedHashMap<String, Integer> segment =
+          probation.isEmpty() ? protectedSegment : probation;
+      Iterator<Map.Entry<String, Integer>> it = segment.entrySet().iterator();
+      Map.Entry<String, Integer> e = it.next();
+      it.remove();
+      if (segment == probation) {
+        probationBytes -= size(e.getValue());
+      } else {
+        protectedBytes -= size(e.getValue());
+      }
+      victims.add(new File(dir, e.getKey()));
+      evictions++;
+    }
+    return victims;
+  }
+
+  private static void deleteQuietly(List<File> files) {
+    for (File file : files) {
+      deleteQuietly(file);
+    }
+  }
+
+  private static void deleteQuietly(File file) {
+    if (!file.delete() && file.exists()) {
+      LOG.warn("Failed to delete {}", file);
+    }
+  }
+
+  /**
+   * @return the bytes used by the cached chunks
+   */
+  public synchronized long getUsed() {
+    return probationBytes + protectedBytes;
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Release the lock on the directory. The cached chunks are kept.
+   */
+  @VisibleForTesting
+  void close() {
+    try {
+      lock.release();
+    } catch (IOException e) {
+      LOG.debug("Failed to release the lock on {}", dir, e);
+    }
+    IOUtils.closeStream(lock.channel());
+  }
+
+  @Override
+  public String toString() {
+    return "LocalBlockCache(" + dir + ", capacity=" + capacity
+        + ", chunkSize=" + chunkSize + ")";
+  }
+}
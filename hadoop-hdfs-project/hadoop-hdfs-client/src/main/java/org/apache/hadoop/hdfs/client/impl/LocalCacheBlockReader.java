@@ -0,0 +1,298 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.client.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.ReadOption;
+import org.apache.hadoop.hdfs.BlockReader;
+import org.apache.hadoop.hdfs.ReadStatistics;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.shortcircuit.ClientMmap;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.util.DataChecksum;
+
+/**
+ * A BlockReader which reads through a {@link LocalBlockCache}.
+ *
+ * The requested range is read chunk by chunk. Cached chunks are read from
+ * the cache; the others are read whole from a remote BlockReader, which
+ * starts at the first chunk missing from the cache, and are added to the
+ * cache when the remote reader verifies checksums. The remote reader may
+ * therefore read a little beyond the requested range, up to the end of
+ * the chunk.
+ */
+@InterfaceAudience.Private
+public final class LocalCacheBlockReader implements BlockReader {
+
+  /** Creates the remote BlockReader for a range of the block. */
+  interface RemoteReaderFactory {
+    BlockReader create(long offset, long length) throws IOException;
+  }
+
+  private final LocalBlockCache cache;
+  private final ExtendedBlock block;
+  private final RemoteReaderFactory remoteFactory;
+  private final boolean fillCache;
+  /** End of the requested range, exclusive. */
+  private final long end;
+  /** End of the range which may be read remotely, exclusive. */
+  private final long remoteEnd;
+
+  private long pos;
+  private ByteBuffer chunk;
+  private long chunkStart;
+  private boolean chunkFromCache;
+
+  private BlockReader remote;
+  private long remotePos;
+
+  // not yet reported to the ReadStatistics of the stream.
+  private long cacheBytesRead;
+  private long cacheHits;
+  private long cacheMisses;
+
+  private LocalCacheBlockReader(LocalBlockCache cache, ExtendedBlock block,
+      long startOffset, long length, boolean fillCache,
+      RemoteReaderFactory remoteFactory) {
+    this.cache = cache;
+    this.block = block;
+    this.fillCache = fillCache;
+    this.remoteFactory = remoteFactory;
+    this.pos = startOffset;
+    this.end = startOffset + length;
+    long chunkSize = cache.getChunkSize();
+    long alignedEnd = (end + chunkSize - 1) / chunkSize * chunkSize;
+    this.remoteEnd = Math.max(end, Math.min(alignedEnd, block.getNumBytes()));
+  }
+
+  /**
+   * Create a reader of the given range of a block. If part of the range is
+   * not cached, the remote reader is created right away, so that errors
+   * such as invalid tokens are raised here rather than on read.
+   * @param cache the cache
+   * @param block the block
+   * @param startOffset the offset in the block of the range
+   * @param length the length of the range
+   * @param verifyChecksum whether the remote reader verifies checksums;
+   * chunks are only cached if it does
+   * @param remoteFactory creates the remote reader
+   * @return the reader
+   * @throws IOException if the remote reader could not be created
+   */
+  static LocalCacheBlockReader create(LocalBlockCache cache,
+      ExtendedBlock block, long startOffset, long length,
+      boolean verifyChecksum, RemoteReaderFactory remoteFactory)
+      throws IOException {
+    LocalCacheBlockReader reader = new LocalCacheBlockReader(cache, block,
+        startOffset, length, verifyChecksum, remoteFactory);
+    long chunkSize = cache.getChunkSize();
+    for (long index = cache.getChunkIndex(startOffset);
+         index * chunkSize < reader.end; index++) {
+      if (!cache.contains(block, index, reader.neededLength(index))) {
+        reader.openRemote(index * chunkSize);
+        break;
+      }
+    }
+    return reader;
+  }
+
+  /**
+   * @return the number of bytes of the chunk which the range covers
+   */
+  private int neededLength(long index) {
+    long start = index * cache.getChunkSize();
+    return (int) Math.min(cache.getChunkSize(), end - start);
+  }
+
+  private void openRemote(long offset) throws IOException {
+    IOUtils.closeStream(remote);
+    remote = null;
+    remote = remoteFactory.create(offset, remoteEnd - offset);
+    remotePos = offset;
+  }
+
+  /**
+   * Make the chunk containing pos the current chunk.
+   */
+  private void loadChunk() throws IOException {
+    if (chunk != null && pos >= chunkStart
+        && pos < chunkStart + chunk.limit()) {
+      return;
+    }
+    long index = cache.getChunkIndex(pos);
+    long start = index * cache.getChunkSize();
+    ByteBuffer cached = cache.get(block, index, neededLength(index));
+    if (cached != null) {
+      cacheHits++;
+      setChunk(start, cached, true);
+      return;
+    }
+    cacheMisses++;
+    int length = (int) Math.min(cache.getChunkSize(), remoteEnd - start);
+    if (remote == null || remotePos != start) {
+      // the chunk was evicted since this reader was created.
+      openRemote(start);
+    }
+    byte[] data = new byte[length];
+    remote.readFully(data, 0, length);
+    remotePos += length;
+    if (fillCache) {
+      cache.put(block, index, data, length);
+    }
+    setChunk(start, ByteBuffer.wrap(data), false);
+  }
+
+  private void setChunk(long start, ByteBuffer data, boolean fromCache) {
+    chunk = data;
+    chunkStart = start;
+    chunkFromCache = fromCache;
+  }
+
+  /**
+   * @return the number of bytes which may be read from the current chunk,
+   * up to max, after loading the chunk containing pos
+   */
+  private int prepareRead(int max) throws IOException {
+    loadChunk();
+    long available = Math.min(chunkStart + chunk.limit(), end) - pos;
+    return (int) Math.min(max, available);
+  }
+
+  private void advance(int n) {
+    pos += n;
+    if (chunkFromCache) {
+      cacheBytesRead += n;
+    }
+  }
+
+  @Override
+  public int read(byte[] buf, int off, int len) throws IOException {
+    if (pos >= end) {
+      return -1;
+    }
+    if (len == 0) {
+      return 0;
+    }
+    int n = prepareRead(len);
+    ByteBuffer src = chunk.duplicate();
+    src.position((int) (pos - chunkStart));
+    src.get(buf, off, n);
+    advance(n);
+    return n;
+  }
+
+  @Override
+  public int read(ByteBuffer buf) throws IOException {
+    if (pos >= end) {
+      return -1;
+    }
+    if (!buf.hasRemaining()) {
+      return 0;
+    }
+    int n = prepareRead(buf.remaining());
+    ByteBuffer src = chunk.duplicate();
+    src.position((int) (pos - chunkStart));
+    src.limit(src.position() + n);
+    buf.put(src);
+    advance(n);
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0) {
+      return 0;
+    }
+    long skipped = Math.min(n, end - pos);
+    pos += skipped;
+    return skipped;
+  }
+
+  @Override
+  public int available() {
+    // only the current chunk is available without I/O.
+    if (chunk == null || pos < chunkStart) {
+      return 0;
+    }
+    return (int) Math.max(0, Math.min(chunkStart + chunk.limit(), end) - pos);
+  }
+
+  @Override
+  public void close() throws IOException {
+    chunk = null;
+    if (remote != null) {
+      remote.close();
+      remote = null;
+    }
+  }
+
+  @Override
+  public void readFully(byte[] buf, int offset, int len) throws IOException {
+    BlockReaderUtil.readFully(this, buf, offset, len);
+  }
+
+  @Override
+  public int readAll(byte[] buf, int offset, int len) throws IOException {
+    return BlockReaderUtil.readAll(this, buf, offset, len);
+  }
+
+  @Override
+  public boolean isShortCircuit() {
+    return false;
+  }
+
+  @Override
+  public ClientMmap getClientMmap(EnumSet<ReadOption> opts) {
+    return null;
+  }
+
+  @Override
+  public DataChecksum getDataChecksum() {
+    return remote == null ? null : remote.getDataChecksum();
+  }
+
+  @Override
+  public int getNetworkDistance() {
+    return remote == null ? 0 : remote.getNetworkDistance();
+  }
+
+  /**
+   * Report the reads served by the cache since the last report.
+   * @param readStatistics the statistics of the stream
+   * @return the number of bytes read from the cache
+   */
+  public long reportCacheStatistics(ReadStatistics readStatistics) {
+    long bytes = cacheBytesRead;
+    readStatistics.addLocalCacheBytes(bytes);
+    readStatistics.addLocalCacheLookups(cacheHits, cacheMisses);
+    cacheBytesRead = 0;
+    cacheHits = 0;
+    cacheMisses = 0;
+    return bytes;
+  }
+
+  @Override
+  public String toString() {
+    return "LocalCacheBlockReader(" + block + ", pos=" + pos
+        + ", end=" + end + ", remote=" + remote + ")";
+  }
+}
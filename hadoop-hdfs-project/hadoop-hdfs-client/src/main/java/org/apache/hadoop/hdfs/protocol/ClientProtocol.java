@@ -677,6 +677,30 @@ boolean delete(String src, boolean recursive)
   boolean mkdirs(String src, FsPermission masked, boolean createParent)
       throws IOException;
 
+  /**
+   * Run a batch of metadata operations, in order, under a single
+   * acquisition of the namesystem lock and with a single sync of the edit
+   * log. The batch is not atomic: an operation that fails does not stop the
+   * following ones, and its exception is reported in its result.
+   *
+   * @param clientName name of the current client, holding the lease of the
+   *                   files created by the batch until they are closed
+   * @param ops the operations to run
+   *
+   * @return one result per operation, in the same order
+   *
+   * @throws org.apache.hadoop.hdfs.server.namenode.SafeModeException batch not
+   *           allowed in safemode
+   * @throws IOException If an I/O error occurred
+   *
+   * RunTimeExceptions:
+   * @throws IllegalArgumentException If the batch holds more operations than
+   *           the NameNode allows
+   */
+  @AtMostOnce
+  List<MetadataOpResult> batchMetadataOps(String clientName,
+      List<MetadataOp> ops) throws IOException;
+
   /**
    * Get a partial listing of the indicated directory.
    *
@@ -697,6 +721,36 @@ boolean mkdirs(String src, FsPermission masked, boolean createParent)
   DirectoryListing getListing(String src, byte[] startAfter,
       boolean needLocation) throws IOException;
 
+  /**
+   * Get a partial listing of the indicated directory, keeping only the
+   * entries whose local name matches <code>nameFilter</code> and filling in
+   * only the attributes selected by <code>projection</code>.
+   * <p>
+   * The NameNode bounds the number of entries it examines per call, so a
+   * listing may hold fewer matches than the listing limit, or none at all,
+   * while more entries remain. Callers resume after
+   * {@link DirectoryListing#getLastName()} until
+   * {@link DirectoryListing#hasMore()} is false.
+   *
+   * @param src the directory name
+   * @param startAfter the name to start listing after encoded in java UTF8
+   * @param nameFilter a glob matched against the local name of each entry,
+   *                   or null to keep every entry
+   * @param projection the attributes to return for each entry
+   *
+   * @return a partial listing starting after startAfter
+   *
+   * @throws org.apache.hadoop.security.AccessControlException permission denied
+   * @throws java.io.FileNotFoundException file <code>src</code> is not found
+   * @throws org.apache.hadoop.fs.UnresolvedLinkException If <code>src</code>
+   *           contains a symlink
+   * @throws IOException If an I/O error occurred
+   */
+  @Idempotent
+  @ReadOnly(isCoordinated = true)
+  DirectoryListing getFilteredListing(String src, byte[] startAfter,
+      String nameFilter, ListingProjection projection) throws IOException;
+
   /**
    * Get a partial listing of the input directories
    *
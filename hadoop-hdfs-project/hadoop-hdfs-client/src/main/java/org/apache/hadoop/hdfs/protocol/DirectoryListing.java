@@ -30,6 +30,7 @@
 public class DirectoryListing {
   private HdfsFileStatus[] partialListing;
   private int remainingEntries;
+  private final byte[] lastName;
 
   /**
    * constructor
@@ -38,15 +39,30 @@ public class DirectoryListing {
    */
   public DirectoryListing(HdfsFileStatus[] partialListing,
       int remainingEntries) {
+    this(partialListing, remainingEntries, null);
+  }
+
+  /**
+   * constructor
+   * @param partialListing a partial listing of a directory
+   * @param remainingEntries number of entries that are left to be listed
+   * @param lastName the name to resume listing after, or null to resume
+   *                 after the last entry of the partial listing. A filtered
+   *                 listing may have examined entries past its last match.
+   */
+  public DirectoryListing(HdfsFileStatus[] partialListing,
+      int remainingEntries, byte[] lastName) {
     if (partialListing == null) {
       throw new IllegalArgumentException("partial listing should not be null");
     }
-    if (partialListing.length == 0 && remainingEntries != 0) {
+    if (partialListing.length == 0 && remainingEntries != 0
+        && lastName == null) {
       throw new IllegalArgumentException("Partial listing is empty but " +
           "the number of remaining entries is not zero");
     }
     this.partialListing = partialListing;
     this.remainingEntries = remainingEntries;
+    this.lastName = lastName;
   }
 
   /**
@@ -76,9 +92,13 @@ public boolean hasMore() {
 
   /**
    * Get the last name in this list
-   * @return the last name in the list if it is not empty; otherwise return null
+   * @return the name to resume listing after if one was set, else the last
+   *         name in the list if it is not empty; otherwise return null
    */
   public byte[] getLastName() {
+    if (lastName != null) {
+      return lastName;
+    }
     if (partialListing.length == 0) {
       return null;
     }
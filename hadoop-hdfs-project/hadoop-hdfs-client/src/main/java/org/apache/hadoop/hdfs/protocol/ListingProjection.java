@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * The attributes a filtered directory listing fills in for each entry.
+ * Attributes outside the projection are left at their defaults, which keeps
+ * both the NameNode's work and the response size down for callers that only
+ * need names.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public enum ListingProjection {
+  /** The local name and whether the entry is a file, directory or symlink. */
+  NAME,
+  /** {@link #NAME} plus length, replication and block size. */
+  NAME_AND_LENGTH,
+  /** Every attribute returned by a regular listing. */
+  FULL
+}
@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+/**
+ * A single metadata operation of a batch run by
+ * {@link ClientProtocol#batchMetadataOps}. This is used internally by the
+ * HDFS client and namenode and is not meant for public consumption.
+ */
+@InterfaceAudience.Private
+public final class MetadataOp {
+
+  /** The operations which may be batched. */
+  public enum Type {
+    MKDIRS,
+    CREATE_EMPTY,
+    SET_PERMISSION,
+    SET_TIMES,
+    GET_FILE_INFO,
+    DELETE
+  }
+
+  private final Type type;
+  private final String src;
+  private final FsPermission permission;
+  private final boolean createParent;
+  private final boolean recursive;
+  private final long mtime;
+  private final long atime;
+
+  private MetadataOp(Type type, String src, FsPermission permission,
+      boolean createParent, boolean recursive, long mtime, long atime) {
+    this.type = type;
+    this.src = src;
+    this.permission = permission;
+    this.createParent = createParent;
+    this.recursive = recursive;
+    this.mtime = mtime;
+    this.atime = atime;
+  }
+
+  /** @see ClientProtocol#mkdirs(String, FsPermission, boolean) */
+  public static MetadataOp mkdirs(String src, FsPermission masked,
+      boolean createParent) {
+    return new MetadataOp(Type.MKDIRS, src, masked, createParent, false,
+        -1, -1);
+  }
+
+  /**
+   * Create a file without any block and close it right away. The file must
+   * not exist yet.
+   */
+  public static MetadataOp createEmpty(String src, FsPermission masked,
+      boolean createParent) {
+    return new MetadataOp(Type.CREATE_EMPTY, src, masked, createParent, false,
+        -1, -1);
+  }
+
+  /** @see ClientProtocol#setPermission(String, FsPermission) */
+  public static MetadataOp setPermission(String src,
+      FsPermission permission) {
+    return new MetadataOp(Type.SET_PERMISSION, src, permission, false, false,
+        -1, -1);
+  }
+
+  /** @see ClientProtocol#setTimes(String, long, long) */
+  public static MetadataOp setTimes(String src, long mtime, long atime) {
+    return new MetadataOp(Type.SET_TIMES, src, null, false, false,
+        mtime, atime);
+  }
+
+  /** @see ClientProtocol#getFileInfo(String) */
+  public static MetadataOp getFileInfo(String src) {
+    return new MetadataOp(Type.GET_FILE_INFO, src, null, false, false,
+        -1, -1);
+  }
+
+  /** @see ClientProtocol#delete(String, boolean) */
+  public static MetadataOp delete(String src, boolean recursive) {
+    return new MetadataOp(Type.DELETE, src, null, false, recursive, -1, -1);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getSrc() {
+    return src;
+  }
+
+  public FsPermission getPermission() {
+    return permission;
+  }
+
+  public boolean isCreateParent() {
+    return createParent;
+  }
+
+  public boolean isRecursive() {
+    return recursive;
+  }
+
+  public long getMtime() {
+    return mtime;
+  }
+
+  public long getAtime() {
+    return atime;
+  }
+
+  @Override
+  public String toString() {
+    return new ToStringBuilder(this)
+        .append("type", type)
+        .append("src", src)
+        .toString();
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import java.io.IOException;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.ipc.RemoteException;
+
+/**
+ * The outcome of one operation of a batch run by
+ * {@link ClientProtocol#batchMetadataOps}. Operations fail independently of
+ * each other, so each result either holds the value the matching single
+ * operation call would have returned, or the exception it would have thrown.
+ * <p>
+ * Like a Future, getting the value via {@link #get()} or
+ * {@link #getFileStatus()} throws the exception of a failed operation.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public final class MetadataOpResult {
+
+  private final boolean result;
+  private final HdfsFileStatus fileStatus;
+  private final RemoteException exception;
+
+  public MetadataOpResult(boolean result, HdfsFileStatus fileStatus) {
+    this(result, fileStatus, null);
+  }
+
+  public MetadataOpResult(RemoteException exception) {
+    this(false, null, exception);
+  }
+
+  private MetadataOpResult(boolean result, HdfsFileStatus fileStatus,
+      RemoteException exception) {
+    this.result = result;
+    this.fileStatus = fileStatus;
+    this.exception = exception;
+  }
+
+  /**
+   * The boolean outcome of the operation: false for a delete of a missing
+   * path or a getFileInfo of a missing path, true otherwise.
+   *
+   * @return the outcome of the operation.
+   * @throws IOException if the operation failed.
+   */
+  public boolean get() throws IOException {
+    if (exception != null) {
+      throw exception.unwrapRemoteException();
+    }
+    return result;
+  }
+
+  /**
+   * The status of the path, for getFileInfo and createEmpty operations.
+   *
+   * @return the status, or null if the path does not exist or the operation
+   *         does not return one.
+   * @throws IOException if the operation failed.
+   */
+  public HdfsFileStatus getFileStatus() throws IOException {
+    if (exception != null) {
+      throw exception.unwrapRemoteException();
+    }
+    return fileStatus;
+  }
+
+  /**
+   * @return the exception of a failed operation, or null if it succeeded.
+   */
+  public RemoteException getException() {
+    return exception;
+  }
+
+  @Override
+  public String toString() {
+    return new ToStringBuilder(this)
+        .append("result", result)
+        .append("fileStatus", fileStatus)
+        .append("exception", exception)
+        .toString();
+  }
+}
@@ -19,6 +19,7 @@
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -76,8 +77,11 @@
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
+import org.apache.hadoop.hdfs.protocol.ListingProjection;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.MetadataOp;
+import org.apache.hadoop.hdfs.protocol.MetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.OpenFilesIterator.OpenFilesType;
 import org.apache.hadoop.hdfs.protocol.ReplicatedBlockStats;
 import org.apache.hadoop.hdfs.protocol.OpenFileEntry;
@@ -101,6 +105,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.AddCachePoolRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.AllowSnapshotRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.AppendRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchMetadataOpsRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchMetadataOpsResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.AppendResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CachePoolEntryProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CheckAccessRequestProto;
@@ -131,6 +137,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfoResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileLinkInfoRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileLinkInfoResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFilteredListingRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFilteredListingResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFsECBlockGroupStatsRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFsReplicatedBlockStatsRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFsStatusRequestProto;
@@ -164,6 +172,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ListOpenFilesRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ListOpenFilesResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MetaSaveRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MetadataOpResultProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MkdirsRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ModifyCacheDirectiveRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ModifyCachePoolRequestProto;
@@ -679,6 +688,28 @@ public boolean mkdirs(String src, FsPermission masked, boolean createParent)
     }
   }
 
+  @Override
+  public List<MetadataOpResult> batchMetadataOps(String clientName,
+      List<MetadataOp> ops) throws IOException {
+    BatchMetadataOpsRequestProto.Builder req =
+        BatchMetadataOpsRequestProto.newBuilder().setClientName(clientName);
+    for (MetadataOp op : ops) {
+      req.addOps(PBHelperClient.convert(op));
+    }
+    try {
+      BatchMetadataOpsResponseProto result =
+          rpcProxy.batchMetadataOps(null, req.build());
+      List<MetadataOpResult> results =
+          new ArrayList<>(result.getResultsCount());
+      for (MetadataOpResultProto proto : result.getResultsList()) {
+        results.add(PBHelperClient.convert(proto));
+      }
+      return results;
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public DirectoryListing getListing(String src, byte[] startAfter,
       boolean needLocation) throws IOException {
@@ -698,6 +729,30 @@ public DirectoryListing getListing(String src, byte[] startAfter,
     }
   }
 
+  @Override
+  public DirectoryListing getFilteredListing(String src, byte[] startAfter,
+      String nameFilter, ListingProjection projection) throws IOException {
+    GetFilteredListingRequestProto.Builder req =
+        GetFilteredListingRequestProto.newBuilder()
+            .setSrc(src)
+            .setStartAfter(ByteString.copyFrom(startAfter))
+            .setProjection(PBHelperClient.convert(projection));
+    if (nameFilter != null) {
+      req.setNameFilter(nameFilter);
+    }
+    try {
+      GetFilteredListingResponseProto result =
+          rpcProxy.getFilteredListing(null, req.build());
+
+      if (result.hasDirList()) {
+        return PBHelperClient.convert(result.getDirList());
+      }
+      return null;
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public BatchedDirectoryListing getBatchedListing(
       String[] srcs, byte[] startAfter, boolean needLocation)
@@ -964,6 +1019,28 @@ public HdfsFileStatus getFileInfo(String src) throws IOException {
         .setSrc(src)
         .build();
     try {
+      if (Client.isAsynchronousMode()) {
+        rpcProxy.getFileInfo(null, req);
+        final AsyncGet<Message, Exception> asyncReturnMessage
+            = ProtobufRpcEngine2.getAsyncReturnMessage();
+        final AsyncGet<HdfsFileStatus, Exception> asyncGet
+            = new AsyncGet<HdfsFileStatus, Exception>() {
+          @Override
+          public HdfsFileStatus get(long timeout, TimeUnit unit)
+              throws Exception {
+            GetFileInfoResponseProto res = (GetFileInfoResponseProto)
+                asyncReturnMessage.get(timeout, unit);
+            return res.hasFs() ? PBHelperClient.convert(res.getFs()) : null;
+          }
+
+          @Override
+          public boolean isDone() {
+            return asyncReturnMessage.isDone();
+          }
+        };
+        AsyncCallHandler.setLowerLayerAsyncReturn(asyncGet);
+        return null;
+      }
       GetFileInfoResponseProto res = rpcProxy.getFileInfo(null, req);
       return res.hasFs() ? PBHelperClient.convert(res.getFs()) : null;
     } catch (ServiceException e) {
@@ -55,6 +55,7 @@
 import org.apache.hadoop.fs.permission.AclEntryType;
 import org.apache.hadoop.fs.permission.AclStatus;
 import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.fs.permission.FsCreateModes;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DFSUtilClient;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
@@ -96,9 +97,12 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
+import org.apache.hadoop.hdfs.protocol.ListingProjection;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.LocatedStripedBlock;
+import org.apache.hadoop.hdfs.protocol.MetadataOp;
+import org.apache.hadoop.hdfs.protocol.MetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.OpenFilesIterator.OpenFilesType;
 import org.apache.hadoop.hdfs.protocol.ReplicatedBlockStats;
 import org.apache.hadoop.hdfs.protocol.OpenFileEntry;
@@ -138,6 +142,9 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFsReplicatedBlockStatsResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFsStatsResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.OpenFilesBatchResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ListingProjectionProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MetadataOpProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MetadataOpResultProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.OpenFilesTypeProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.RollingUpgradeActionProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.RollingUpgradeInfoProto;
@@ -177,6 +184,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.LocatedBlocksProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.QuotaUsageProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.ReencryptionInfoProto;
+import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.RemoteExceptionProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.RollingUpgradeStatusProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.SnapshotDiffReportListingEntryProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.SnapshotDiffReportListingProto;
@@ -210,6 +218,7 @@
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.erasurecode.ECSchema;
 import org.apache.hadoop.ipc.ProtobufHelper;
+import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.security.proto.SecurityProtos.TokenProto;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.util.ChunkedArrayList;
@@ -2065,6 +2074,116 @@ public static DatanodeReportTypeProto convert(DatanodeReportType t) {
     }
   }
 
+  public static ListingProjectionProto convert(ListingProjection p) {
+    switch (p) {
+    case NAME: return ListingProjectionProto.NAME;
+    case NAME_AND_LENGTH: return ListingProjectionProto.NAME_AND_LENGTH;
+    case FULL: return ListingProjectionProto.FULL;
+    default:
+      throw new IllegalArgumentException("Unexpected listing projection:" + p);
+    }
+  }
+
+  public static ListingProjection convert(ListingProjectionProto p) {
+    switch (p) {
+    case NAME: return ListingProjection.NAME;
+    case NAME_AND_LENGTH: return ListingProjection.NAME_AND_LENGTH;
+    case FULL: return ListingProjection.FULL;
+    default:
+      throw new IllegalArgumentException("Unexpected listing projection:" + p);
+    }
+  }
+
+  public static MetadataOpProto convert(MetadataOp op) {
+    MetadataOpProto.Builder builder = MetadataOpProto.newBuilder()
+        .setType(MetadataOpProto.MetadataOpTypeProto.valueOf(
+            op.getType().name()))
+        .setSrc(op.getSrc());
+    if (op.getPermission() != null) {
+      builder.setPermission(convert(op.getPermission()));
+      FsPermission unmasked = op.getPermission().getUnmasked();
+      if (unmasked != null) {
+        builder.setUnmasked(convert(unmasked));
+      }
+    }
+    switch (op.getType()) {
+    case MKDIRS:
+    case CREATE_EMPTY:
+      builder.setCreateParent(op.isCreateParent());
+      break;
+    case DELETE:
+      builder.setRecursive(op.isRecursive());
+      break;
+    case SET_TIMES:
+      builder.setMtime(op.getMtime()).setAtime(op.getAtime());
+      break;
+    default:
+      break;
+    }
+    return builder.build();
+  }
+
+  public static MetadataOp convert(MetadataOpProto proto) {
+    String src = proto.getSrc();
+    FsPermission permission = null;
+    if (proto.hasPermission()) {
+      permission = proto.hasUnmasked()
+          ? FsCreateModes.create(convert(proto.getPermission()),
+              convert(proto.getUnmasked()))
+          : convert(proto.getPermission());
+    }
+    switch (proto.getType()) {
+    case MKDIRS:
+      return MetadataOp.mkdirs(src, permission, proto.getCreateParent());
+    case CREATE_EMPTY:
+      return MetadataOp.createEmpty(src, permission, proto.getCreateParent());
+    case SET_PERMISSION:
+      return MetadataOp.setPermission(src, permission);
+    case SET_TIMES:
+      return MetadataOp.setTimes(src, proto.getMtime(), proto.getAtime());
+    case GET_FILE_INFO:
+      return MetadataOp.getFileInfo(src);
+    case DELETE:
+      return MetadataOp.delete(src, proto.getRecursive());
+    default:
+      throw new IllegalArgumentException(
+          "Unexpected metadata operation:" + proto.getType());
+    }
+  }
+
+  public static MetadataOpResultProto convert(MetadataOpResult result) {
+    MetadataOpResultProto.Builder builder = MetadataOpResultProto.newBuilder();
+    RemoteException ex = result.getException();
+    if (ex != null) {
+      RemoteExceptionProto.Builder rexBuilder =
+          RemoteExceptionProto.newBuilder().setClassName(ex.getClassName());
+      if (ex.getMessage() != null) {
+        rexBuilder.setMessage(ex.getMessage());
+      }
+      return builder.setException(rexBuilder).build();
+    }
+    try {
+      builder.setResult(result.get());
+      if (result.getFileStatus() != null) {
+        builder.setFs(convert(result.getFileStatus()));
+      }
+    } catch (IOException e) {
+      // not reached, the result holds no exception
+      throw new IllegalStateException(e);
+    }
+    return builder.build();
+  }
+
+  public static MetadataOpResult convert(MetadataOpResultProto proto) {
+    if (proto.hasException()) {
+      RemoteExceptionProto reProto = proto.getException();
+      return new MetadataOpResult(new RemoteException(
+          reProto.getClassName(), reProto.getMessage()));
+    }
+    return new MetadataOpResult(proto.getResult(),
+        proto.hasFs() ? convert(proto.getFs()) : null);
+  }
+
   public static DirectoryListing convert(DirectoryListingProto dl) {
     if (dl == null)
       return null;
@@ -2072,7 +2191,8 @@ public static DirectoryListing convert(DirectoryListingProto dl) {
     return new DirectoryListing(partList.isEmpty()
         ? new HdfsFileStatus[0]
         : convert(partList.toArray(new HdfsFileStatusProto[partList.size()])),
-                  dl.getRemainingEntries());
+                  dl.getRemainingEntries(),
+                  dl.hasLastName() ? dl.getLastName().toByteArray() : null);
   }
 
   public static HdfsFileStatus[] convert(HdfsFileStatusProto[] fs) {
@@ -2454,11 +2574,17 @@ public static HdfsFileStatusProto[] convert(HdfsFileStatus[] fs) {
   public static DirectoryListingProto convert(DirectoryListing d) {
     if (d == null)
       return null;
-    return DirectoryListingProto.newBuilder().
+    DirectoryListingProto.Builder builder = DirectoryListingProto.newBuilder().
         addAllPartialListing(Arrays.asList(
             convert(d.getPartialListing()))).
-        setRemainingEntries(d.getRemainingEntries()).
-        build();
+        setRemainingEntries(d.getRemainingEntries());
+    HdfsFileStatus[] partialListing = d.getPartialListing();
+    byte[] lastName = d.getLastName();
+    if (lastName != null && (partialListing.length == 0 || lastName !=
+        partialListing[partialListing.length - 1].getLocalNameInBytes())) {
+      builder.setLastName(getByteString(lastName));
+    }
+    return builder.build();
   }
 
   public static GetFsStatsResponseProto convert(long[] fsStats) {
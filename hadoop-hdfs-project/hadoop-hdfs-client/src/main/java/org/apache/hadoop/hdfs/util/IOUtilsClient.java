@@ -19,6 +19,7 @@
 
 import org.apache.hadoop.hdfs.BlockReader;
 import org.apache.hadoop.hdfs.ReadStatistics;
+import org.apache.hadoop.hdfs.client.impl.LocalCacheBlockReader;
 import org.slf4j.Logger;
 
 import java.io.IOException;
@@ -48,6 +49,10 @@ public static void cleanupWithLogger(Logger log,
 
   public static void updateReadStatistics(ReadStatistics readStatistics,
                                       int nRead, BlockReader blockReader) {
+    if (blockReader instanceof LocalCacheBlockReader) {
+      nRead -= (int) ((LocalCacheBlockReader) blockReader)
+          .reportCacheStatistics(readStatistics);
+    }
     updateReadStatistics(readStatistics, nRead, blockReader.isShortCircuit(),
         blockReader.getNetworkDistance());
   }
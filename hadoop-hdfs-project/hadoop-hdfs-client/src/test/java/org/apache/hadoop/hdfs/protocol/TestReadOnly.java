@@ -40,6 +40,7 @@ public class TestReadOnly {
           "getStoragePolicy",
           "getListing",
           "getBatchedListing",
+          "getFilteredListing",
           "getSnapshottableDirListing",
           "getSnapshotListing",
           "getPreferredBlockSize",
@@ -146,6 +146,12 @@ public class RBFConfigKeys extends CommonConfigurationKeysPublic {
   public static final String DFS_ROUTER_CLIENT_REJECT_OVERLOAD =
       FEDERATION_ROUTER_PREFIX + "client.reject.overload";
   public static final boolean DFS_ROUTER_CLIENT_REJECT_OVERLOAD_DEFAULT = false;
+  public static final String DFS_ROUTER_CLIENT_ASYNC_ENABLE =
+      FEDERATION_ROUTER_PREFIX + "client.async.enable";
+  public static final boolean DFS_ROUTER_CLIENT_ASYNC_ENABLE_DEFAULT = false;
+  public static final String DFS_ROUTER_CLIENT_ASYNC_THREADS =
+      FEDERATION_ROUTER_PREFIX + "client.async.thread-size";
+  public static final int DFS_ROUTER_CLIENT_ASYNC_THREADS_DEFAULT = 8;
   public static final String DFS_ROUTER_ALLOW_PARTIAL_LIST =
       FEDERATION_ROUTER_PREFIX + "client.allow-partial-listing";
   public static final boolean DFS_ROUTER_ALLOW_PARTIAL_LIST_DEFAULT = true;
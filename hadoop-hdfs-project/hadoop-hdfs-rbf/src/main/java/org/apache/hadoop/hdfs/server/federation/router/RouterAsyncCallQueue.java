@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.federation.router;
+
+import java.security.PrivilegedAction;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.ipc.CallerContext;
+import org.apache.hadoop.ipc.Client;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.util.concurrent.AsyncGet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queue of the calls the Router sent to the NameNodes in asynchronous mode.
+ * The IPC client tells this queue, passed as the external handler of each
+ * call, the id of every call whose response arrived. The outcome of the call
+ * is then handed to its callback by a bounded pool of completer threads,
+ * as the user who made the call and with its caller context. This way no
+ * Router handler waits for a NameNode to answer.
+ */
+public class RouterAsyncCallQueue implements Client.CallCompletionHandler {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(RouterAsyncCallQueue.class);
+
+  /** Receives the outcome of an asynchronous call. */
+  interface Callback {
+    /**
+     * Called once the call is done.
+     * @param result Result of the call, null if it failed.
+     * @param error Failure of the call, null if it succeeded.
+     */
+    void done(Object result, Exception error);
+  }
+
+  /** A call waiting for its response. */
+  private final class PendingCall {
+    private final int id;
+    private final UserGroupInformation ugi;
+    private final CallerContext callerContext;
+    private final Callback callback;
+    private volatile AsyncGet<?, Exception> asyncGet;
+    /** The call was sent and its response arrived when this reaches 0. */
+    private final AtomicInteger events = new AtomicInteger(2);
+
+    private PendingCall(int id, UserGroupInformation ugi,
+        CallerContext callerContext, Callback callback) {
+      this.id = id;
+      this.ugi = ugi;
+      this.callerContext = callerContext;
+      this.callback = callback;
+    }
+
+    private void event() {
+      if (events.decrementAndGet() == 0 && calls.remove(id) != null) {
+        execute(ugi, callerContext, this::complete);
+      }
+    }
+
+    private void complete() {
+      Object result = null;
+      Exception error = null;
+      try {
+        result = asyncGet.get(0, TimeUnit.MILLISECONDS);
+      } catch (Exception e) {
+        error = e;
+      }
+      callback.done(result, error);
+    }
+  }
+
+  /** Calls waiting for a response by call id. */
+  private final Map<Integer, PendingCall> calls = new ConcurrentHashMap<>();
+  /** Threads completing the calls. */
+  private final ExecutorService completers;
+
+  /**
+   * Create a queue.
+   * @param numThreads Number of threads completing the calls.
+   */
+  public RouterAsyncCallQueue(int numThreads) {
+    // The pending work is bounded by the async calls the IPC client allows
+    this.completers = new ThreadPoolExecutor(numThreads, numThreads,
+        0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+        new ThreadFactoryBuilder()
+            .setNameFormat("Router async call completer-%d")
+            .setDaemon(true)
+            .build());
+  }
+
+  /**
+   * Register a call before sending it. The IPC client must send the call
+   * with the returned id and this queue as external handler.
+   * @param ugi User making the call.
+   * @param callerContext Caller context of the call.
+   * @param callback Callback to run when the call is done.
+   * @return Id of the call.
+   */
+  int register(UserGroupInformation ugi, CallerContext callerContext,
+      Callback callback) {
+    int id = Client.nextCallId();
+    calls.put(id, new PendingCall(id, ugi, callerContext, callback));
+    return id;
+  }
+
+  /**
+   * Record that a registered call was sent.
+   * @param id Id of the call.
+   * @param asyncGet Response of the call.
+   */
+  void sent(int id, AsyncGet<?, Exception> asyncGet) {
+    PendingCall call = calls.get(id);
+    if (call != null) {
+      call.asyncGet = asyncGet;
+      call.event();
+    }
+  }
+
+  /**
+   * Forget a registered call which could not be sent.
+   * @param id Id of the call.
+   */
+  void unregister(int id) {
+    calls.remove(id);
+  }
+
+  @Override
+  public void callComplete(int id) {
+    // Calls of other users of the IPC client thread local are not registered
+    PendingCall call = calls.get(id);
+    if (call != null) {
+      call.event();
+    }
+  }
+
+  /**
+   * Run a task in a completer thread as a user and with a caller context.
+   * @param ugi User to run the task as.
+   * @param callerContext Caller context of the task.
+   * @param task Task to run.
+   */
+  void execute(UserGroupInformation ugi, CallerContext callerContext,
+      Runnable task) {
+    try {
+      completers.execute(() -> ugi.doAs((PrivilegedAction<Void>) () -> {
+        CallerContext.setCurrent(callerContext);
+        try {
+          task.run();
+        } catch (Throwable t) {
+          LOG.error("Unexpected error completing async call", t);
+        } finally {
+          CallerContext.setCurrent(null);
+        }
+        return null;
+      }));
+    } catch (RejectedExecutionException e) {
+      LOG.debug("Async call queue is shut down, dropping task");
+    }
+  }
+
+  /**
+   * Get the number of calls waiting for a response.
+   * @return Number of pending calls.
+   */
+  int size() {
+    return calls.size();
+  }
+
+  /** Stop processing the calls. Pending calls never complete. */
+  void shutdown() {
+    completers.shutdownNow();
+  }
+}
@@ -63,9 +63,11 @@ public class RouterClientMetrics {
   @Metric private MutableCounterLong truncateOps;
   @Metric private MutableCounterLong deleteOps;
   @Metric private MutableCounterLong mkdirsOps;
+  @Metric private MutableCounterLong batchMetadataOpsOps;
   @Metric private MutableCounterLong renewLeaseOps;
   @Metric private MutableCounterLong getListingOps;
   @Metric private MutableCounterLong getBatchedListingOps;
+  @Metric private MutableCounterLong getFilteredListingOps;
   @Metric private MutableCounterLong getFileInfoOps;
   @Metric private MutableCounterLong isFileClosedOps;
   @Metric private MutableCounterLong getFileLinkInfoOps;
@@ -276,6 +278,9 @@ public void incInvokedMethod(Method method) {
     case "mkdirs":
       mkdirsOps.incr();
       break;
+    case "batchMetadataOps":
+      batchMetadataOpsOps.incr();
+      break;
     case "renewLease":
       renewLeaseOps.incr();
       break;
@@ -285,6 +290,9 @@ public void incInvokedMethod(Method method) {
     case "getBatchedListing":
       getBatchedListingOps.incr();
       break;
+    case "getFilteredListing":
+      getFilteredListingOps.incr();
+      break;
     case "getFileInfo":
       getFileInfoOps.incr();
       break;
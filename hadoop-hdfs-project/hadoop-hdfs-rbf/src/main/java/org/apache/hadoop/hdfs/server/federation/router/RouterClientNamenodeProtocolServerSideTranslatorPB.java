@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.federation.router;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfoRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfoResponseProto;
+import org.apache.hadoop.hdfs.protocolPB.ClientNamenodeProtocolServerSideTranslatorPB;
+import org.apache.hadoop.hdfs.protocolPB.PBHelperClient;
+import org.apache.hadoop.ipc.ProtobufRpcEngine2;
+
+import org.apache.hadoop.thirdparty.protobuf.RpcController;
+import org.apache.hadoop.thirdparty.protobuf.ServiceException;
+
+/**
+ * Translator of the Router client protocol that answers the calls the
+ * Router can forward asynchronously from a future, so the handler is free
+ * for other calls while the namenode processes the request. Used when
+ * {@link RBFConfigKeys#DFS_ROUTER_CLIENT_ASYNC_ENABLE} is set.
+ */
+class RouterClientNamenodeProtocolServerSideTranslatorPB
+    extends ClientNamenodeProtocolServerSideTranslatorPB {
+
+  private static final GetFileInfoResponseProto VOID_GETFILEINFO_RESPONSE =
+      GetFileInfoResponseProto.newBuilder().build();
+
+  private final RouterRpcServer rpcServer;
+
+  RouterClientNamenodeProtocolServerSideTranslatorPB(RouterRpcServer server)
+      throws IOException {
+    super(server);
+    this.rpcServer = server;
+  }
+
+  @Override
+  public GetFileInfoResponseProto getFileInfo(RpcController controller,
+      GetFileInfoRequestProto req) throws ServiceException {
+    CompletableFuture<GetFileInfoResponseProto> response =
+        rpcServer.getFileInfoAsync(req.getSrc()).thenApply(result -> {
+          if (result != null) {
+            return GetFileInfoResponseProto.newBuilder().setFs(
+                PBHelperClient.convert(result)).build();
+          }
+          return VOID_GETFILEINFO_RESPONSE;
+        });
+    ProtobufRpcEngine2.Server.deferResponse(response);
+    return null;
+  }
+}
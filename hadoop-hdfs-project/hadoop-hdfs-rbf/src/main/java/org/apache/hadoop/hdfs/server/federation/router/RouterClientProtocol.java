@@ -64,8 +64,11 @@
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
+import org.apache.hadoop.hdfs.protocol.ListingProjection;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.MetadataOp;
+import org.apache.hadoop.hdfs.protocol.MetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.OpenFileEntry;
 import org.apache.hadoop.hdfs.protocol.OpenFilesIterator;
 import org.apache.hadoop.hdfs.protocol.ReplicatedBlockStats;
@@ -114,6 +117,8 @@
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -717,6 +722,13 @@ public boolean delete(String src, boolean recursive) throws IOException {
     }
   }
 
+  @Override
+  public List<MetadataOpResult> batchMetadataOps(String clientName,
+      List<MetadataOp> ops) throws IOException {
+    rpcServer.checkOperation(NameNode.OperationCategory.WRITE, false);
+    return null;
+  }
+
   @Override
   public boolean mkdirs(String src, FsPermission masked, boolean createParent)
       throws IOException {
@@ -885,6 +897,13 @@ public DirectoryListing getListing(String src, byte[] startAfter,
     return new DirectoryListing(combinedData, remainingEntries);
   }
 
+  @Override
+  public DirectoryListing getFilteredListing(String src, byte[] startAfter,
+      String nameFilter, ListingProjection projection) throws IOException {
+    rpcServer.checkOperation(NameNode.OperationCategory.READ, false);
+    return null;
+  }
+
   @Override
   public BatchedDirectoryListing getBatchedListing(String[] srcs,
       byte[] startAfter, boolean needLocation) throws IOException {
@@ -912,23 +931,75 @@ public HdfsFileStatus getFileInfo(String src) throws IOException {
 
     // If there is no real path, check mount points
     if (ret == null) {
-      List<String> children = subclusterResolver.getMountPoints(src);
-      if (children != null && !children.isEmpty()) {
-        Map<String, Long> dates = getMountPointDates(src);
-        long date = 0;
-        if (dates != null && dates.containsKey(src)) {
-          date = dates.get(src);
-        }
-        ret = getMountPointStatus(src, children.size(), date);
-      } else if (children != null) {
-        // The src is a mount point, but there are no files or directories
-        ret = getMountPointStatus(src, 0, 0);
-      }
+      ret = getMountPointFileInfo(src);
     }
 
     return ret;
   }
 
+  /**
+   * Asynchronous version of {@link #getFileInfo(String)}. A path in a single
+   * subcluster is forwarded without waiting for the namenode to answer;
+   * other paths are resolved by the calling thread.
+   *
+   * @param src Path in the federation.
+   * @return Future file status, null if the path does not exist.
+   */
+  CompletableFuture<HdfsFileStatus> getFileInfoAsync(String src) {
+    final List<RemoteLocation> locations;
+    final RemoteMethod method;
+    try {
+      rpcServer.checkOperation(NameNode.OperationCategory.READ);
+      locations = rpcServer.getLocationsForPath(src, false, false);
+      if (locations.size() != 1 || rpcServer.isPathAll(src)) {
+        return CompletableFuture.completedFuture(getFileInfo(src));
+      }
+      method = new RemoteMethod("getFileInfo",
+          new Class<?>[] {String.class}, new RemoteParam());
+    } catch (IOException ioe) {
+      CompletableFuture<HdfsFileStatus> failed = new CompletableFuture<>();
+      failed.completeExceptionally(ioe);
+      return failed;
+    }
+    // Runs in the handler or in an async call completer, both acting as the
+    // user who made the call
+    return rpcClient.invokeSingleAsync(locations.get(0), method)
+        .thenApply(ret -> {
+          if (ret != null) {
+            return (HdfsFileStatus) ret;
+          }
+          try {
+            return getMountPointFileInfo(src);
+          } catch (IOException ioe) {
+            throw new CompletionException(ioe);
+          }
+        });
+  }
+
+  /**
+   * Get the file info of a path without a real path in the subclusters.
+   *
+   * @param src Path in the federation.
+   * @return Status of the mount point, null if the path is not one.
+   * @throws IOException If the mount points cannot be resolved.
+   */
+  private HdfsFileStatus getMountPointFileInfo(String src)
+      throws IOException {
+    List<String> children = subclusterResolver.getMountPoints(src);
+    if (children != null && !children.isEmpty()) {
+      Map<String, Long> dates = getMountPointDates(src);
+      long date = 0;
+      if (dates != null && dates.containsKey(src)) {
+        date = dates.get(src);
+      }
+      return getMountPointStatus(src, children.size(), date);
+    } else if (children != null) {
+      // The src is a mount point, but there are no files or directories
+      return getMountPointStatus(src, 0, 0);
+    }
+    return null;
+  }
+
   @Override
   public boolean isFileClosed(String src) throws IOException {
     rpcServer.checkOperation(NameNode.OperationCategory.READ);
@@ -46,6 +46,7 @@
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -69,10 +70,14 @@
 import org.apache.hadoop.hdfs.server.federation.resolver.FederationNamenodeContext;
 import org.apache.hadoop.hdfs.server.federation.resolver.FederationNamenodeServiceState;
 import org.apache.hadoop.hdfs.server.federation.resolver.RemoteLocation;
+import org.apache.hadoop.io.retry.AsyncCallHandler;
 import org.apache.hadoop.io.retry.RetryPolicies;
 import org.apache.hadoop.io.retry.RetryPolicy;
 import org.apache.hadoop.io.retry.RetryPolicy.RetryAction.RetryDecision;
+import org.apache.hadoop.ipc.AsyncCallLimitExceededException;
 import org.apache.hadoop.ipc.CallerContext;
+import org.apache.hadoop.ipc.Client;
+import org.apache.hadoop.ipc.ProtobufHelper;
 import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.ipc.RetriableException;
 import org.apache.hadoop.ipc.Server;
@@ -80,11 +85,14 @@
 import org.apache.hadoop.ipc.StandbyException;
 import org.apache.hadoop.net.ConnectTimeoutException;
 import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.Preconditions;
+import org.apache.hadoop.util.concurrent.AsyncGet;
 import org.eclipse.jetty.util.ajax.JSON;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.thirdparty.protobuf.ServiceException;
 import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
@@ -120,6 +128,8 @@ public class RouterRpcClient {
   private final ConnectionManager connectionManager;
   /** Service to run asynchronous calls. */
   private final ThreadPoolExecutor executorService;
+  /** Calls sent without waiting for the response, null if disabled. */
+  private final RouterAsyncCallQueue asyncCallQueue;
   /** Retry policy for router -> NN communication. */
   private final RetryPolicy retryPolicy;
   /** Optional perf monitor. */
@@ -175,6 +185,15 @@ public RouterRpcClient(Configuration conf, Router router,
     }
     this.executorService = new ThreadPoolExecutor(numThreads, numThreads,
         0L, TimeUnit.MILLISECONDS, workQueue, threadFactory);
+    if (conf.getBoolean(
+        RBFConfigKeys.DFS_ROUTER_CLIENT_ASYNC_ENABLE,
+        RBFConfigKeys.DFS_ROUTER_CLIENT_ASYNC_ENABLE_DEFAULT)) {
+      this.asyncCallQueue = new RouterAsyncCallQueue(conf.getInt(
+          RBFConfigKeys.DFS_ROUTER_CLIENT_ASYNC_THREADS,
+          RBFConfigKeys.DFS_ROUTER_CLIENT_ASYNC_THREADS_DEFAULT));
+    } else {
+      this.asyncCallQueue = null;
+    }
 
     this.rpcMonitor = monitor;
 
@@ -238,6 +257,9 @@ public void shutdown() {
     if (this.executorService != null) {
       this.executorService.shutdownNow();
     }
+    if (this.asyncCallQueue != null) {
+      this.asyncCallQueue.shutdown();
+    }
     if (this.routerRpcFairnessPolicyController != null) {
       this.routerRpcFairnessPolicyController.shutdown();
     }
@@ -902,6 +924,267 @@ public <T> T invokeSingle(final RemoteLocationContext location,
     return ret;
   }
 
+  /**
+   * Check if single location calls can be forwarded without holding the
+   * calling thread until the namenode answers.
+   *
+   * @return If {@link #invokeSingleAsync} is available.
+   */
+  public boolean isAsyncEnabled() {
+    return this.asyncCallQueue != null;
+  }
+
+  /**
+   * Invokes a single proxy call for a single location without waiting for
+   * the response. The call is sent in asynchronous mode to the namenodes of
+   * the location in priority order, failing over on standby or unreachable
+   * namenodes, and the returned future completes when one of them answers.
+   * The protocol translator must support asynchronous mode for the method.
+   *
+   * Completes exceptionally like {@link #invokeSingle(RemoteLocationContext,
+   * RemoteMethod, Class)} throws.
+   *
+   * @param location RemoteLocation to invoke.
+   * @param remoteMethod The remote method and parameters to invoke.
+   * @return Future result of the call.
+   */
+  public CompletableFuture<Object> invokeSingleAsync(
+      final RemoteLocationContext location, final RemoteMethod remoteMethod) {
+    Preconditions.checkState(isAsyncEnabled(), "Async calls are disabled");
+    final CompletableFuture<Object> result = new CompletableFuture<>();
+    try {
+      final UserGroupInformation ugi = RouterRpcServer.getRemoteUser();
+      final String nsId = location.getNameserviceId();
+      acquirePermit(nsId, ugi, remoteMethod);
+      result.whenComplete((ret, t) -> releasePermit(nsId, ugi, remoteMethod));
+      List<? extends FederationNamenodeContext> namenodes =
+          getNamenodesForNameservice(nsId);
+      addClientIpToCallerContext();
+      if (rpcMonitor != null) {
+        rpcMonitor.proxyOp();
+      }
+      new AsyncInvocation(ugi, namenodes, location, remoteMethod, result)
+          .send(0, false);
+    } catch (IOException ioe) {
+      result.completeExceptionally(processException(ioe, location));
+    }
+    return result;
+  }
+
+  /**
+   * A call to a location sent in asynchronous mode. It is sent from the
+   * handler thread and, on failover, from a completer thread of the async
+   * call queue, which then also completes it. The completer threads run as
+   * the user of the call and with its caller context.
+   */
+  private final class AsyncInvocation {
+    private final UserGroupInformation ugi;
+    private final List<? extends FederationNamenodeContext> namenodes;
+    private final RemoteLocationContext location;
+    private final Class<?> protocol;
+    private final Method method;
+    private final Object[] params;
+    private final CallerContext callerContext;
+    private final CompletableFuture<Object> result;
+    private final Map<FederationNamenodeContext, IOException> ioes =
+        new LinkedHashMap<>();
+
+    private AsyncInvocation(UserGroupInformation ugi,
+        List<? extends FederationNamenodeContext> namenodes,
+        RemoteLocationContext location, RemoteMethod remoteMethod,
+        CompletableFuture<Object> result) throws IOException {
+      this.ugi = ugi;
+      this.namenodes = namenodes;
+      this.location = location;
+      this.protocol = remoteMethod.getProtocol();
+      this.method = remoteMethod.getMethod();
+      this.params = remoteMethod.getParams(location);
+      this.callerContext = CallerContext.getCurrent();
+      this.result = result;
+    }
+
+    /**
+     * Send the call to a namenode.
+     * @param index Index of the namenode in priority order.
+     * @param failover If the previous namenodes failed.
+     */
+    private void send(final int index, final boolean failover) {
+      if (index >= namenodes.size()) {
+        noNamenodeAvailable();
+        return;
+      }
+      final FederationNamenodeContext namenode = namenodes.get(index);
+      final String nsId = namenode.getNameserviceId();
+      final String rpcAddress = namenode.getRpcAddress();
+      final ConnectionContext connection;
+      try {
+        connection = getConnection(ugi, nsId, rpcAddress, protocol);
+      } catch (IOException ioe) {
+        failed(index, namenode, ioe);
+        return;
+      }
+      final int callId = asyncCallQueue.register(ugi, callerContext,
+          (ret, error) -> {
+            connection.release();
+            if (error == null) {
+              succeeded(namenode, connection, failover, ret);
+            } else {
+              failed(index, namenode, asIOException(error));
+            }
+          });
+      final AsyncGet<?, Exception> asyncGet;
+      try {
+        asyncGet = invokeAsync(callId, connection.getClient().getProxy());
+      } catch (AsyncCallLimitExceededException e) {
+        asyncCallQueue.unregister(callId);
+        connection.release();
+        LOG.debug("Too many async calls, invoking {} synchronously",
+            method.getName());
+        invokeSync(index);
+        return;
+      } catch (IOException ioe) {
+        asyncCallQueue.unregister(callId);
+        connection.release();
+        failed(index, namenode, ioe);
+        return;
+      }
+      asyncCallQueue.sent(callId, asyncGet);
+    }
+
+    /** Keep a RemoteException wrapped to tell it from a local failure. */
+    private IOException asIOException(Exception e) {
+      if (e instanceof ServiceException) {
+        return ProtobufHelper.getRemoteException((ServiceException) e);
+      }
+      if (e instanceof IOException) {
+        return (IOException) e;
+      }
+      return new IOException(e);
+    }
+
+    private AsyncGet<?, Exception> invokeAsync(int callId, Object proxy)
+        throws IOException {
+      final boolean async = Client.isAsynchronousMode();
+      Client.setAsynchronousMode(true);
+      try {
+        // The IPC client notifies the queue when the response arrives
+        Client.setCallIdAndRetryCount(callId, 0, asyncCallQueue);
+        method.invoke(proxy, params);
+        return AsyncCallHandler.getAsyncReturn();
+      } catch (InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new IOException(cause);
+      } catch (IllegalAccessException | IllegalArgumentException e) {
+        LOG.error("Unexpected exception while proxying API", e);
+        throw new IOException(e);
+      } finally {
+        Client.setAsynchronousMode(async);
+      }
+    }
+
+    private void invokeSync(int index) {
+      try {
+        result.complete(invokeMethod(ugi,
+            namenodes.subList(index, namenodes.size()), protocol, method,
+            params));
+      } catch (IOException ioe) {
+        result.completeExceptionally(processException(ioe, location));
+      }
+    }
+
+    private void succeeded(FederationNamenodeContext namenode,
+        ConnectionContext connection, boolean failover, Object ret) {
+      String nsId = namenode.getNameserviceId();
+      if (failover) {
+        // Success on alternate server, update
+        try {
+          namenodeResolver.updateActiveNamenode(
+              nsId, connection.getClient().getAddress());
+        } catch (IOException ioe) {
+          LOG.error("Cannot update the active namenode of {}", nsId, ioe);
+        }
+      }
+      if (rpcMonitor != null) {
+        rpcMonitor.proxyOpComplete(true, nsId);
+      }
+      if (router.getRouterClientMetrics() != null) {
+        router.getRouterClientMetrics().incInvokedMethod(method);
+      }
+      result.complete(ret);
+    }
+
+    private void failed(int index, FederationNamenodeContext namenode,
+        IOException ioe) {
+      String nsId = namenode.getNameserviceId();
+      if (ioe instanceof RemoteException) {
+        // A standby namenode fails over like in invoke()
+        IOException unwrapped = ((RemoteException) ioe)
+            .unwrapRemoteException(StandbyException.class);
+        if (unwrapped instanceof StandbyException) {
+          ioe = unwrapped;
+        }
+      }
+      ioes.put(namenode, ioe);
+      if (ioe instanceof StandbyException) {
+        if (rpcMonitor != null) {
+          rpcMonitor.proxyOpFailureStandby(nsId);
+        }
+        send(index + 1, true);
+      } else if (isUnavailableException(ioe)) {
+        if (rpcMonitor != null) {
+          rpcMonitor.proxyOpFailureCommunicate(nsId);
+        }
+        send(index + 1, true);
+      } else if (ioe instanceof RemoteException) {
+        if (rpcMonitor != null) {
+          rpcMonitor.proxyOpComplete(true, nsId);
+        }
+        IOException cleanIoe = getCleanException(
+            ((RemoteException) ioe).unwrapRemoteException());
+        result.completeExceptionally(processException(cleanIoe, location));
+      } else if (ioe instanceof ConnectionNullException) {
+        if (rpcMonitor != null) {
+          rpcMonitor.proxyOpFailureCommunicate(nsId);
+        }
+        // Throw StandbyException so that client can retry
+        StandbyException se = new StandbyException(ioe.getMessage());
+        se.initCause(ioe);
+        result.completeExceptionally(se);
+      } else {
+        if (rpcMonitor != null) {
+          rpcMonitor.proxyOpFailureCommunicate(nsId);
+          rpcMonitor.proxyOpComplete(false, nsId);
+        }
+        result.completeExceptionally(processException(ioe, location));
+      }
+    }
+
+    private void noNamenodeAvailable() {
+      if (rpcMonitor != null) {
+        rpcMonitor.proxyOpComplete(false, null);
+      }
+      String msg = "No namenode available to invoke " + method.getName() +
+          " " + Arrays.deepToString(params) + " in " + namenodes + " from " +
+          router.getRouterId();
+      LOG.error("{}: {}", msg, ioes);
+      int exConnect = 0;
+      for (IOException ioe : ioes.values()) {
+        if (!(ioe instanceof StandbyException) &&
+            isUnavailableException(ioe)) {
+          exConnect++;
+        }
+      }
+      if (exConnect == ioes.size()) {
+        result.completeExceptionally(new ConnectException(msg));
+      } else {
+        result.completeExceptionally(new StandbyException(msg));
+      }
+    }
+  }
+
   /**
    * Invokes sequential proxy calls to different locations. Continues to invoke
    * calls until a call returns without throwing a remote exception.
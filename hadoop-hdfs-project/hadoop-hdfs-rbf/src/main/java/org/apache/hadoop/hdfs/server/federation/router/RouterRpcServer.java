@@ -50,6 +50,7 @@
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -111,8 +112,11 @@
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
+import org.apache.hadoop.hdfs.protocol.ListingProjection;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.MetadataOp;
+import org.apache.hadoop.hdfs.protocol.MetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.OpenFileEntry;
 import org.apache.hadoop.hdfs.protocol.OpenFilesIterator.OpenFilesType;
 import org.apache.hadoop.hdfs.protocol.ReplicatedBlockStats;
@@ -290,7 +294,10 @@ public RouterRpcServer(Configuration configuration, Router router,
         ProtobufRpcEngine2.class);
 
     ClientNamenodeProtocolServerSideTranslatorPB
-        clientProtocolServerTranslator =
+        clientProtocolServerTranslator = this.conf.getBoolean(
+            RBFConfigKeys.DFS_ROUTER_CLIENT_ASYNC_ENABLE,
+            RBFConfigKeys.DFS_ROUTER_CLIENT_ASYNC_ENABLE_DEFAULT) ?
+            new RouterClientNamenodeProtocolServerSideTranslatorPB(this) :
             new ClientNamenodeProtocolServerSideTranslatorPB(this);
     BlockingService clientNNPbService = ClientNamenodeProtocol
         .newReflectiveBlockingService(clientProtocolServerTranslator);
@@ -974,6 +981,12 @@ public boolean delete(String src, boolean recursive) throws IOException {
     return clientProto.delete(src, recursive);
   }
 
+  @Override // ClientProtocol
+  public List<MetadataOpResult> batchMetadataOps(String clientName,
+      List<MetadataOp> ops) throws IOException {
+    return clientProto.batchMetadataOps(clientName, ops);
+  }
+
   @Override // ClientProtocol
   public boolean mkdirs(String src, FsPermission masked, boolean createParent)
       throws IOException {
@@ -991,6 +1004,13 @@ public DirectoryListing getListing(String src, byte[] startAfter,
     return clientProto.getListing(src, startAfter, needLocation);
   }
 
+  @Override // ClientProtocol
+  public DirectoryListing getFilteredListing(String src, byte[] startAfter,
+      String nameFilter, ListingProjection projection) throws IOException {
+    return clientProto.getFilteredListing(src, startAfter, nameFilter,
+        projection);
+  }
+
   @Override
   public BatchedDirectoryListing getBatchedListing(
       String[] srcs, byte[] startAfter, boolean needLocation)
@@ -1003,6 +1023,16 @@ public HdfsFileStatus getFileInfo(String src) throws IOException {
     return clientProto.getFileInfo(src);
   }
 
+  /**
+   * Get the file info of a path without holding the handler until the
+   * namenode answers.
+   * @param src Path in the federation.
+   * @return Future file status, null if the path does not exist.
+   */
+  CompletableFuture<HdfsFileStatus> getFileInfoAsync(String src) {
+    return clientProto.getFileInfoAsync(src);
+  }
+
   @Override // ClientProtocol
   public boolean isFileClosed(String src) throws IOException {
     return clientProto.isFileClosed(src);
@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.federation.router;
+
+import static org.apache.hadoop.hdfs.server.federation.FederationTestUtils.NAMENODES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.security.PrivilegedExceptionAction;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSClient;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.server.federation.MiniRouterDFSCluster;
+import org.apache.hadoop.hdfs.server.federation.MiniRouterDFSCluster.RouterContext;
+import org.apache.hadoop.hdfs.server.federation.RouterConfigBuilder;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the Router forwarding calls without holding a handler until the
+ * namenode answers.
+ */
+public class TestRouterAsyncRpc {
+
+  private MiniRouterDFSCluster cluster;
+  private RouterContext router;
+  private String ns;
+
+  @Before
+  public void setUp() throws Exception {
+    cluster = new MiniRouterDFSCluster(true, 2);
+    cluster.setNumDatanodesPerNameservice(1);
+    cluster.startCluster();
+
+    Configuration routerConf = new RouterConfigBuilder().rpc().build();
+    routerConf.setBoolean(RBFConfigKeys.DFS_ROUTER_CLIENT_ASYNC_ENABLE, true);
+    // Few handlers; the calls must not depend on them being free
+    routerConf.setInt(RBFConfigKeys.DFS_ROUTER_HANDLER_COUNT_KEY, 1);
+    routerConf.setInt(
+        CommonConfigurationKeys.IPC_SERVER_DEFERRED_RESPONSE_THREADS_KEY, 2);
+    cluster.addRouterOverrides(routerConf);
+    cluster.startRouters();
+
+    for (String nsId : cluster.getNameservices()) {
+      cluster.switchToActive(nsId, NAMENODES[0]);
+      cluster.switchToStandby(nsId, NAMENODES[1]);
+    }
+    cluster.registerNamenodes();
+    cluster.waitNamenodeRegistration();
+    cluster.installMockLocations();
+
+    router = cluster.getRandomRouter();
+    ns = cluster.getNameservices().get(0);
+    router.getFileSystem().mkdirs(
+        new Path(cluster.getFederatedTestDirectoryForNS(ns)));
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test
+  public void testGetFileInfo() throws Exception {
+    assertTrue(router.getRouterRpcClient().isAsyncEnabled());
+
+    String file = cluster.getFederatedTestDirectoryForNS(ns) + "/file";
+    FileSystem routerFs = router.getFileSystem();
+    DFSTestUtil.createFile(routerFs, new Path(file), 10, (short) 1, 0L);
+
+    DFSClient client = router.getClient();
+    HdfsFileStatus status = client.getFileInfo(file);
+    assertNotNull(status);
+    assertEquals(10, status.getLen());
+    assertFalse(status.isDirectory());
+    assertNull(client.getFileInfo(file + "-missing"));
+
+    // A mount point without a real path is answered by the Router
+    HdfsFileStatus root = client.getFileInfo("/");
+    assertNotNull(root);
+    assertTrue(root.isDirectory());
+  }
+
+  @Test
+  public void testGetFileInfoRemoteException() throws Exception {
+    String dir = cluster.getFederatedTestDirectoryForNS(ns) + "/private";
+    FileSystem routerFs = router.getFileSystem();
+    routerFs.mkdirs(new Path(dir), new FsPermission((short) 0700));
+    routerFs.setPermission(new Path(dir), new FsPermission((short) 0700));
+
+    UserGroupInformation user = UserGroupInformation.createUserForTesting(
+        "asyncUser", new String[] {"asyncGroup"});
+    DFSClient client = router.getClient(user);
+    try {
+      user.doAs((PrivilegedExceptionAction<HdfsFileStatus>)
+          () -> client.getFileInfo(dir + "/file"));
+      fail("Expected an AccessControlException");
+    } catch (AccessControlException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("Permission denied"));
+    }
+  }
+
+  @Test
+  public void testGetFileInfoFailover() throws Exception {
+    String dir = cluster.getFederatedTestDirectoryForNS(ns);
+    DFSClient client = router.getClient();
+    assertNotNull(client.getFileInfo(dir));
+
+    // The Router still sends the call first to nn0, now in standby
+    cluster.switchToStandby(ns, NAMENODES[0]);
+    cluster.switchToActive(ns, NAMENODES[1]);
+    HdfsFileStatus status = client.getFileInfo(dir);
+    assertNotNull(status);
+    assertTrue(status.isDirectory());
+  }
+
+  @Test
+  public void testGetFileInfoFailoverAsCaller() throws Exception {
+    String dir = cluster.getFederatedTestDirectoryForNS(ns) + "/private";
+    FileSystem routerFs = router.getFileSystem();
+    routerFs.mkdirs(new Path(dir), new FsPermission((short) 0700));
+    routerFs.setPermission(new Path(dir), new FsPermission((short) 0700));
+
+    // The failover to nn1 is sent by an async call completer, which must
+    // still act as the caller and not as the Router
+    cluster.switchToStandby(ns, NAMENODES[0]);
+    cluster.switchToActive(ns, NAMENODES[1]);
+    UserGroupInformation user = UserGroupInformation.createUserForTesting(
+        "asyncUser", new String[] {"asyncGroup"});
+    DFSClient client = router.getClient(user);
+    try {
+      user.doAs((PrivilegedExceptionAction<HdfsFileStatus>)
+          () -> client.getFileInfo(dir + "/file"));
+      fail("Expected an AccessControlException");
+    } catch (AccessControlException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("user=asyncUser"));
+    }
+  }
+}
@@ -165,6 +165,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.datanode.replica.cache.expiry.time";
   public static final long DFS_DATANODE_REPLICA_CACHE_EXPIRY_TIME_DEFAULT =
       300000;
+  public static final String  DFS_DATANODE_REPLICA_STORE_ENABLED_KEY =
+      "dfs.datanode.replica.store.enabled";
+  public static final boolean DFS_DATANODE_REPLICA_STORE_ENABLED_DEFAULT =
+      false;
 
   // This setting is for testing/internal use only.
   public static final String  DFS_DATANODE_DUPLICATE_REPLICA_DELETION = "dfs.datanode.duplicate.replica.deletion";
@@ -223,6 +227,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "0.0.0.0:9869";
   public static final String  DFS_NAMENODE_CHECKPOINT_QUIET_MULTIPLIER_KEY = "dfs.namenode.checkpoint.check.quiet-multiplier";
   public static final double  DFS_NAMENODE_CHECKPOINT_QUIET_MULTIPLIER_DEFAULT = 1.5;
+  public static final String  DFS_NAMENODE_CHECKPOINT_UPLOAD_MIN_INTERVAL_KEY =
+      "dfs.namenode.checkpoint.upload.min-interval";
+  public static final long    DFS_NAMENODE_CHECKPOINT_UPLOAD_MIN_INTERVAL_DEFAULT =
+      0;
   public static final String  DFS_NAMENODE_CHECKPOINT_CHECK_PERIOD_KEY = "dfs.namenode.checkpoint.check.period";
   public static final long    DFS_NAMENODE_CHECKPOINT_CHECK_PERIOD_DEFAULT = 60;
   public static final String  DFS_NAMENODE_CHECKPOINT_PERIOD_KEY =
@@ -419,10 +427,16 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_LIST_LIMIT_DEFAULT = 1000;
   public static final String  DFS_NAMENODE_BATCHED_LISTING_LIMIT = "dfs.batched.ls.limit";
   public static final int     DFS_NAMENODE_BATCHED_LISTING_LIMIT_DEFAULT = 100;
+  public static final String  DFS_NAMENODE_BATCHED_METADATA_OPS_LIMIT =
+      "dfs.batched.metadata.ops.limit";
+  public static final int     DFS_NAMENODE_BATCHED_METADATA_OPS_LIMIT_DEFAULT =
+      1000;
   public static final String  DFS_CONTENT_SUMMARY_LIMIT_KEY = "dfs.content-summary.limit";
   public static final int     DFS_CONTENT_SUMMARY_LIMIT_DEFAULT = 5000;
   public static final String  DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY = "dfs.content-summary.sleep-microsec";
   public static final long    DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT = 500;
+  public static final String  DFS_CONTENT_SUMMARY_CACHE_MAX_AGE_KEY = "dfs.content-summary.cache.max-age";
+  public static final long    DFS_CONTENT_SUMMARY_CACHE_MAX_AGE_DEFAULT = 0;
   public static final String  DFS_DATANODE_FAILED_VOLUMES_TOLERATED_KEY = "dfs.datanode.failed.volumes.tolerated";
   public static final int     DFS_DATANODE_FAILED_VOLUMES_TOLERATED_DEFAULT = 0;
   public static final String
@@ -604,6 +618,26 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.namenode.lock.detailed-metrics.enabled";
   public static final boolean DFS_NAMENODE_LOCK_DETAILED_METRICS_DEFAULT =
       false;
+  public static final String DFS_NAMENODE_SUBTREE_LOCK_ENABLED_KEY =
+      "dfs.namenode.subtree.lock.enabled";
+  public static final boolean DFS_NAMENODE_SUBTREE_LOCK_ENABLED_DEFAULT =
+      false;
+  public static final String DFS_NAMENODE_SUBTREE_LOCK_DEPTH_KEY =
+      "dfs.namenode.subtree.lock.depth";
+  public static final int DFS_NAMENODE_SUBTREE_LOCK_DEPTH_DEFAULT = 1;
+  public static final String
+      DFS_NAMENODE_BLOCKMANAGER_LOCK_SPLIT_ENABLED_KEY =
+      "dfs.namenode.blockmanager.lock.split.enabled";
+  public static final boolean
+      DFS_NAMENODE_BLOCKMANAGER_LOCK_SPLIT_ENABLED_DEFAULT = false;
+  public static final String DFS_NAMENODE_GSET_RESIZABLE_ENABLED_KEY =
+      "dfs.namenode.gset.resizable.enabled";
+  public static final boolean DFS_NAMENODE_GSET_RESIZABLE_ENABLED_DEFAULT =
+      false;
+  public static final String DFS_NAMENODE_GSET_RESIZABLE_INITIAL_CAPACITY_KEY =
+      "dfs.namenode.gset.resizable.initial-capacity";
+  public static final int
+      DFS_NAMENODE_GSET_RESIZABLE_INITIAL_CAPACITY_DEFAULT = 1 << 20;
   // Threshold for how long namenode locks must be held for the
   // event to be logged
   public static final String  DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_KEY =
@@ -912,6 +946,16 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.datanode.directoryscan.max.notify.count";
   public static final long
       DFS_DATANODE_DIRECTORYSCAN_MAX_NOTIFY_COUNT_DEFAULT = 5;
+  public static final String
+      DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_KEY =
+      "dfs.datanode.directoryscan.incremental.enabled";
+  public static final boolean
+      DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_DEFAULT = false;
+  public static final String
+      DFS_DATANODE_DIRECTORYSCAN_FULL_INTERVAL_KEY =
+      "dfs.datanode.directoryscan.full.interval";
+  public static final long
+      DFS_DATANODE_DIRECTORYSCAN_FULL_INTERVAL_DEFAULT = 604800;
   public static final String  DFS_DATANODE_DNS_INTERFACE_KEY = "dfs.datanode.dns.interface";
   public static final String  DFS_DATANODE_DNS_INTERFACE_DEFAULT = "default";
   public static final String  DFS_DATANODE_DNS_NAMESERVER_KEY = "dfs.datanode.dns.nameserver";
@@ -936,6 +980,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_DATANODE_MAX_RECEIVER_THREADS_KEY =
       HdfsClientConfigKeys.DeprecatedKeys.DFS_DATANODE_MAX_RECEIVER_THREADS_KEY;
   public static final int     DFS_DATANODE_MAX_RECEIVER_THREADS_DEFAULT = 4096;
+  public static final String  DFS_DATANODE_DATA_TRANSFER_EVENT_LOOP_ENABLED_KEY =
+      "dfs.datanode.data.transfer.event-loop.enabled";
+  public static final boolean DFS_DATANODE_DATA_TRANSFER_EVENT_LOOP_ENABLED_DEFAULT =
+      false;
+  public static final String  DFS_DATANODE_DATA_TRANSFER_EVENT_LOOP_SELECTOR_THREADS_KEY =
+      "dfs.datanode.data.transfer.event-loop.selector.threads";
+  public static final int     DFS_DATANODE_DATA_TRANSFER_EVENT_LOOP_SELECTOR_THREADS_DEFAULT =
+      2;
   public static final String  DFS_DATANODE_SCAN_PERIOD_HOURS_KEY = "dfs.datanode.scan.period.hours";
   public static final int     DFS_DATANODE_SCAN_PERIOD_HOURS_DEFAULT = 21 * 24;  // 3 weeks.
   public static final String  DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND = "dfs.block.scanner.volume.bytes.per.second";
@@ -954,6 +1006,23 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       false;
   public static final String  DFS_DATANODE_TRANSFERTO_ALLOWED_KEY = "dfs.datanode.transferTo.allowed";
   public static final boolean DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT = true;
+  public static final String  DFS_DATANODE_TRANSFERTO_PACKET_SIZE_KEY =
+      "dfs.datanode.transferTo.packet.size";
+  public static final int     DFS_DATANODE_TRANSFERTO_PACKET_SIZE_DEFAULT =
+      64 * 1024;
+  public static final String  DFS_DATANODE_TRANSFERTO_MMAP_ENABLED_KEY =
+      "dfs.datanode.transferTo.mmap.enabled";
+  public static final boolean DFS_DATANODE_TRANSFERTO_MMAP_ENABLED_DEFAULT =
+      false;
+  public static final String  DFS_DATANODE_HSYNC_GROUP_COMMIT_ENABLED_KEY =
+      "dfs.datanode.hsync.group-commit.enabled";
+  public static final boolean DFS_DATANODE_HSYNC_GROUP_COMMIT_ENABLED_DEFAULT =
+      false;
+  public static final String
+      DFS_DATANODE_HSYNC_GROUP_COMMIT_MAX_PARALLEL_SYNCS_KEY =
+      "dfs.datanode.hsync.group-commit.max-parallel-syncs";
+  public static final int
+      DFS_DATANODE_HSYNC_GROUP_COMMIT_MAX_PARALLEL_SYNCS_DEFAULT = 8;
   public static final String  DFS_HEARTBEAT_INTERVAL_KEY = "dfs.heartbeat.interval";
   public static final long    DFS_HEARTBEAT_INTERVAL_DEFAULT = 3;
   public static final String  DFS_DATANODE_LIFELINE_INTERVAL_SECONDS_KEY =
@@ -1099,6 +1168,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.image.parallel.load";
   public static final boolean DFS_IMAGE_PARALLEL_LOAD_DEFAULT = false;
 
+  public static final String DFS_IMAGE_PARALLEL_SAVE_KEY =
+      "dfs.image.parallel.save";
+  public static final boolean DFS_IMAGE_PARALLEL_SAVE_DEFAULT = false;
+
   public static final String DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY =
       "dfs.image.parallel.target.sections";
   public static final int DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT = 12;
@@ -1297,6 +1370,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_HA_TAILEDITS_INPROGRESS_KEY =
           "dfs.ha.tail-edits.in-progress";
   public static final boolean DFS_HA_TAILEDITS_INPROGRESS_DEFAULT = false;
+  public static final String DFS_HA_TAILEDITS_PIPELINED_KEY =
+      "dfs.ha.tail-edits.pipelined";
+  public static final boolean DFS_HA_TAILEDITS_PIPELINED_DEFAULT = false;
+  public static final String DFS_HA_TAILEDITS_PIPELINED_BATCH_SIZE_KEY =
+      "dfs.ha.tail-edits.pipelined.batch-size";
+  public static final int DFS_HA_TAILEDITS_PIPELINED_BATCH_SIZE_DEFAULT = 1000;
   public static final String DFS_HA_TAILEDITS_ROLLEDITS_TIMEOUT_KEY =
       "dfs.ha.tail-edits.rolledits.timeout";
   public static final int DFS_HA_TAILEDITS_ROLLEDITS_TIMEOUT_DEFAULT = 60; // 1m
@@ -1413,6 +1492,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   // Journal-node related configs for the client side.
   public static final String  DFS_QJOURNAL_QUEUE_SIZE_LIMIT_KEY = "dfs.qjournal.queued-edits.limit.mb";
   public static final int     DFS_QJOURNAL_QUEUE_SIZE_LIMIT_DEFAULT = 10;
+  public static final String  DFS_QJOURNAL_COALESCE_EDITS_LIMIT_BYTES_KEY = "dfs.qjournal.coalesce-edits.limit.bytes";
+  public static final int     DFS_QJOURNAL_COALESCE_EDITS_LIMIT_BYTES_DEFAULT = 0;
   
   // Quorum-journal timeouts for various operations. Unlikely to need
   // to be tweaked, but configurable just in case.
@@ -23,6 +23,12 @@
 import java.net.URI;
 import java.net.URL;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -65,6 +71,7 @@
 import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.ListenableFuture;
 import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.ListeningExecutorService;
 import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.MoreExecutors;
+import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.SettableFuture;
 import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.UncaughtExceptionHandlers;
 
@@ -137,6 +144,18 @@ public class IPCLoggerChannel implements AsyncLogger {
    */
   private final int queueSizeLimitBytes;
 
+  /**
+   * The maximum number of bytes of queued edits which may be sent to the
+   * remote node in one journal RPC, or 0 if each batch is sent on its own.
+   */
+  private final int coalesceEditsLimitBytes;
+
+  /**
+   * Batches of edits which have been queued but not yet sent, in txid order.
+   * Only used when {@link #coalesceEditsLimitBytes} is positive.
+   */
+  private final Deque<QueuedEdits> queuedEdits = new ArrayDeque<>();
+
   /**
    * If this logger misses some edits, or restarts in the middle of
    * a segment, the writer won't be able to write any more edits until
@@ -182,6 +201,9 @@ public IPCLoggerChannel(Configuration conf,
     this.queueSizeLimitBytes = 1024 * 1024 * conf.getInt(
         DFSConfigKeys.DFS_QJOURNAL_QUEUE_SIZE_LIMIT_KEY,
         DFSConfigKeys.DFS_QJOURNAL_QUEUE_SIZE_LIMIT_DEFAULT);
+    this.coalesceEditsLimitBytes = Math.max(0, conf.getInt(
+        DFSConfigKeys.DFS_QJOURNAL_COALESCE_EDITS_LIMIT_BYTES_KEY,
+        DFSConfigKeys.DFS_QJOURNAL_COALESCE_EDITS_LIMIT_BYTES_DEFAULT));
     
     singleThreadExecutor = MoreExecutors.listeningDecorator(
         createSingleThreadExecutor());
@@ -392,49 +414,22 @@ public ListenableFuture<Void> sendEdits(
     // to calculate how far we are lagging.
     final long submitNanos = System.nanoTime();
     
+    final QueuedEdits edits = new QueuedEdits(
+        segmentTxId, firstTxnId, numTxns, data, submitNanos);
     ListenableFuture<Void> ret = null;
     try {
-      ret = singleThreadExecutor.submit(new Callable<Void>() {
-        @Override
-        public Void call() throws IOException {
-          throwIfOutOfSync();
-
-          long rpcSendTimeNanos = System.nanoTime();
-          try {
-            getProxy().journal(createReqInfo(),
-                segmentTxId, firstTxnId, numTxns, data);
-          } catch (IOException e) {
-            QuorumJournalManager.LOG.warn(
-                "Remote journal " + IPCLoggerChannel.this + " failed to " +
-                "write txns " + firstTxnId + "-" + (firstTxnId + numTxns - 1) +
-                ". Will try to write to this JN again after the next " +
-                "log roll.", e); 
-            synchronized (IPCLoggerChannel.this) {
-              outOfSync = true;
-            }
-            throw e;
-          } finally {
-            long now = System.nanoTime();
-            long rpcTime = TimeUnit.MICROSECONDS.convert(
-                now - rpcSendTimeNanos, TimeUnit.NANOSECONDS);
-            long endToEndTime = TimeUnit.MICROSECONDS.convert(
-                now - submitNanos, TimeUnit.NANOSECONDS);
-            metrics.addWriteEndToEndLatency(endToEndTime);
-            metrics.addWriteRpcLatency(rpcTime);
-            if (rpcTime / 1000 > WARN_JOURNAL_MILLIS_THRESHOLD) {
-              QuorumJournalManager.LOG.warn(
-                  "Took " + (rpcTime / 1000) + "ms to send a batch of " +
-                  numTxns + " edits (" + data.length + " bytes) to " +
-                  "remote journal " + IPCLoggerChannel.this);
-            }
-          }
-          synchronized (IPCLoggerChannel.this) {
-            highestAckedTxId = firstTxnId + numTxns - 1;
-            lastAckNanos = submitNanos;
+      if (coalesceEditsLimitBytes > 0) {
+        ret = submitCoalescable(edits);
+      } else {
+        ret = singleThreadExecutor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            throwIfOutOfSync();
+            journal(Collections.singletonList(edits));
+            return null;
           }
-          return null;
-        }
-      });
+        });
+      }
     } finally {
       if (ret == null) {
         // it didn't successfully get submitted,
@@ -460,6 +455,151 @@ public void onSuccess(Void t) {
     return ret;
   }
 
+  /**
+   * Queue the edits and submit a call which sends them, together with the
+   * batches queued behind them which continue the same segment, unless an
+   * earlier call has already sent them. A remote node which has fallen
+   * behind thus catches up with fewer, larger RPCs, each of which costs the
+   * JournalNode a single fsync.
+   */
+  private ListenableFuture<Void> submitCoalescable(final QueuedEdits edits) {
+    synchronized (this) {
+      queuedEdits.add(edits);
+    }
+    try {
+      singleThreadExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          sendQueuedEdits(edits);
+        }
+      });
+    } catch (RuntimeException e) {
+      synchronized (this) {
+        queuedEdits.remove(edits);
+      }
+      throw e;
+    }
+    return edits.result;
+  }
+
+  private void sendQueuedEdits(QueuedEdits head) {
+    List<QueuedEdits> group = new ArrayList<>();
+    synchronized (this) {
+      // Calls run in submission order, so the batch is either at the head
+      // of the queue or was sent along with an earlier one.
+      if (queuedEdits.peek() != head) {
+        return;
+      }
+      int bytes = 0;
+      QueuedEdits prev = null;
+      for (Iterator<QueuedEdits> it = queuedEdits.iterator(); it.hasNext();) {
+        QueuedEdits next = it.next();
+        if (prev != null && (next.segmentTxId != prev.segmentTxId ||
+            next.firstTxnId != prev.getLastTxnId() + 1 ||
+            bytes + next.data.length > coalesceEditsLimitBytes)) {
+          break;
+        }
+        it.remove();
+        group.add(next);
+        bytes += next.data.length;
+        prev = next;
+      }
+    }
+    try {
+      throwIfOutOfSync();
+      journal(group);
+      for (QueuedEdits edits : group) {
+        edits.result.set(null);
+      }
+    } catch (Throwable t) {
+      for (QueuedEdits edits : group) {
+        edits.result.setException(t);
+      }
+    }
+  }
+
+  /**
+   * Send the given contiguous batches of one segment in a single RPC.
+   */
+  private void journal(List<QueuedEdits> group) throws IOException {
+    QueuedEdits first = group.get(0);
+    QueuedEdits last = group.get(group.size() - 1);
+    int numTxns = (int) (last.getLastTxnId() - first.firstTxnId + 1);
+    byte[] data = first.data;
+    if (group.size() > 1) {
+      int length = 0;
+      for (QueuedEdits edits : group) {
+        length += edits.data.length;
+      }
+      data = new byte[length];
+      int off = 0;
+      for (QueuedEdits edits : group) {
+        System.arraycopy(edits.data, 0, data, off, edits.data.length);
+        off += edits.data.length;
+      }
+    }
+
+    long rpcSendTimeNanos = System.nanoTime();
+    try {
+      getProxy().journal(createReqInfo(),
+          first.segmentTxId, first.firstTxnId, numTxns, data);
+    } catch (IOException e) {
+      QuorumJournalManager.LOG.warn(
+          "Remote journal " + IPCLoggerChannel.this + " failed to " +
+          "write txns " + first.firstTxnId + "-" + last.getLastTxnId() +
+          ". Will try to write to this JN again after the next " +
+          "log roll.", e);
+      synchronized (IPCLoggerChannel.this) {
+        outOfSync = true;
+      }
+      throw e;
+    } finally {
+      long now = System.nanoTime();
+      long rpcTime = TimeUnit.MICROSECONDS.convert(
+          now - rpcSendTimeNanos, TimeUnit.NANOSECONDS);
+      for (QueuedEdits edits : group) {
+        metrics.addWriteEndToEndLatency(TimeUnit.MICROSECONDS.convert(
+            now - edits.submitNanos, TimeUnit.NANOSECONDS));
+      }
+      metrics.addWriteRpcLatency(rpcTime);
+      if (rpcTime / 1000 > WARN_JOURNAL_MILLIS_THRESHOLD) {
+        QuorumJournalManager.LOG.warn(
+            "Took " + (rpcTime / 1000) + "ms to send a batch of " +
+            numTxns + " edits (" + data.length + " bytes) to " +
+            "remote journal " + IPCLoggerChannel.this);
+      }
+    }
+    synchronized (IPCLoggerChannel.this) {
+      highestAckedTxId = last.getLastTxnId();
+      lastAckNanos = last.submitNanos;
+    }
+  }
+
+  /**
+   * A batch of edits passed to {@link #sendEdits}.
+   */
+  private static final class QueuedEdits {
+    private final long segmentTxId;
+    private final long firstTxnId;
+    private final int numTxns;
+    private final byte[] data;
+    private final long submitNanos;
+    private final SettableFuture<Void> result = SettableFuture.create();
+
+    QueuedEdits(long segmentTxId, long firstTxnId, int numTxns, byte[] data,
+        long submitNanos) {
+      this.segmentTxId = segmentTxId;
+      this.firstTxnId = firstTxnId;
+      this.numTxns = numTxns;
+      this.data = data;
+      this.submitNanos = submitNanos;
+    }
+
+    long getLastTxnId() {
+      return firstTxnId + numTxns - 1;
+    }
+  }
+
   private void throwIfOutOfSync()
       throws JournalOutOfSyncException, IOException {
     if (isOutOfSync()) {
@@ -82,7 +82,8 @@ NewEpochResponseProto newEpoch(String journalId,
   /**
    * Journal edit records.
    * This message is sent by the active name-node to the JournalNodes
-   * to write edits to their local logs.
+   * to write edits to their local logs. The records must not be modified
+   * after this call, since they may be sent without being copied.
    */
   public void journal(RequestInfo reqInfo,
                       long segmentTxId,
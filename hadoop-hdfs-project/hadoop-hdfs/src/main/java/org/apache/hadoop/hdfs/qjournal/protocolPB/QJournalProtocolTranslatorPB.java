@@ -25,7 +25,6 @@
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.hdfs.protocolPB.JournalProtocolPB;
 import org.apache.hadoop.hdfs.protocolPB.PBHelper;
-import org.apache.hadoop.hdfs.protocolPB.PBHelperClient;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocol;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.AcceptRecoveryRequestProto;
@@ -70,6 +69,7 @@
 
 import org.apache.hadoop.thirdparty.protobuf.RpcController;
 import org.apache.hadoop.thirdparty.protobuf.ServiceException;
+import org.apache.hadoop.thirdparty.protobuf.UnsafeByteOperations;
 
 /**
  * This class is the client side translator to translate the requests made on
@@ -185,7 +185,9 @@ public void journal(RequestInfo reqInfo,
         .setSegmentTxnId(segmentTxId)
         .setFirstTxnId(firstTxnId)
         .setNumTxns(numTxns)
-        .setRecords(PBHelperClient.getByteString(records))
+        // The caller hands over its own copy of the edits, so wrap rather
+        // than copy them once more for every JournalNode.
+        .setRecords(UnsafeByteOperations.unsafeWrap(records))
         .build();
     try {
       rpcProxy.journal(NULL_CONTROLLER, req);
@@ -97,6 +97,7 @@
 import org.apache.hadoop.hdfs.server.namenode.ha.HAContext;
 import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.hdfs.server.namenode.sps.StoragePolicySatisfyManager;
+import org.apache.hadoop.hdfs.util.RwLockMode;
 import org.apache.hadoop.hdfs.server.protocol.BlockCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockReportContext;
 import org.apache.hadoop.hdfs.server.protocol.BlocksWithLocations;
@@ -195,6 +196,14 @@ public class BlockManager implements BlockStatsMXBean {
   private final long deleteBlockLockTimeMs = 500;
   private final long deleteBlockUnlockIntervalTimeMs = 100;
 
+  /**
+   * Committed blocks which reached minimal replication while a block report
+   * was processed in BM mode. Completing them updates the quota of their
+   * files, so it is deferred to {@link #completePendingBlocks()}.
+   */
+  private final Queue<BlockInfo> pendingCompletions =
+      new ConcurrentLinkedQueue<>();
+
   /** flag indicating whether replication queues have been initialized */
   private boolean initializedReplQueues;
 
@@ -492,9 +501,17 @@ public BlockManager(final Namesystem namesystem, boolean haEnabled,
         startupDelayBlockDeletionInMs,
         blockIdManager);
     markedDeleteQueue = new ConcurrentLinkedQueue<>();
-    // Compute the map capacity by allocating 2% of total memory
-    blocksMap = new BlocksMap(
-        LightWeightGSet.computeCapacity(2.0, "BlocksMap"));
+    if (conf.getBoolean(DFSConfigKeys.DFS_NAMENODE_GSET_RESIZABLE_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_GSET_RESIZABLE_ENABLED_DEFAULT)) {
+      blocksMap = new BlocksMap(conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_GSET_RESIZABLE_INITIAL_CAPACITY_KEY,
+          DFSConfigKeys.DFS_NAMENODE_GSET_RESIZABLE_INITIAL_CAPACITY_DEFAULT),
+          true);
+    } else {
+      // Compute the map capacity by allocating 2% of total memory
+      blocksMap = new BlocksMap(
+          LightWeightGSet.computeCapacity(2.0, "BlocksMap"));
+    }
     placementPolicies = new BlockPlacementPolicies(
       conf, datanodeManager.getFSClusterStats(),
       datanodeManager.getNetworkTopology(),
@@ -793,7 +810,7 @@ public void refreshBlockPlacementPolicy(Configuration conf) {
 
   /** Dump meta data to out. */
   public void metaSave(PrintWriter out) {
-    assert namesystem.hasReadLock(); // TODO: block manager read lock and NS write lock
+    assert namesystem.hasReadLock(RwLockMode.BM);
     final List<DatanodeDescriptor> live = new ArrayList<DatanodeDescriptor>();
     final List<DatanodeDescriptor> dead = new ArrayList<DatanodeDescriptor>();
     datanodeManager.fetchDatanodes(live, dead, false);
@@ -1208,6 +1225,12 @@ private void completeBlock(BlockInfo curBlock, INodesInPath iip,
       throw new IOException(
           "Cannot complete block: block has not been COMMITTED by the client");
     }
+    if (!namesystem.hasWriteLock()) {
+      // Block reports are processed holding the namespace lock shared only.
+      // Leave the block committed until the report releases the lock.
+      pendingCompletions.add(curBlock);
+      return;
+    }
 
     convertToCompleteBlock(curBlock, iip);
 
@@ -1224,6 +1247,37 @@ private void completeBlock(BlockInfo curBlock, INodesInPath iip,
         curBlock);
   }
 
+  /**
+   * Complete the blocks which block reports processed in BM mode found to be
+   * committed and minimally replicated. Completing a block updates the quota
+   * of its file, so this takes the namespace write lock, but only for as long
+   * as it takes to complete the pending blocks. It is a no-op if the current
+   * thread holds the namesystem lock; the outermost lock holder applies the
+   * completions once it released the lock.
+   */
+  public void completePendingBlocks() {
+    if (pendingCompletions.isEmpty() || namesystem.hasReadLock()) {
+      return;
+    }
+    namesystem.writeLock();
+    try {
+      BlockInfo block;
+      while ((block = pendingCompletions.poll()) != null) {
+        if (block.isDeleted() || block.isComplete()) {
+          continue;
+        }
+        try {
+          completeBlock(block, null, false);
+        } catch (IOException e) {
+          // the block lost its replicas or is being recovered.
+          LOG.debug("Not completing {}: {}", block, e.getMessage());
+        }
+      }
+    } finally {
+      namesystem.writeUnlock(RwLockMode.GLOBAL, "completePendingBlocks");
+    }
+  }
+
   /**
    * Convert a specified block of the file to a complete block.
    * Skips validity checking and safe mode block total updates; use
@@ -1236,6 +1290,8 @@ private void completeBlock(BlockInfo curBlock, INodesInPath iip,
    */
   private void convertToCompleteBlock(BlockInfo curBlock, INodesInPath iip)
       throws IOException {
+    assert namesystem.hasWriteLock() :
+        "completing a block updates the quota of its file";
     curBlock.convertToCompleteBlock();
     namesystem.getFSDirectory().updateSpaceForCompleteBlock(curBlock, iip);
   }
@@ -1489,7 +1545,7 @@ public LocatedBlocks createLocatedBlocks(final BlockInfo[] blocks,
       final boolean inSnapshot, FileEncryptionInfo feInfo,
       ErasureCodingPolicy ecPolicy)
       throws IOException {
-    assert namesystem.hasReadLock();
+    assert namesystem.hasReadLock(RwLockMode.BM);
     if (blocks == null) {
       return null;
     } else if (blocks.length == 0) {
@@ -1733,7 +1789,7 @@ void removeBlocksAssociatedTo(final DatanodeDescriptor node) {
 
   /** Remove the blocks associated to the given DatanodeStorageInfo. */
   void removeBlocksAssociatedTo(final DatanodeStorageInfo storageInfo) {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasWriteLock(RwLockMode.BM);
     final Iterator<BlockInfo> it = storageInfo.getBlockIterator();
     DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
     while(it.hasNext()) {
@@ -1804,7 +1860,7 @@ private Block getBlockOnStorage(BlockInfo storedBlock,
    */
   public void findAndMarkBlockAsCorrupt(final ExtendedBlock blk,
       final DatanodeInfo dn, String storageID, String reason) throws IOException {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasWriteLock(RwLockMode.BM);
     final Block reportedBlock = blk.getLocalBlock();
     final BlockInfo storedBlock = getStoredBlock(reportedBlock);
     if (storedBlock == null) {
@@ -2002,7 +2058,7 @@ int computeInvalidateWork(int nodesToProcess) {
    */
   int computeBlockReconstructionWork(int blocksToProcess) {
     List<List<BlockInfo>> blocksToReconstruct = null;
-    namesystem.writeLock();
+    namesystem.writeLock(RwLockMode.BM);
     try {
       boolean reset = false;
       if (replQueueResetToHeadThreshold > 0) {
@@ -2017,7 +2073,7 @@ int computeBlockReconstructionWork(int blocksToProcess) {
       blocksToReconstruct = neededReconstruction
           .chooseLowRedundancyBlocks(blocksToProcess, reset);
     } finally {
-      namesystem.writeUnlock();
+      namesystem.writeUnlock(RwLockMode.BM, "computeBlockReconstructionWork");
     }
     return computeReconstructionWorkForBlocks(blocksToReconstruct);
   }
@@ -2036,7 +2092,7 @@ int computeReconstructionWorkForBlocks(
     List<BlockReconstructionWork> reconWork = new ArrayList<>();
 
     // Step 1: categorize at-risk blocks into replication and EC tasks
-    namesystem.writeLock();
+    namesystem.writeLock(RwLockMode.BM);
     try {
       synchronized (neededReconstruction) {
         for (int priority = 0; priority < blocksToReconstruct
@@ -2051,7 +2107,8 @@ int computeReconstructionWorkForBlocks(
         }
       }
     } finally {
-      namesystem.writeUnlock();
+      namesystem.writeUnlock(RwLockMode.BM,
+          "computeReconstructionWorkForBlocks");
     }
 
     // Step 2: choose target nodes for each reconstruction task
@@ -2076,7 +2133,7 @@ int computeReconstructionWorkForBlocks(
     }
 
     // Step 3: add tasks to the DN
-    namesystem.writeLock();
+    namesystem.writeLock(RwLockMode.BM);
     try {
       for (BlockReconstructionWork rw : reconWork) {
         final DatanodeStorageInfo[] targets = rw.getTargets();
@@ -2092,7 +2149,8 @@ int computeReconstructionWorkForBlocks(
         }
       }
     } finally {
-      namesystem.writeUnlock();
+      namesystem.writeUnlock(RwLockMode.BM,
+          "computeReconstructionWorkForBlocks");
     }
 
     if (blockLog.isDebugEnabled()) {
@@ -2558,7 +2616,7 @@ DatanodeDescriptor[] chooseSourceDatanodes(BlockInfo block,
   void processPendingReconstructions() {
     BlockInfo[] timedOutItems = pendingReconstruction.getTimedOutBlocks();
     if (timedOutItems != null) {
-      namesystem.writeLock();
+      namesystem.writeLock(RwLockMode.BM);
       try {
         for (int i = 0; i < timedOutItems.length; i++) {
           /*
@@ -2577,7 +2635,7 @@ void processPendingReconstructions() {
           }
         }
       } finally {
-        namesystem.writeUnlock();
+        namesystem.writeUnlock(RwLockMode.BM, "processPendingReconstructions");
       }
       /* If we know the target datanodes where the replication timedout,
        * we could invoke decBlocksScheduled() on it. Its ok for now.
@@ -2586,7 +2644,7 @@ void processPendingReconstructions() {
   }
 
   public long requestBlockReportLeaseId(DatanodeRegistration nodeReg) {
-    assert namesystem.hasReadLock();
+    assert namesystem.hasReadLock(RwLockMode.BM);
     DatanodeDescriptor node = null;
     try {
       node = datanodeManager.getDatanode(nodeReg);
@@ -2608,7 +2666,7 @@ public long requestBlockReportLeaseId(DatanodeRegistration nodeReg) {
 
   public void registerDatanode(DatanodeRegistration nodeReg)
       throws IOException {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasWriteLock(RwLockMode.BM);
     datanodeManager.registerDatanode(nodeReg);
     bmSafeMode.checkSafeMode();
   }
@@ -2658,7 +2716,7 @@ public long getBytesInFutureECBlockGroups() {
    *               list of blocks that need to be removed from blocksMap
    */
   public void removeBlocksAndUpdateSafemodeTotal(BlocksMapUpdateInfo blocks) {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasWriteLock(RwLockMode.BM);
     // In the case that we are a Standby tailing edits from the
     // active while in safe-mode, we need to track the total number
     // of blocks and safe blocks in the system.
@@ -2768,7 +2826,7 @@ public boolean processReport(final DatanodeID nodeID,
       final DatanodeStorage storage,
       final BlockListAsLongs newReport,
       BlockReportContext context) throws IOException {
-    namesystem.writeLock();
+    namesystem.writeLock(RwLockMode.BM);
     final long startTime = Time.monotonicNow(); //after acquiring write lock
     final long endTime;
     DatanodeDescriptor node;
@@ -2784,6 +2842,7 @@ public boolean processReport(final DatanodeID nodeID,
         throw new IOException(
             "ProcessReport from dead or unregistered node: " + nodeID);
       }
+      BlockManagerFaultInjector.getInstance().processingBlockReport(node);
 
       // To minimize startup time, we discard any second (or later) block reports
       // that we receive while still in startup phase.
@@ -2826,8 +2885,9 @@ public boolean processReport(final DatanodeID nodeID,
       storageInfo.receivedBlockReport();
     } finally {
       endTime = Time.monotonicNow();
-      namesystem.writeUnlock();
+      namesystem.writeUnlock(RwLockMode.BM, "processReport");
     }
+    completePendingBlocks();
 
     if(blockLog.isDebugEnabled()) {
       for (Block b : invalidatedBlocks) {
@@ -2853,7 +2913,7 @@ public boolean processReport(final DatanodeID nodeID,
 
   public void removeBRLeaseIfNeeded(final DatanodeID nodeID,
       final BlockReportContext context) throws IOException {
-    namesystem.writeLock();
+    namesystem.writeLock(RwLockMode.BM);
     DatanodeDescriptor node;
     try {
       node = datanodeManager.getDatanode(nodeID);
@@ -2870,7 +2930,7 @@ public void removeBRLeaseIfNeeded(final DatanodeID nodeID,
             context.getTotalRpcs(), Long.toHexString(context.getReportId()));
       }
     } finally {
-      namesystem.writeUnlock();
+      namesystem.writeUnlock(RwLockMode.BM, "removeBRLeaseIfNeeded");
     }
   }
 
@@ -2881,7 +2941,7 @@ void rescanPostponedMisreplicatedBlocks() {
     if (getPostponedMisreplicatedBlocksCount() == 0) {
       return;
     }
-    namesystem.writeLock();
+    namesystem.writeLock(RwLockMode.BM);
     long startTime = Time.monotonicNow();
     long startSize = postponedMisreplicatedBlocks.size();
     try {
@@ -2908,7 +2968,8 @@ void rescanPostponedMisreplicatedBlocks() {
       postponedMisreplicatedBlocks.addAll(rescannedMisreplicatedBlocks);
       rescannedMisreplicatedBlocks.clear();
       long endSize = postponedMisreplicatedBlocks.size();
-      namesystem.writeUnlock();
+      namesystem.writeUnlock(RwLockMode.BM,
+          "rescanPostponedMisreplicatedBlocks");
       LOG.info("Rescan of postponedMisreplicatedBlocks completed in {}" +
           " msecs. {} blocks are left. {} blocks were removed.",
           (Time.monotonicNow() - startTime), endSize, (startSize - endSize));
@@ -2966,7 +3027,7 @@ public void markBlockReplicasAsCorrupt(Block oldBlock,
       BlockInfo block,
       long oldGenerationStamp, long oldNumBytes, 
       DatanodeStorageInfo[] newStorages) throws IOException {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasWriteLock(RwLockMode.BM);
     BlockToMarkCorrupt b = null;
     if (block.getGenerationStamp() != oldGenerationStamp) {
       b = new BlockToMarkCorrupt(oldBlock, block, oldGenerationStamp,
@@ -3014,7 +3075,7 @@ void processFirstBlockReport(
       final DatanodeStorageInfo storageInfo,
       final BlockListAsLongs report) throws IOException {
     if (report == null) return;
-    assert (namesystem.hasWriteLock());
+    assert (namesystem.hasWriteLock(RwLockMode.BM));
     assert (storageInfo.getBlockReportCount() == 0);
 
     for (BlockReportReplica iblk : report) {
@@ -3464,7 +3525,7 @@ void addStoredBlockUnderConstruction(StatefulBlockInfo ucBlock,
   private void addStoredBlockImmediate(BlockInfo storedBlock, Block reported,
       DatanodeStorageInfo storageInfo)
   throws IOException {
-    assert (storedBlock != null && namesystem.hasWriteLock());
+    assert (storedBlock != null && namesystem.hasWriteLock(RwLockMode.BM));
     if (!namesystem.isInStartupSafeMode()
         || isPopulatingReplQueues()) {
       addStoredBlock(storedBlock, reported, storageInfo, null, false);
@@ -3499,7 +3560,7 @@ private Block addStoredBlock(final BlockInfo block,
                                DatanodeDescriptor delNodeHint,
                                boolean logEveryBlock)
   throws IOException {
-    assert block != null && namesystem.hasWriteLock();
+    assert block != null && namesystem.hasWriteLock(RwLockMode.BM);
     BlockInfo storedBlock;
     DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
     if (!block.isComplete()) {
@@ -3659,7 +3720,7 @@ private void invalidateCorruptReplicas(BlockInfo blk, Block reported,
    * extra or low redundancy. Place it into the respective queue.
    */
   public void processMisReplicatedBlocks() {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasWriteLock(RwLockMode.BM);
     stopReconstructionInitializer();
     neededReconstruction.clear();
     reconstructionQueuesInitializer = new Daemon() {
@@ -3913,7 +3974,7 @@ public void setReplication(
   private void processExtraRedundancyBlock(final BlockInfo block,
       final short replication, final DatanodeDescriptor addedNode,
       DatanodeDescriptor delNodeHint) {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasWriteLock(RwLockMode.BM);
     if (addedNode == delNodeHint) {
       delNodeHint = null;
     }
@@ -3950,7 +4011,7 @@ private void chooseExcessRedundancies(
       BlockInfo storedBlock, short replication,
       DatanodeDescriptor addedNode,
       DatanodeDescriptor delNodeHint) {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasWriteLock(RwLockMode.BM);
     // first form a rack to datanodes map and
     BlockCollection bc = getBlockCollection(storedBlock);
     if (storedBlock.isStriped()) {
@@ -4113,7 +4174,7 @@ private void removeStoredBlock(DatanodeStorageInfo storageInfo, Block block,
    */
   public void removeStoredBlock(BlockInfo storedBlock, DatanodeDescriptor node) {
     blockLog.debug("BLOCK* removeStoredBlock: {} from {}", storedBlock, node);
-    assert (namesystem.hasWriteLock());
+    assert (namesystem.hasWriteLock(RwLockMode.BM));
     {
       if (storedBlock == null || !blocksMap.removeNode(storedBlock, node)) {
         blockLog.debug("BLOCK* removeStoredBlock: {} has already been" +
@@ -4304,7 +4365,7 @@ private boolean processAndHandleReportedBlock(
    */
   public void processIncrementalBlockReport(final DatanodeID nodeID,
       final StorageReceivedDeletedBlocks srdb) throws IOException {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasWriteLock(RwLockMode.BM);
     final DatanodeDescriptor node = datanodeManager.getDatanode(nodeID);
     if (node == null || !node.isRegistered()) {
       blockLog.warn("BLOCK* processIncrementalBlockReport"
@@ -4623,7 +4684,7 @@ public int getTotalBlocks() {
   }
 
   public void removeBlock(BlockInfo block) {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasWriteLock(RwLockMode.BM);
     // No need to ACK blocks that are being removed entirely
     // from the namespace, since the removal of the associated
     // file already removes them from the block map below.
@@ -4666,7 +4727,7 @@ public void updateLastBlock(BlockInfo lastBlock, ExtendedBlock newBlock) {
   /** updates a block in needed reconstruction queue. */
   private void updateNeededReconstructions(final BlockInfo block,
       final int curReplicasDelta, int expectedReplicasDelta) {
-    namesystem.writeLock();
+    namesystem.writeLock(RwLockMode.BM);
     try {
       if (!isPopulatingReplQueues() || !block.isComplete()) {
         return;
@@ -4685,7 +4746,7 @@ private void updateNeededReconstructions(final BlockInfo block,
             repl.outOfServiceReplicas(), oldExpectedReplicas);
       }
     } finally {
-      namesystem.writeUnlock();
+      namesystem.writeUnlock(RwLockMode.BM, "updateNeededReconstructions");
     }
   }
 
@@ -4718,7 +4779,7 @@ public void checkRedundancy(BlockCollection bc) {
   private int invalidateWorkForOneNode(DatanodeInfo dn) {
     final List<Block> toInvalidate;
     
-    namesystem.writeLock();
+    namesystem.writeLock(RwLockMode.BM);
     try {
       // blocks should not be replicated or removed if safe mode is on
       if (namesystem.isInSafeMode()) {
@@ -4742,7 +4803,7 @@ private int invalidateWorkForOneNode(DatanodeInfo dn) {
         return 0;
       }
     } finally {
-      namesystem.writeUnlock();
+      namesystem.writeUnlock(RwLockMode.BM, "invalidateWorkForOneNode");
     }
     blockLog.debug("BLOCK* {}: ask {} to delete {}", getClass().getSimpleName(),
         dn, toInvalidate);
@@ -4963,7 +5024,7 @@ private class MarkedDeleteBlockScrubber implements Runnable {
 
     private void remove(long time) {
       if (checkToDeleteIterator()) {
-        namesystem.writeLock();
+        namesystem.writeLock(RwLockMode.BM);
         try {
           while (toDeleteIterator.hasNext()) {
             removeBlock(toDeleteIterator.next());
@@ -4974,7 +5035,8 @@ private void remove(long time) {
             }
           }
         } finally {
-          namesystem.writeUnlock();
+          namesystem.writeUnlock(RwLockMode.BM,
+              "markedDeleteBlockScrubberThread");
         }
       }
     }
@@ -5087,12 +5149,12 @@ int computeDatanodeWork() {
     int workFound = this.computeBlockReconstructionWork(blocksToProcess);
 
     // Update counters
-    namesystem.writeLock();
+    namesystem.writeLock(RwLockMode.BM);
     try {
       this.updateState();
       this.scheduledReplicationBlocksCount = workFound;
     } finally {
-      namesystem.writeUnlock();
+      namesystem.writeUnlock(RwLockMode.BM, "computeDatanodeWork");
     }
     workFound += this.computeInvalidateWork(nodesToProcess);
     return workFound;
@@ -5282,6 +5344,7 @@ public Void call() {
         return null;
       }
     });
+    completePendingBlocks();
   }
 
   public int getBlockOpQueueLength() {
@@ -5319,7 +5382,7 @@ private void processQueue() {
           // batch as many operations in the write lock until the queue
           // runs dry, or the max lock hold is reached.
           int processed = 0;
-          namesystem.writeLock();
+          namesystem.writeLock(RwLockMode.BM);
           metrics.setBlockOpsQueued(queue.size() + 1);
           try {
             long start = Time.monotonicNow();
@@ -5332,9 +5395,10 @@ private void processQueue() {
               action = queue.poll();
             } while (action != null);
           } finally {
-            namesystem.writeUnlock();
+            namesystem.writeUnlock(RwLockMode.BM, "processQueue");
             metrics.addBlockOpsBatched(processed - 1);
           }
+          completePendingBlocks();
         } catch (InterruptedException e) {
           // ignore unless thread was specifically interrupted.
           if (Thread.interrupted()) {
@@ -50,6 +50,10 @@ public void requestBlockReportLease(DatanodeDescriptor node, long leaseId) {
   public void removeBlockReportLease(DatanodeDescriptor node, long leaseId) {
   }
 
+  @VisibleForTesting
+  public void processingBlockReport(DatanodeDescriptor node) {
+  }
+
   @VisibleForTesting
   public void mockAnException() {
   }
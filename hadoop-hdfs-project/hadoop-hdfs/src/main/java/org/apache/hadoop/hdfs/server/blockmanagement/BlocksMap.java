@@ -18,9 +18,11 @@
 package org.apache.hadoop.hdfs.server.blockmanagement;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.util.ResizableGSet;
 import org.apache.hadoop.hdfs.server.namenode.INodeId;
 import org.apache.hadoop.util.GSet;
 import org.apache.hadoop.util.LightWeightGSet;
@@ -63,7 +65,63 @@ public void remove()  {
     }
   }
 
-  /** Constant {@link LightWeightGSet} capacity. */
+  /**
+   * A {@link ResizableGSet} whose table grows with the number of
+   * blocks instead of being sized from the maximum heap up front.
+   * <p>
+   * Like the fixed size map its iterator does not track modifications, since
+   * it is used under the namesystem lock but may be held across lock
+   * releases, e.g. while initializing the reconstruction queues. A resize
+   * between two steps of such an iteration splits the current bucket of the
+   * old table in two; the iterator then rescans the current bucket of the new
+   * table, so it may return a block twice but never skips one.
+   */
+  private static class ResizableBlocksGSet
+      extends ResizableGSet<Block, BlockInfo> {
+    ResizableBlocksGSet(int initCapacity) {
+      super(initCapacity);
+    }
+
+    @Override
+    public Iterator<BlockInfo> iterator() {
+      return new ResizeTolerantIterator();
+    }
+
+    private class ResizeTolerantIterator implements Iterator<BlockInfo> {
+      private LinkedElement[] table = entries;
+      private int index = -1;
+      private LinkedElement next = null;
+
+      private void ensureNext() {
+        if (table != entries) {
+          table = entries;
+          next = index >= 0 && index < table.length ? table[index] : null;
+        }
+        while (next == null && ++index < table.length) {
+          next = table[index];
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        ensureNext();
+        return next != null;
+      }
+
+      @Override
+      public BlockInfo next() {
+        ensureNext();
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        LinkedElement cur = next;
+        next = cur.getNext();
+        return convert(cur);
+      }
+    }
+  }
+
+  /** {@link LightWeightGSet} capacity, unless the map is resizable. */
   private final int capacity;
   
   private GSet<Block, BlockInfo> blocks;
@@ -71,10 +129,27 @@ public void remove()  {
   private final LongAdder totalReplicatedBlocks = new LongAdder();
   private final LongAdder totalECBlockGroups = new LongAdder();
 
+  /**
+   * @param capacity the capacity of the map, or its initial capacity if
+   *                 resizable.
+   * @param resizable whether the map grows with the number of blocks.
+   */
+  BlocksMap(int capacity, boolean resizable) {
+    if (resizable) {
+      this.capacity = -1;
+      this.blocks = new ResizableBlocksGSet(capacity);
+    } else {
+      this.capacity = capacity;
+      this.blocks = newFixedCapacityGSet(capacity);
+    }
+  }
+
   BlocksMap(int capacity) {
-    // Use 2% of total memory to size the GSet capacity
-    this.capacity = capacity;
-    this.blocks = new LightWeightGSet<Block, BlockInfo>(capacity) {
+    this(capacity, false);
+  }
+
+  private static GSet<Block, BlockInfo> newFixedCapacityGSet(int capacity) {
+    return new LightWeightGSet<Block, BlockInfo>(capacity) {
       @Override
       public Iterator<BlockInfo> iterator() {
         SetIterator iterator = new SetIterator();
@@ -218,6 +293,9 @@ Iterable<BlockInfo> getBlocks() {
   
   /** Get the capacity of the HashMap that stores blocks */
   int getCapacity() {
+    if (blocks instanceof ResizableBlocksGSet) {
+      return ((ResizableBlocksGSet) blocks).getCapacity();
+    }
     return capacity;
   }
 
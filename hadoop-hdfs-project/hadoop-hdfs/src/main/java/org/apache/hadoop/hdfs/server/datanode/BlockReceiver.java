@@ -31,6 +31,7 @@
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Queue;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.Checksum;
@@ -129,7 +130,9 @@ class BlockReceiver implements Closeable {
 
   private boolean syncOnClose;
   private volatile boolean dirSyncOnFinalize;
-  private boolean dirSyncOnHSyncDone = false;
+  private volatile boolean dirSyncOnHSyncDone = false;
+  /** the hsyncs handed to the volume sync thread, if any */
+  private ReplicaSync groupSync;
   private long restartBudget;
   /** the reference of the volume where the block receiver writes to */
   private ReplicaHandler replicaHandler;
@@ -320,6 +323,14 @@ public void close() throws IOException {
     packetReceiver.close();
 
     IOException ioe = null;
+    if (groupSync != null) {
+      // the streams must not be closed while they are being synced.
+      try {
+        groupSync.awaitRequested();
+      } catch (IOException e) {
+        ioe = e;
+      }
+    }
     if (syncOnClose && (streams.getDataOut() != null || checksumOut != null)) {
       datanode.metrics.incrFsyncCount();      
     }
@@ -453,6 +464,58 @@ void flushOrSync(boolean isSync, long seqno) throws IOException {
     }
   }
 
+  /**
+   * Flush block data and metadata files, and sync them to disk. If the
+   * hsync group commit is enabled, the sync is handed to the volume sync
+   * thread instead of being done here.
+   * @param offsetInBlock the length of the replica after the packet
+   * @return the length which must be durable before the packet is acked, or
+   *         -1 if the files have been synced already
+   */
+  private long flushAndSync(long seqno, long offsetInBlock)
+      throws IOException {
+    final VolumeSyncService syncService = datanode.getVolumeSyncService();
+    if (syncService == null || responder == null) {
+      flushOrSync(true, seqno);
+      return -1;
+    }
+    flushOrSync(false, seqno);
+    if (groupSync == null) {
+      groupSync = new ReplicaSync();
+    }
+    syncService.requestSync(replicaInfo.getVolume(), groupSync,
+        offsetInBlock);
+    return offsetInBlock;
+  }
+
+  /** Syncs the block data and metadata files on the volume sync thread. */
+  private class ReplicaSync extends VolumeSyncService.SyncTarget {
+    @Override
+    void doSync() throws IOException {
+      long begin = Time.monotonicNow();
+      long fsyncStartNanos = System.nanoTime();
+      streams.syncChecksumOut();
+      streams.syncDataOut();
+      datanode.metrics.addFsyncNanos(System.nanoTime() - fsyncStartNanos);
+      datanode.metrics.incrFsyncCount();
+      if (!dirSyncOnHSyncDone && replicaInfo instanceof LocalReplica) {
+        ((LocalReplica) replicaInfo).fsyncDirectory();
+        dirSyncOnHSyncDone = true;
+      }
+      long duration = Time.monotonicNow() - begin;
+      if (duration > datanodeSlowLogThresholdMs) {
+        LOG.warn("Slow sync took {}ms (threshold={}ms), volume={}, blockId={}",
+            duration, datanodeSlowLogThresholdMs, getVolumeBaseUri(),
+            replicaInfo.getBlockId());
+      }
+    }
+
+    @Override
+    public String toString() {
+      return String.valueOf(replicaInfo);
+    }
+  }
+
   /**
    * While writing to mirrorOut, failure to write to mirror should not
    * affect this datanode unless it is caused by interruption.
@@ -558,6 +621,8 @@ private int receivePacket() throws IOException {
     boolean lastPacketInBlock = header.isLastPacketInBlock();
     final int len = header.getDataLen();
     boolean syncBlock = header.getSyncBlock();
+    // the length to be synced before the packet is acked
+    long syncLength = -1;
 
     // avoid double sync'ing on close
     if (syncBlock && lastPacketInBlock) {
@@ -626,7 +691,11 @@ private int receivePacket() throws IOException {
       }
       // sync block if requested
       if (syncBlock) {
-        flushOrSync(true, seqno);
+        if (lastPacketInBlock) {
+          flushOrSync(true, seqno);
+        } else {
+          syncLength = flushAndSync(seqno, offsetInBlock);
+        }
       }
     } else {
       final int checksumLen = diskChecksum.getChecksumSize(len);
@@ -823,7 +892,11 @@ duration, datanodeSlowLogThresholdMs, getVolumeBaseUri(),
           }
 
           /// flush entire packet, sync if requested
-          flushOrSync(syncBlock, seqno);
+          if (syncBlock) {
+            syncLength = flushAndSync(seqno, offsetInBlock);
+          } else {
+            flushOrSync(false, seqno);
+          }
           
           replicaInfo.setLastChecksumAndDataLen(offsetInBlock, lastCrc);
 
@@ -839,10 +912,10 @@ duration, datanodeSlowLogThresholdMs, getVolumeBaseUri(),
     }
 
     // if sync was requested, put in queue for pending acks here
-    // (after the fsync finished)
+    // (after the fsync finished, or was handed to the volume)
     if (responder != null && (syncBlock || shouldVerifyChecksum())) {
       ((PacketResponder) responder.getRunnable()).enqueue(seqno,
-          lastPacketInBlock, offsetInBlock, Status.SUCCESS);
+          lastPacketInBlock, offsetInBlock, Status.SUCCESS, syncLength);
     }
 
     /*
@@ -1284,8 +1357,20 @@ private boolean isRunning() {
      */
     void enqueue(final long seqno, final boolean lastPacketInBlock,
         final long offsetInBlock, final Status ackStatus) {
+      enqueue(seqno, lastPacketInBlock, offsetInBlock, ackStatus, -1);
+    }
+
+    /**
+     * enqueue the seqno of a packet which is acked only once the replica has
+     * been synced up to syncLength.
+     * @param syncLength the length to be synced, or -1 if there is no sync
+     *          pending for the packet
+     */
+    void enqueue(final long seqno, final boolean lastPacketInBlock,
+        final long offsetInBlock, final Status ackStatus,
+        final long syncLength) {
       final Packet p = new Packet(seqno, lastPacketInBlock, offsetInBlock,
-          System.nanoTime(), ackStatus);
+          System.nanoTime(), ackStatus, syncLength);
       LOG.debug("{}: enqueue {}", this, p);
       synchronized (ackQueue) {
         if (running) {
@@ -1328,7 +1413,7 @@ void sendOOBResponse(final Status ackStatus) throws IOException,
       try {
         sendAckUpstreamUnprotected(null, PipelineAck.UNKOWN_SEQNO, 0L, 0L,
             PipelineAck.combineHeader(datanode.getECN(), ackStatus,
-                datanode.getSLOWByBlockPoolId(block.getBlockPoolId())));
+                datanode.getSLOWByBlockPoolId(block.getBlockPoolId())), true);
       } finally {
         // Let others send ack. Unless there are miltiple OOB send
         // calls, there can be only one waiter, the responder thread.
@@ -1411,7 +1496,8 @@ public void run() {
                 sendAckUpstream(ack, PipelineAck.UNKOWN_SEQNO, 0L, 0L,
                     PipelineAck.combineHeader(datanode.getECN(),
                       Status.SUCCESS,
-                      datanode.getSLOWByBlockPoolId(block.getBlockPoolId())));
+                      datanode.getSLOWByBlockPoolId(block.getBlockPoolId())),
+                    true);
                 continue;
               }
               seqno = ack.getSeqno();
@@ -1491,6 +1577,11 @@ public void run() {
             continue;
           }
 
+          if (pkt != null && pkt.syncLength >= 0) {
+            // hold the ack back until the packet is durable
+            groupSync.awaitSynced(pkt.syncLength);
+          }
+
           if (lastPacketInBlock) {
             // Finalize the block and close the block file
             finalizeBlock(startTime);
@@ -1502,7 +1593,8 @@ public void run() {
           sendAckUpstream(ack, expected, totalAckTimeNanos,
             (pkt != null ? pkt.offsetInBlock : 0),
               PipelineAck.combineHeader(datanode.getECN(), myStatus,
-                  datanode.getSLOWByBlockPoolId(block.getBlockPoolId())));
+                  datanode.getSLOWByBlockPoolId(block.getBlockPoolId())),
+              pkt == null || !isNextAckReady());
           if (pkt != null) {
             // remove the packet from the ack queue
             removeAckHead();
@@ -1575,10 +1667,12 @@ private void finalizeBlock(long startTime) throws IOException {
      *          nodes
      * @param offsetInBlock offset in block for the data in packet
      * @param myHeader the local ack header
+     * @param flush whether to flush the ack, or leave it to be flushed with
+     *          the next one
      */
     private void sendAckUpstream(PipelineAck ack, long seqno,
         long totalAckTimeNanos, long offsetInBlock,
-        int myHeader) throws IOException {
+        int myHeader, boolean flush) throws IOException {
       try {
         // Wait for other sender to finish. Unless there is an OOB being sent,
         // the responder won't have to wait.
@@ -1592,7 +1686,7 @@ private void sendAckUpstream(PipelineAck ack, long seqno,
         try {
           if (!running) return;
           sendAckUpstreamUnprotected(ack, seqno, totalAckTimeNanos,
-              offsetInBlock, myHeader);
+              offsetInBlock, myHeader, flush);
         } finally {
           synchronized(this) {
             sending = false;
@@ -1613,10 +1707,12 @@ private void sendAckUpstream(PipelineAck ack, long seqno,
      *          nodes
      * @param offsetInBlock offset in block for the data in packet
      * @param myHeader the local ack header
+     * @param flush whether to flush the ack, or leave it to be flushed with
+     *          the next one
      */
     private void sendAckUpstreamUnprotected(PipelineAck ack, long seqno,
-        long totalAckTimeNanos, long offsetInBlock, int myHeader)
-        throws IOException {
+        long totalAckTimeNanos, long offsetInBlock, int myHeader,
+        boolean flush) throws IOException {
       final int[] replies;
       if (ack == null) {
         // A new OOB response is being sent from this node. Regardless of
@@ -1659,7 +1755,9 @@ private void sendAckUpstreamUnprotected(PipelineAck ack, long seqno,
       /* for test only, no-op in production system */
       DataNodeFaultInjector.get().delaySendingAckToUpstream(inAddr);
       replyAck.write(upstreamOut);
-      upstreamOut.flush();
+      if (flush) {
+        upstreamOut.flush();
+      }
       long duration = Time.monotonicNow() - begin;
       DataNodeFaultInjector.get().logDelaySendingAckToUpstream(
           inAddr,
@@ -1685,6 +1783,37 @@ private void sendAckUpstreamUnprotected(PipelineAck ack, long seqno,
       }
     }
     
+    /**
+     * Check if the ack of the packet following the head of the ack queue can
+     * be sent right away, in which case the ack of the head is flushed
+     * upstream together with it. Only done with the hsync group commit, where
+     * the acks held back by a sync become ready at the same time.
+     */
+    private boolean isNextAckReady() throws IOException {
+      if (datanode.getVolumeSyncService() == null || mirrorError
+          || type == PacketResponderType.NON_PIPELINE) {
+        return false;
+      }
+      if (type == PacketResponderType.HAS_DOWNSTREAM_IN_PIPELINE
+          && downstreamIn.available() == 0) {
+        return false;
+      }
+      synchronized (ackQueue) {
+        Iterator<Packet> it = ackQueue.iterator();
+        if (!it.hasNext()) {
+          return false;
+        }
+        it.next();
+        if (!it.hasNext()) {
+          return false;
+        }
+        Packet next = it.next();
+        // the last packet is acked after finalizing the block.
+        return !next.lastPacketInBlock
+            && (next.syncLength < 0 || groupSync.isSynced(next.syncLength));
+      }
+    }
+
     /**
      * Remove a packet from the head of the ack queue
      *
@@ -1707,14 +1836,17 @@ private static class Packet {
     final long offsetInBlock;
     final long ackEnqueueNanoTime;
     final Status ackStatus;
+    /** the length to be synced before the ack, or -1 */
+    final long syncLength;
 
     Packet(long seqno, boolean lastPacketInBlock, long offsetInBlock,
-        long ackEnqueueNanoTime, Status ackStatus) {
+        long ackEnqueueNanoTime, Status ackStatus, long syncLength) {
       this.seqno = seqno;
       this.lastPacketInBlock = lastPacketInBlock;
       this.offsetInBlock = offsetInBlock;
       this.ackEnqueueNanoTime = ackEnqueueNanoTime;
       this.ackStatus = ackStatus;
+      this.syncLength = syncLength;
     }
 
     @Override
@@ -1724,6 +1856,7 @@ public String toString() {
         + ", offsetInBlock=" + offsetInBlock
         + ", ackEnqueueNanoTime=" + ackEnqueueNanoTime
         + ", ackStatus=" + ackStatus
+        + ", syncLength=" + syncLength
         + ")";
     }
   }
@@ -106,19 +106,11 @@ class BlockSender implements java.io.Closeable {
   static final Log ClientTraceLog = DataNode.ClientTraceLog;
   private static final boolean is32Bit = 
       System.getProperty("sun.arch.data.model").equals("32");
-  /**
-   * Minimum buffer used while sending data to clients. Used only if
-   * transferTo() is enabled. 64KB is not that large. It could be larger, but
-   * not sure if there will be much more improvement.
-   */
-  private static final int MIN_BUFFER_WITH_TRANSFERTO = 64*1024;
   private static final int IO_FILE_BUFFER_SIZE;
   static {
     HdfsConfiguration conf = new HdfsConfiguration();
     IO_FILE_BUFFER_SIZE = DFSUtilClient.getIoFileBufferSize(conf);
   }
-  private static final int TRANSFERTO_BUFFER_SIZE = Math.max(
-      IO_FILE_BUFFER_SIZE, MIN_BUFFER_WITH_TRANSFERTO);
   
   /** the block to read from */
   private final ExtendedBlock block;
@@ -145,6 +137,13 @@ class BlockSender implements java.io.Closeable {
   private long seqno;
   /** Set to true if transferTo is allowed for sending data to the client */
   private final boolean transferToAllowed;
+  /** Amount of data in a packet sent with transferTo() */
+  private final int transferToBufferSize;
+  /**
+   * Set to true if data sent with transferTo() is verified against a copy
+   * read from the block file first
+   */
+  private boolean verifyTransferTo;
   /** Set to true once entire requested byte range has been sent to the client */
   private boolean sentEntireByteRange;
   /** When true, verify checksum while reading from checksum file */
@@ -207,6 +206,7 @@ class BlockSender implements java.io.Closeable {
       throws IOException {
     InputStream blockIn = null;
     DataInputStream checksumIn = null;
+    FileChannel metaChannel = null;
     FsVolumeReference volumeRef = null;
     this.fileIoProvider = datanode.getFileIoProvider();
     try {
@@ -295,6 +295,8 @@ class BlockSender implements java.io.Closeable {
       // use normal transfer in those cases
       this.transferToAllowed = datanode.getDnConf().transferToAllowed &&
         (!is32Bit || length <= Integer.MAX_VALUE);
+      this.transferToBufferSize = Math.max(IO_FILE_BUFFER_SIZE,
+          datanode.getDnConf().transferToPacketSize);
 
       // Obtain a reference before reading data
       volumeRef = datanode.data.getVolume(block).obtainReference();
@@ -337,6 +339,10 @@ class BlockSender implements java.io.Closeable {
 
               csum = BlockMetadataHeader.readDataChecksum(checksumIn, block);
               keepMetaInOpen = true;
+              if (metaIn.getWrappedStream() instanceof FileInputStream) {
+                metaChannel = ((FileInputStream) metaIn.getWrappedStream())
+                    .getChannel();
+              }
             } else if (!replica.isOnTransientStorage() &&
                 metaIn.getLength() < expectedHeaderSize) {
               LOG.warn("The meta file length {} is less than the expected " +
@@ -433,6 +439,12 @@ class BlockSender implements java.io.Closeable {
       blockIn = datanode.data.getBlockInputStream(block, offset); // seek to offset
       ris = new ReplicaInputStreams(
           blockIn, checksumIn, volumeRef, fileIoProvider);
+      // the files of a finalized replica are not rewritten while mapped.
+      if (transferToAllowed && datanode.getDnConf().transferToMmapEnabled
+          && replica instanceof FinalizedReplica) {
+        mapChecksums(metaChannel);
+        verifyTransferTo = verifyChecksum && blockIn instanceof FileInputStream;
+      }
     } catch (IOException ioe) {
       IOUtils.cleanupWithLogger(null, volumeRef);
       IOUtils.closeStream(this);
@@ -442,6 +454,28 @@ class BlockSender implements java.io.Closeable {
     }
   }
 
+  /**
+   * Map the checksums of the range to send, so that they are not read
+   * through the buffered checksum stream. Falls back to the stream if the
+   * meta file cannot be mapped.
+   */
+  private void mapChecksums(FileChannel metaChannel) {
+    if (metaChannel == null || checksumSize <= 0) {
+      return;
+    }
+    try {
+      long position = BlockMetadataHeader.getHeaderSize()
+          + (offset / chunkSize) * checksumSize;
+      long length = (long) numberOfChunks(endOffset - offset) * checksumSize;
+      if (position + length <= metaChannel.size()) {
+        ris.mapChecksums(metaChannel, position, length);
+      }
+    } catch (IOException e) {
+      LOG.debug("Could not map the checksums of {}, reading them through "
+          + "the stream", block, e);
+    }
+  }
+
   private ChunkChecksum getPartialChunkChecksumForFinalized(
       FinalizedReplica finalized) throws IOException {
     // There are a number of places in the code base where a finalized replica
@@ -603,6 +637,12 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
       if (verifyChecksum) {
         verifyChecksum(buf, dataOff, dataLen, numChunks, checksumOff);
       }
+    } else if (verifyChecksum) {
+      // read a copy of the data to verify rather than a map of the block
+      // file, which faults if the file is truncated while it is read.
+      ris.readDataFully(ByteBuffer.wrap(buf, dataOff, dataLen),
+          blockInPosition);
+      verifyChecksum(buf, dataOff, dataLen, numChunks, checksumOff);
     }
     
     try {
@@ -788,7 +828,8 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
     try {
       int maxChunksPerPacket;
       int pktBufSize = PacketHeader.PKT_MAX_HEADER_LEN;
-      boolean transferTo = transferToAllowed && !verifyChecksum
+      boolean transferTo = transferToAllowed
+          && (!verifyChecksum || verifyTransferTo)
           && baseStream instanceof SocketOutputStream
           && ris.getDataIn() instanceof FileInputStream;
       if (transferTo) {
@@ -796,10 +837,14 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
             ((FileInputStream)ris.getDataIn()).getChannel();
         blockInPosition = fileChannel.position();
         streamForSendChunks = baseStream;
-        maxChunksPerPacket = numberOfChunks(TRANSFERTO_BUFFER_SIZE);
+        maxChunksPerPacket = numberOfChunks(transferToBufferSize);
         
         // Smaller packet size to only hold checksum when doing transferTo
         pktBufSize += checksumSize * maxChunksPerPacket;
+        if (verifyChecksum) {
+          // and the copy of the data to verify
+          pktBufSize += chunkSize * maxChunksPerPacket;
+        }
       } else {
         maxChunksPerPacket = Math.max(1,
             numberOfChunks(IO_FILE_BUFFER_SIZE));
@@ -70,6 +70,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.protocol.datatransfer.PacketReceiver;
 import org.apache.hadoop.hdfs.protocol.datatransfer.TrustedChannelResolver;
 import org.apache.hadoop.hdfs.protocol.datatransfer.sasl.DataTransferSaslUtil;
 import org.apache.hadoop.hdfs.server.common.Util;
@@ -93,6 +94,10 @@ public class DNConf {
   private final boolean tcpNoDelay;
 
   final boolean transferToAllowed;
+  final int transferToPacketSize;
+  final boolean transferToMmapEnabled;
+  final boolean hsyncGroupCommitEnabled;
+  final int hsyncGroupCommitMaxParallelSyncs;
   final boolean dropCacheBehindWrites;
   final boolean syncBehindWrites;
   final boolean syncBehindWritesInBackground;
@@ -167,6 +172,28 @@ public DNConf(final Configurable dn) {
     transferToAllowed = getConf().getBoolean(
         DFS_DATANODE_TRANSFERTO_ALLOWED_KEY,
         DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT);
+    int packetSize = getConf().getInt(
+        DFSConfigKeys.DFS_DATANODE_TRANSFERTO_PACKET_SIZE_KEY,
+        DFSConfigKeys.DFS_DATANODE_TRANSFERTO_PACKET_SIZE_DEFAULT);
+    // leave room for the checksums and the header.
+    if (packetSize > PacketReceiver.MAX_PACKET_SIZE / 2) {
+      DataNode.LOG.warn("{} exceeds {} bytes, using {} bytes.",
+          DFSConfigKeys.DFS_DATANODE_TRANSFERTO_PACKET_SIZE_KEY,
+          PacketReceiver.MAX_PACKET_SIZE / 2,
+          PacketReceiver.MAX_PACKET_SIZE / 2);
+      packetSize = PacketReceiver.MAX_PACKET_SIZE / 2;
+    }
+    transferToPacketSize = packetSize;
+    transferToMmapEnabled = getConf().getBoolean(
+        DFSConfigKeys.DFS_DATANODE_TRANSFERTO_MMAP_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_TRANSFERTO_MMAP_ENABLED_DEFAULT);
+    hsyncGroupCommitEnabled = getConf().getBoolean(
+        DFSConfigKeys.DFS_DATANODE_HSYNC_GROUP_COMMIT_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_HSYNC_GROUP_COMMIT_ENABLED_DEFAULT);
+    hsyncGroupCommitMaxParallelSyncs = Math.max(1, getConf().getInt(
+        DFSConfigKeys.DFS_DATANODE_HSYNC_GROUP_COMMIT_MAX_PARALLEL_SYNCS_KEY,
+        DFSConfigKeys
+            .DFS_DATANODE_HSYNC_GROUP_COMMIT_MAX_PARALLEL_SYNCS_DEFAULT));
 
     readaheadLength = getConf().getLong(
         HdfsClientConfigKeys.DFS_DATANODE_READAHEAD_BYTES_KEY,
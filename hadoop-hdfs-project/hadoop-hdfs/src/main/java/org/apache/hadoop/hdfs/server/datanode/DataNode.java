@@ -370,6 +370,7 @@ public static InetSocketAddress createSocketAddr(String target) {
   DataXceiverServer xserver = null;
   Daemon localDataXceiverServer = null;
   ShortCircuitRegistry shortCircuitRegistry = null;
+  private VolumeSyncService volumeSyncService = null;
   ThreadGroup threadGroup = null;
   private DNConf dnConf;
   private volatile boolean heartbeatsDisabledForTests = false;
@@ -1688,6 +1689,10 @@ void startDataNode(List<StorageLocation> dataDirectories,
     }
     LOG.info("Starting DataNode with maxLockedMemory = {}",
         dnConf.maxLockedMemory);
+    if (dnConf.hsyncGroupCommitEnabled) {
+      volumeSyncService = new VolumeSyncService(
+          dnConf.hsyncGroupCommitMaxParallelSyncs);
+    }
 
     int volFailuresTolerated = dnConf.getVolFailuresTolerated();
     int volsConfigured = dnConf.getVolsConfigured();
@@ -2443,6 +2448,9 @@ public void shutdown() {
         LOG.warn("Exception when unlocking storage", ie);
       }
     }
+    if (volumeSyncService != null) {
+      volumeSyncService.shutdown();
+    }
     if (data != null) {
       data.shutdown();
     }
@@ -3756,6 +3764,13 @@ public ShortCircuitRegistry getShortCircuitRegistry() {
     return shortCircuitRegistry;
   }
 
+  /**
+   * @return the group commit of the hsync fsyncs, or null if it is disabled
+   */
+  VolumeSyncService getVolumeSyncService() {
+    return volumeSyncService;
+  }
+
   /**
    * Check the disk error synchronously.
    */
@@ -21,6 +21,7 @@
 
 import org.apache.hadoop.classification.InterfaceAudience;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -157,4 +158,10 @@ public void delay() {}
   public void badDecoding(ByteBuffer[] outputs) {}
 
   public void markSlow(String dnAddr, int[] replies) {}
+
+  /**
+   * Used as a hook to fail watching a finalized directory, e.g. as if the
+   * inotify watch limit was reached.
+   */
+  public void watchFinalizedDir(File dir) throws IOException {}
 }
@@ -122,6 +122,9 @@ class DataXceiver extends Receiver implements Runnable {
   private final int ioFileBufferSize;
   private final int smallBufferSize;
   private Thread xceiver = null;
+  /** Whether SASL negotiation and stream setup are done. */
+  private boolean initialized = false;
+  private int opsProcessed = 0;
 
   /**
    * Client Name used in previous operation. Not available on first request
@@ -221,41 +224,20 @@ private synchronized BlockReceiver getCurrentBlockReceiver() {
    */
   @Override
   public void run() {
-    int opsProcessed = 0;
     Op op = null;
+    boolean parked = false;
 
     try {
       synchronized(this) {
         xceiver = Thread.currentThread();
       }
       dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
-      peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
-      InputStream input = socketIn;
-      try {
-        IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
-          socketIn, datanode.getXferAddress().getPort(),
-          datanode.getDatanodeId());
-        input = new BufferedInputStream(saslStreams.in,
-            smallBufferSize);
-        socketOut = saslStreams.out;
-      } catch (InvalidMagicNumberException imne) {
-        if (imne.isHandshake4Encryption()) {
-          LOG.info("Failed to read expected encryption handshake from client " +
-              "at {}. Perhaps the client " +
-              "is running an older version of Hadoop which does not support " +
-              "encryption", peer.getRemoteAddressString(), imne);
-        } else {
-          LOG.info("Failed to read expected SASL data transfer protection " +
-              "handshake from client at {}" +
-              ". Perhaps the client is running an older version of Hadoop " +
-              "which does not support SASL data transfer protection",
-              peer.getRemoteAddressString(), imne);
-        }
+      if (!initialized) {
+        setUpStreams();
+      }
+      if (in == null) {
         return;
       }
-      
-      super.initialize(new DataInputStream(input));
-      
       // We process requests in a loop, and stay around for a short timeout.
       // This optimistic behaviour allows the other end to reuse connections.
       // Setting keepalive timeout to 0 disable this behavior.
@@ -292,6 +274,14 @@ public void run() {
         opStartTime = monotonicNow();
         processOp(op);
         ++opsProcessed;
+        // Wait for the next op without holding this thread, unless it has
+        // already been read into the buffer.
+        if (peer != null && !peer.isClosed()
+            && dnConf.socketKeepaliveTimeout > 0 && in.available() == 0
+            && park()) {
+          parked = true;
+          return;
+        }
       } while ((peer != null) &&
           (!peer.isClosed() && dnConf.socketKeepaliveTimeout > 0));
     } catch (Throwable t) {
@@ -328,12 +318,76 @@ public void run() {
       collectThreadLocalStates();
       LOG.debug("{}:Number of active connections is: {}",
           datanode.getDisplayName(), datanode.getXceiverCount());
-      updateCurrentThreadName("Cleaning up");
-      if (peer != null) {
-        dataXceiverServer.closePeer(peer);
-        IOUtils.closeStream(in);
+      if (parked) {
+        updateCurrentThreadName("Parked");
+      } else {
+        updateCurrentThreadName("Cleaning up");
+        if (peer != null) {
+          dataXceiverServer.closePeer(peer);
+          IOUtils.closeStream(in);
+        }
+      }
+    }
+  }
+
+  /**
+   * Negotiate SASL and set up the streams of the connection. The input
+   * stream is left unset if the handshake failed.
+   */
+  private void setUpStreams() throws IOException {
+    initialized = true;
+    peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
+    InputStream input;
+    try {
+      IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
+        socketIn, datanode.getXferAddress().getPort(),
+        datanode.getDatanodeId());
+      input = new BufferedInputStream(saslStreams.in,
+          smallBufferSize);
+      socketOut = saslStreams.out;
+    } catch (InvalidMagicNumberException imne) {
+      if (imne.isHandshake4Encryption()) {
+        LOG.info("Failed to read expected encryption handshake from client " +
+            "at {}. Perhaps the client " +
+            "is running an older version of Hadoop which does not support " +
+            "encryption", peer.getRemoteAddressString(), imne);
+      } else {
+        LOG.info("Failed to read expected SASL data transfer protection " +
+            "handshake from client at {}" +
+            ". Perhaps the client is running an older version of Hadoop " +
+            "which does not support SASL data transfer protection",
+            peer.getRemoteAddressString(), imne);
       }
+      return;
+    }
+
+    super.initialize(new DataInputStream(input));
+  }
+
+  /**
+   * Hand the idle connection over to the event loop of the server, which
+   * runs this xceiver again once the next op arrives.
+   * @return true if the connection was parked
+   */
+  private boolean park() {
+    synchronized(this) {
+      xceiver = null;
+    }
+    if (dataXceiverServer.parkPeer(peer, this)) {
+      return true;
+    }
+    synchronized(this) {
+      xceiver = Thread.currentThread();
     }
+    return false;
+  }
+
+  /**
+   * Close a parked connection which is not going to be resumed.
+   */
+  void closeIdle() {
+    IOUtils.closeStream(in);
+    IOUtils.closeStream(peer);
   }
 
   /**
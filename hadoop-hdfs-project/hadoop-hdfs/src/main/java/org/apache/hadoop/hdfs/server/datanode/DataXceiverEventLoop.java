@@ -0,0 +1,309 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.hdfs.net.Peer;
+import org.apache.hadoop.net.SocketInputStream;
+import org.apache.hadoop.util.Daemon;
+import org.slf4j.Logger;
+
+import static org.apache.hadoop.util.Time.monotonicNow;
+
+/**
+ * Multiplexes the idle connections of the {@link DataXceiverServer} over a
+ * few selector threads, so that a connection only holds a thread while one
+ * of its operations is being processed.
+ *
+ * When a {@link DataXceiver} has processed an operation and the client
+ * keeps the connection for reuse, the connection is parked here instead of
+ * keeping its thread blocked waiting for the next operation. Once the next
+ * operation arrives, the DataXceiver resumes on a thread of the worker
+ * pool, and processes it exactly as before: reads, BlockSender streaming
+ * and BlockReceiver writes all run on the worker threads, and the
+ * DataTransferProtocol wire format is unchanged. Connections which stay
+ * idle for longer than the keepalive timeout are closed.
+ */
+class DataXceiverEventLoop {
+  public static final Logger LOG = DataNode.LOG;
+
+  private final DataXceiverServer server;
+  private final long keepaliveTimeoutMs;
+  private final SelectorThread[] selectors;
+  private final AtomicInteger nextSelector = new AtomicInteger();
+  private final ThreadPoolExecutor workers;
+  private volatile boolean running = true;
+
+  /** A connection waiting for its next operation. */
+  private static final class ParkedXceiver {
+    private final Peer peer;
+    private final DataXceiver xceiver;
+    private final SelectableChannel channel;
+    private final long deadline;
+
+    private ParkedXceiver(Peer peer, DataXceiver xceiver,
+        SelectableChannel channel, long deadline) {
+      this.peer = peer;
+      this.xceiver = xceiver;
+      this.channel = channel;
+      this.deadline = deadline;
+    }
+  }
+
+  DataXceiverEventLoop(DataXceiverServer server, ThreadGroup threadGroup,
+      int numSelectors, int maxWorkers, long keepaliveTimeoutMs)
+      throws IOException {
+    this.server = server;
+    this.keepaliveTimeoutMs = keepaliveTimeoutMs;
+    this.workers = new ThreadPoolExecutor(0, maxWorkers, 60, TimeUnit.SECONDS,
+        new SynchronousQueue<>(), r -> new Daemon(threadGroup, r));
+    this.selectors = new SelectorThread[numSelectors];
+    for (int i = 0; i < numSelectors; i++) {
+      selectors[i] = new SelectorThread(threadGroup, i);
+    }
+    for (SelectorThread selector : selectors) {
+      selector.thread.start();
+    }
+  }
+
+  /**
+   * @return the selectable channel of the peer, or null if it cannot be
+   * multiplexed, e.g. if it is a UNIX domain socket
+   */
+  static SelectableChannel getSelectableChannel(Peer peer) {
+    ReadableByteChannel channel = peer.getInputStreamChannel();
+    if (channel instanceof SocketInputStream) {
+      channel = ((SocketInputStream) channel).getChannel();
+    }
+    if (channel instanceof SelectableChannel
+        && !((SelectableChannel) channel).isBlocking()) {
+      return (SelectableChannel) channel;
+    }
+    return null;
+  }
+
+  /**
+   * Run the xceiver on a worker thread.
+   * @throws RejectedExecutionException if all the workers are busy
+   */
+  void execute(DataXceiver xceiver) {
+    workers.execute(xceiver);
+  }
+
+  /**
+   * Park an idle connection until its next operation arrives.
+   * @return false if the connection cannot be parked
+   */
+  boolean park(Peer peer, DataXceiver xceiver) {
+    SelectableChannel channel = getSelectableChannel(peer);
+    if (!running || channel == null) {
+      return false;
+    }
+    SelectorThread selector = selectors[
+        (nextSelector.getAndIncrement() & Integer.MAX_VALUE)
+            % selectors.length];
+    selector.add(new ParkedXceiver(peer, xceiver, channel,
+        monotonicNow() + keepaliveTimeoutMs));
+    return true;
+  }
+
+  /**
+   * Resume a parked connection whose next operation has arrived.
+   */
+  private void resume(ParkedXceiver parked) {
+    try {
+      server.unparkPeer(parked.peer);
+      workers.execute(parked.xceiver);
+    } catch (RejectedExecutionException e) {
+      LOG.warn("{}: no worker thread to process the next operation of {}",
+          server, parked.peer);
+      parked.xceiver.closeIdle();
+    }
+  }
+
+  private void expire(ParkedXceiver parked) {
+    LOG.debug("Cached {} closing after the keepalive timeout", parked.peer);
+    server.unparkPeer(parked.peer);
+    parked.xceiver.closeIdle();
+  }
+
+  void setMaxWorkers(int maxWorkers) {
+    workers.setMaximumPoolSize(maxWorkers);
+  }
+
+  void shutdown() {
+    running = false;
+    for (SelectorThread selector : selectors) {
+      selector.selector.wakeup();
+    }
+    for (SelectorThread selector : selectors) {
+      try {
+        selector.thread.join(TimeUnit.SECONDS.toMillis(10));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    workers.shutdown();
+  }
+
+  @VisibleForTesting
+  int getNumParked() {
+    int n = 0;
+    for (SelectorThread selector : selectors) {
+      n += selector.numParked;
+    }
+    return n;
+  }
+
+  @VisibleForTesting
+  int getNumWorkers() {
+    return workers.getPoolSize();
+  }
+
+  /** Waits for the next operation of its parked connections. */
+  private final class SelectorThread implements Runnable {
+    private final String name;
+    private final Selector selector;
+    private final Daemon thread;
+    private final Queue<ParkedXceiver> pending = new ConcurrentLinkedQueue<>();
+    private volatile int numParked;
+
+    private SelectorThread(ThreadGroup threadGroup, int index)
+        throws IOException {
+      this.name = "DataXceiver selector #" + index;
+      this.selector = Selector.open();
+      this.thread = new Daemon(threadGroup, this);
+    }
+
+    private void add(ParkedXceiver parked) {
+      pending.add(parked);
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      long nextExpiry = monotonicNow() + keepaliveTimeoutMs;
+      try {
+        while (running) {
+          registerPending();
+          selector.select(Math.max(1, nextExpiry - monotonicNow()));
+          Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            key.cancel();
+            ParkedXceiver parked = (ParkedXceiver) key.attachment();
+            try {
+              resume(parked);
+            } catch (RuntimeException e) {
+              LOG.warn("{}: failed to resume {}", name, parked.peer, e);
+              parked.xceiver.closeIdle();
+            }
+          }
+          long now = monotonicNow();
+          if (now >= nextExpiry) {
+            expireIdle(now);
+            nextExpiry = now + Math.max(1, keepaliveTimeoutMs / 4);
+          }
+          numParked = selector.keys().size();
+        }
+      } catch (IOException e) {
+        LOG.error("{} failed", name, e);
+      } finally {
+        closeAll();
+      }
+    }
+
+    private void registerPending() throws IOException {
+      if (pending.isEmpty()) {
+        return;
+      }
+      // A connection resumed since the last select may already be parked
+      // again. Its cancelled key stays registered until the next selection,
+      // and registering the channel again would fail until then.
+      selector.selectNow();
+      ParkedXceiver parked;
+      while ((parked = pending.poll()) != null) {
+        try {
+          parked.channel.register(selector, SelectionKey.OP_READ, parked);
+        } catch (ClosedChannelException | RuntimeException e) {
+          LOG.debug("Cannot park {}", parked.peer, e);
+          server.unparkPeer(parked.peer);
+          parked.xceiver.closeIdle();
+        }
+      }
+    }
+
+    private void expireIdle(long now) {
+      for (SelectionKey key : selector.keys()) {
+        ParkedXceiver parked = (ParkedXceiver) key.attachment();
+        if (key.isValid() && parked.deadline <= now) {
+          key.cancel();
+          try {
+            expire(parked);
+          } catch (RuntimeException e) {
+            LOG.warn("{}: failed to expire {}", name, parked.peer, e);
+          }
+        }
+      }
+    }
+
+    private void closeAll() {
+      ParkedXceiver parked;
+      while ((parked = pending.poll()) != null) {
+        server.unparkPeer(parked.peer);
+        parked.xceiver.closeIdle();
+      }
+      for (SelectionKey key : selector.keys()) {
+        if (key.isValid()) {
+          key.cancel();
+          parked = (ParkedXceiver) key.attachment();
+          server.unparkPeer(parked.peer);
+          parked.xceiver.closeIdle();
+        }
+      }
+      numParked = 0;
+      try {
+        selector.close();
+      } catch (IOException e) {
+        LOG.debug("Failed to close {}", name, e);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+}
@@ -21,6 +21,7 @@
 import java.net.SocketTimeoutException;
 import java.nio.channels.AsynchronousCloseException;
 import java.util.HashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
@@ -31,6 +32,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.net.PeerServer;
+import org.apache.hadoop.hdfs.net.TcpPeerServer;
 import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.Daemon;
@@ -58,6 +60,8 @@ class DataXceiverServer implements Runnable {
   private final DataNode datanode;
   private final HashMap<Peer, Thread> peers = new HashMap<>();
   private final HashMap<Peer, DataXceiver> peersXceiver = new HashMap<>();
+  /** Idle connections waiting in the event loop for their next op. */
+  private final HashMap<Peer, DataXceiver> parkedPeers = new HashMap<>();
   private final Lock lock = new ReentrantLock();
   private final Condition noPeers = lock.newCondition();
   private boolean closed = false;
@@ -70,6 +74,11 @@ class DataXceiverServer implements Runnable {
    */
   volatile int maxXceiverCount;
 
+  private final int eventLoopSelectorThreads;
+  private final int keepaliveTimeout;
+  /** Runs the xceivers if enabled; null otherwise. */
+  private volatile DataXceiverEventLoop eventLoop;
+
   /**
    * A manager to make sure that cluster balancing does not take too much
    * resources.
@@ -191,6 +200,24 @@ void release() {
         DFSConfigKeys.DFS_DATANODE_MAX_RECEIVER_THREADS_KEY +
         " should not be less than 1.");
 
+    this.keepaliveTimeout = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY,
+        DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_DEFAULT);
+    // only TCP connections can be multiplexed, and only reused ones benefit.
+    if (peerServer instanceof TcpPeerServer && keepaliveTimeout > 0
+        && conf.getBoolean(
+            DFSConfigKeys.DFS_DATANODE_DATA_TRANSFER_EVENT_LOOP_ENABLED_KEY,
+            DFSConfigKeys.DFS_DATANODE_DATA_TRANSFER_EVENT_LOOP_ENABLED_DEFAULT)) {
+      this.eventLoopSelectorThreads = conf.getInt(
+          DFSConfigKeys.DFS_DATANODE_DATA_TRANSFER_EVENT_LOOP_SELECTOR_THREADS_KEY,
+          DFSConfigKeys.DFS_DATANODE_DATA_TRANSFER_EVENT_LOOP_SELECTOR_THREADS_DEFAULT);
+      Preconditions.checkArgument(this.eventLoopSelectorThreads >= 1,
+          DFSConfigKeys.DFS_DATANODE_DATA_TRANSFER_EVENT_LOOP_SELECTOR_THREADS_KEY
+          + " should not be less than 1.");
+    } else {
+      this.eventLoopSelectorThreads = 0;
+    }
+
     this.estimateBlockSize = conf.getLongBytes(DFSConfigKeys.DFS_BLOCK_SIZE_KEY,
         DFSConfigKeys.DFS_BLOCK_SIZE_DEFAULT);
 
@@ -223,6 +250,17 @@ void release() {
   @Override
   public void run() {
     Peer peer = null;
+    if (eventLoopSelectorThreads > 0) {
+      try {
+        eventLoop = new DataXceiverEventLoop(this, datanode.threadGroup,
+            eventLoopSelectorThreads, maxXceiverCount, keepaliveTimeout);
+        LOG.info("{}:DataXceiverServer: using an event loop with {} selector"
+            + " threads", datanode.getDisplayName(), eventLoopSelectorThreads);
+      } catch (IOException e) {
+        LOG.warn("{}:DataXceiverServer: failed to start the event loop, using"
+            + " a thread per connection", datanode.getDisplayName(), e);
+      }
+    }
     while (datanode.shouldRun && !datanode.shutdownForUpgrade) {
       try {
         peer = peerServer.accept();
@@ -235,9 +273,12 @@ public void run() {
               + maxXceiverCount);
         }
 
-        new Daemon(datanode.threadGroup,
-            DataXceiver.create(peer, datanode, this))
-            .start();
+        DataXceiver xceiver = DataXceiver.create(peer, datanode, this);
+        if (eventLoop != null) {
+          eventLoop.execute(xceiver);
+        } else {
+          new Daemon(datanode.threadGroup, xceiver).start();
+        }
       } catch (SocketTimeoutException ignored) {
         // wake up to see if should continue to run
       } catch (AsynchronousCloseException ace) {
@@ -246,7 +287,7 @@ public void run() {
         if (datanode.shouldRun && !datanode.shutdownForUpgrade) {
           LOG.warn("{}:DataXceiverServer", datanode.getDisplayName(), ace);
         }
-      } catch (IOException ie) {
+      } catch (IOException | RejectedExecutionException ie) {
         IOUtils.closeStream(peer);
         LOG.warn("{}:DataXceiverServer", datanode.getDisplayName(), ie);
       } catch (OutOfMemoryError ie) {
@@ -293,6 +334,9 @@ public void run() {
     }
 
     closeAllPeers();
+    if (eventLoop != null) {
+      eventLoop.shutdown();
+    }
   }
 
   void kill() {
@@ -342,6 +386,52 @@ void closePeer(Peer peer) {
     }
   }
 
+  /**
+   * Park an idle connection in the event loop until its next op arrives.
+   * The connection no longer counts as an active xceiver while parked.
+   *
+   * @param peer the connection
+   * @param xceiver the xceiver to run once the next op arrives
+   * @return false if the connection cannot be parked
+   */
+  boolean parkPeer(Peer peer, DataXceiver xceiver) {
+    lock.lock();
+    try {
+      if (closed || eventLoop == null
+          || DataXceiverEventLoop.getSelectableChannel(peer) == null) {
+        return false;
+      }
+      peers.remove(peer);
+      peersXceiver.remove(peer);
+      datanode.metrics.decrDataNodeActiveXceiversCount();
+      parkedPeers.put(peer, xceiver);
+      if (peers.isEmpty()) {
+        this.noPeers.signalAll();
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (!eventLoop.park(peer, xceiver)) {
+      unparkPeer(peer);
+      xceiver.closeIdle();
+    }
+    return true;
+  }
+
+  /**
+   * Called by the event loop when a parked connection is resumed or closed.
+   *
+   * @param peer the connection
+   */
+  void unparkPeer(Peer peer) {
+    lock.lock();
+    try {
+      parkedPeers.remove(peer);
+    } finally {
+      lock.unlock();
+    }
+  }
+
   // Sending OOB to all peers
   public void sendOOBToPeers() {
     lock.lock();
@@ -398,6 +488,8 @@ void closeAllPeers() {
       peers.keySet().forEach(IOUtils::closeStream);
       peers.clear();
       peersXceiver.clear();
+      parkedPeers.values().forEach(DataXceiver::closeIdle);
+      parkedPeers.clear();
       datanode.metrics.setDataNodeActiveXceiversCount(0);
       this.noPeers.signalAll();
     } finally {
@@ -462,6 +554,26 @@ int getNumPeersXceiver() {
     }
   }
 
+  /**
+   * Return the number of idle connections parked in the event loop.
+   *
+   * @return the number of parked peers
+   */
+  @VisibleForTesting
+  int getNumParkedPeers() {
+    lock.lock();
+    try {
+      return parkedPeers.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @VisibleForTesting
+  DataXceiverEventLoop getEventLoop() {
+    return eventLoop;
+  }
+
   @VisibleForTesting
   PeerServer getPeerServer() {
     return peerServer;
@@ -518,6 +630,10 @@ public void setMaxXceiverCount(int xceiverCount) {
     Preconditions.checkArgument(xceiverCount > 0,
         "dfs.datanode.max.transfer.threads should be larger than 0");
     maxXceiverCount = xceiverCount;
+    DataXceiverEventLoop loop = eventLoop;
+    if (loop != null) {
+      loop.setMaxWorkers(xceiverCount);
+    }
   }
 
   @VisibleForTesting
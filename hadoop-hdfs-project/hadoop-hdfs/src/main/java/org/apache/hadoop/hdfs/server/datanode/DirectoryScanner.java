@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hdfs.server.datanode;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -49,6 +50,7 @@
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi.ScanInfo;
 import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.StopWatch;
+import org.apache.hadoop.util.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,6 +61,13 @@
 /**
  * Periodically scans the data directories for block and block metadata files.
  * Reconciles the differences with block information maintained in the dataset.
+ *
+ * When incremental scans are enabled, the finalized directories are watched by
+ * a {@link FinalizedDirWatcher}, and a scan only reconciles the blocks of the
+ * directories which changed since the previous scan. The whole directories
+ * are still scanned every
+ * {@link DFSConfigKeys#DFS_DATANODE_DIRECTORYSCAN_FULL_INTERVAL_KEY}, and
+ * whenever changes may have been missed.
  */
 @InterfaceAudience.Private
 public class DirectoryScanner implements Runnable {
@@ -74,6 +83,10 @@ public class DirectoryScanner implements Runnable {
   private final long scanPeriodMsecs;
   private final long throttleLimitMsPerSec;
   private final AtomicBoolean shouldRun = new AtomicBoolean();
+  /** Null if incremental scans are disabled. */
+  private final FinalizedDirWatcher dirWatcher;
+  private final long fullScanPeriodMsecs;
+  private long lastFullScanMs = -1;
 
   private boolean retainDiffs = false;
 
@@ -91,6 +104,14 @@ public class DirectoryScanner implements Runnable {
   @VisibleForTesting
   final AtomicLong timeWaitingMs = new AtomicLong(0L);
 
+  /** Number of scans of all the finalized directories. */
+  @VisibleForTesting
+  final AtomicLong numFullScans = new AtomicLong(0L);
+
+  /** Number of scans of the changed finalized directories only. */
+  @VisibleForTesting
+  final AtomicLong numIncrementalScans = new AtomicLong(0L);
+
   /**
    * The complete list of block differences indexed by block pool ID.
    */
@@ -353,6 +374,24 @@ public DirectoryScanner(FsDatasetSpi<?> dataset, Configuration conf) {
     }
 
     reconcileBlocksBatchInterval = reconcileBatchInterval;
+
+    fullScanPeriodMsecs = conf.getTimeDuration(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_FULL_INTERVAL_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_FULL_INTERVAL_DEFAULT,
+        TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+
+    FinalizedDirWatcher watcher = null;
+    if (conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_DEFAULT)) {
+      try {
+        watcher = new FinalizedDirWatcher();
+      } catch (IOException e) {
+        LOG.warn("Failed to watch the finalized directories, " +
+            "incremental scans are disabled", e);
+      }
+    }
+    dirWatcher = watcher;
   }
 
   /**
@@ -367,6 +406,10 @@ public void start() {
     LOG.info(
         "Periodic Directory Tree Verification scan starting in {}ms with interval of {}ms and throttle limit of {}ms/s",
         firstScanTime, scanPeriodMsecs, throttleLimitMsPerSec);
+    if (dirWatcher != null) {
+      LOG.info("Scanning only the changed directories, and all the " +
+          "directories every {}ms", fullScanPeriodMsecs);
+    }
 
     masterThread.scheduleAtFixedRate(this, firstScanTime, scanPeriodMsecs,
         TimeUnit.MILLISECONDS);
@@ -382,6 +425,11 @@ boolean getRunStatus() {
     return shouldRun.get();
   }
 
+  @VisibleForTesting
+  FinalizedDirWatcher getDirWatcher() {
+    return dirWatcher;
+  }
+
   /**
    * Clear the current cache of diffs and statistics.
    */
@@ -453,6 +501,9 @@ void shutdown() {
             + "terminate", e);
       }
     }
+    if (dirWatcher != null) {
+      dirWatcher.close();
+    }
     if (!retainDiffs) {
       clear();
     }
@@ -464,7 +515,13 @@ void shutdown() {
   @VisibleForTesting
   public void reconcile() throws IOException {
     LOG.debug("reconcile start DirectoryScanning");
-    scan();
+    Map<FsVolumeSpi, Map<String, FinalizedDirWatcher.Changes>> changes =
+        getChanges();
+    if (changes == null) {
+      scan();
+    } else {
+      scanChanges(changes);
+    }
 
     // HDFS-14476: run checkAndUpdate with batch to avoid holding the lock too
     // long
@@ -497,6 +554,7 @@ private void scan() {
     BlockPoolReport blockPoolReport = new BlockPoolReport();
 
     clear();
+    numFullScans.incrementAndGet();
 
     Collection<ScanInfoVolumeReport> volumeReports = getVolumeReports();
     for (ScanInfoVolumeReport volumeReport : volumeReports) {
@@ -512,91 +570,217 @@ private void scan() {
     for (final String bpid : blockPoolReport.getBlockPoolIds()) {
       List<ScanInfo> blockpoolReport = blockPoolReport.getScanInfo(bpid);
 
-      Stats statsRecord = new Stats(bpid);
-      stats.put(bpid, statsRecord);
-      Collection<ScanInfo> diffRecord = new ArrayList<>();
-
-      statsRecord.totalBlocks = blockpoolReport.size();
       final List<ReplicaInfo> bl = dataset.getFinalizedBlocks(bpid);
       Collections.sort(bl); // Sort based on blockId
 
-      int d = 0; // index for blockpoolReport
-      int m = 0; // index for memReprot
-      while (m < bl.size() && d < blockpoolReport.size()) {
-        ReplicaInfo memBlock = bl.get(m);
-        ScanInfo info = blockpoolReport.get(d);
-        if (info.getBlockId() < memBlock.getBlockId()) {
-          if (!dataset.isDeletingBlock(bpid, info.getBlockId())) {
-            // Block is missing in memory
-            statsRecord.missingMemoryBlocks++;
-            addDifference(diffRecord, statsRecord, info);
-          }
-          d++;
-          continue;
+      Stats statsRecord = addDifferences(bpid, blockpoolReport, bl);
+      LOG.info("Scan Results: {}", statsRecord);
+    }
+  }
+
+  /**
+   * Get the changes of the finalized directories since the previous scan.
+   *
+   * @return the changes by volume and block pool, or null if all the
+   *         directories must be scanned
+   */
+  private Map<FsVolumeSpi, Map<String, FinalizedDirWatcher.Changes>>
+      getChanges() {
+    if (dirWatcher == null) {
+      return null;
+    }
+    List<FsVolumeSpi> watched = new ArrayList<>();
+    try (FsDatasetSpi.FsVolumeReferences volumes =
+        dataset.getFsVolumeReferences()) {
+      for (FsVolumeSpi volume : volumes) {
+        if (volume.getStorageType() != StorageType.PROVIDED) {
+          watched.add(volume);
         }
-        if (info.getBlockId() > memBlock.getBlockId()) {
-          // Block is missing on the disk
-          addDifference(diffRecord, statsRecord, memBlock.getBlockId(),
-              info.getVolume());
-          m++;
-          continue;
+      }
+      dirWatcher.update(watched);
+    } catch (IOException e) {
+      LOG.error("Unexpected IOException by closing FsVolumeReference", e);
+    }
+    // the changes made until now are covered by a full scan.
+    Map<FsVolumeSpi, Map<String, FinalizedDirWatcher.Changes>> changes =
+        dirWatcher.drain();
+    long now = Time.monotonicNow();
+    if (changes == null || lastFullScanMs < 0
+        || now - lastFullScanMs >= fullScanPeriodMsecs) {
+      lastFullScanMs = now;
+      return null;
+    }
+    return changes;
+  }
+
+  /**
+   * Scan for the differences between disk and in-memory blocks in the
+   * changed finalized directories only. A block in memory is only compared
+   * with the disk if its files changed, or if it is found in a changed
+   * directory of any volume.
+   */
+  private void scanChanges(
+      Map<FsVolumeSpi, Map<String, FinalizedDirWatcher.Changes>> changes) {
+    BlockPoolReport blockPoolReport = new BlockPoolReport();
+
+    clear();
+    numIncrementalScans.incrementAndGet();
+
+    Map<FsVolumeSpi, Map<String, Collection<File>>> changedDirs =
+        new HashMap<>();
+    for (Map.Entry<FsVolumeSpi, Map<String, FinalizedDirWatcher.Changes>>
+        entry : changes.entrySet()) {
+      Map<String, Collection<File>> volumeDirs = new HashMap<>();
+      entry.getValue().forEach(
+          (bpid, bpChanges) -> volumeDirs.put(bpid, bpChanges.getDirs()));
+      changedDirs.put(entry.getKey(), volumeDirs);
+    }
+
+    Set<FsVolumeSpi> scannedVolumes = new HashSet<>();
+    Set<String> bpids = new HashSet<>();
+    for (ScanInfoVolumeReport volumeReport : getVolumeReports(changedDirs)) {
+      scannedVolumes.add(volumeReport.getVolume());
+      bpids.addAll(changes.get(volumeReport.getVolume()).keySet());
+      for (String blockPoolId : volumeReport.getBlockPoolIds()) {
+        List<ScanInfo> scanInfos = volumeReport.getScanInfo(blockPoolId);
+        blockPoolReport.addAll(blockPoolId, scanInfos);
+      }
+    }
+
+    // Pre-sort the reports outside of the lock
+    blockPoolReport.sortBlocks();
+
+    for (final String bpid : bpids) {
+      List<ScanInfo> blockpoolReport = blockPoolReport.getScanInfo(bpid);
+
+      Set<Long> onDisk = new HashSet<>();
+      for (ScanInfo info : blockpoolReport) {
+        onDisk.add(info.getBlockId());
+      }
+      Set<Long> blockIds = new HashSet<>(onDisk);
+      for (FsVolumeSpi volume : scannedVolumes) {
+        FinalizedDirWatcher.Changes bpChanges = changes.get(volume).get(bpid);
+        if (bpChanges != null) {
+          blockIds.addAll(bpChanges.getBlockIds());
         }
+      }
+      final List<ReplicaInfo> bl = dataset.getFinalizedBlocks(bpid, blockIds);
+      // A block which is not found in the changed directories is only
+      // missing if its files changed on its own volume.
+      bl.removeIf(replica -> !onDisk.contains(replica.getBlockId())
+          && !isChanged(changes, replica.getVolume(), bpid,
+              replica.getBlockId()));
+      Collections.sort(bl); // Sort based on blockId
 
-        // Block and meta must be regular file
-        boolean isRegular = FileUtil.isRegularFile(info.getBlockFile(), false) &&
-                FileUtil.isRegularFile(info.getMetaFile(), false);
-        if (!isRegular) {
-          statsRecord.mismatchBlocks++;
+      Stats statsRecord = addDifferences(bpid, blockpoolReport, bl);
+      LOG.debug("Incremental scan results: {}", statsRecord);
+    }
+  }
+
+  private static boolean isChanged(
+      Map<FsVolumeSpi, Map<String, FinalizedDirWatcher.Changes>> changes,
+      FsVolumeSpi volume, String bpid, long blockId) {
+    Map<String, FinalizedDirWatcher.Changes> volumeChanges =
+        changes.get(volume);
+    if (volumeChanges == null || !volumeChanges.containsKey(bpid)) {
+      return false;
+    }
+    return volumeChanges.get(bpid).getBlockIds().contains(blockId);
+  }
+
+  /**
+   * Compare the blocks on the disk with the finalized blocks in memory, both
+   * sorted by block id, and record their differences.
+   *
+   * @param bpid the block pool
+   * @param blockpoolReport the blocks on the disk
+   * @param bl the finalized blocks in memory
+   * @return the statistics of the differences
+   */
+  private Stats addDifferences(String bpid, List<ScanInfo> blockpoolReport,
+      List<ReplicaInfo> bl) {
+    Stats statsRecord = new Stats(bpid);
+    stats.put(bpid, statsRecord);
+    Collection<ScanInfo> diffRecord = new ArrayList<>();
+
+    statsRecord.totalBlocks = blockpoolReport.size();
+
+    int d = 0; // index for blockpoolReport
+    int m = 0; // index for memReprot
+    while (m < bl.size() && d < blockpoolReport.size()) {
+      ReplicaInfo memBlock = bl.get(m);
+      ScanInfo info = blockpoolReport.get(d);
+      if (info.getBlockId() < memBlock.getBlockId()) {
+        if (!dataset.isDeletingBlock(bpid, info.getBlockId())) {
+          // Block is missing in memory
+          statsRecord.missingMemoryBlocks++;
           addDifference(diffRecord, statsRecord, info);
-        } else {
-          // Block file and/or metadata file exists on the disk
-          // Block exists in memory
-          if (info.getBlockFile() == null) {
-            // Block metadata file exits and block file is missing
-            addDifference(diffRecord, statsRecord, info);
-          } else if (info.getGenStamp() != memBlock.getGenerationStamp()
-                  || info.getBlockLength() != memBlock.getNumBytes()) {
-            // Block metadata file is missing or has wrong generation stamp,
-            // or block file length is different than expected
-            statsRecord.mismatchBlocks++;
-            addDifference(diffRecord, statsRecord, info);
-          } else if (memBlock.compareWith(info) != 0) {
-            // volumeMap record and on-disk files do not match.
-            statsRecord.duplicateBlocks++;
-            addDifference(diffRecord, statsRecord, info);
-          }
         }
         d++;
+        continue;
+      }
+      if (info.getBlockId() > memBlock.getBlockId()) {
+        // Block is missing on the disk
+        addDifference(diffRecord, statsRecord, memBlock.getBlockId(),
+            info.getVolume());
+        m++;
+        continue;
+      }
 
-        if (d < blockpoolReport.size()) {
-          // There may be multiple on-disk records for the same block, do not
-          // increment the memory record pointer if so.
-          ScanInfo nextInfo = blockpoolReport.get(d);
-          if (nextInfo.getBlockId() != info.getBlockId()) {
-            ++m;
-          }
-        } else {
-          ++m;
+      // Block and meta must be regular file
+      boolean isRegular = FileUtil.isRegularFile(info.getBlockFile(), false) &&
+              FileUtil.isRegularFile(info.getMetaFile(), false);
+      if (!isRegular) {
+        statsRecord.mismatchBlocks++;
+        addDifference(diffRecord, statsRecord, info);
+      } else {
+        // Block file and/or metadata file exists on the disk
+        // Block exists in memory
+        if (info.getBlockFile() == null) {
+          // Block metadata file exits and block file is missing
+          addDifference(diffRecord, statsRecord, info);
+        } else if (info.getGenStamp() != memBlock.getGenerationStamp()
+                || info.getBlockLength() != memBlock.getNumBytes()) {
+          // Block metadata file is missing or has wrong generation stamp,
+          // or block file length is different than expected
+          statsRecord.mismatchBlocks++;
+          addDifference(diffRecord, statsRecord, info);
+        } else if (memBlock.compareWith(info) != 0) {
+          // volumeMap record and on-disk files do not match.
+          statsRecord.duplicateBlocks++;
+          addDifference(diffRecord, statsRecord, info);
         }
       }
-      while (m < bl.size()) {
-        ReplicaInfo current = bl.get(m++);
-        addDifference(diffRecord, statsRecord, current.getBlockId(),
-            current.getVolume());
-      }
-      while (d < blockpoolReport.size()) {
-        if (!dataset.isDeletingBlock(bpid,
-            blockpoolReport.get(d).getBlockId())) {
-          statsRecord.missingMemoryBlocks++;
-          addDifference(diffRecord, statsRecord, blockpoolReport.get(d));
+      d++;
+
+      if (d < blockpoolReport.size()) {
+        // There may be multiple on-disk records for the same block, do not
+        // increment the memory record pointer if so.
+        ScanInfo nextInfo = blockpoolReport.get(d);
+        if (nextInfo.getBlockId() != info.getBlockId()) {
+          ++m;
         }
-        d++;
+      } else {
+        ++m;
       }
-      synchronized (diffs) {
-        diffs.addAll(bpid, diffRecord);
+    }
+    while (m < bl.size()) {
+      ReplicaInfo current = bl.get(m++);
+      addDifference(diffRecord, statsRecord, current.getBlockId(),
+          current.getVolume());
+    }
+    while (d < blockpoolReport.size()) {
+      if (!dataset.isDeletingBlock(bpid,
+          blockpoolReport.get(d).getBlockId())) {
+        statsRecord.missingMemoryBlocks++;
+        addDifference(diffRecord, statsRecord, blockpoolReport.get(d));
       }
-      LOG.info("Scan Results: {}", statsRecord);
+      d++;
+    }
+    synchronized (diffs) {
+      diffs.addAll(bpid, diffRecord);
     }
+    return statsRecord;
   }
 
   /**
@@ -637,6 +821,17 @@ private void addDifference(Collection<ScanInfo> diffRecord, Stats statsRecord,
    */
   @VisibleForTesting
   public Collection<ScanInfoVolumeReport> getVolumeReports() {
+    return getVolumeReports(null);
+  }
+
+  /**
+   * Get the lists of blocks in the given directories of the volumes.
+   *
+   * @param dirs the directories to scan by volume and block pool, or null to
+   *             scan all the volumes
+   */
+  private Collection<ScanInfoVolumeReport> getVolumeReports(
+      Map<FsVolumeSpi, Map<String, Collection<File>>> dirs) {
     List<ScanInfoVolumeReport> volReports = new ArrayList<>();
     List<Future<ScanInfoVolumeReport>> compilersInProgress = new ArrayList<>();
 
@@ -646,8 +841,13 @@ public Collection<ScanInfoVolumeReport> getVolumeReports() {
 
       for (final FsVolumeSpi volume : volumes) {
         // Disable scanning PROVIDED volumes to keep overhead low
+        if (dirs != null && !dirs.containsKey(volume)) {
+          continue;
+        }
         if (volume.getStorageType() != StorageType.PROVIDED) {
-          ReportCompiler reportCompiler = new ReportCompiler(volume);
+          ReportCompiler reportCompiler = dirs == null
+              ? new ReportCompiler(volume)
+              : new ReportCompiler(volume, dirs.get(volume));
           Future<ScanInfoVolumeReport> result =
               reportCompileThreadPool.submit(reportCompiler);
           compilersInProgress.add(result);
@@ -684,6 +884,8 @@ public Collection<ScanInfoVolumeReport> getVolumeReports() {
    */
   public class ReportCompiler implements Callable<ScanInfoVolumeReport> {
     private final FsVolumeSpi volume;
+    /** The directories to scan by block pool, or null to scan the volume. */
+    private final Map<String, Collection<File>> dirs;
     // Variable for tracking time spent running for throttling purposes
     private final StopWatch throttleTimer = new StopWatch();
     // Variable for tracking time spent running and waiting for testing
@@ -696,7 +898,18 @@ public class ReportCompiler implements Callable<ScanInfoVolumeReport> {
      * @param volume the target volume
      */
     public ReportCompiler(FsVolumeSpi volume) {
+      this(volume, null);
+    }
+
+    /**
+     * Create a report compiler for the given directories of a volume.
+     *
+     * @param volume the target volume
+     * @param dirs the directories to scan by block pool
+     */
+    ReportCompiler(FsVolumeSpi volume, Map<String, Collection<File>> dirs) {
       this.volume = volume;
+      this.dirs = dirs;
     }
 
     /**
@@ -707,7 +920,8 @@ public ReportCompiler(FsVolumeSpi volume) {
      */
     @Override
     public ScanInfoVolumeReport call() throws IOException {
-      String[] bpList = volume.getBlockPoolList();
+      String[] bpList = dirs == null ? volume.getBlockPoolList()
+          : dirs.keySet().toArray(new String[0]);
       ScanInfoVolumeReport result =
           new ScanInfoVolumeReport(volume, Arrays.asList(bpList));
       perfTimer.start();
@@ -720,7 +934,13 @@ public ScanInfoVolumeReport call() throws IOException {
 
         try {
           // ScanInfos are added directly to 'report' list
-          volume.compileReport(bpid, report, this);
+          if (dirs == null) {
+            volume.compileReport(bpid, report, this);
+          } else {
+            for (File dir : dirs.get(bpid)) {
+              volume.compileReport(bpid, dir, report, this);
+            }
+          }
           result.addAll(bpid, report);
         } catch (InterruptedException ex) {
           // Exit quickly and flag the scanner to do the same
@@ -0,0 +1,367 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.util.Daemon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A journal of the changes made to the finalized directories of the volumes,
+ * which lets the {@link DirectoryScanner} only reconcile the directories
+ * which changed since its previous scan.
+ *
+ * The directories are watched with a {@link WatchService}, which is backed by
+ * inotify on Linux. A block or meta file created, deleted or modified in a
+ * watched directory records its block id and its directory as changed. New
+ * subdirectories are watched as they are created. When changes may have been
+ * missed, because an event queue overflowed or a directory could not be
+ * watched, the journal is incomplete and the scanner falls back to a full
+ * scan.
+ *
+ * Each directory takes one of the inotify watches of the user, which are
+ * limited by fs.inotify.max_user_watches. A slice which could not be watched,
+ * typically because the limit was reached, is not watched again for as long
+ * as it is in use, and the journal stays incomplete meanwhile.
+ */
+class FinalizedDirWatcher implements Closeable {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(FinalizedDirWatcher.class);
+  private static final String MAX_USER_WATCHES =
+      "/proc/sys/fs/inotify/max_user_watches";
+
+  /**
+   * The changes of the finalized directory of a block pool on a volume.
+   */
+  static final class Changes {
+    private final Set<Long> blockIds = new HashSet<>();
+    private final Set<File> dirs = new HashSet<>();
+
+    /** @return the ids of the blocks whose files changed */
+    Set<Long> getBlockIds() {
+      return blockIds;
+    }
+
+    /**
+     * @return the changed directories, without the subdirectories of
+     *         another changed directory
+     */
+    Collection<File> getDirs() {
+      List<File> topDirs = new ArrayList<>();
+      File last = null;
+      // a directory sorts before its subdirectories.
+      for (File dir : new TreeSet<>(dirs)) {
+        if (last == null
+            || !dir.getPath().startsWith(last.getPath() + File.separator)) {
+          topDirs.add(dir);
+          last = dir;
+        }
+      }
+      return topDirs;
+    }
+  }
+
+  /** The watched finalized directory of a block pool on a volume. */
+  private static final class Slice {
+    private final File finalizedDir;
+    private final List<WatchKey> keys = new ArrayList<>();
+    private Changes changes = new Changes();
+    /** Whether the slice could not be watched, and is no longer watched. */
+    private boolean failed;
+
+    private Slice(File finalizedDir) {
+      this.finalizedDir = finalizedDir;
+    }
+  }
+
+  private final WatchService watchService;
+  private final Daemon eventThread;
+  /** The watched slices, by volume and block pool. Guarded by this. */
+  private final Map<FsVolumeSpi, Map<String, Slice>> slices = new HashMap<>();
+  /** The slice of each watched directory. Guarded by this. */
+  private final Map<WatchKey, Slice> watchedDirs = new HashMap<>();
+  /** Whether changes were missed since the last drain. Guarded by this. */
+  private boolean incomplete;
+
+  FinalizedDirWatcher() throws IOException {
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.eventThread = new Daemon(this::processEvents);
+    eventThread.setName("FinalizedDirWatcher");
+    eventThread.start();
+  }
+
+  /**
+   * Watch the finalized directories of the block pools of the given volumes,
+   * and stop watching the directories of the other volumes and block pools.
+   * The journal is incomplete if any directory was not watched before.
+   */
+  synchronized void update(Collection<FsVolumeSpi> volumes) {
+    Iterator<Map.Entry<FsVolumeSpi, Map<String, Slice>>> it =
+        slices.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<FsVolumeSpi, Map<String, Slice>> entry = it.next();
+      if (!volumes.contains(entry.getKey())) {
+        entry.getValue().values().forEach(this::cancel);
+        it.remove();
+      }
+    }
+    for (FsVolumeSpi volume : volumes) {
+      Map<String, Slice> volumeSlices =
+          slices.computeIfAbsent(volume, v -> new HashMap<>());
+      Set<String> bpids = new HashSet<>();
+      for (String bpid : volume.getBlockPoolList()) {
+        bpids.add(bpid);
+        if (!volumeSlices.containsKey(bpid)) {
+          Slice slice = watch(volume, bpid);
+          if (slice != null) {
+            volumeSlices.put(bpid, slice);
+          }
+          incomplete = true;
+        }
+      }
+      Iterator<Map.Entry<String, Slice>> sliceIt =
+          volumeSlices.entrySet().iterator();
+      while (sliceIt.hasNext()) {
+        Map.Entry<String, Slice> entry = sliceIt.next();
+        if (!bpids.contains(entry.getKey())) {
+          cancel(entry.getValue());
+          sliceIt.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Start watching the finalized directory of a block pool on a volume.
+   * @return the slice, or null if its directories cannot be watched
+   */
+  private Slice watch(FsVolumeSpi volume, String bpid) {
+    File finalizedDir;
+    try {
+      finalizedDir = volume.getFinalizedDir(bpid);
+    } catch (IOException e) {
+      LOG.warn("Failed to get the finalized directory of {} on {}", bpid,
+          volume, e);
+      return null;
+    }
+    if (finalizedDir == null) {
+      return null;
+    }
+    Slice slice = new Slice(finalizedDir);
+    try {
+      register(slice, finalizedDir);
+    } catch (IOException e) {
+      fail(slice, finalizedDir, e);
+      return slice;
+    }
+    LOG.info("Watching {} directories of {}", slice.keys.size(),
+        finalizedDir);
+    return slice;
+  }
+
+  /** Watch a directory of a slice and all its subdirectories. */
+  private void register(Slice slice, File dir) throws IOException {
+    DataNodeFaultInjector.get().watchFinalizedDir(dir);
+    WatchKey key = dir.toPath().register(watchService,
+        ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+    if (watchedDirs.put(key, slice) == null) {
+      slice.keys.add(key);
+    }
+    File[] subdirs = dir.listFiles(File::isDirectory);
+    if (subdirs == null) {
+      throw new IOException("Failed to list " + dir);
+    }
+    for (File subdir : subdirs) {
+      register(slice, subdir);
+    }
+  }
+
+  /**
+   * Stop watching a slice, one of whose directories could not be watched.
+   * It is not watched again, as registering its directories would most
+   * likely fail again, so the journal stays incomplete while it is in use.
+   */
+  private void fail(Slice slice, File dir, IOException e) {
+    LOG.warn("Failed to watch {}, the directory scanner will scan the whole "
+        + "volumes while {} is in use. The inotify watches of the user are "
+        + "limited to {} by {}", dir, slice.finalizedDir, getWatchLimit(),
+        MAX_USER_WATCHES, e);
+    cancel(slice);
+    slice.failed = true;
+    slice.changes = new Changes();
+    incomplete = true;
+  }
+
+  /** @return the inotify watch limit of the user, if known. */
+  private static String getWatchLimit() {
+    try {
+      return new String(Files.readAllBytes(Paths.get(MAX_USER_WATCHES)),
+          StandardCharsets.UTF_8).trim();
+    } catch (IOException e) {
+      return "an unknown number";
+    }
+  }
+
+  private void cancel(Slice slice) {
+    for (WatchKey key : slice.keys) {
+      key.cancel();
+      watchedDirs.remove(key);
+    }
+    slice.keys.clear();
+  }
+
+  /**
+   * Take the changes recorded since the previous call.
+   * @return the changes by volume and block pool, or null if the journal is
+   *         incomplete
+   */
+  synchronized Map<FsVolumeSpi, Map<String, Changes>> drain() {
+    Map<FsVolumeSpi, Map<String, Changes>> changes = new HashMap<>();
+    for (Map.Entry<FsVolumeSpi, Map<String, Slice>> volumeSlices :
+        slices.entrySet()) {
+      for (Map.Entry<String, Slice> entry :
+          volumeSlices.getValue().entrySet()) {
+        Slice slice = entry.getValue();
+        if (slice.failed) {
+          incomplete = true;
+        } else if (!slice.changes.dirs.isEmpty()) {
+          changes.computeIfAbsent(volumeSlices.getKey(), v -> new HashMap<>())
+              .put(entry.getKey(), slice.changes);
+          slice.changes = new Changes();
+        }
+      }
+    }
+    if (incomplete) {
+      incomplete = false;
+      return null;
+    }
+    return changes;
+  }
+
+  private void processEvents() {
+    while (true) {
+      WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+      synchronized (this) {
+        Slice slice = watchedDirs.get(key);
+        if (slice == null) {
+          // cancelled.
+          continue;
+        }
+        File dir = ((Path) key.watchable()).toFile();
+        for (WatchEvent<?> event : key.pollEvents()) {
+          processEvent(slice, dir, event);
+        }
+        if (!key.reset()) {
+          // the directory was deleted, after all its files.
+          watchedDirs.remove(key);
+          slice.keys.remove(key);
+        }
+      }
+    }
+  }
+
+  private void processEvent(Slice slice, File dir, WatchEvent<?> event) {
+    if (slice.failed) {
+      return;
+    }
+    if (event.kind() == OVERFLOW) {
+      LOG.info("Changes of {} were lost, the next directory scan will scan " +
+          "the whole volumes", slice.finalizedDir);
+      incomplete = true;
+      return;
+    }
+    String name = event.context().toString();
+    File file = new File(dir, name);
+    if (event.kind() == ENTRY_CREATE && file.isDirectory()) {
+      // files may have been added before the directory was watched.
+      slice.changes.dirs.add(file);
+      try {
+        register(slice, file);
+      } catch (IOException e) {
+        fail(slice, file, e);
+      }
+      return;
+    }
+    Matcher m = Block.metaOrBlockFilePattern.matcher(name);
+    if (m.matches()) {
+      slice.changes.blockIds.add(Long.parseLong(m.group(1)));
+      slice.changes.dirs.add(dir);
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int getNumChangedBlocks() {
+    int numBlocks = 0;
+    for (Map<String, Slice> volumeSlices : slices.values()) {
+      for (Slice slice : volumeSlices.values()) {
+        numBlocks += slice.changes.blockIds.size();
+      }
+    }
+    return numBlocks;
+  }
+
+  @Override
+  public void close() {
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      LOG.warn("Failed to close the watch service", e);
+    }
+    try {
+      eventThread.join(10000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,301 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.concurrent.HadoopExecutors;
+import org.slf4j.Logger;
+
+/**
+ * Group commit of the fsyncs requested by hsync.
+ *
+ * Instead of syncing a replica on the thread receiving its packets, a
+ * {@link BlockReceiver} hands the sync to the volume of the replica, and
+ * keeps receiving packets while the sync is in progress. The acks of the
+ * synced packets are held back by the PacketResponder until the sync has
+ * completed, so an hsync is still only acknowledged once its data is durable.
+ *
+ * The syncs of a volume are processed one batch at a time. All the sync
+ * requests which arrive while a batch is being synced are collected into the
+ * next batch, in which every replica is synced only once, whatever the number
+ * of its requests. The replicas of a batch are synced in parallel, up to a
+ * bound, so that the file system can merge their syncs into fewer journal
+ * commits.
+ */
+class VolumeSyncService {
+  public static final Logger LOG = DataNode.LOG;
+
+  private final ExecutorService executor;
+  private final int maxParallelSyncs;
+  private final ConcurrentHashMap<FsVolumeSpi, VolumeSyncer> syncers =
+      new ConcurrentHashMap<>();
+  private final AtomicLong numSyncRequests = new AtomicLong();
+  private final AtomicLong numSyncs = new AtomicLong();
+  private volatile boolean running = true;
+
+  /**
+   * The files of a replica, synced up to the largest length requested so
+   * far.
+   */
+  abstract static class SyncTarget {
+    /** The length requested to be synced. Guarded by this. */
+    private long requestedLength = -1;
+    /** The length known to be durable. Guarded by this. */
+    private long syncedLength = -1;
+    /** The failure of a previous sync. Guarded by this. */
+    private IOException error;
+
+    /** Sync the files of the replica. */
+    abstract void doSync() throws IOException;
+
+    /**
+     * Sync the replica if a length beyond the synced length was requested.
+     */
+    void sync() {
+      final long length;
+      synchronized (this) {
+        if (error != null || requestedLength <= syncedLength) {
+          return;
+        }
+        length = requestedLength;
+      }
+      try {
+        // all the data up to the requested length has been flushed before
+        // the request was made.
+        doSync();
+        synchronized (this) {
+          syncedLength = Math.max(syncedLength, length);
+          notifyAll();
+        }
+      } catch (IOException e) {
+        synchronized (this) {
+          error = e;
+          notifyAll();
+        }
+      }
+    }
+
+    private synchronized boolean request(long length) throws IOException {
+      if (error != null) {
+        throw error;
+      }
+      if (length <= requestedLength) {
+        return false;
+      }
+      requestedLength = length;
+      return true;
+    }
+
+    /** @return true if the replica is durable up to the given length. */
+    synchronized boolean isSynced(long length) {
+      return syncedLength >= length;
+    }
+
+    /**
+     * Wait until the replica is durable up to the given length.
+     * @throws IOException if the sync failed
+     */
+    synchronized void awaitSynced(long length) throws IOException {
+      while (syncedLength < length && error == null) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException(
+              "Interrupted while waiting for the sync of " + this);
+        }
+      }
+      if (syncedLength < length) {
+        throw error;
+      }
+    }
+
+    /**
+     * Wait for all the requested syncs.
+     * @throws IOException if a sync failed
+     */
+    void awaitRequested() throws IOException {
+      final long length;
+      synchronized (this) {
+        length = requestedLength;
+      }
+      awaitSynced(length);
+    }
+  }
+
+  /** Processes the sync requests of a volume, one batch at a time. */
+  private final class VolumeSyncer implements Runnable {
+    private final FsVolumeSpi volume;
+    /** Guarded by this. */
+    private final Set<SyncTarget> pending = new LinkedHashSet<>();
+    /** Whether a thread is processing the requests. Guarded by this. */
+    private boolean scheduled;
+
+    private VolumeSyncer(FsVolumeSpi volume) {
+      this.volume = volume;
+    }
+
+    private void add(SyncTarget target) {
+      synchronized (this) {
+        pending.add(target);
+        if (scheduled) {
+          return;
+        }
+        scheduled = true;
+      }
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        // shutting down: sync on the caller's thread.
+        run();
+      }
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        final List<SyncTarget> batch;
+        synchronized (this) {
+          if (pending.isEmpty()) {
+            scheduled = false;
+            return;
+          }
+          batch = new ArrayList<>(pending);
+          pending.clear();
+        }
+        LOG.trace("Syncing {} replicas on {}", batch.size(), volume);
+        syncBatch(batch);
+      }
+    }
+
+    /**
+     * Sync the replicas of a batch with up to maxParallelSyncs threads,
+     * this one included, and wait for all of them.
+     */
+    private void syncBatch(final List<SyncTarget> batch) {
+      final AtomicInteger next = new AtomicInteger();
+      final Runnable syncNext = () -> {
+        for (int i = next.getAndIncrement(); i < batch.size();
+             i = next.getAndIncrement()) {
+          // counted first, so that it is seen by the waiters of the sync.
+          numSyncs.incrementAndGet();
+          batch.get(i).sync();
+        }
+      };
+      final int numHelpers = Math.min(maxParallelSyncs, batch.size()) - 1;
+      final List<Future<?>> helpers = new ArrayList<>(numHelpers);
+      for (int i = 0; i < numHelpers; i++) {
+        try {
+          helpers.add(executor.submit(syncNext));
+        } catch (RejectedExecutionException e) {
+          // shutting down: sync the rest on this thread.
+          break;
+        }
+      }
+      syncNext.run();
+      boolean interrupted = false;
+      for (Future<?> helper : helpers) {
+        while (true) {
+          try {
+            helper.get();
+            break;
+          } catch (InterruptedException e) {
+            interrupted = true;
+          } catch (ExecutionException e) {
+            LOG.warn("Failed to sync replicas on {}", volume, e.getCause());
+            break;
+          }
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * @param maxParallelSyncs the maximum number of replicas of a volume
+   *                         synced at the same time
+   */
+  VolumeSyncService(int maxParallelSyncs) {
+    this.maxParallelSyncs = maxParallelSyncs;
+    this.executor = HadoopExecutors.newCachedThreadPool(r -> {
+      Daemon t = new Daemon(r);
+      t.setName("VolumeSyncer-" + t.getId());
+      return t;
+    });
+  }
+
+  /**
+   * Request the target to be synced up to the given length. All the data up
+   * to this length must have been flushed.
+   * @throws IOException if a previous sync of the target failed
+   */
+  void requestSync(FsVolumeSpi volume, SyncTarget target, long length)
+      throws IOException {
+    numSyncRequests.incrementAndGet();
+    if (!target.request(length)) {
+      return;
+    }
+    if (!running) {
+      target.sync();
+      return;
+    }
+    syncers.computeIfAbsent(volume, VolumeSyncer::new).add(target);
+  }
+
+  /** Stop accepting requests once the running syncs have completed. */
+  void shutdown() {
+    running = false;
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+        LOG.warn("Timed out waiting for the volume syncers to terminate");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @VisibleForTesting
+  long getNumSyncRequests() {
+    return numSyncRequests.get();
+  }
+
+  @VisibleForTesting
+  long getNumSyncs() {
+    return numSyncs.get();
+  }
+}
@@ -27,6 +27,7 @@
 import java.nio.channels.ClosedChannelException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -250,6 +251,25 @@ StorageReport[] getStorageReports(String bpid)
    */
   List<ReplicaInfo> getFinalizedBlocks(String bpid);
 
+  /**
+   * Gets a list of references to the finalized blocks with the given ids in
+   * the given block pool.
+   *
+   * @return a list of references to the finalized blocks with the given ids;
+   *         the ids of the blocks which are not finalized are ignored.
+   */
+  default List<ReplicaInfo> getFinalizedBlocks(String bpid,
+      Collection<Long> blockIds) {
+    Set<Long> ids = new HashSet<>(blockIds);
+    List<ReplicaInfo> finalized = new ArrayList<>();
+    for (ReplicaInfo replica : getFinalizedBlocks(bpid)) {
+      if (ids.contains(replica.getBlockId())) {
+        finalized.add(replica);
+      }
+    }
+    return finalized;
+  }
+
   /**
    * Check whether the in-memory block record matches the block on the disk,
    * and, in case that they are not matched, update the record or mark it
@@ -22,7 +22,10 @@
 import java.io.IOException;
 import java.net.URI;
 import java.nio.channels.ClosedChannelException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -439,6 +442,50 @@ void compileReport(String bpid,
       Collection<ScanInfo> report, ReportCompiler reportCompiler)
       throws InterruptedException, IOException;
 
+  /**
+   * Get the directory holding the finalized blocks of a block pool.
+   *
+   * @param bpid block pool id
+   * @return the directory, or null if the blocks of the volume are not
+   *         stored in a local directory tree
+   * @throws IOException if the block pool is not found
+   */
+  default File getFinalizedDir(String bpid) throws IOException {
+    return null;
+  }
+
+  /**
+   * Compile a list of {@link ScanInfo} for the blocks of the block pool with
+   * id {@code bpid} in a subdirectory of its finalized directory.
+   *
+   * The default implementation compiles the report of the whole block pool
+   * and keeps the blocks whose block or meta file is in {@code dir}.
+   *
+   * @param bpid block pool id to scan
+   * @param dir the subdirectory to scan, with its own subdirectories
+   * @param report the list onto which blocks reports are placed
+   * @param reportCompiler
+   * @throws InterruptedException
+   * @throws IOException
+   */
+  default void compileReport(String bpid, File dir,
+      Collection<ScanInfo> report, ReportCompiler reportCompiler)
+      throws InterruptedException, IOException {
+    List<ScanInfo> all = new ArrayList<>();
+    compileReport(bpid, all, reportCompiler);
+    Path dirPath = dir.getAbsoluteFile().toPath();
+    for (ScanInfo info : all) {
+      File blockFile = info.getBlockFile();
+      File metaFile = info.getMetaFile();
+      if ((blockFile != null
+              && blockFile.getAbsoluteFile().toPath().startsWith(dirPath))
+          || (metaFile != null
+              && metaFile.getAbsoluteFile().toPath().startsWith(dirPath))) {
+        report.add(info);
+      }
+    }
+  }
+
   /**
    * Context for the {@link #check} call.
    */
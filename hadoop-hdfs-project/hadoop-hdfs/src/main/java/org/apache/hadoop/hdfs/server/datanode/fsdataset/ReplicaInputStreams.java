@@ -18,14 +18,20 @@
 package org.apache.hadoop.hdfs.server.datanode.fsdataset;
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.datanode.FileIoProvider;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.nativeio.NativeIO;
 import org.apache.hadoop.io.nativeio.NativeIOException;
 import org.slf4j.Logger;
 
@@ -40,6 +46,8 @@ public class ReplicaInputStreams implements Closeable {
   private FsVolumeReference volumeRef;
   private final FileIoProvider fileIoProvider;
   private FileDescriptor dataInFd = null;
+  /** If set, the checksums are read from this map instead of checksumIn. */
+  private MappedByteBuffer checksumMap = null;
 
   /** Create an object with a data input stream and a checksum input stream. */
   public ReplicaInputStreams(
@@ -85,9 +93,52 @@ public void readDataFully(byte[] buf, int off, int len)
     IOUtils.readFully(dataIn, buf, off, len);
   }
 
+  /**
+   * Read the checksums from a read-only memory map of a range of the
+   * checksum file from now on, rather than from the checksum stream.
+   * @param channel the channel of the checksum file
+   * @param position the position in the file of the next checksum to read
+   * @param length the length of the range
+   */
+  public void mapChecksums(FileChannel channel, long position, long length)
+      throws IOException {
+    unmap(checksumMap);
+    checksumMap = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+  }
+
+  /**
+   * Read data from the given position of the data file, without moving the
+   * position of the data stream.
+   * @param buf the buffer to fill up to its limit
+   * @param position the position in the data file to read from
+   * @throws EOFException if the data file ends before buf is full
+   */
+  public void readDataFully(ByteBuffer buf, long position)
+      throws IOException {
+    FileChannel channel = ((FileInputStream) dataIn).getChannel();
+    while (buf.hasRemaining()) {
+      int n = channel.read(buf, position);
+      if (n < 0) {
+        throw new EOFException("Premature EOF reading data at " + position);
+      }
+      position += n;
+    }
+  }
+
   public void readChecksumFully(byte[] buf, int off, int len)
       throws IOException {
-    IOUtils.readFully(checksumIn, buf, off, len);
+    if (checksumMap == null) {
+      IOUtils.readFully(checksumIn, buf, off, len);
+      return;
+    }
+    try {
+      checksumMap.get(buf, off, len);
+    } catch (BufferUnderflowException e) {
+      throw new EOFException("Premature EOF reading mapped checksums");
+    } catch (InternalError e) {
+      // the file was truncated under the map.
+      throw new IOException("Failed to read mapped checksums", e);
+    }
   }
 
   public void skipDataFully(long len) throws IOException {
@@ -95,12 +146,31 @@ public void skipDataFully(long len) throws IOException {
   }
 
   public void skipChecksumFully(long len) throws IOException {
-    IOUtils.skipFully(checksumIn, len);
+    if (checksumMap == null) {
+      IOUtils.skipFully(checksumIn, len);
+    } else if (len > checksumMap.remaining()) {
+      throw new EOFException("Premature EOF skipping mapped checksums");
+    } else {
+      checksumMap.position(checksumMap.position() + (int) len);
+    }
   }
 
   public void closeChecksumStream() throws IOException {
     IOUtils.closeStream(checksumIn);
     checksumIn = null;
+    unmap(checksumMap);
+    checksumMap = null;
+  }
+
+  private static void unmap(MappedByteBuffer map) {
+    if (map != null) {
+      NativeIO.POSIX.munmap(map);
+    }
+  }
+
+  private void unmapAll() {
+    unmap(checksumMap);
+    checksumMap = null;
   }
 
   public void dropCacheBehindReads(String identifier, long offset, long len,
@@ -112,6 +182,7 @@ public void dropCacheBehindReads(String identifier, long offset, long len,
 
   public void closeStreams() throws IOException {
     IOException ioe = null;
+    unmapAll();
     if(checksumIn!=null) {
       try {
         checksumIn.close(); // close checksum file
@@ -141,6 +212,7 @@ public void closeStreams() throws IOException {
 
   @Override
   public void close() {
+    unmapAll();
     IOUtils.closeStream(dataIn);
     dataIn = null;
     dataInFd = null;
@@ -73,6 +73,7 @@
 import org.apache.hadoop.util.DiskChecker;
 import org.apache.hadoop.util.DiskChecker.DiskErrorException;
 import org.apache.hadoop.util.ShutdownHookManager;
+import org.apache.hadoop.util.Time;
 import org.apache.hadoop.util.Timer;
 
 import org.apache.hadoop.classification.VisibleForTesting;
@@ -110,6 +111,11 @@ class BlockPoolSlice {
   private static final String REPLICA_CACHE_FILE = "replicas";
   private final long replicaCacheExpiry;
   private final File replicaCacheDir;
+  private static final String REPLICA_STORE_DIR = "replicas.db";
+  /** The index of the finalized replicas, or null if it is disabled. */
+  private final ReplicaStore replicaStore;
+  /** Whether the replicas added to the map are added to the index. */
+  private volatile boolean buildingReplicaStore = false;
   private AtomicLong numOfBlocks = new AtomicLong();
   private final long cachedDfsUsedCheckTime;
   private final Timer timer;
@@ -203,6 +209,7 @@ public int compare(File f1, File f2) {
         DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_EXPIRY_TIME_KEY,
         DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_EXPIRY_TIME_DEFAULT,
         TimeUnit.MILLISECONDS);
+    this.replicaStore = openReplicaStore(conf);
 
     // Use cached value initially if available. Or the following call will
     // block until the initial du command completes.
@@ -247,6 +254,25 @@ private synchronized static void initializeAddReplicaPool(Configuration conf,
     }
   }
 
+  /**
+   * Open the index of the finalized replicas if it is enabled, or delete it
+   * otherwise, since it is not kept up to date while disabled.
+   */
+  private ReplicaStore openReplicaStore(Configuration conf) {
+    File storeDir = new File(replicaCacheDir, REPLICA_STORE_DIR);
+    try {
+      if (conf.getBoolean(DFSConfigKeys.DFS_DATANODE_REPLICA_STORE_ENABLED_KEY,
+          DFSConfigKeys.DFS_DATANODE_REPLICA_STORE_ENABLED_DEFAULT)) {
+        return ReplicaStore.open(storeDir);
+      }
+      ReplicaStore.destroy(storeDir);
+    } catch (IOException e) {
+      // the index is not critical: the replicas are found by the scans.
+      LOG.warn("Failed to open the replica store " + storeDir, e);
+    }
+    return null;
+  }
+
   File getDirectory() {
     return currentDir.getParentFile();
   }
@@ -408,6 +434,7 @@ File addFinalizedBlock(Block b, ReplicaInfo replicaInfo) throws IOException {
       ((CachingGetSpaceUsed) dfsUsage).incDfsUsed(
           b.getNumBytes() + metaFile.length());
     }
+    addToReplicaStore(b);
     return blockFile;
   }
 
@@ -436,6 +463,7 @@ ReplicaInfo activateSavedReplica(ReplicaInfo replicaInfo,
         .setFsVolume(replicaState.getLazyPersistVolume())
         .setDirectoryToUse(targetBlockFile.getParentFile())
         .build();
+    addToReplicaStore(newReplicaInfo);
     return newReplicaInfo;
   }
 
@@ -458,6 +486,8 @@ void getVolumeMap(ReplicaMap volumeMap,
           "Recovered " + numRecovered + " replicas from " + lazypersistDir);
     }
 
+    // an incomplete replica store is built from the replicas found.
+    buildingReplicaStore = replicaStore != null && !replicaStore.isComplete();
     boolean success = readReplicasFromCache(volumeMap, lazyWriteReplicaMap);
     if (!success) {
       List<IOException> exceptions = Collections
@@ -466,17 +496,22 @@ void getVolumeMap(ReplicaMap volumeMap,
           new ConcurrentLinkedQueue<RecursiveAction>();
 
       // add finalized replicas
-      AddReplicaProcessor task = new AddReplicaProcessor(volumeMap,
-          finalizedDir, lazyWriteReplicaMap, true, exceptions, subTaskQueue);
-      ForkJoinTask<Void> finalizedTask = addReplicaThreadPool.submit(task);
+      ForkJoinTask<Void> finalizedTask = null;
+      if (!readReplicasFromStore(volumeMap, lazyWriteReplicaMap)) {
+        AddReplicaProcessor task = new AddReplicaProcessor(volumeMap,
+            finalizedDir, lazyWriteReplicaMap, true, exceptions, subTaskQueue);
+        finalizedTask = addReplicaThreadPool.submit(task);
+      }
 
       // add rbw replicas
-      task = new AddReplicaProcessor(volumeMap, rbwDir, lazyWriteReplicaMap,
-          false, exceptions, subTaskQueue);
+      AddReplicaProcessor task = new AddReplicaProcessor(volumeMap, rbwDir,
+          lazyWriteReplicaMap, false, exceptions, subTaskQueue);
       ForkJoinTask<Void> rbwTask = addReplicaThreadPool.submit(task);
 
       try {
-        finalizedTask.get();
+        if (finalizedTask != null) {
+          finalizedTask.get();
+        }
         rbwTask.get();
       } catch (InterruptedException | ExecutionException e) {
         exceptions.add(new IOException(
@@ -487,6 +522,57 @@ void getVolumeMap(ReplicaMap volumeMap,
       //wait for all the tasks to finish.
       waitForSubTaskToFinish(subTaskQueue, exceptions);
     }
+    if (buildingReplicaStore) {
+      buildingReplicaStore = false;
+      replicaStore.markComplete();
+      LOG.info("Built the replica store " + replicaStore);
+    }
+  }
+
+  /**
+   * Add the finalized replicas of the replica store to the volume map.
+   * @return false if there is no complete replica store to read from
+   */
+  private boolean readReplicasFromStore(ReplicaMap volumeMap,
+      final RamDiskReplicaTracker lazyWriteReplicaMap) throws IOException {
+    if (replicaStore == null || buildingReplicaStore) {
+      return false;
+    }
+    long start = Time.monotonicNow();
+    AtomicLong numReplicas = new AtomicLong();
+    replicaStore.load(block -> {
+      addReplicaToReplicasMap(block, volumeMap, lazyWriteReplicaMap, true);
+      numReplicas.incrementAndGet();
+    });
+    LOG.info("Read {} replicas from the replica store {} in {}ms",
+        numReplicas.get(), replicaStore, Time.monotonicNow() - start);
+    return true;
+  }
+
+  /** Add a finalized replica to the replica store, if enabled. */
+  void addToReplicaStore(Block replica) {
+    if (replicaStore != null) {
+      replicaStore.put(replica.getBlockId(), replica.getGenerationStamp(),
+          replica.getNumBytes());
+    }
+  }
+
+  /** Remove a replica from the replica store, if enabled. */
+  void removeFromReplicaStore(Block replica) {
+    if (replicaStore != null) {
+      replicaStore.remove(replica.getBlockId(), replica.getGenerationStamp());
+    }
+  }
+
+  /**
+   * Close the replica store, if enabled, without recording a clean shutdown,
+   * e.g. because replicas may still be deleted without being removed from
+   * it. It is then rebuilt at the next start.
+   */
+  void closeReplicaStore() {
+    if (replicaStore != null) {
+      replicaStore.close();
+    }
   }
 
   /**
@@ -678,6 +764,10 @@ private void addReplicaToReplicasMap(Block block, ReplicaMap volumeMap,
     if (oldReplica == null) {
       incrNumBlocks();
     }
+    if (buildingReplicaStore && isFinalized
+        && newReplica.getVolume() == volume) {
+      addToReplicaStore(newReplica);
+    }
   }
 
 
@@ -804,6 +894,8 @@ static ReplicaInfo selectReplicaToDelete(final ReplicaInfo replica1,
   }
 
   private void deleteReplica(final ReplicaInfo replicaToDelete) {
+    ((FsVolumeImpl) replicaToDelete.getVolume()).removeFromReplicaStore(
+        bpid, replicaToDelete);
     // Delete the files on disk. Failure here is okay.
     if (!replicaToDelete.deleteBlockData()) {
       LOG.warn("Failed to delete block file for replica " + replicaToDelete);
@@ -897,6 +989,9 @@ public String toString() {
   }
 
   void shutdown(BlockListAsLongs blocksListToPersist) {
+    if (replicaStore != null) {
+      replicaStore.shutdown();
+    }
     saveReplicas(blocksListToPersist);
     saveDfsUsed();
     dfsUsedSaved = true;
@@ -20,8 +20,10 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -30,8 +32,10 @@
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.hadoop.classification.VisibleForTesting;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.util.Preconditions;
+import org.apache.hadoop.util.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
@@ -70,6 +74,8 @@ class FsDatasetAsyncDiskService {
   private final int maxNumThreadsPerVolume;
   // ThreadPool keep-alive time for threads over core pool size
   private static final long THREADS_KEEP_ALIVE_SECONDS = 60; 
+  // Time to wait at shutdown for the submitted tasks to finish
+  private static final long SHUTDOWN_TIMEOUT_MS = 60000;
   
   private final DataNode datanode;
   private final FsDatasetImpl fsdatasetImpl;
@@ -80,6 +86,9 @@ class FsDatasetAsyncDiskService {
       = new HashMap<String, Set<Long>>();
   private static final int MAX_DELETED_BLOCKS = 64;
   private int numDeletedBlocks = 0;
+  // the number of deletions not done yet, per block pool
+  private final Map<String, Integer> pendingDeletions = new HashMap<>();
+  private volatile long shutdownTimeoutMs = SHUTDOWN_TIMEOUT_MS;
   
   /**
    * Create a AsyncDiskServices with a set of volumes (specified by their
@@ -191,31 +200,112 @@ synchronized void execute(FsVolumeImpl volume, Runnable task) {
       }
     } catch (RuntimeException re) {
       if (task instanceof ReplicaFileDeleteTask) {
-        IOUtils.cleanupWithLogger(null,
-            ((ReplicaFileDeleteTask) task).volumeRef);
+        ReplicaFileDeleteTask deletionTask = (ReplicaFileDeleteTask) task;
+        IOUtils.cleanupWithLogger(null, deletionTask.volumeRef);
+        removePendingDeletion(deletionTask.block.getBlockPoolId());
       }
       throw re;
     }
   }
+
+  private synchronized void addPendingDeletion(String bpid) {
+    pendingDeletions.merge(bpid, 1, Integer::sum);
+  }
+
+  private synchronized void removePendingDeletion(String bpid) {
+    if (pendingDeletions.merge(bpid, -1, Integer::sum) == 0) {
+      pendingDeletions.remove(bpid);
+      notifyAll();
+    }
+  }
+
+  /**
+   * @return true if deletions of replicas of the block pool were scheduled
+   *         and are not done yet.
+   */
+  synchronized boolean hasPendingDeletions(String bpid) {
+    return pendingDeletions.containsKey(bpid);
+  }
+
+  /**
+   * Wait for the scheduled deletions of replicas of the block pool to be
+   * done, for up to the shutdown timeout, e.g. before the block pool is
+   * shut down.
+   * @return true if no deletion of the block pool is pending.
+   */
+  synchronized boolean awaitDeletions(String bpid) {
+    Integer pending = pendingDeletions.get(bpid);
+    if (pending == null) {
+      return true;
+    }
+    LOG.info("Waiting for {} pending deletions of block pool {}", pending,
+        bpid);
+    long deadline = Time.monotonicNow() + shutdownTimeoutMs;
+    try {
+      for (long remaining = shutdownTimeoutMs;
+           pendingDeletions.containsKey(bpid) && remaining > 0;
+           remaining = deadline - Time.monotonicNow()) {
+        wait(remaining);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    pending = pendingDeletions.get(bpid);
+    if (pending != null) {
+      LOG.warn("{} deletions of block pool {} are still pending after {} ms",
+          pending, bpid, shutdownTimeoutMs);
+      return false;
+    }
+    return true;
+  }
   
   /**
    * Gracefully shut down all ThreadPool. Will wait for all deletion
-   * tasks to finish.
+   * tasks to finish, for up to the shutdown timeout.
+   * @return true if all the submitted tasks finished, false if some are
+   *         still pending or running, and may later update the volumes.
    */
-  synchronized void shutdown() {
-    if (executors == null) {
-      LOG.warn("AsyncDiskService has already shut down.");
-    } else {
+  boolean shutdown() {
+    List<ThreadPoolExecutor> shutDown;
+    synchronized (this) {
+      if (executors == null) {
+        LOG.warn("AsyncDiskService has already shut down.");
+        return true;
+      }
       LOG.info("Shutting down all async disk service threads");
-      
+
       for (Map.Entry<String, ThreadPoolExecutor> e : executors.entrySet()) {
         e.getValue().shutdown();
       }
+      shutDown = new ArrayList<>(executors.values());
       // clear the executor map so that calling execute again will fail.
       executors = null;
-      
-      LOG.info("All async disk service threads have been shut down");
     }
+    // the tasks synchronize on this service, so wait outside of the lock.
+    long deadline = Time.monotonicNow() + shutdownTimeoutMs;
+    try {
+      for (ThreadPoolExecutor executor : shutDown) {
+        long remaining = Math.max(0, deadline - Time.monotonicNow());
+        if (!executor.awaitTermination(remaining, TimeUnit.MILLISECONDS)) {
+          LOG.warn("Async disk service threads did not finish their {} "
+              + "pending tasks within {} ms", executor.getTaskCount()
+              - executor.getCompletedTaskCount(), shutdownTimeoutMs);
+          return false;
+        }
+      }
+    } catch (InterruptedException e) {
+      LOG.warn("Interrupted while waiting for the async disk service "
+          + "threads to finish");
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    LOG.info("All async disk service threads have been shut down");
+    return true;
+  }
+
+  @VisibleForTesting
+  void setShutdownTimeoutMs(long timeoutMs) {
+    this.shutdownTimeoutMs = timeoutMs;
   }
 
   public void submitSyncFileRangeRequest(FsVolumeImpl volume,
@@ -280,6 +370,7 @@ class ReplicaFileDeleteTask implements Runnable {
       this.replicaToDelete = replicaToDelete;
       this.block = block;
       this.trashDirectory = trashDirectory;
+      addPendingDeletion(block.getBlockPoolId());
     }
 
     @Override
@@ -349,12 +440,15 @@ public void run() {
           }
           volume.onBlockFileDeletion(block.getBlockPoolId(), blockLength);
           volume.onMetaFileDeletion(block.getBlockPoolId(), metaLength);
+          volume.removeFromReplicaStore(block.getBlockPoolId(),
+              replicaToDelete);
           LOG.info("Deleted " + block.getBlockPoolId() + " " +
               block.getLocalBlock() + " URI " + replicaToDelete.getBlockURI());
         }
         updateDeletedBlockId(block);
       } finally {
         IOUtils.cleanupWithLogger(null, this.volumeRef);
+        removePendingDeletion(block.getBlockPoolId());
       }
     }
   }
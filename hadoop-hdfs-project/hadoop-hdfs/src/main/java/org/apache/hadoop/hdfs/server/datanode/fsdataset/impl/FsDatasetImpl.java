@@ -2000,6 +2000,9 @@ private ReplicaInfo finalizeReplica(String bpid, ReplicaInfo replicaInfo)
           == ReplicaState.FINALIZED) {
         newReplicaInfo = replicaInfo.getOriginalReplica();
         ((FinalizedReplica)newReplicaInfo).loadLastPartialChunkChecksum();
+        // the recovery may have changed its generation stamp and length.
+        ((FsVolumeImpl) newReplicaInfo.getVolume()).addToReplicaStore(bpid,
+            newReplicaInfo);
       } else {
         FsVolumeImpl v = (FsVolumeImpl)replicaInfo.getVolume();
         if (v == null) {
@@ -2172,6 +2175,21 @@ public List<ReplicaInfo> getFinalizedBlocks(String bpid) {
     }
   }
 
+  @Override
+  public List<ReplicaInfo> getFinalizedBlocks(String bpid,
+      Collection<Long> blockIds) {
+    try (AutoCloseDataSetLock l = lockManager.readLock(LockLevel.BLOCK_POOl, bpid)) {
+      ArrayList<ReplicaInfo> finalized = new ArrayList<>(blockIds.size());
+      for (long blockId : blockIds) {
+        ReplicaInfo b = volumeMap.get(bpid, blockId);
+        if (b != null && b.getState() == ReplicaState.FINALIZED) {
+          finalized.add(new FinalizedReplica((FinalizedReplica)b));
+        }
+      }
+      return finalized;
+    }
+  }
+
   /**
    * Check if a block is valid.
    *
@@ -2552,8 +2570,9 @@ public void shutdown() {
       mbeanName = null;
     }
     
+    boolean deletionsFinished = true;
     if (asyncDiskService != null) {
-      asyncDiskService.shutdown();
+      deletionsFinished = asyncDiskService.shutdown();
     }
 
     if (asyncLazyPersistService != null) {
@@ -2561,6 +2580,13 @@ public void shutdown() {
     }
     
     if(volumes != null) {
+      if (!deletionsFinished) {
+        // deletions still running cannot remove their replicas from the
+        // replica stores, so do not record a clean shutdown of the stores.
+        for (FsVolumeImpl volume : volumes.getVolumes()) {
+          volume.closeReplicaStores();
+        }
+      }
       volumes.shutdown();
     }
 
@@ -2682,6 +2708,8 @@ public void checkAndUpdate(String bpid, ScanInfo scanInfo)
           if (vol.isTransientStorage()) {
             ramDiskReplicaTracker.discardReplica(bpid, blockId, true);
           }
+          ((FsVolumeImpl) memBlockInfo.getVolume()).removeFromReplicaStore(
+              bpid, memBlockInfo);
           LOG.warn("Removed block " + blockId
               + " from memory with missing block file on the disk");
           // Finally remove the metadata file
@@ -2705,6 +2733,7 @@ public void checkAndUpdate(String bpid, ScanInfo scanInfo)
             .setDirectoryToUse(diskFile.getParentFile())
             .build();
         volumeMap.add(bpid, diskBlockInfo);
+        ((FsVolumeImpl) vol).addToReplicaStore(bpid, diskBlockInfo);
         if (curDirScannerNotifyCount < maxDirScannerNotifyCount) {
           maxDirScannerNotifyCount++;
           datanode.notifyNamenodeReceivedBlock(
@@ -2811,6 +2840,11 @@ public void checkAndUpdate(String bpid, ScanInfo scanInfo)
         corruptBlock = new Block(memBlockInfo);
         LOG.warn("Block:{} is not a regular file.", corruptBlock.getBlockId());
       }
+      // the generation stamp or the length may have been updated.
+      if (volumeMap.get(bpid, blockId) == memBlockInfo) {
+        ((FsVolumeImpl) memBlockInfo.getVolume()).addToReplicaStore(bpid,
+            memBlockInfo);
+      }
     } finally {
       if (dataNodeMetrics != null) {
         long checkAndUpdateTimeMs = Time.monotonicNow() - startTimeMs;
@@ -3132,11 +3166,20 @@ public static void setBlockPoolId(String bpid) {
 
   @Override
   public void shutdownBlockPool(String bpid) {
+    // let the pending deletions remove their replicas from the replica
+    // stores before the stores are shut down.
+    boolean deletionsFinished = asyncDiskService.awaitDeletions(bpid);
     try (AutoCloseableLock lock = lockManager.writeLock(LockLevel.BLOCK_POOl, bpid)) {
       LOG.info("Removing block pool " + bpid);
       Map<DatanodeStorage, BlockListAsLongs> blocksPerVolume
           = getBlockReports(bpid);
       volumeMap.cleanUpBlockPool(bpid);
+      if (!deletionsFinished || asyncDiskService.hasPendingDeletions(bpid)) {
+        // do not record a clean shutdown of stores which are still updated.
+        for (FsVolumeImpl volume : volumes.getVolumes()) {
+          volume.closeReplicaStore(bpid);
+        }
+      }
       volumes.removeBlockPool(bpid, blocksPerVolume);
     }
   }
@@ -373,6 +373,49 @@ void onBlockFileDeletion(String bpid, long value) {
     }
   }
 
+  /**
+   * Add a finalized replica of this volume to the replica store of its
+   * block pool, if enabled.
+   */
+  void addToReplicaStore(String bpid, ReplicaInfo replica) {
+    BlockPoolSlice bp = bpSlices.get(bpid);
+    if (bp != null) {
+      bp.addToReplicaStore(replica);
+    }
+  }
+
+  /**
+   * Remove a replica of this volume from the replica store of its block
+   * pool, if enabled.
+   */
+  void removeFromReplicaStore(String bpid, ReplicaInfo replica) {
+    BlockPoolSlice bp = bpSlices.get(bpid);
+    if (bp != null) {
+      bp.removeFromReplicaStore(replica);
+    }
+  }
+
+  /**
+   * Close the replica stores of the block pools of this volume without
+   * recording a clean shutdown, so that they are rebuilt at the next start.
+   */
+  void closeReplicaStores() {
+    for (BlockPoolSlice bp : bpSlices.values()) {
+      bp.closeReplicaStore();
+    }
+  }
+
+  /**
+   * Close the replica store of the given block pool of this volume without
+   * recording a clean shutdown.
+   */
+  void closeReplicaStore(String bpid) {
+    BlockPoolSlice bp = bpSlices.get(bpid);
+    if (bp != null) {
+      bp.closeReplicaStore();
+    }
+  }
+
   void onMetaFileDeletion(String bpid, long value) {
     decDfsUsedAndNumBlocks(bpid, value, false);
   }
@@ -593,7 +636,7 @@ public boolean isRAMStorage() {
     return storageType.isRAM();
   }
 
-  @VisibleForTesting
+  @Override
   public File getFinalizedDir(String bpid) throws IOException {
     return getBlockPoolSlice(bpid).getFinalizedDir();
   }
@@ -1286,6 +1329,7 @@ public ReplicaInPipeline append(String bpid, ReplicaInfo replicaInfo,
     // rename meta file to rbw directory
     // rename block file to rbw directory
     newReplicaInfo.moveReplicaFrom(replicaInfo, newBlkFile);
+    removeFromReplicaStore(bpid, replicaInfo);
 
     reserveSpaceForReplica(bytesReserved);
     return newReplicaInfo;
@@ -1395,6 +1439,18 @@ public void compileReport(String bpid, Collection<ScanInfo> report,
         reportCompiler);
   }
 
+  @Override
+  public void compileReport(String bpid, File dir,
+      Collection<ScanInfo> report, ReportCompiler reportCompiler)
+      throws InterruptedException, IOException {
+    File bpFinalizedDir = getFinalizedDir(bpid);
+    // the directory may have been deleted since it changed, which is not an
+    // error of the volume.
+    if (dir.isDirectory()) {
+      compileReport(bpFinalizedDir, dir, report, reportCompiler);
+    }
+  }
+
   @Override
   public FileIoProvider getFileIoProvider() {
     return fileIoProvider;
@@ -0,0 +1,254 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.util.functional.ConsumerRaisingIOE;
+import org.fusesource.leveldbjni.JniDBFactory;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.DBException;
+import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.Options;
+import org.iq80.leveldb.WriteOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent index of the finalized replicas of a {@link BlockPoolSlice},
+ * kept up to date as replicas are finalized and deleted, so that the replica
+ * map can be loaded at startup without scanning the finalized directory.
+ *
+ * The index is a LevelDB database, whose log makes every update atomic.
+ * Updates are not synced, and a replica is only removed from the index after
+ * its files were deleted, so the index is only trusted if it was closed by
+ * {@link #shutdown()}, which syncs it and records a clean shutdown. The
+ * record is cleared when the index is opened. An index which was not
+ * completely built, was not shut down cleanly, or failed to be updated, is
+ * discarded, and the slice falls back to scanning its directories.
+ */
+class ReplicaStore implements Closeable {
+  static final Logger LOG = LoggerFactory.getLogger(ReplicaStore.class);
+
+  /**
+   * Marks an index which holds all the replicas of the slice. Its length
+   * differs from the length of the keys of the replicas.
+   */
+  private static final byte[] COMPLETE_KEY =
+      "replicas.complete".getBytes(StandardCharsets.UTF_8);
+  /** Marks an index which was synced and closed by {@link #shutdown()}. */
+  private static final byte[] CLEAN_SHUTDOWN_KEY =
+      "replicas.clean-shutdown".getBytes(StandardCharsets.UTF_8);
+  private static final WriteOptions SYNC = new WriteOptions().sync(true);
+  private static final int KEY_LENGTH = Long.BYTES;
+
+  private final File dir;
+  /** Null once closed or failed. Guarded by this. */
+  private DB db;
+
+  private ReplicaStore(File dir, DB db) {
+    this.dir = dir;
+    this.db = db;
+  }
+
+  /**
+   * Open the index in the given directory. An incomplete index, or one which
+   * was not shut down cleanly, is discarded.
+   */
+  static ReplicaStore open(File dir) throws IOException {
+    Options options = new Options();
+    options.createIfMissing(true);
+    try {
+      DB db = JniDBFactory.factory.open(dir, options);
+      if (db.get(COMPLETE_KEY) == null
+          || db.get(CLEAN_SHUTDOWN_KEY) == null) {
+        if (db.get(COMPLETE_KEY) != null) {
+          LOG.info("The replica store {} was not shut down cleanly, "
+              + "discarding it", dir);
+        }
+        db.close();
+        JniDBFactory.factory.destroy(dir, options);
+        db = JniDBFactory.factory.open(dir, options);
+      } else {
+        // until the next shutdown, updates may be lost in a crash.
+        db.delete(CLEAN_SHUTDOWN_KEY, SYNC);
+      }
+      return new ReplicaStore(dir, db);
+    } catch (DBException e) {
+      throw new IOException("Failed to open the replica store " + dir, e);
+    }
+  }
+
+  /** Delete the index in the given directory, if any. */
+  static void destroy(File dir) throws IOException {
+    if (!dir.exists()) {
+      return;
+    }
+    try {
+      JniDBFactory.factory.destroy(dir, new Options());
+    } catch (DBException e) {
+      throw new IOException("Failed to delete the replica store " + dir, e);
+    }
+    if (!FileUtil.fullyDelete(dir)) {
+      LOG.warn("Failed to delete {}", dir);
+    }
+  }
+
+  private static byte[] key(long blockId) {
+    return ByteBuffer.allocate(KEY_LENGTH).putLong(blockId).array();
+  }
+
+  /**
+   * @return true if the index holds all the finalized replicas of the slice
+   */
+  synchronized boolean isComplete() {
+    return db != null && db.get(COMPLETE_KEY) != null;
+  }
+
+  /** Mark the index as holding all the finalized replicas of the slice. */
+  synchronized void markComplete() {
+    if (db == null) {
+      return;
+    }
+    try {
+      db.put(COMPLETE_KEY, new byte[0]);
+    } catch (DBException e) {
+      fail("mark complete", e);
+    }
+  }
+
+  /** Add or update a finalized replica. */
+  synchronized void put(long blockId, long genStamp, long numBytes) {
+    if (db == null) {
+      return;
+    }
+    try {
+      db.put(key(blockId), ByteBuffer.allocate(2 * Long.BYTES)
+          .putLong(genStamp).putLong(numBytes).array());
+    } catch (DBException e) {
+      fail("add block " + blockId, e);
+    }
+  }
+
+  /**
+   * Remove a replica, unless the index holds a replica of the block with
+   * another generation stamp.
+   */
+  synchronized void remove(long blockId, long genStamp) {
+    if (db == null) {
+      return;
+    }
+    try {
+      byte[] key = key(blockId);
+      byte[] value = db.get(key);
+      if (value != null && ByteBuffer.wrap(value).getLong() == genStamp) {
+        db.delete(key);
+      }
+    } catch (DBException e) {
+      fail("remove block " + blockId, e);
+    }
+  }
+
+  /**
+   * Pass all the replicas of the index to the given action.
+   * @throws IOException if the index cannot be read, or the action failed
+   */
+  synchronized void load(ConsumerRaisingIOE<Block> action)
+      throws IOException {
+    if (db == null) {
+      throw new IOException("The replica store " + dir + " is closed");
+    }
+    DBIterator it = db.iterator();
+    try {
+      for (it.seekToFirst(); it.hasNext();) {
+        Map.Entry<byte[], byte[]> entry = it.next();
+        if (entry.getKey().length != KEY_LENGTH) {
+          continue;
+        }
+        ByteBuffer value = ByteBuffer.wrap(entry.getValue());
+        long genStamp = value.getLong();
+        long numBytes = value.getLong();
+        action.accept(new Block(ByteBuffer.wrap(entry.getKey()).getLong(),
+            numBytes, genStamp));
+      }
+    } catch (DBException e) {
+      throw new IOException("Failed to read the replica store " + dir, e);
+    } finally {
+      it.close();
+    }
+  }
+
+  /**
+   * Stop using an index which could not be updated, and delete it so that
+   * it is rebuilt at the next restart.
+   */
+  private void fail(String op, DBException e) {
+    LOG.warn("Failed to {} in the replica store {}, disabling it", op, dir, e);
+    close();
+    try {
+      destroy(dir);
+    } catch (IOException ioe) {
+      LOG.warn("Failed to delete the replica store {}", dir, ioe);
+    }
+  }
+
+  /**
+   * Sync and close the index, recording a clean shutdown if it is complete,
+   * so that it is trusted when it is opened again.
+   */
+  synchronized void shutdown() {
+    if (db == null) {
+      return;
+    }
+    try {
+      if (db.get(COMPLETE_KEY) != null) {
+        // a synced write also syncs all the updates logged before it.
+        db.put(CLEAN_SHUTDOWN_KEY, new byte[0], SYNC);
+      }
+    } catch (DBException e) {
+      LOG.warn("Failed to record the clean shutdown of the replica store {}",
+          dir, e);
+    }
+    close();
+  }
+
+  @Override
+  public synchronized void close() {
+    if (db == null) {
+      return;
+    }
+    try {
+      db.close();
+    } catch (IOException | DBException e) {
+      LOG.warn("Failed to close the replica store {}", dir, e);
+    }
+    db = null;
+  }
+
+  @Override
+  public String toString() {
+    return dir.toString();
+  }
+}
@@ -54,6 +54,9 @@ public class CheckpointConf {
   */
   private double quietMultiplier;
 
+  /** Minimum time between two uploads to the same NameNode, in seconds */
+  private final long uploadMinInterval;
+
   public CheckpointConf(Configuration conf) {
     checkpointCheckPeriod = conf.getTimeDuration(
         DFS_NAMENODE_CHECKPOINT_CHECK_PERIOD_KEY,
@@ -68,6 +71,9 @@ public CheckpointConf(Configuration conf) {
     legacyOivImageDir = conf.get(DFS_NAMENODE_LEGACY_OIV_IMAGE_DIR_KEY);
     quietMultiplier = conf.getDouble(DFS_NAMENODE_CHECKPOINT_QUIET_MULTIPLIER_KEY,
       DFS_NAMENODE_CHECKPOINT_QUIET_MULTIPLIER_DEFAULT);
+    uploadMinInterval = conf.getTimeDuration(
+        DFS_NAMENODE_CHECKPOINT_UPLOAD_MIN_INTERVAL_KEY,
+        DFS_NAMENODE_CHECKPOINT_UPLOAD_MIN_INTERVAL_DEFAULT, TimeUnit.SECONDS);
     warnForDeprecatedConfigs(conf);
   }
   
@@ -106,4 +112,8 @@ public String getLegacyOivImageDir() {
   public double getQuietPeriod() {
     return this.checkpointPeriod * this.quietMultiplier;
   }
+
+  public long getUploadMinInterval() {
+    return uploadMinInterval;
+  }
 }
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import org.apache.hadoop.fs.ContentSummary;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.hdfs.protocol.DSQuotaExceededException;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
@@ -36,6 +37,28 @@ public final class DirectoryWithQuotaFeature implements INode.Feature {
 
   private QuotaCounts quota;
   private QuotaCounts usage;
+  /**
+   * Incremented whenever the quota or the usage changes, so that a cached
+   * content summary can tell whether the subtree changed since it was
+   * computed. Modified under the write lock.
+   */
+  private long version = 0;
+  private volatile CachedContentSummary cachedSummary;
+
+  /** A content summary together with when and at which version it was
+   *  computed. */
+  private static final class CachedContentSummary {
+    private final ContentSummary summary;
+    private final long version;
+    private final long computedMs;
+
+    private CachedContentSummary(ContentSummary summary, long version,
+        long computedMs) {
+      this.summary = summary;
+      this.version = version;
+      this.computedMs = computedMs;
+    }
+  }
 
   public static class Builder {
     private QuotaCounts quota;
@@ -86,10 +109,12 @@ QuotaCounts getQuota() {
   void setQuota(long nsQuota, long ssQuota) {
     this.quota.setNameSpace(nsQuota);
     this.quota.setStorageSpace(ssQuota);
+    version++;
   }
 
   void setQuota(long quota, StorageType type) {
     this.quota.setTypeSpace(type, quota);
+    version++;
   }
 
   /** Set storage type quota in a batch. (Only used by FSImage load)
@@ -98,6 +123,7 @@ void setQuota(long quota, StorageType type) {
    */
   void setQuota(EnumCounters<StorageType> tsQuotas) {
     this.quota.setTypeSpaces(tsQuotas);
+    version++;
   }
 
   /**
@@ -137,6 +163,7 @@ private void checkStoragespace(final INodeDirectory dir, final long computed) {
    */
   public void addSpaceConsumed2Cache(QuotaCounts delta) {
     usage.add(delta);
+    version++;
   }
 
   /** 
@@ -153,12 +180,43 @@ void setSpaceConsumed(long namespace, long storagespace,
     usage.setNameSpace(namespace);
     usage.setStorageSpace(storagespace);
     usage.setTypeSpaces(typespaces);
+    version++;
   }
 
   void setSpaceConsumed(QuotaCounts c) {
     usage.setNameSpace(c.getNameSpace());
     usage.setStorageSpace(c.getStorageSpace());
     usage.setTypeSpaces(c.getTypeSpaces());
+    version++;
+  }
+
+  /** @return the version of the quota and usage of this directory. */
+  long getVersion() {
+    return version;
+  }
+
+  /**
+   * @return the cached content summary of the directory if it was computed
+   *         at the current version at most maxAgeMs before now, else null.
+   */
+  ContentSummary getCachedContentSummary(long now, long maxAgeMs) {
+    final CachedContentSummary cached = cachedSummary;
+    if (cached != null && cached.version == version
+        && now - cached.computedMs <= maxAgeMs) {
+      return cached.summary;
+    }
+    return null;
+  }
+
+  /**
+   * Cache a content summary whose computation started at the given version.
+   * It is dropped if the directory changed while it was being computed.
+   */
+  void cacheContentSummary(ContentSummary summary, long startVersion,
+      long now) {
+    if (startVersion == version) {
+      cachedSummary = new CachedContentSummary(summary, startVersion, now);
+    }
   }
 
   /** @return the namespace and storagespace and typespace allowed. */
@@ -204,6 +204,18 @@ FSEditLogOp getCachedOp() {
    */
   public abstract void setMaxOpSize(int maxOpSize);
 
+  /**
+   * Make every subsequent {@link #readOp()} return a freshly allocated op
+   * instead of re-using a per-thread instance. This is required when ops are
+   * handed to another thread or retained after the next read.
+   *
+   * @return true if the op cache is disabled, false if the stream does not
+   *         support it and may still re-use op instances
+   */
+  public boolean disableOpCache() {
+    return false;
+  }
+
   /**
    * Returns true if we are currently reading the log from a local disk or an
    * even faster data source (e.g. a byte buffer).
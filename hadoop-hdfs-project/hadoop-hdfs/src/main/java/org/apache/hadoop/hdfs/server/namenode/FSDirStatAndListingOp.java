@@ -18,11 +18,13 @@
 
 package org.apache.hadoop.hdfs.server.namenode;
 
+import com.google.re2j.PatternSyntaxException;
 import org.apache.hadoop.util.Preconditions;
 
 import org.apache.hadoop.fs.ContentSummary;
 import org.apache.hadoop.fs.DirectoryListingStartAfterNotFoundException;
 import org.apache.hadoop.fs.FileEncryptionInfo;
+import org.apache.hadoop.fs.GlobPattern;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
@@ -34,6 +36,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
+import org.apache.hadoop.hdfs.protocol.ListingProjection;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.SnapshotException;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
@@ -42,22 +45,62 @@
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
 import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.util.Time;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
 
 import static org.apache.hadoop.util.Time.now;
 
 class FSDirStatAndListingOp {
+  /**
+   * A filtered listing examines at most this many times the listing limit
+   * of children per call, however few of them match.
+   */
+  static final int FILTERED_LISTING_SCAN_FACTOR = 10;
+
   static DirectoryListing getListingInt(FSDirectory fsd, FSPermissionChecker pc,
       final String srcArg, byte[] startAfter, boolean needLocation)
       throws IOException {
     final INodesInPath iip = fsd.resolvePath(pc, srcArg, DirOp.READ);
+    startAfter = resolveStartAfter(fsd, startAfter);
+    if (fsd.isPermissionEnabled()) {
+      if (iip.getLastINode() != null && iip.getLastINode().isDirectory()) {
+        fsd.checkPathAccess(pc, iip, FsAction.READ_EXECUTE);
+      }
+    }
+    return getListing(fsd, iip, startAfter, needLocation);
+  }
+
+  static DirectoryListing getFilteredListingInt(FSDirectory fsd,
+      FSPermissionChecker pc, final String srcArg, byte[] startAfter,
+      String nameFilter, ListingProjection projection) throws IOException {
+    final GlobPattern pattern;
+    try {
+      pattern = nameFilter == null ? null : new GlobPattern(nameFilter);
+    } catch (PatternSyntaxException e) {
+      throw new IOException("Illegal name filter: " + e.getMessage(), e);
+    }
+    final INodesInPath iip = fsd.resolvePath(pc, srcArg, DirOp.READ);
+    startAfter = resolveStartAfter(fsd, startAfter);
+    if (fsd.isPermissionEnabled()) {
+      if (iip.getLastINode() != null && iip.getLastINode().isDirectory()) {
+        fsd.checkPathAccess(pc, iip, FsAction.READ_EXECUTE);
+      }
+    }
+    return getFilteredListing(fsd, iip, startAfter, pattern, projection);
+  }
 
-    // Get file name when startAfter is an INodePath.  This is not the
-    // common case so avoid any unnecessary processing unless required.
+  /**
+   * Get file name when startAfter is an INodePath.  This is not the
+   * common case so avoid any unnecessary processing unless required.
+   */
+  private static byte[] resolveStartAfter(FSDirectory fsd, byte[] startAfter)
+      throws IOException {
     if (startAfter.length > 0 && startAfter[0] == Path.SEPARATOR_CHAR) {
       final String startAfterString = DFSUtil.bytes2String(startAfter);
       if (FSDirectory.isReservedName(startAfterString)) {
@@ -72,13 +115,7 @@ static DirectoryListing getListingInt(FSDirectory fsd, FSPermissionChecker pc,
         }
       }
     }
-
-    if (fsd.isPermissionEnabled()) {
-      if (iip.getLastINode() != null && iip.getLastINode().isDirectory()) {
-        fsd.checkPathAccess(pc, iip, FsAction.READ_EXECUTE);
-      }
-    }
-    return getListing(fsd, iip, startAfter, needLocation);
+    return startAfter;
   }
 
   /**
@@ -282,6 +319,110 @@ private static DirectoryListing getListing(FSDirectory fsd, INodesInPath iip,
     }
   }
 
+  /**
+   * Get a partial listing of the children of the indicated directory whose
+   * local names match the given pattern.
+   *
+   * We will stop when either this.lsLimit matching children have been added
+   * or FILTERED_LISTING_SCAN_FACTOR * this.lsLimit children have been
+   * examined, so that a sparse match does not hold the read lock for a scan
+   * of the whole directory. The returned listing carries the name of the
+   * last child examined, so the client resumes after it even if it did not
+   * match.
+   *
+   * @param fsd FSDirectory
+   * @param iip the INodesInPath instance containing all the INodes along the
+   *            path
+   * @param startAfter the name to start listing after
+   * @param pattern the pattern local names must match, or null for all
+   * @param projection the attributes to fill in for each entry
+   * @return a partial listing starting after startAfter
+   */
+  private static DirectoryListing getFilteredListing(FSDirectory fsd,
+      INodesInPath iip, byte[] startAfter, GlobPattern pattern,
+      ListingProjection projection) throws IOException {
+    if (FSDirectory.isExactReservedName(iip.getPathComponents())) {
+      return filterListing(getReservedListing(fsd), pattern);
+    }
+
+    fsd.readLock();
+    try {
+      if (iip.isDotSnapshotDir()) {
+        return filterListing(getSnapshotsListing(fsd, iip, startAfter),
+            pattern);
+      }
+      final int snapshot = iip.getPathSnapshotId();
+      final INode targetNode = iip.getLastINode();
+      if (targetNode == null) {
+        return null;
+      }
+
+      byte parentStoragePolicy = targetNode.getStoragePolicyID();
+
+      if (!targetNode.isDirectory()) {
+        // like getListing, return the file's own status if its name matches
+        if (pattern != null && !pattern.matches(targetNode.getLocalName())) {
+          return new DirectoryListing(new HdfsFileStatus[0], 0);
+        }
+        return new DirectoryListing(
+            new HdfsFileStatus[]{ createFileStatus(fsd, iip, null,
+                parentStoragePolicy, projection) }, 0);
+      }
+
+      final INodeDirectory dirInode = targetNode.asDirectory();
+      final ReadOnlyList<INode> contents = dirInode.getChildrenList(snapshot);
+      final int startChild = INodeDirectory.nextChild(contents, startAfter);
+      final int totalNumChildren = contents.size();
+      final int lsLimit = fsd.getLsLimit();
+      final int numToScan = (int) Math.min(totalNumChildren - startChild,
+          (long) lsLimit * FILTERED_LISTING_SCAN_FACTOR);
+      final List<HdfsFileStatus> listing = new ArrayList<>(
+          Math.min(numToScan, lsLimit));
+      int scanned = 0;
+      byte[] lastName = null;
+      while (scanned < numToScan && listing.size() < lsLimit) {
+        INode child = contents.get(startChild + scanned++);
+        lastName = child.getLocalNameBytes();
+        if (pattern != null && !pattern.matches(child.getLocalName())) {
+          continue;
+        }
+        byte childStoragePolicy =
+            !child.isSymlink()
+                ? getStoragePolicyID(child.getLocalStoragePolicyID(),
+                    parentStoragePolicy)
+            : parentStoragePolicy;
+        listing.add(createFileStatus(fsd, iip, child, childStoragePolicy,
+            projection));
+      }
+      return new DirectoryListing(
+          listing.toArray(new HdfsFileStatus[listing.size()]),
+          totalNumChildren - startChild - scanned, lastName);
+    } finally {
+      fsd.readUnlock();
+    }
+  }
+
+  /**
+   * Drop the entries of a listing whose local names do not match the
+   * pattern, keeping the position the listing would resume from.
+   */
+  private static DirectoryListing filterListing(DirectoryListing listing,
+      GlobPattern pattern) {
+    if (pattern == null) {
+      return listing;
+    }
+    final List<HdfsFileStatus> matched = new ArrayList<>();
+    for (HdfsFileStatus status : listing.getPartialListing()) {
+      if (pattern.matches(DFSUtil.bytes2String(
+          status.getLocalNameInBytes()))) {
+        matched.add(status);
+      }
+    }
+    return new DirectoryListing(
+        matched.toArray(new HdfsFileStatus[matched.size()]),
+        listing.getRemainingEntries(), listing.getLastName());
+  }
+
   /**
    * Get a listing of all the snapshots of a snapshottable directory
    */
@@ -479,6 +620,43 @@ private static HdfsFileStatus createFileStatus(
         loc);
   }
 
+  /**
+   * create a hdfs file status holding only the attributes selected by the
+   * projection.
+   *
+   * @param fsd FSDirectory
+   * @param iip The INodesInPath containing the INodeFile and its ancestors.
+   * @param child for a directory listing of the iip, else null
+   * @param storagePolicy for the path or closest ancestor
+   * @param projection the attributes to fill in
+   * @return a file status
+   * @throws java.io.IOException if any error occurs
+   */
+  private static HdfsFileStatus createFileStatus(
+      FSDirectory fsd, INodesInPath iip, INode child, byte storagePolicy,
+      ListingProjection projection) throws IOException {
+    if (projection == ListingProjection.FULL) {
+      return createFileStatus(fsd, iip, child, storagePolicy, false, false);
+    }
+    assert fsd.hasReadLock();
+    final byte[] name = child != null
+        ? child.getLocalNameBytes() : HdfsFileStatus.EMPTY_NAME;
+    final INode node = child != null ? child : iip.getLastINode();
+    final HdfsFileStatus.Builder builder = new HdfsFileStatus.Builder()
+        .isdir(node.isDirectory())
+        .symlink(node.isSymlink() ? node.asSymlink().getSymlink() : null)
+        .path(name)
+        .fileId(node.getId());
+    if (projection == ListingProjection.NAME_AND_LENGTH && node.isFile()) {
+      final int snapshot = iip.getPathSnapshotId();
+      final INodeFile fileNode = node.asFile();
+      builder.length(fileNode.computeFileSize(snapshot))
+          .replication(fileNode.getFileReplication(snapshot))
+          .blocksize(fileNode.getPreferredBlockSize());
+    }
+    return builder.build();
+  }
+
   private static HdfsFileStatus createFileStatus(
       long length, boolean isdir,
       int replication, long blocksize, long mtime, long atime,
@@ -519,12 +697,34 @@ private static ContentSummary getContentSummaryInt(FSDirectory fsd,
       else {
         // Make it relinquish locks everytime contentCountLimit entries are
         // processed. 0 means disabled. I.e. blocking for the entire duration.
+        DirectoryWithQuotaFeature q = null;
+        long version = 0;
+        long maxAgeMs = fsd.getContentSummaryCacheMaxAgeMs();
+        if (maxAgeMs > 0 && targetNode.isDirectory()
+            && iip.getPathSnapshotId() == Snapshot.CURRENT_STATE_ID) {
+          q = targetNode.asDirectory().getDirectoryWithQuotaFeature();
+        }
+        if (q != null) {
+          // A cached summary skips the per-directory access checks, so only
+          // serve it when they would not apply.
+          if (pc == null || pc.isSuperUser() || !fsd.isPermissionEnabled()) {
+            ContentSummary cached =
+                q.getCachedContentSummary(Time.monotonicNow(), maxAgeMs);
+            if (cached != null) {
+              return cached;
+            }
+          }
+          version = q.getVersion();
+        }
         ContentSummaryComputationContext cscc =
             new ContentSummaryComputationContext(fsd, fsd.getFSNamesystem(),
                 fsd.getContentCountLimit(), fsd.getContentSleepMicroSec(), pc);
         ContentSummary cs = targetNode.computeAndConvertContentSummary(
             iip.getPathSnapshotId(), cscc);
         fsd.addYieldCount(cscc.getYieldCount());
+        if (q != null) {
+          q.cacheContentSummary(cs, version, Time.monotonicNow());
+        }
         return cs;
       }
     } finally {
@@ -83,6 +83,7 @@
 import java.util.TreeSet;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.hadoop.fs.CommonConfigurationKeys.FS_PROTECTED_DIRECTORIES;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_ACCESSTIME_PRECISION_DEFAULT;
@@ -159,7 +160,12 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   private final int lsLimit;  // max list limit
   private final int contentCountLimit; // max content summary counts per run
   private final long contentSleepMicroSec;
-  private final INodeMap inodeMap; // Synchronized by dirLock
+  private final long contentSummaryCacheMaxAgeMs;
+  // Synchronized by dirLock; puts also synchronize on the map itself, as
+  // holders of a subtree lock share the write lock.
+  private final INodeMap inodeMap;
+  // Serializes ancestor quota updates of subtree lock holders.
+  private final Object quotaUpdateLock = new Object();
   private long yieldCount = 0; // keep track of lock yield count.
   private int quotaInitThreads;
 
@@ -317,7 +323,7 @@ public enum DirOp {
   FSDirectory(FSNamesystem ns, Configuration conf) throws IOException {
     this.inodeId = new INodeId();
     rootDir = createRoot(ns);
-    inodeMap = INodeMap.newInstance(rootDir);
+    inodeMap = INodeMap.newInstance(rootDir, conf);
     this.isPermissionEnabled = conf.getBoolean(
       DFSConfigKeys.DFS_PERMISSIONS_ENABLED_KEY,
       DFSConfigKeys.DFS_PERMISSIONS_ENABLED_DEFAULT);
@@ -371,6 +377,10 @@ public enum DirOp {
     this.contentSleepMicroSec = conf.getLong(
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY,
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT);
+    this.contentSummaryCacheMaxAgeMs = conf.getTimeDuration(
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_MAX_AGE_KEY,
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_MAX_AGE_DEFAULT,
+        TimeUnit.MILLISECONDS);
     
     // filesystem limits
     this.maxComponentLength = (int) conf.getLongBytes(
@@ -642,6 +652,10 @@ long getContentSleepMicroSec() {
     return contentSleepMicroSec;
   }
 
+  long getContentSummaryCacheMaxAgeMs() {
+    return contentSummaryCacheMaxAgeMs;
+  }
+
   int getInodeXAttrsLimit() {
     return inodeXAttrsLimit;
   }
@@ -1057,10 +1071,14 @@ void updateCount(INodesInPath iip, int numOfINodes,
     if (numOfINodes > iip.length()) {
       numOfINodes = iip.length();
     }
-    if (checkQuota && !skipQuotaCheck) {
-      verifyQuota(iip, numOfINodes, counts, null);
+    // mkdirs of disjoint subtrees may update the counts of their common
+    // ancestors concurrently, see SubtreeLockManager.
+    synchronized (quotaUpdateLock) {
+      if (checkQuota && !skipQuotaCheck) {
+        verifyQuota(iip, numOfINodes, counts, null);
+      }
+      unprotectedUpdateCount(iip, numOfINodes, counts);
     }
-    unprotectedUpdateCount(iip, numOfINodes, counts);
   }
   
   /** 
@@ -1481,11 +1499,14 @@ public INodeMap getINodeMap() {
   }
 
   /**
-   * This method is always called with writeLock of FSDirectory held.
+   * This method is always called with writeLock of FSDirectory held, or a
+   * subtree lock, see {@link SubtreeLockManager}.
    */
   public final void addToInodeMap(INode inode) {
     if (inode instanceof INodeWithAdditionalFields) {
-      inodeMap.put(inode);
+      synchronized (inodeMap) {
+        inodeMap.put(inode);
+      }
       if (!inode.isSymlink()) {
         final XAttrFeature xaf = inode.getXAttrFeature();
         addEncryptionZone((INodeWithAdditionalFields) inode, xaf);
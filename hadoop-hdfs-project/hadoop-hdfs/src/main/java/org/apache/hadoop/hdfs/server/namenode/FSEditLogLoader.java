@@ -629,7 +629,10 @@ private long applyEditLogOp(FSEditLogOp op, FSDirectory fsDir,
       FSDirDeleteOp.deleteForEditLog(fsDir, iip, deleteOp.timestamp);
 
       if (toAddRetryCache) {
-        fsNamesys.addCacheEntry(deleteOp.rpcClientId, deleteOp.rpcCallId);
+        // The delete may be part of a batch of metadata operations, whose
+        // retry expects an entry with a payload
+        fsNamesys.addCacheEntryWithPayload(deleteOp.rpcClientId,
+            deleteOp.rpcCallId, null);
       }
       break;
     }
@@ -5052,6 +5052,14 @@ public void setMaxOpSize(int maxOpSize) {
       this.maxOpSize = maxOpSize;
     }
 
+    /**
+     * Allocate a new op for every read instead of re-using the per-thread
+     * cached instance.
+     */
+    public void disableOpCache() {
+      cache.disableCache();
+    }
+
     /**
      * Read an operation from the input stream.
      * 
@@ -20,15 +20,21 @@
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -71,6 +77,7 @@
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.Step;
 import org.apache.hadoop.hdfs.util.EnumCounters;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
+import org.apache.hadoop.io.DataOutputBuffer;
 
 import org.apache.hadoop.util.Preconditions;
 import org.apache.hadoop.thirdparty.com.google.common.collect.ImmutableList;
@@ -744,6 +751,19 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
       FSDirectory dir = fsn.getFSDirectory();
       Iterator<INodeWithAdditionalFields> iter = dir.getINodeMap()
           .getMapIterator();
+      if (parent.getParallelSaveExecutor() != null) {
+        serializeINodeDirectoriesInParallel(out, iter);
+      } else {
+        serializeINodeDirectories(out, iter);
+      }
+      parent.commitSectionAndSubSection(summary,
+          FSImageFormatProtobuf.SectionName.INODE_DIR,
+          FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
+    }
+
+    private void serializeINodeDirectories(OutputStream out,
+        Iterator<INodeWithAdditionalFields> iter) throws IOException {
+      FSDirectory dir = fsn.getFSDirectory();
       final ArrayList<INodeReference> refList = parent.getSaverContext()
           .getRefList();
       int i = 0;
@@ -760,15 +780,7 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
           INodeDirectorySection.DirEntry.Builder b = INodeDirectorySection.
               DirEntry.newBuilder().setParent(n.getId());
           for (INode inode : children) {
-            // Error if the child inode doesn't exist in inodeMap
-            if (dir.getInode(inode.getId()) == null) {
-              FSImage.LOG.error(
-                  "FSImageFormatPBINode#serializeINodeDirectorySection: " +
-                      "Dangling child pointer found. Missing INode in " +
-                      "inodeMap: id=" + inode.getId() +
-                      "; path=" + inode.getFullPathName() +
-                      "; parent=" + (inode.getParent() == null ? "null" :
-                      inode.getParent().getFullPathName()));
+            if (isDanglingChild(dir, inode)) {
               ++numImageErrors;
             }
             if (!inode.isReference()) {
@@ -795,9 +807,111 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
               FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
         }
       }
-      parent.commitSectionAndSubSection(summary,
-          FSImageFormatProtobuf.SectionName.INODE_DIR,
+    }
+
+    /**
+     * Serialize the directory entries in batches on the parallel save
+     * executor. The batches end at the same sub-section boundaries as in
+     * {@link #serializeINodeDirectories} and are written in iteration order,
+     * so the output is identical to the serial one.
+     */
+    private void serializeINodeDirectoriesInParallel(OutputStream out,
+        Iterator<INodeWithAdditionalFields> iter) throws IOException {
+      BatchWriter writer = new BatchWriter(out,
           FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
+      try {
+        List<INodeDirectory> batch = new ArrayList<>();
+        int i = 0;
+        int outputInodes = 0;
+        int batchInodes = 0;
+        while (iter.hasNext()) {
+          INodeWithAdditionalFields n = iter.next();
+          if (!n.isDirectory()) {
+            continue;
+          }
+          int numChildren = n.asDirectory().getChildrenList(
+              Snapshot.CURRENT_STATE_ID).size();
+          if (numChildren > 0) {
+            batch.add(n.asDirectory());
+            outputInodes += numChildren;
+            batchInodes += numChildren;
+          }
+
+          ++i;
+          if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
+            context.checkCancelled();
+          }
+          boolean endOfSubSection =
+              outputInodes >= parent.getInodesPerSubSection();
+          if (endOfSubSection) {
+            outputInodes = 0;
+          }
+          if (endOfSubSection || batchInodes >=
+              FSImageFormatProtobuf.Saver.PARALLEL_SAVE_BATCH_SIZE) {
+            final List<INodeDirectory> dirs = batch;
+            writer.submit(() -> serializeDirEntries(dirs, endOfSubSection));
+            batch = new ArrayList<>();
+            batchInodes = 0;
+          }
+        }
+        if (!batch.isEmpty()) {
+          final List<INodeDirectory> dirs = batch;
+          writer.submit(() -> serializeDirEntries(dirs, false));
+        }
+        writer.finish();
+      } finally {
+        writer.cancel();
+      }
+    }
+
+    private SerializedBatch serializeDirEntries(List<INodeDirectory> dirs,
+        boolean endOfSubSection) throws IOException {
+      context.checkCancelled();
+      FSDirectory dir = fsn.getFSDirectory();
+      SerializedBatch batch = new SerializedBatch(endOfSubSection);
+      for (INodeDirectory n : dirs) {
+        INodeDirectorySection.DirEntry.Builder b = INodeDirectorySection.
+            DirEntry.newBuilder().setParent(n.getId());
+        List<INodeReference> refs = null;
+        for (INode inode : n.getChildrenList(Snapshot.CURRENT_STATE_ID)) {
+          if (isDanglingChild(dir, inode)) {
+            batch.numImageErrors++;
+          }
+          if (!inode.isReference()) {
+            b.addChildren(inode.getId());
+          } else {
+            // the reference ids are assigned in order when writing the batch
+            if (refs == null) {
+              refs = new ArrayList<>();
+            }
+            refs.add(inode.asReference());
+          }
+        }
+        if (refs == null) {
+          b.build().writeDelimitedTo(batch.buffer);
+        } else {
+          batch.addPendingDirEntry(b, refs);
+        }
+      }
+      return batch;
+    }
+
+    /**
+     * @return true, after logging an error, if the given child inode is
+     *         missing from the inodeMap.
+     */
+    private static boolean isDanglingChild(FSDirectory dir, INode inode) {
+      if (dir.getInode(inode.getId()) != null) {
+        return false;
+      }
+      FSImage.LOG.error(
+          "FSImageFormatPBINode#serializeINodeDirectorySection: " +
+              "Dangling child pointer found. Missing INode in " +
+              "inodeMap: id=" + inode.getId() +
+              "; path=" + inode.getFullPathName() +
+              "; parent=" + (inode.getParent() == null ? "null" :
+              inode.getParent().getFullPathName()));
+      return true;
     }
 
     void serializeINodeSection(OutputStream out) throws IOException {
@@ -808,18 +922,22 @@ void serializeINodeSection(OutputStream out) throws IOException {
       INodeSection s = b.build();
       s.writeDelimitedTo(out);
 
-      int i = 0;
       Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
-      while (iter.hasNext()) {
-        INodeWithAdditionalFields n = iter.next();
-        save(out, n);
-        ++i;
-        if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
-          context.checkCancelled();
-        }
-        if (i % parent.getInodesPerSubSection() == 0) {
-          parent.commitSubSection(summary,
-              FSImageFormatProtobuf.SectionName.INODE_SUB);
+      if (parent.getParallelSaveExecutor() != null) {
+        serializeINodesInParallel(out, iter);
+      } else {
+        int i = 0;
+        while (iter.hasNext()) {
+          INodeWithAdditionalFields n = iter.next();
+          save(out, n);
+          ++i;
+          if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
+            context.checkCancelled();
+          }
+          if (i % parent.getInodesPerSubSection() == 0) {
+            parent.commitSubSection(summary,
+                FSImageFormatProtobuf.SectionName.INODE_SUB);
+          }
         }
       }
       parent.commitSectionAndSubSection(summary,
@@ -827,6 +945,53 @@ void serializeINodeSection(OutputStream out) throws IOException {
           FSImageFormatProtobuf.SectionName.INODE_SUB);
     }
 
+    /**
+     * Serialize the inodes in batches on the parallel save executor. The
+     * batches end at the sub-section boundaries and are written in iteration
+     * order, so the output is identical to the serial one.
+     */
+    private void serializeINodesInParallel(OutputStream out,
+        Iterator<INodeWithAdditionalFields> iter) throws IOException {
+      BatchWriter writer = new BatchWriter(out,
+          FSImageFormatProtobuf.SectionName.INODE_SUB);
+      try {
+        List<INodeWithAdditionalFields> batch = new ArrayList<>();
+        int i = 0;
+        while (iter.hasNext()) {
+          batch.add(iter.next());
+          ++i;
+          if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
+            context.checkCancelled();
+          }
+          boolean endOfSubSection = i % parent.getInodesPerSubSection() == 0;
+          if (endOfSubSection || batch.size() >=
+              FSImageFormatProtobuf.Saver.PARALLEL_SAVE_BATCH_SIZE) {
+            final List<INodeWithAdditionalFields> inodes = batch;
+            writer.submit(() -> serializeINodes(inodes, endOfSubSection));
+            batch = new ArrayList<>();
+          }
+        }
+        if (!batch.isEmpty()) {
+          final List<INodeWithAdditionalFields> inodes = batch;
+          writer.submit(() -> serializeINodes(inodes, false));
+        }
+        writer.finish();
+      } finally {
+        writer.cancel();
+      }
+    }
+
+    private SerializedBatch serializeINodes(
+        List<INodeWithAdditionalFields> inodes, boolean endOfSubSection)
+        throws IOException {
+      context.checkCancelled();
+      SerializedBatch batch = new SerializedBatch(endOfSubSection);
+      for (INodeWithAdditionalFields n : inodes) {
+        save(batch.buffer, n);
+      }
+      return batch;
+    }
+
     void serializeFilesUCSection(OutputStream out) throws IOException {
       Collection<Long> filesWithUC = fsn.getLeaseManager()
               .getINodeIdWithLeases();
@@ -914,6 +1079,68 @@ private INodeSection.INode.Builder buildINodeCommon(INode n) {
           .setName(ByteString.copyFrom(n.getLocalNameBytes()));
     }
 
+    /**
+     * Writes the batches serialized on the parallel save executor to the
+     * section in submission order, committing a sub-section after each batch
+     * which ends one. The number of batches in flight is bounded to limit the
+     * memory used by their buffers.
+     */
+    private final class BatchWriter {
+      private final OutputStream out;
+      private final FSImageFormatProtobuf.SectionName subSectionName;
+      private final Deque<Future<SerializedBatch>> inFlight =
+          new ArrayDeque<>();
+      private final int maxInFlight = parent.getParallelSaveThreads() * 2;
+
+      BatchWriter(OutputStream out,
+          FSImageFormatProtobuf.SectionName subSectionName) {
+        this.out = out;
+        this.subSectionName = subSectionName;
+      }
+
+      void submit(Callable<SerializedBatch> task) throws IOException {
+        while (inFlight.size() >= maxInFlight) {
+          writeNext();
+        }
+        inFlight.add(parent.getParallelSaveExecutor().submit(task));
+      }
+
+      void finish() throws IOException {
+        while (!inFlight.isEmpty()) {
+          writeNext();
+        }
+      }
+
+      /** Cancel the batches which have not been written. */
+      void cancel() {
+        for (Future<SerializedBatch> f : inFlight) {
+          f.cancel(true);
+        }
+        inFlight.clear();
+      }
+
+      private void writeNext() throws IOException {
+        SerializedBatch batch;
+        try {
+          batch = inFlight.remove().get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw (IOException) new InterruptedIOException(
+              "Interrupted while saving the fsimage in parallel").initCause(e);
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+          }
+          throw new IOException(e.getCause());
+        }
+        batch.writeTo(out, parent.getSaverContext().getRefList());
+        numImageErrors += batch.numImageErrors;
+        if (batch.endOfSubSection) {
+          parent.commitSubSection(summary, subSectionName);
+        }
+      }
+    }
+
     /**
      * Number of non-fatal errors detected while writing the
      * INodeSection and INodeDirectorySection sections.
@@ -924,6 +1151,62 @@ public long getNumImageErrors() {
     }
   }
 
+  /**
+   * A batch of inodes or directory entries serialized by a parallel save
+   * task. Directory entries with reference children are kept unserialized
+   * until the batch is written, as the reference ids are positions in the
+   * shared reference list and must be assigned in the order of the image.
+   */
+  private static final class SerializedBatch {
+    private final DataOutputBuffer buffer = new DataOutputBuffer();
+    private final boolean endOfSubSection;
+    private List<PendingDirEntry> pendingDirEntries;
+    private long numImageErrors;
+
+    SerializedBatch(boolean endOfSubSection) {
+      this.endOfSubSection = endOfSubSection;
+    }
+
+    void addPendingDirEntry(INodeDirectorySection.DirEntry.Builder entry,
+        List<INodeReference> refs) {
+      if (pendingDirEntries == null) {
+        pendingDirEntries = new ArrayList<>();
+      }
+      pendingDirEntries.add(
+          new PendingDirEntry(buffer.getLength(), entry, refs));
+    }
+
+    void writeTo(OutputStream out, List<INodeReference> refList)
+        throws IOException {
+      int pos = 0;
+      if (pendingDirEntries != null) {
+        for (PendingDirEntry e : pendingDirEntries) {
+          out.write(buffer.getData(), pos, e.offset - pos);
+          pos = e.offset;
+          for (INodeReference ref : e.refs) {
+            refList.add(ref);
+            e.entry.addRefChildren(refList.size() - 1);
+          }
+          e.entry.build().writeDelimitedTo(out);
+        }
+      }
+      out.write(buffer.getData(), pos, buffer.getLength() - pos);
+    }
+  }
+
+  private static final class PendingDirEntry {
+    private final int offset;
+    private final INodeDirectorySection.DirEntry.Builder entry;
+    private final List<INodeReference> refs;
+
+    PendingDirEntry(int offset, INodeDirectorySection.DirEntry.Builder entry,
+        List<INodeReference> refs) {
+      this.offset = offset;
+      this.entry = entry;
+      this.refs = refs;
+    }
+  }
+
   private FSImageFormatPBINode() {
   }
 }
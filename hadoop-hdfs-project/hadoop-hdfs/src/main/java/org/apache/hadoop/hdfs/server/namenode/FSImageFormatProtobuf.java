@@ -78,6 +78,7 @@
 import org.apache.hadoop.util.Lists;
 
 import org.apache.hadoop.thirdparty.com.google.common.collect.Maps;
+import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hadoop.thirdparty.protobuf.CodedOutputStream;
 
 /**
@@ -340,14 +341,7 @@ private ArrayList<FileSummary.Section> getSubSectionsOfName(
      * @return ExecutorServie with the correct number of threads
      */
     private ExecutorService getParallelExecutorService() {
-      int threads = conf.getInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
-          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
-      if (threads < 1) {
-        LOG.warn("Parallel is enabled and {} is set to {}. Setting to the " +
-            "default value {}", DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
-            threads, DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
-        threads = DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT;
-      }
+      int threads = getParallelThreads(conf);
       ExecutorService executorService = Executors.newFixedThreadPool(
           threads);
       LOG.info("The fsimage will be loaded in parallel using {} threads",
@@ -582,6 +576,18 @@ private void loadErasureCodingSection(InputStream in)
     }
   }
 
+  private static int getParallelThreads(Configuration conf) {
+    int threads = conf.getInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+        DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+    if (threads < 1) {
+      LOG.warn("Parallel is enabled and {} is set to {}. Setting to the " +
+          "default value {}", DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+          threads, DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+      threads = DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT;
+    }
+    return threads;
+  }
+
   private static boolean enableParallelSaveAndLoad(Configuration conf) {
     boolean loadInParallel = enableParallelLoad;
     boolean compressionEnabled = conf.getBoolean(
@@ -615,8 +621,12 @@ public static boolean getEnableParallelLoad() {
 
   public static final class Saver {
     public static final int CHECK_CANCEL_INTERVAL = 4096;
+    /** Number of inodes serialized by a single parallel save task. */
+    public static final int PARALLEL_SAVE_BATCH_SIZE = 16384;
     private boolean writeSubSections = false;
     private int inodesPerSubSection = Integer.MAX_VALUE;
+    private ExecutorService parallelSaveExecutor;
+    private int parallelSaveThreads;
 
     private final SaveNamespaceContext context;
     private final SaverContext saverContext;
@@ -653,6 +663,19 @@ public int getInodesPerSubSection() {
       return inodesPerSubSection;
     }
 
+    /**
+     * @return the executor to serialize the sub-sections of the INode and
+     *         INodeDirectory sections on, or null if they are serialized by
+     *         the saving thread.
+     */
+    ExecutorService getParallelSaveExecutor() {
+      return parallelSaveExecutor;
+    }
+
+    int getParallelSaveThreads() {
+      return parallelSaveThreads;
+    }
+
     /**
      * Commit the length and offset of a fsimage section to the summary index,
      * including the sub section, which will be committed before the section is
@@ -726,6 +749,7 @@ private void flushSectionOutputStream() throws IOException {
      */
     long save(File file, FSImageCompression compression) throws IOException {
       enableSubSectionsIfRequired();
+      enableParallelSaveIfRequired();
       FileOutputStream fout = new FileOutputStream(file);
       fileChannel = fout.getChannel();
       try {
@@ -739,7 +763,29 @@ long save(File file, FSImageCompression compression) throws IOException {
         return numErrors;
       } finally {
         fout.close();
+        if (parallelSaveExecutor != null) {
+          parallelSaveExecutor.shutdownNow();
+          parallelSaveExecutor = null;
+        }
+      }
+    }
+
+    /**
+     * Serialize the sub-sections on a thread pool if parallel save is enabled
+     * and the image is written with sub-sections.
+     */
+    private void enableParallelSaveIfRequired() {
+      if (!writeSubSections || !conf.getBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_DEFAULT)) {
+        return;
       }
+      parallelSaveThreads = getParallelThreads(conf);
+      parallelSaveExecutor = Executors.newFixedThreadPool(parallelSaveThreads,
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("FSImageParallelSaver-%d").build());
+      LOG.info("The fsimage will be saved in parallel using {} threads",
+          parallelSaveThreads);
     }
 
     private void enableSubSectionsIfRequired() {
@@ -200,6 +200,7 @@
 import org.apache.hadoop.fs.ContentSummary;
 import org.apache.hadoop.fs.CreateFlag;
 import org.apache.hadoop.fs.FileEncryptionInfo;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FsServerDefaults;
@@ -246,8 +247,11 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
+import org.apache.hadoop.hdfs.protocol.ListingProjection;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.MetadataOp;
+import org.apache.hadoop.hdfs.protocol.MetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.RecoveryInProgressException;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeException;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
@@ -316,6 +320,7 @@
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
 import org.apache.hadoop.hdfs.util.LightWeightHashSet;
+import org.apache.hadoop.hdfs.util.RwLockMode;
 import org.apache.hadoop.hdfs.web.JsonUtil;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.Text;
@@ -400,6 +405,8 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
   private final MetricsRegistry registry = new MetricsRegistry("FSNamesystem");
   @Metric final MutableRatesWithAggregation detailedLockHoldTimeMetrics =
       registry.newRatesWithAggregation("detailedLockHoldTimeMetrics");
+  @Metric final MutableRatesWithAggregation subtreeLockMetrics =
+      registry.newRatesWithAggregation("subtreeLockMetrics");
 
   private final String contextFieldSeparator;
 
@@ -613,12 +620,16 @@ private boolean isClientPortInfoAbsent(CallerContext ctx){
 
   // Maximum number of paths that can be listed per batched call.
   private final int batchedListingLimit;
+  private final int batchedMetadataOpsLimit;
 
   private final int numCommittedAllowed;
 
   /** Lock to protect FSNamesystem. */
   private final FSNamesystemLock fsLock;
 
+  /** Locks letting mkdirs of disjoint subtrees share the write lock. */
+  private final SubtreeLockManager subtreeLockManager;
+
   /** 
    * Checkpoint lock to protect FSNamesystem modification on standby NNs.
    * Unlike fsLock, it does not affect block updates. On active NNs, this lock
@@ -876,6 +887,8 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
     fsLock = new FSNamesystemLock(conf, detailedLockHoldTimeMetrics);
     cond = fsLock.newWriteLockCondition();
     cpLock = new ReentrantLock();
+    subtreeLockManager =
+        new SubtreeLockManager(conf, this, subtreeLockMetrics);
 
     this.fsImage = fsImage;
     try {
@@ -923,6 +936,7 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
 
       // block manager needs the haEnabled initialized
       this.blockManager = new BlockManager(this, haEnabled, conf);
+      fsLock.setBMLockSplitActive(() -> !blockManager.isInSafeMode());
       this.datanodeStatistics = blockManager.getDatanodeManager().getDatanodeStatistics();
 
       // Get the checksum type from config
@@ -975,6 +989,13 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
           batchedListingLimit > 0,
           DFSConfigKeys.DFS_NAMENODE_BATCHED_LISTING_LIMIT +
               " must be greater than zero");
+      this.batchedMetadataOpsLimit = conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_BATCHED_METADATA_OPS_LIMIT,
+          DFSConfigKeys.DFS_NAMENODE_BATCHED_METADATA_OPS_LIMIT_DEFAULT);
+      Preconditions.checkArgument(
+          batchedMetadataOpsLimit > 0,
+          DFSConfigKeys.DFS_NAMENODE_BATCHED_METADATA_OPS_LIMIT +
+              " must be greater than zero");
       this.numCommittedAllowed = conf.getInt(
           DFSConfigKeys.DFS_NAMENODE_FILE_CLOSE_NUM_COMMITTED_ALLOWED_KEY,
           DFSConfigKeys.DFS_NAMENODE_FILE_CLOSE_NUM_COMMITTED_ALLOWED_DEFAULT);
@@ -1315,7 +1336,8 @@ private void startSecretManager() {
   
   @Override
   public void startSecretManagerIfNecessary() {
-    assert hasWriteLock() : "Starting secret manager needs write lock";
+    assert hasWriteLock(RwLockMode.BM) :
+        "Starting secret manager needs write lock";
     boolean shouldRun = shouldUseDelegationTokens() &&
       !isInSafeMode() && getEditLog().isOpenForWrite();
     boolean running = dtSecretManager.isRunning();
@@ -1807,6 +1829,21 @@ public void readUnlock(String opName,
     this.fsLock.readUnlock(opName, lockReportInfoSupplier);
   }
 
+  @Override
+  public void readLock(RwLockMode lockMode) {
+    this.fsLock.readLock(lockMode);
+  }
+
+  @Override
+  public void readUnlock(RwLockMode lockMode, String opName) {
+    this.fsLock.readUnlock(lockMode, opName, null);
+  }
+
+  public void readUnlock(RwLockMode lockMode, String opName,
+      Supplier<String> lockReportInfoSupplier) {
+    this.fsLock.readUnlock(lockMode, opName, lockReportInfoSupplier);
+  }
+
   @Override
   public void writeLock() {
     this.fsLock.writeLock();
@@ -1835,15 +1872,38 @@ public void writeUnlock(String opName,
     this.fsLock.writeUnlock(opName, lockReportInfoSupplier);
   }
 
+  @Override
+  public void writeLock(RwLockMode lockMode) {
+    this.fsLock.writeLock(lockMode);
+  }
+
+  @Override
+  public void writeUnlock(RwLockMode lockMode, String opName) {
+    this.fsLock.writeUnlock(lockMode, opName);
+  }
+
   @Override
   public boolean hasWriteLock() {
-    return this.fsLock.isWriteLockedByCurrentThread();
+    return this.fsLock.isWriteLockedByCurrentThread()
+        || subtreeLockManager.isHeldByCurrentThread();
   }
   @Override
   public boolean hasReadLock() {
     return this.fsLock.getReadHoldCount() > 0 || hasWriteLock();
   }
 
+  @Override
+  public boolean hasWriteLock(RwLockMode lockMode) {
+    return this.fsLock.isWriteLockedByCurrentThread(lockMode)
+        || (lockMode == RwLockMode.FS
+            && subtreeLockManager.isHeldByCurrentThread());
+  }
+
+  @Override
+  public boolean hasReadLock(RwLockMode lockMode) {
+    return this.fsLock.hasReadLock(lockMode);
+  }
+
   public int getReadHoldCount() {
     return this.fsLock.getReadHoldCount();
   }
@@ -3464,14 +3524,17 @@ HdfsFileStatus getFileInfo(final String src, boolean resolveLink,
     HdfsFileStatus stat = null;
     final FSPermissionChecker pc = getPermissionChecker();
     FSPermissionChecker.setOperationType(operationName);
+    // block locations are guarded by the block manager lock
+    final RwLockMode lockMode =
+        needLocation ? RwLockMode.GLOBAL : RwLockMode.FS;
     try {
-      readLock();
+      readLock(lockMode);
       try {
         checkOperation(OperationCategory.READ);
         stat = FSDirStatAndListingOp.getFileInfo(
             dir, pc, src, resolveLink, needLocation, needBlockToken);
       } finally {
-        readUnlock(operationName, getLockReportInfoSupplier(src));
+        readUnlock(lockMode, operationName, getLockReportInfoSupplier(src));
       }
     } catch (AccessControlException e) {
       logAuditEvent(false, operationName, src);
@@ -3519,15 +3582,23 @@ boolean mkdirs(String src, PermissionStatus permissions,
     final FSPermissionChecker pc = getPermissionChecker();
     FSPermissionChecker.setOperationType(operationName);
     try {
-      writeLock();
+      final SubtreeLockManager.SubtreeLock subtreeLock =
+          subtreeLockManager.tryWriteLock(operationName, src);
+      if (subtreeLock == null) {
+        writeLock();
+      }
       try {
         checkOperation(OperationCategory.WRITE);
         checkNameNodeSafeMode("Cannot create directory " + src);
         auditStat = FSDirMkdirOp.mkdirs(this, pc, src, permissions,
             createParent);
       } finally {
-        writeUnlock(operationName,
-            getLockReportInfoSupplier(src, null, auditStat));
+        if (subtreeLock != null) {
+          subtreeLock.unlock();
+        } else {
+          writeUnlock(operationName,
+              getLockReportInfoSupplier(src, null, auditStat));
+        }
       }
     } catch (AccessControlException e) {
       logAuditEvent(false, operationName, src);
@@ -3538,6 +3609,199 @@ boolean mkdirs(String src, PermissionStatus permissions,
     return true;
   }
 
+  /**
+   * Run a batch of metadata operations under a single write lock acquisition
+   * and with a single edit log sync. An operation which fails does not stop
+   * the batch; its exception is reported in its result instead.
+   * <p>
+   * A retried batch already ran, but its results are not in the retry cache,
+   * as the entry was rebuilt from the edit log after a failover or restart.
+   * The batch then runs again. A create of an existing file and a delete of
+   * a missing path fail, since the earlier attempt may or may not have made
+   * them; their exception says that the earlier result was not recorded.
+   *
+   * @see ClientProtocol#batchMetadataOps(String, List) for detailed
+   * description
+   */
+  List<MetadataOpResult> batchMetadataOps(String holder, String clientMachine,
+      List<MetadataOp> ops, boolean retried) throws IOException {
+    if (ops.size() > batchedMetadataOpsLimit) {
+      String msg = String.format("Too many metadata operations (%d > %d)",
+          ops.size(), batchedMetadataOpsLimit);
+      throw new IllegalArgumentException(msg);
+    }
+    final String operationName = "batchMetadataOps";
+    checkOperation(OperationCategory.WRITE);
+    final FSPermissionChecker pc = getPermissionChecker();
+    final List<MetadataOpResult> results = new ArrayList<>(ops.size());
+    final FileStatus[] auditStats = new FileStatus[ops.size()];
+    final BlocksMapUpdateInfo toRemoveBlocks = new BlocksMapUpdateInfo();
+    writeLock();
+    try {
+      checkOperation(OperationCategory.WRITE);
+      checkNameNodeSafeMode("Cannot run metadata operations");
+      for (int i = 0; i < ops.size(); i++) {
+        MetadataOp op = ops.get(i);
+        FSPermissionChecker.setOperationType(getAuditCommand(op));
+        MetadataOpResult result;
+        try {
+          result = runMetadataOp(pc, holder, clientMachine, op,
+              toRemoveBlocks, auditStats, i, retried);
+        } catch (Exception e) {
+          result = new MetadataOpResult(
+              new RemoteException(e.getClass().getName(), e.getMessage()));
+          LOG.debug("Exception in batched {} of {}", op.getType(),
+              op.getSrc(), e);
+        }
+        results.add(result);
+      }
+    } finally {
+      writeUnlock(operationName);
+      // Edits may have been logged even if an operation failed
+      getEditLog().logSync();
+      blockManager.addBLocksToMarkedDeleteQueue(
+          toRemoveBlocks.getToDeleteList());
+    }
+    for (int i = 0; i < ops.size(); i++) {
+      MetadataOp op = ops.get(i);
+      RemoteException ex = results.get(i).getException();
+      if (ex == null) {
+        logAuditEvent(true, getAuditCommand(op), op.getSrc(), null,
+            auditStats[i]);
+      } else if (AccessControlException.class.getName().equals(
+          ex.getClassName())) {
+        logAuditEvent(false, getAuditCommand(op), op.getSrc());
+      }
+    }
+    return results;
+  }
+
+  private static String getAuditCommand(MetadataOp op) {
+    switch (op.getType()) {
+    case MKDIRS:
+      return "mkdirs";
+    case CREATE_EMPTY:
+      return "create";
+    case SET_PERMISSION:
+      return "setPermission";
+    case SET_TIMES:
+      return "setTimes";
+    case GET_FILE_INFO:
+      return "getfileinfo";
+    case DELETE:
+      return "delete";
+    default:
+      throw new IllegalArgumentException("Unexpected metadata operation: "
+          + op.getType());
+    }
+  }
+
+  /**
+   * Run one operation of a batch, with the write lock held. Edits are
+   * logged with the RPC ids of the batch, so that replaying them rebuilds
+   * the retry cache entry of the batch.
+   */
+  private MetadataOpResult runMetadataOp(FSPermissionChecker pc,
+      String holder, String clientMachine, MetadataOp op,
+      BlocksMapUpdateInfo toRemoveBlocks, FileStatus[] auditStats, int index,
+      boolean retried) throws IOException {
+    assert hasWriteLock();
+    final String src = op.getSrc();
+    switch (op.getType()) {
+    case MKDIRS:
+      auditStats[index] = FSDirMkdirOp.mkdirs(this, pc, src,
+          new PermissionStatus(pc.getUser(), null, op.getPermission()),
+          op.isCreateParent());
+      return new MetadataOpResult(true, null);
+    case CREATE_EMPTY:
+      return new MetadataOpResult(true, createEmptyFile(pc, holder,
+          clientMachine, src, op.getPermission(), op.isCreateParent(),
+          toRemoveBlocks, retried));
+    case SET_PERMISSION:
+      auditStats[index] = FSDirAttrOp.setPermission(dir, pc, src,
+          op.getPermission());
+      return new MetadataOpResult(true, null);
+    case SET_TIMES:
+      auditStats[index] = FSDirAttrOp.setTimes(dir, pc, src, op.getMtime(),
+          op.getAtime());
+      return new MetadataOpResult(true, null);
+    case GET_FILE_INFO:
+      HdfsFileStatus stat = FSDirStatAndListingOp.getFileInfo(
+          dir, pc, src, true, false, false);
+      return new MetadataOpResult(stat != null, stat);
+    case DELETE:
+      BlocksMapUpdateInfo collected = FSDirDeleteOp.delete(
+          this, pc, src, op.isRecursive(), true);
+      if (collected != null) {
+        toRemoveBlocks.getToDeleteList().addAll(collected.getToDeleteList());
+      }
+      if (collected == null && retried) {
+        throw unrecordedResult("delete", src);
+      }
+      return new MetadataOpResult(collected != null, null);
+    default:
+      throw new IllegalArgumentException("Unexpected metadata operation: "
+          + op.getType());
+    }
+  }
+
+  /**
+   * @return the exception reported for an operation of a retried batch
+   *         whose outcome depends on the unrecorded result of the earlier
+   *         attempt.
+   */
+  private static IOException unrecordedResult(String op, String src) {
+    return new IOException("Cannot tell whether the earlier attempt of the "
+        + "batch did the " + op + " of " + src + ": its result was not "
+        + "recorded, e.g. after a failover or restart");
+  }
+
+  /**
+   * Create a file without any block and close it right away, as a
+   * create call followed by a complete call would. Files in an encryption
+   * zone need an encryption key, which cannot be generated with the lock
+   * held, so they are not supported.
+   */
+  private HdfsFileStatus createEmptyFile(FSPermissionChecker pc,
+      String holder, String clientMachine, String src, FsPermission masked,
+      boolean createParent, BlocksMapUpdateInfo toRemoveBlocks,
+      boolean retried) throws IOException {
+    if (!DFSUtil.isValidName(src) || FSDirectory.isReservedName(src)) {
+      throw new InvalidPathException(src);
+    }
+    final EnumSet<CreateFlag> flag = EnumSet.of(CreateFlag.CREATE);
+    INodesInPath iip = FSDirWriteFileOp.resolvePathForStartFile(
+        dir, pc, src, flag, createParent);
+    if (FSDirEncryptionZoneOp.isInAnEZ(dir, iip)) {
+      throw new IOException("Cannot create an empty file " + src
+          + " in an encryption zone in a batch");
+    }
+    if (iip.getLastINode() != null) {
+      if (retried && iip.getLastINode().isFile()) {
+        throw unrecordedResult("create", src);
+      }
+      throw new FileAlreadyExistsException(src + " for client "
+          + clientMachine + " already exists");
+    }
+    final short replication = serverDefaults.getReplication();
+    blockManager.verifyReplication(src, replication, clientMachine);
+    final HdfsFileStatus created;
+    dir.writeLock();
+    try {
+      created = FSDirWriteFileOp.startFile(this, iip,
+          new PermissionStatus(pc.getUser(), null, masked), holder,
+          clientMachine, flag, createParent, replication,
+          serverDefaults.getBlockSize(), null, toRemoveBlocks, false, null,
+          null, true);
+    } finally {
+      dir.writeUnlock();
+    }
+    FSDirWriteFileOp.completeFile(this, pc, src, holder, null,
+        created.getFileId());
+    return FSDirStatAndListingOp.getFileInfo(dir, pc, src, false, false,
+        false);
+  }
+
   /**
    * Get the content summary for a specific file/dir.
    *
@@ -4169,13 +4433,44 @@ DirectoryListing getListing(String src, byte[] startAfter,
     DirectoryListing dl = null;
     final FSPermissionChecker pc = getPermissionChecker();
     FSPermissionChecker.setOperationType(operationName);
+    final RwLockMode lockMode =
+        needLocation ? RwLockMode.GLOBAL : RwLockMode.FS;
     try {
-      readLock();
+      readLock(lockMode);
       try {
         checkOperation(NameNode.OperationCategory.READ);
         dl = getListingInt(dir, pc, src, startAfter, needLocation);
       } finally {
-        readUnlock(operationName, getLockReportInfoSupplier(src));
+        readUnlock(lockMode, operationName, getLockReportInfoSupplier(src));
+      }
+    } catch (AccessControlException e) {
+      logAuditEvent(false, operationName, src);
+      throw e;
+    }
+    logAuditEvent(true, operationName, src);
+    return dl;
+  }
+
+  /**
+   * Get a partial listing of the entries of a directory whose names match
+   * nameFilter, with only the attributes selected by projection.
+   */
+  DirectoryListing getFilteredListing(String src, byte[] startAfter,
+      String nameFilter, ListingProjection projection) throws IOException {
+    checkOperation(OperationCategory.READ);
+    final String operationName = "listStatus";
+    DirectoryListing dl = null;
+    final FSPermissionChecker pc = getPermissionChecker();
+    FSPermissionChecker.setOperationType(operationName);
+    try {
+      readLock(RwLockMode.FS);
+      try {
+        checkOperation(NameNode.OperationCategory.READ);
+        dl = getFilteredListingInt(dir, pc, src, startAfter, nameFilter,
+            projection);
+      } finally {
+        readUnlock(RwLockMode.FS, operationName,
+            getLockReportInfoSupplier(src));
       }
     } catch (AccessControlException e) {
       logAuditEvent(false, operationName, src);
@@ -5252,12 +5547,13 @@ NamenodeCommand startCheckpoint(NamenodeRegistration backupNode,
   public void processIncrementalBlockReport(final DatanodeID nodeID,
       final StorageReceivedDeletedBlocks srdb)
       throws IOException {
-    writeLock();
+    writeLock(RwLockMode.BM);
     try {
       blockManager.processIncrementalBlockReport(nodeID, srdb);
     } finally {
-      writeUnlock("processIncrementalBlockReport");
+      writeUnlock(RwLockMode.BM, "processIncrementalBlockReport");
     }
+    blockManager.completePendingBlocks();
   }
   
   void endCheckpoint(NamenodeRegistration registration,
@@ -6988,6 +7284,11 @@ void setFsLockForTests(ReentrantReadWriteLock lock) {
   public ReentrantReadWriteLock getFsLockForTests() {
     return fsLock.coarseLock;
   }
+
+  @VisibleForTesting
+  SubtreeLockManager getSubtreeLockManager() {
+    return subtreeLockManager;
+  }
   
   @VisibleForTesting
   public ReentrantLock getCpLockForTests() {
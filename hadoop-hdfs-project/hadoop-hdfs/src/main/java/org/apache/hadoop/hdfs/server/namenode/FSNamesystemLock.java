@@ -25,19 +25,24 @@
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
 import java.util.function.Supplier;
 
 import org.apache.hadoop.classification.VisibleForTesting;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.util.RwLockMode;
 import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.log.LogThrottlingHelper;
 import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Preconditions;
 import org.apache.hadoop.util.Timer;
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_LOCK_SUPPRESS_WARNING_INTERVAL_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_LOCK_SUPPRESS_WARNING_INTERVAL_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_BLOCKMANAGER_LOCK_SPLIT_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_BLOCKMANAGER_LOCK_SPLIT_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_FAIR_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_FAIR_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOCK_DETAILED_METRICS_DEFAULT;
@@ -63,11 +68,49 @@
  * most recent snapshot will be lost due to the use of
  * {@link MutableRatesWithAggregation}. However since threads are re-used
  * between operations this should not generally be an issue.
+ * <p>
+ * When {@link org.apache.hadoop.hdfs.DFSConfigKeys
+ * #DFS_NAMENODE_BLOCKMANAGER_LOCK_SPLIT_ENABLED_KEY} is true, the block
+ * management state is additionally protected by a dedicated lock, and the
+ * {@link RwLockMode} of an acquisition decides which locks are taken:
+ * <ul>
+ *   <li>{@link RwLockMode#GLOBAL} takes both locks, the coarse lock first.
+ *   This is what the mode-less methods do.</li>
+ *   <li>{@link RwLockMode#FS} takes only the coarse lock.</li>
+ *   <li>{@link RwLockMode#BM} for read takes both read locks. For write it
+ *   takes the coarse read lock and the block manager write lock, so block
+ *   report processing, reconstruction and invalidation work are serialized
+ *   with namespace mutations but run concurrently with namespace reads in FS
+ *   mode. Code that changes the namespace must not run in this mode: blocks
+ *   which a report finds complete are only queued, and the quota of their
+ *   files is updated under the GLOBAL write lock once the report released
+ *   the block manager lock. While the split is not
+ *   active (e.g. in startup safe mode) or if the thread already holds the
+ *   coarse write lock, it falls back to the GLOBAL write lock.</li>
+ * </ul>
+ * Hold times of the block manager write lock in BM mode are reported as
+ * FSNBMWriteLockNanosOperationName.
  */
 class FSNamesystemLock {
   @VisibleForTesting
   protected ReentrantReadWriteLock coarseLock;
 
+  /**
+   * Lock for the block management state, null unless the block manager lock
+   * is split from the namespace lock. Always acquired after the coarseLock.
+   */
+  private final ReentrantReadWriteLock bmLock;
+  /** Whether BM mode write locks currently avoid the coarse write lock. */
+  private volatile BooleanSupplier bmLockSplitActive = () -> true;
+  /**
+   * Number of BM mode write locks held by the current thread which fell back
+   * to the GLOBAL write lock.
+   */
+  private final ThreadLocal<Integer> bmWriteLockFallbacks =
+      ThreadLocal.withInitial(() -> 0);
+  /** Last time stamp for the BM mode write lock. */
+  private long bmWriteLockHeldTimeStampNanos;
+
   private final boolean metricsEnabled;
   private final MutableRatesWithAggregation detailedHoldTimeMetrics;
   private final Timer timer;
@@ -125,6 +168,7 @@ public Long initialValue() {
   static final String OP_NAME_OTHER = "OTHER";
   private static final String READ_LOCK_METRIC_PREFIX = "FSNReadLock";
   private static final String WRITE_LOCK_METRIC_PREFIX = "FSNWriteLock";
+  private static final String BM_WRITE_LOCK_METRIC_PREFIX = "FSNBMWriteLock";
   private static final String LOCK_METRIC_SUFFIX = "Nanos";
 
   private static final String OVERALL_METRIC_NAME = "Overall";
@@ -141,6 +185,12 @@ public Long initialValue() {
         DFS_NAMENODE_FSLOCK_FAIR_DEFAULT);
     FSNamesystem.LOG.info("fsLock is fair: " + fair);
     this.coarseLock = new ReentrantReadWriteLock(fair);
+    boolean splitBMLock = conf.getBoolean(
+        DFS_NAMENODE_BLOCKMANAGER_LOCK_SPLIT_ENABLED_KEY,
+        DFS_NAMENODE_BLOCKMANAGER_LOCK_SPLIT_ENABLED_DEFAULT);
+    FSNamesystem.LOG.info("Block manager lock split from fsLock: " +
+        splitBMLock);
+    this.bmLock = splitBMLock ? new ReentrantReadWriteLock(fair) : null;
     this.timer = timer;
 
     this.writeLockReportingThresholdMs = conf.getLong(
@@ -162,24 +212,59 @@ public Long initialValue() {
     this.detailedHoldTimeMetrics = detailedHoldTimeMetrics;
   }
 
+  /**
+   * Set the condition under which BM mode write locks may avoid the coarse
+   * write lock. Only effective if the block manager lock is split.
+   */
+  void setBMLockSplitActive(BooleanSupplier splitActive) {
+    this.bmLockSplitActive = splitActive;
+  }
+
+  boolean isBMLockSplit() {
+    return bmLock != null;
+  }
+
   public void readLock() {
+    readLock(RwLockMode.GLOBAL);
+  }
+
+  public void readLock(RwLockMode lockMode) {
     doLock(false);
+    if (needsBMLock(lockMode)) {
+      bmLock.readLock().lock();
+    }
   }
 
   public void readLockInterruptibly() throws InterruptedException {
     doLockInterruptibly(false);
+    if (needsBMLock(RwLockMode.GLOBAL)) {
+      try {
+        bmLock.readLock().lockInterruptibly();
+      } catch (InterruptedException e) {
+        coarseLock.readLock().unlock();
+        throw e;
+      }
+    }
   }
 
   public void readUnlock() {
-    readUnlock(OP_NAME_OTHER, null);
+    readUnlock(RwLockMode.GLOBAL, OP_NAME_OTHER, null);
   }
 
   public void readUnlock(String opName) {
-    readUnlock(opName, null);
+    readUnlock(RwLockMode.GLOBAL, opName, null);
   }
 
   public void readUnlock(String opName,
       Supplier<String> lockReportInfoSupplier) {
+    readUnlock(RwLockMode.GLOBAL, opName, lockReportInfoSupplier);
+  }
+
+  public void readUnlock(RwLockMode lockMode, String opName,
+      Supplier<String> lockReportInfoSupplier) {
+    if (needsBMLock(lockMode)) {
+      bmLock.readLock().unlock();
+    }
     final boolean needReport = coarseLock.getReadHoldCount() == 1;
     final long readLockIntervalNanos =
         timer.monotonicNowNanos() - readLockHeldTimeStampNanos.get();
@@ -240,11 +325,71 @@ public void readUnlock(String opName,
   }
   
   public void writeLock() {
+    writeLock(RwLockMode.GLOBAL);
+  }
+
+  public void writeLock(RwLockMode lockMode) {
+    if (isBMOnlyWriteLock(lockMode)) {
+      long startNanos = timer.monotonicNowNanos();
+      coarseLock.readLock().lock();
+      bmLock.writeLock().lock();
+      long now = timer.monotonicNowNanos();
+      updateProcessingDetails(Timing.LOCKWAIT, now - startNanos);
+      if (bmLock.getWriteHoldCount() == 1) {
+        bmWriteLockHeldTimeStampNanos = now;
+      }
+      return;
+    }
+    if (lockMode == RwLockMode.BM && bmLock != null) {
+      bmWriteLockFallbacks.set(bmWriteLockFallbacks.get() + 1);
+    }
+    checkNoLockUpgrade();
     doLock(true);
+    if (needsBMLock(lockMode)) {
+      bmLock.writeLock().lock();
+    }
   }
 
   public void writeLockInterruptibly() throws InterruptedException {
+    checkNoLockUpgrade();
     doLockInterruptibly(true);
+    if (needsBMLock(RwLockMode.GLOBAL)) {
+      try {
+        bmLock.writeLock().lockInterruptibly();
+      } catch (InterruptedException e) {
+        coarseLock.writeLock().unlock();
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Unlocks a write lock acquired in the given mode.
+   *
+   * @param lockMode the mode the lock was acquired in.
+   * @param opName Operation name.
+   */
+  public void writeUnlock(RwLockMode lockMode, String opName) {
+    if (lockMode == RwLockMode.BM && bmLock != null) {
+      int fallbacks = bmWriteLockFallbacks.get();
+      if (fallbacks == 0) {
+        final boolean needReport = bmLock.getWriteHoldCount() == 1;
+        final long bmWriteLockIntervalNanos =
+            timer.monotonicNowNanos() - bmWriteLockHeldTimeStampNanos;
+        bmLock.writeLock().unlock();
+        coarseLock.readLock().unlock();
+        if (needReport) {
+          addMetric(BM_WRITE_LOCK_METRIC_PREFIX, opName,
+              bmWriteLockIntervalNanos, true);
+        }
+        return;
+      }
+      bmWriteLockFallbacks.set(fallbacks - 1);
+    }
+    if (needsBMLock(lockMode)) {
+      bmLock.writeLock().unlock();
+    }
+    writeUnlock(opName, false, null);
   }
 
   /**
@@ -252,7 +397,7 @@ public void writeLockInterruptibly() throws InterruptedException {
    * FSNamesystemLock#writeUnlock(String, boolean, Supplier)}
    */
   public void writeUnlock() {
-    writeUnlock(OP_NAME_OTHER, false, null);
+    writeUnlock(RwLockMode.GLOBAL, OP_NAME_OTHER);
   }
 
   /**
@@ -262,7 +407,7 @@ public void writeUnlock() {
    * @param opName Operation name.
    */
   public void writeUnlock(String opName) {
-    writeUnlock(opName, false, null);
+    writeUnlock(RwLockMode.GLOBAL, opName);
   }
 
   /**
@@ -274,6 +419,9 @@ public void writeUnlock(String opName) {
    */
   public void writeUnlock(String opName,
       Supplier<String> lockReportInfoSupplier) {
+    if (needsBMLock(RwLockMode.GLOBAL)) {
+      bmLock.writeLock().unlock();
+    }
     writeUnlock(opName, false, lockReportInfoSupplier);
   }
 
@@ -286,6 +434,9 @@ public void writeUnlock(String opName,
    * for long time will be logged in logs and metrics.
    */
   public void writeUnlock(String opName, boolean suppressWriteLockReport) {
+    if (needsBMLock(RwLockMode.GLOBAL)) {
+      bmLock.writeLock().unlock();
+    }
     writeUnlock(opName, suppressWriteLockReport, null);
   }
 
@@ -360,6 +511,35 @@ public boolean isWriteLockedByCurrentThread() {
     return coarseLock.isWriteLockedByCurrentThread();
   }
 
+  /**
+   * @return true if the current thread holds the write lock of the given
+   *         mode.
+   */
+  public boolean isWriteLockedByCurrentThread(RwLockMode lockMode) {
+    if (bmLock == null || lockMode == RwLockMode.FS) {
+      return coarseLock.isWriteLockedByCurrentThread();
+    } else if (lockMode == RwLockMode.BM) {
+      return bmLock.isWriteLockedByCurrentThread();
+    }
+    return coarseLock.isWriteLockedByCurrentThread()
+        && bmLock.isWriteLockedByCurrentThread();
+  }
+
+  /**
+   * @return true if the current thread holds the read or the write lock of
+   *         the given mode.
+   */
+  public boolean hasReadLock(RwLockMode lockMode) {
+    boolean hasFsLock = coarseLock.getReadHoldCount() > 0
+        || coarseLock.isWriteLockedByCurrentThread();
+    if (bmLock == null || lockMode == RwLockMode.FS) {
+      return hasFsLock;
+    }
+    boolean hasBMLock = bmLock.getReadHoldCount() > 0
+        || bmLock.isWriteLockedByCurrentThread();
+    return lockMode == RwLockMode.BM ? hasBMLock : hasFsLock && hasBMLock;
+  }
+
   public Condition newWriteLockCondition() {
     return coarseLock.writeLock().newCondition();
   }
@@ -403,17 +583,56 @@ public long getNumOfWriteLockLongHold() {
    * @param value Length of time the lock was held (nanoseconds)
    */
   private void addMetric(String operationName, long value, boolean isWrite) {
+    addMetric(isWrite ? WRITE_LOCK_METRIC_PREFIX : READ_LOCK_METRIC_PREFIX,
+        operationName, value, isWrite);
+  }
+
+  private void addMetric(String prefix, String operationName, long value,
+      boolean isWrite) {
     if (metricsEnabled) {
-      String opMetric = getMetricName(operationName, isWrite);
+      String opMetric = getMetricName(prefix, operationName);
       detailedHoldTimeMetrics.add(opMetric, value);
 
-      String overallMetric = getMetricName(OVERALL_METRIC_NAME, isWrite);
+      String overallMetric = getMetricName(prefix, OVERALL_METRIC_NAME);
       detailedHoldTimeMetrics.add(overallMetric, value);
     }
     updateProcessingDetails(
         isWrite ? Timing.LOCKEXCLUSIVE : Timing.LOCKSHARED, value);
   }
 
+  /**
+   * @return true if an acquisition in the given mode has to take the block
+   *         manager lock in addition to the coarse lock.
+   */
+  private boolean needsBMLock(RwLockMode lockMode) {
+    return bmLock != null && lockMode != RwLockMode.FS;
+  }
+
+  /**
+   * @return true if a write lock in the given mode is taken as the coarse
+   *         read lock plus the block manager write lock.
+   */
+  private boolean isBMOnlyWriteLock(RwLockMode lockMode) {
+    return lockMode == RwLockMode.BM && bmLock != null
+        && bmWriteLockFallbacks.get() == 0
+        && !coarseLock.isWriteLockedByCurrentThread()
+        && (bmLock.isWriteLockedByCurrentThread()
+            || bmLockSplitActive.getAsBoolean());
+  }
+
+  /**
+   * A thread holding only the coarse read lock, e.g. in BM mode, would
+   * deadlock on the coarse write lock; fail instead.
+   */
+  private void checkNoLockUpgrade() {
+    if (bmLock != null) {
+      Preconditions.checkState(coarseLock.getReadHoldCount() == 0
+          || coarseLock.isWriteLockedByCurrentThread(),
+          "Cannot acquire the namesystem write lock while holding the read"
+          + " lock");
+    }
+  }
+
   private void doLock(boolean isWrite) {
     long startNanos = timer.monotonicNowNanos();
     if (isWrite) {
@@ -456,8 +675,8 @@ private static void updateProcessingDetails(Timing type, long deltaNanos) {
     }
   }
 
-  private static String getMetricName(String operationName, boolean isWrite) {
-    return (isWrite ? WRITE_LOCK_METRIC_PREFIX : READ_LOCK_METRIC_PREFIX) +
+  private static String getMetricName(String prefix, String operationName) {
+    return prefix +
         org.apache.commons.lang3.StringUtils.capitalize(operationName) +
         LOCK_METRIC_SUFFIX;
   }
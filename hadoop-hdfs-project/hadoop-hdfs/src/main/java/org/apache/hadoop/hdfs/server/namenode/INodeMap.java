@@ -19,10 +19,13 @@
 
 import java.util.Iterator;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
+import org.apache.hadoop.hdfs.util.ResizableGSet;
 import org.apache.hadoop.util.GSet;
 import org.apache.hadoop.util.LightWeightGSet;
 
@@ -34,11 +37,18 @@
  */
 public class INodeMap {
   
-  static INodeMap newInstance(INodeDirectory rootDir) {
-    // Compute the map capacity by allocating 1% of total memory
-    int capacity = LightWeightGSet.computeCapacity(1, "INodeMap");
-    GSet<INode, INodeWithAdditionalFields> map =
-        new LightWeightGSet<>(capacity);
+  static INodeMap newInstance(INodeDirectory rootDir, Configuration conf) {
+    final GSet<INode, INodeWithAdditionalFields> map;
+    if (conf.getBoolean(DFSConfigKeys.DFS_NAMENODE_GSET_RESIZABLE_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_GSET_RESIZABLE_ENABLED_DEFAULT)) {
+      map = new ResizableGSet<>(conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_GSET_RESIZABLE_INITIAL_CAPACITY_KEY,
+          DFSConfigKeys.DFS_NAMENODE_GSET_RESIZABLE_INITIAL_CAPACITY_DEFAULT));
+    } else {
+      // Compute the map capacity by allocating 1% of total memory
+      int capacity = LightWeightGSet.computeCapacity(1, "INodeMap");
+      map = new LightWeightGSet<>(capacity);
+    }
     map.put(rootDir);
     return new INodeMap(map);
   }
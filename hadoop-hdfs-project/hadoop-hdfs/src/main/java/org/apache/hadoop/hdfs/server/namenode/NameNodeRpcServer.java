@@ -38,6 +38,7 @@
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
@@ -119,8 +120,11 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.StoragePolicySatisfierMode;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.ListingProjection;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.MetadataOp;
+import org.apache.hadoop.hdfs.protocol.MetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.NSQuotaExceededException;
 import org.apache.hadoop.hdfs.protocol.OpenFileEntry;
 import org.apache.hadoop.hdfs.protocol.OpenFilesIterator;
@@ -190,6 +194,7 @@
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.ipc.ProtobufRpcEngine2;
 import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.ipc.RetriableException;
 import org.apache.hadoop.ipc.RetryCache;
 import org.apache.hadoop.ipc.RetryCache.CacheEntry;
@@ -1173,6 +1178,70 @@ public boolean mkdirs(String src, FsPermission masked, boolean createParent)
             null, masked), createParent);
   }
 
+  @Override // ClientProtocol
+  @SuppressWarnings("unchecked")
+  public List<MetadataOpResult> batchMetadataOps(String clientName,
+      List<MetadataOp> ops) throws IOException {
+    checkNNStartup();
+    String clientMachine = getClientMachine();
+    if (stateChangeLog.isDebugEnabled()) {
+      stateChangeLog.debug("*DIR* NameNode.batchMetadataOps: " + ops.size()
+          + " operations for " + clientName + " at " + clientMachine);
+    }
+    namesystem.checkOperation(OperationCategory.WRITE);
+    CacheEntryWithPayload cacheEntry = RetryCache.waitForCompletion(retryCache,
+        null);
+    if (cacheEntry != null && cacheEntry.isSuccess()) {
+      if (cacheEntry.getPayload() instanceof List) {
+        return (List<MetadataOpResult>) cacheEntry.getPayload();
+      }
+      // Entry rebuilt from the edits of the batch
+      return runBatchMetadataOps(clientName, clientMachine, ops, true);
+    }
+
+    List<MetadataOpResult> results = null;
+    try {
+      results = runBatchMetadataOps(clientName, clientMachine, ops, false);
+    } finally {
+      RetryCache.setState(cacheEntry, results != null, results);
+    }
+    metrics.incrBatchedMetadataOps(ops.size());
+    return results;
+  }
+
+  /**
+   * Run the operations of a batch whose path is not too long. The others
+   * fail on their own, without stopping the rest of the batch.
+   */
+  private List<MetadataOpResult> runBatchMetadataOps(String clientName,
+      String clientMachine, List<MetadataOp> ops, boolean retried)
+      throws IOException {
+    List<MetadataOp> validOps = new ArrayList<>(ops.size());
+    for (MetadataOp op : ops) {
+      if (checkPathLength(op.getSrc())) {
+        validOps.add(op);
+      }
+    }
+    List<MetadataOpResult> validResults = namesystem.batchMetadataOps(
+        clientName, clientMachine, validOps, retried);
+    if (validOps.size() == ops.size()) {
+      return validResults;
+    }
+    List<MetadataOpResult> results = new ArrayList<>(ops.size());
+    int next = 0;
+    for (MetadataOp op : ops) {
+      if (next < validOps.size() && validOps.get(next) == op) {
+        results.add(validResults.get(next++));
+      } else {
+        results.add(new MetadataOpResult(new RemoteException(
+            IOException.class.getName(),
+            "batchMetadataOps: Pathname too long.  Limit " + MAX_PATH_LENGTH
+            + " characters, " + MAX_PATH_DEPTH + " levels.")));
+      }
+    }
+    return results;
+  }
+
   @Override // ClientProtocol
   public void renewLease(String clientName) throws IOException {
     checkNNStartup();
@@ -1192,6 +1261,19 @@ public DirectoryListing getListing(String src, byte[] startAfter,
     return files;
   }
 
+  @Override // ClientProtocol
+  public DirectoryListing getFilteredListing(String src, byte[] startAfter,
+      String nameFilter, ListingProjection projection) throws IOException {
+    checkNNStartup();
+    DirectoryListing files = namesystem.getFilteredListing(
+        src, startAfter, nameFilter, projection);
+    if (files != null) {
+      metrics.incrGetListingOps();
+      metrics.incrFilesInGetListingOps(files.getPartialListing().length);
+    }
+    return files;
+  }
+
   @Override // ClientProtocol
   public BatchedDirectoryListing getBatchedListing(
       String[] srcs,
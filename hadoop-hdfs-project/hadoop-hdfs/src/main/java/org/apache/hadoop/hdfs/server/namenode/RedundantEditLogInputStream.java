@@ -294,6 +294,15 @@ public void setMaxOpSize(int maxOpSize) {
     }
   }
 
+  @Override
+  public boolean disableOpCache() {
+    boolean disabled = true;
+    for (EditLogInputStream elis : streams) {
+      disabled &= elis.disableOpCache();
+    }
+    return disabled;
+  }
+
   @Override
   public boolean isLocalLog() {
     return streams[curIdx].isLocalLog();
@@ -0,0 +1,339 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.util.RwLockMode;
+import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
+import org.apache.hadoop.util.Preconditions;
+import org.apache.hadoop.util.Timer;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SUBTREE_LOCK_DEPTH_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SUBTREE_LOCK_DEPTH_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SUBTREE_LOCK_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SUBTREE_LOCK_ENABLED_KEY;
+
+/**
+ * Locks on namespace subtrees which let mutations of disjoint subtrees run
+ * concurrently instead of serializing on the namesystem write lock.
+ * <p>
+ * A subtree is identified by the path of the directory at
+ * {@link org.apache.hadoop.hdfs.DFSConfigKeys#DFS_NAMENODE_SUBTREE_LOCK_DEPTH_KEY}
+ * levels below the root. Operations holding a subtree lock are members of a
+ * group which shares a single acquisition of the namesystem write lock: the
+ * first operation to arrive takes the write lock on behalf of the group and
+ * operations arriving while it holds it join the group rather than queueing
+ * behind it. Readers and all other writers are excluded for as long as the
+ * group holds the namesystem lock, exactly as for a single writer. Within the
+ * group, members of the same subtree are serialized by a per-subtree stripe
+ * lock, while members of disjoint subtrees run in parallel. When the leader
+ * is done it closes the group, waits for the remaining members and releases
+ * the namesystem lock, so the group cannot hold the lock indefinitely.
+ * <p>
+ * A member may only modify directories inside its own subtree. State shared
+ * by all subtrees, i.e. quota counts of the ancestors, the INodeMap, inode id
+ * allocation and the edit log, is synchronized by {@link FSDirectory} and
+ * {@link FSEditLog} themselves. An operation which cannot be confined to a
+ * subtree (a shallower path, a subtree root which does not exist yet, reserved
+ * paths or a namespace with snapshots) is not granted a subtree lock and has
+ * to take the namesystem write lock instead.
+ * <p>
+ * Rates of the form SubtreeWriteLock(Subtree)Nanos report how long each
+ * subtree was held and SubtreeLockWait(Subtree)Nanos report how long
+ * operations on the subtree waited for the group and the subtree stripe, so
+ * hot subtrees can be identified.
+ */
+class SubtreeLockManager {
+  @VisibleForTesting
+  static final int NUM_STRIPES = 256;
+
+  private static final String HOLD_METRIC_PREFIX = "SubtreeWriteLock";
+  private static final String WAIT_METRIC_PREFIX = "SubtreeLockWait";
+  private static final String METRIC_SUFFIX = "Nanos";
+
+  private final FSNamesystem fsn;
+  private final boolean enabled;
+  private final int depth;
+  private final ReentrantLock[] stripes;
+  private final MutableRatesWithAggregation metrics;
+  private final Timer timer;
+
+  /** The lock held by the current thread, if any. */
+  private final ThreadLocal<SubtreeLock> heldLock = new ThreadLocal<>();
+
+  // The group state, guarded by this.
+  /** A leader is waiting for the namesystem write lock. */
+  private boolean leaderPending = false;
+  /** The group holds the namesystem write lock and accepts members. */
+  private boolean open = false;
+  /** The number of operations in the group, including its leader. */
+  private int members = 0;
+
+  SubtreeLockManager(Configuration conf, FSNamesystem fsn,
+      MutableRatesWithAggregation metrics) {
+    this(conf, fsn, metrics, new Timer());
+  }
+
+  @VisibleForTesting
+  SubtreeLockManager(Configuration conf, FSNamesystem fsn,
+      MutableRatesWithAggregation metrics, Timer timer) {
+    this.fsn = fsn;
+    this.enabled = conf.getBoolean(DFS_NAMENODE_SUBTREE_LOCK_ENABLED_KEY,
+        DFS_NAMENODE_SUBTREE_LOCK_ENABLED_DEFAULT);
+    this.depth = conf.getInt(DFS_NAMENODE_SUBTREE_LOCK_DEPTH_KEY,
+        DFS_NAMENODE_SUBTREE_LOCK_DEPTH_DEFAULT);
+    Preconditions.checkArgument(depth > 0,
+        "%s should be positive: %s", DFS_NAMENODE_SUBTREE_LOCK_DEPTH_KEY,
+        depth);
+    this.metrics = metrics;
+    this.timer = timer;
+    if (enabled) {
+      stripes = new ReentrantLock[NUM_STRIPES];
+      for (int i = 0; i < NUM_STRIPES; i++) {
+        stripes[i] = new ReentrantLock();
+      }
+    } else {
+      stripes = null;
+    }
+    FSNamesystem.LOG.info("Subtree locking enabled: {}, depth: {}", enabled,
+        depth);
+  }
+
+  boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return true if the current thread holds a subtree lock, which grants it
+   *         the namesystem write lock for the paths inside its subtree.
+   */
+  boolean isHeldByCurrentThread() {
+    return enabled && heldLock.get() != null;
+  }
+
+  /**
+   * Try to lock the subtree in which the given path is going to be created.
+   *
+   * @param opName the operation name reported if the namesystem lock was
+   *        held long.
+   * @param src the path to be created.
+   * @return the acquired lock, to be released via
+   *         {@link SubtreeLock#unlock()}, or null if the caller has to
+   *         take the namesystem write lock instead.
+   */
+  SubtreeLock tryWriteLock(String opName, String src) {
+    if (!enabled || fsn.hasReadLock() || FSDirectory.isReservedName(src)) {
+      return null;
+    }
+    byte[][] components = INode.getPathComponents(src);
+    if (components.length <= depth + 1) {
+      return null;
+    }
+    long startNanos = timer.monotonicNowNanos();
+    boolean leader = joinGroup();
+    boolean confined = false;
+    try {
+      confined = isConfined(components);
+    } finally {
+      if (!confined) {
+        leaveGroup(leader, opName);
+      }
+    }
+    if (!confined) {
+      return null;
+    }
+    String subtree = DFSUtil.byteArray2PathString(components, 0, depth + 1);
+    ReentrantLock stripe = stripes[getStripeIndex(subtree)];
+    stripe.lock();
+    long nowNanos = timer.monotonicNowNanos();
+    addMetric(WAIT_METRIC_PREFIX, subtree, nowNanos - startNanos);
+    SubtreeLock lock = new SubtreeLock(this, opName, subtree, stripe,
+        leader, nowNanos);
+    heldLock.set(lock);
+    return lock;
+  }
+
+  /**
+   * @return true if the subtree root of the given path exists and is a
+   *         directory and no snapshot can make an operation on the path
+   *         modify inodes outside the subtree.
+   */
+  private boolean isConfined(byte[][] components) {
+    if (fsn.getSnapshotManager().getNumSnapshottableDirs() > 0) {
+      return false;
+    }
+    FSDirectory fsd = fsn.getFSDirectory();
+    INodesInPath iip = INodesInPath.resolve(fsd.getRoot(),
+        Arrays.copyOf(components, depth + 1));
+    for (int i = 0; i < iip.length(); i++) {
+      INode inode = iip.getINode(i);
+      if (inode == null || !inode.isDirectory()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Join the current group, or become the leader of a new group if none
+   * accepts members.
+   *
+   * @return true if the caller is the leader of the group.
+   */
+  private boolean joinGroup() {
+    boolean interrupted = false;
+    try {
+      synchronized (this) {
+        while (!open) {
+          if (!leaderPending) {
+            leaderPending = true;
+            break;
+          }
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+        if (open) {
+          members++;
+          return false;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    boolean locked = false;
+    try {
+      fsn.writeLock(RwLockMode.FS);
+      locked = true;
+    } finally {
+      synchronized (this) {
+        leaderPending = false;
+        if (locked) {
+          open = true;
+          members = 1;
+        }
+        notifyAll();
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Leave the group. The leader closes the group, waits for the remaining
+   * members to leave and releases the namesystem write lock.
+   */
+  private void leaveGroup(boolean leader, String opName) {
+    boolean interrupted = false;
+    synchronized (this) {
+      members--;
+      if (leader) {
+        open = false;
+        while (members > 0) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+      }
+      notifyAll();
+    }
+    if (leader) {
+      fsn.writeUnlock(RwLockMode.FS, opName);
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void release(SubtreeLock lock) {
+    long holdNanos = timer.monotonicNowNanos() - lock.acquiredNanos;
+    heldLock.remove();
+    lock.stripe.unlock();
+    addMetric(HOLD_METRIC_PREFIX, lock.subtree, holdNanos);
+    leaveGroup(lock.leader, lock.opName);
+  }
+
+  @VisibleForTesting
+  boolean isWriteLocked(String subtree) {
+    return enabled && stripes[getStripeIndex(subtree)].isLocked();
+  }
+
+  @VisibleForTesting
+  synchronized int getNumMembers() {
+    return members;
+  }
+
+  private static int getStripeIndex(String subtree) {
+    return (subtree.hashCode() & Integer.MAX_VALUE) % NUM_STRIPES;
+  }
+
+  private void addMetric(String prefix, String subtree, long nanos) {
+    if (metrics != null) {
+      metrics.add(getMetricName(prefix, subtree), nanos);
+    }
+  }
+
+  @VisibleForTesting
+  static String getMetricName(String prefix, String subtree) {
+    String name = org.apache.commons.lang3.StringUtils.capitalize(
+        subtree.substring(1).replaceAll("[^A-Za-z0-9]", "_"));
+    return prefix + name + METRIC_SUFFIX;
+  }
+
+  /**
+   * The subtree lock held by an operation.
+   */
+  static final class SubtreeLock {
+    private final SubtreeLockManager manager;
+    private final String opName;
+    private final String subtree;
+    private final ReentrantLock stripe;
+    private final boolean leader;
+    private final long acquiredNanos;
+
+    private SubtreeLock(SubtreeLockManager manager, String opName,
+        String subtree, ReentrantLock stripe, boolean leader,
+        long acquiredNanos) {
+      this.manager = manager;
+      this.opName = opName;
+      this.subtree = subtree;
+      this.stripe = stripe;
+      this.leader = leader;
+      this.acquiredNanos = acquiredNanos;
+    }
+
+    String getSubtree() {
+      return subtree;
+    }
+
+    /** Release the lock. */
+    void unlock() {
+      manager.release(this);
+    }
+  }
+}
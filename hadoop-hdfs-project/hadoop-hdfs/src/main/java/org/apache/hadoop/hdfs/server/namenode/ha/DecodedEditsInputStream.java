@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.apache.hadoop.hdfs.server.namenode.EditLogInputStream;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp;
+
+/**
+ * An {@link EditLogInputStream} over a batch of ops which have already been
+ * decoded from another stream. It is used by the {@link EditLogTailer} to
+ * hand ops from its decoder thread to the thread which applies them, so
+ * that the namesystem lock is only held while the ops are applied.
+ */
+@InterfaceAudience.Private
+class DecodedEditsInputStream extends EditLogInputStream {
+  private final String sourceName;
+  private final int version;
+  private final boolean inProgress;
+  private final boolean localLog;
+  private final List<FSEditLogOp> ops;
+  private int pos = 0;
+
+  DecodedEditsInputStream(String sourceName, int version, boolean inProgress,
+      boolean localLog, List<FSEditLogOp> ops) {
+    this.sourceName = sourceName;
+    this.version = version;
+    this.inProgress = inProgress;
+    this.localLog = localLog;
+    this.ops = ops;
+  }
+
+  @Override
+  public String getName() {
+    return "[" + getFirstTxId() + "-" + getLastTxId() + "] of " + sourceName;
+  }
+
+  @Override
+  public String getCurrentStreamName() {
+    return sourceName;
+  }
+
+  @Override
+  public long getFirstTxId() {
+    return ops.isEmpty() ? HdfsServerConstants.INVALID_TXID
+        : ops.get(0).getTransactionId();
+  }
+
+  @Override
+  public long getLastTxId() {
+    return ops.isEmpty() ? HdfsServerConstants.INVALID_TXID
+        : ops.get(ops.size() - 1).getTransactionId();
+  }
+
+  /**
+   * @return the number of ops in this batch.
+   */
+  int size() {
+    return ops.size();
+  }
+
+  @Override
+  protected FSEditLogOp nextOp() {
+    return pos < ops.size() ? ops.get(pos++) : null;
+  }
+
+  @Override
+  public int getVersion(boolean verifyVersion) {
+    return version;
+  }
+
+  @Override
+  public long getPosition() {
+    return pos;
+  }
+
+  @Override
+  public long length() {
+    return ops.size();
+  }
+
+  @Override
+  public boolean isInProgress() {
+    return inProgress;
+  }
+
+  @Override
+  public void setMaxOpSize(int maxOpSize) {
+    // The ops have already been decoded.
+  }
+
+  @Override
+  public boolean disableOpCache() {
+    // Every op in the batch is already a distinct instance.
+    return true;
+  }
+
+  @Override
+  public boolean isLocalLog() {
+    return localLog;
+  }
+
+  @Override
+  public void close() {
+    // Nothing to release; the source stream is closed by the decoder.
+  }
+}
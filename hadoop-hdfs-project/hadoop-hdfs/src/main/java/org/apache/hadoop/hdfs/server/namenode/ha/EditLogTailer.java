@@ -18,14 +18,18 @@
 
 package org.apache.hadoop.hdfs.server.namenode.ha;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedExceptionAction;
 import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -49,10 +53,12 @@
 import org.apache.hadoop.hdfs.server.namenode.EditLogInputException;
 import org.apache.hadoop.hdfs.server.namenode.EditLogInputStream;
 import org.apache.hadoop.hdfs.server.namenode.FSEditLog;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp;
 import org.apache.hadoop.hdfs.server.namenode.FSImage;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocol;
+import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.security.SecurityUtil;
 
@@ -171,6 +177,29 @@ public class EditLogTailer {
    */
   private final long maxTxnsPerLock;
 
+  /**
+   * Number of decoded batches which may be queued ahead of the batch being
+   * applied when edits are tailed in pipelined mode.
+   */
+  private static final int PIPELINED_QUEUE_CAPACITY = 4;
+
+  /** Queued by the decoder after its last batch, even if decoding failed. */
+  private static final DecodedEditsInputStream END_OF_EDITS =
+      new DecodedEditsInputStream("END", 0, false, true,
+          Collections.emptyList());
+
+  /**
+   * Maximum number of transactions applied under one acquisition of the
+   * namesystem write lock in pipelined mode.
+   */
+  private final int pipelinedBatchSize;
+
+  /**
+   * The executor which decodes edits ahead of the tailer thread, or null if
+   * edits are not tailed in pipelined mode.
+   */
+  private final ExecutorService editLogDecoderExecutor;
+
   /**
    * Timer instance to be set only using constructor.
    * Only tests can reassign this by using setTimerForTests().
@@ -259,6 +288,24 @@ public EditLogTailer(FSNamesystem namesystem, Configuration conf) {
         DFS_HA_TAILEDITS_MAX_TXNS_PER_LOCK_KEY,
         DFS_HA_TAILEDITS_MAX_TXNS_PER_LOCK_DEFAULT);
 
+    this.pipelinedBatchSize = (int) Math.min(maxTxnsPerLock, conf.getInt(
+        DFSConfigKeys.DFS_HA_TAILEDITS_PIPELINED_BATCH_SIZE_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_PIPELINED_BATCH_SIZE_DEFAULT));
+    if (conf.getBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_PIPELINED_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_PIPELINED_DEFAULT)) {
+      Preconditions.checkArgument(pipelinedBatchSize > 0,
+          "%s must be positive, got %s",
+          DFSConfigKeys.DFS_HA_TAILEDITS_PIPELINED_BATCH_SIZE_KEY,
+          pipelinedBatchSize);
+      editLogDecoderExecutor = Executors.newSingleThreadExecutor(
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("Edit log decoder").build());
+      LOG.info("Tailing edits in pipelined mode with batches of at most {} "
+          + "transactions.", pipelinedBatchSize);
+    } else {
+      editLogDecoderExecutor = null;
+    }
+
     nnCount = nns.size();
     // setup the iterator to endlessly loop the nns
     this.nnLookup = Iterators.cycle(nns);
@@ -281,6 +328,9 @@ public void stop() throws IOException {
       throw new IOException(e);
     } finally {
       rollEditsRpcExecutor.shutdown();
+      if (editLogDecoderExecutor != null) {
+        editLogDecoderExecutor.shutdownNow();
+      }
     }
   }
   
@@ -328,6 +378,12 @@ public Void run() throws Exception {
   
   @VisibleForTesting
   public long doTailEdits() throws IOException, InterruptedException {
+    // Failover catchup runs after stop() has shut the decoder down, and uses
+    // the classic path under the lock its caller already holds.
+    if (editLogDecoderExecutor != null &&
+        !editLogDecoderExecutor.isShutdown()) {
+      return doTailEditsPipelined();
+    }
     // Write lock needs to be interruptible here because the 
     // transitionToActive RPC takes the write lock before calling
     // tailer.stop() -- so if we're not interruptible, it will
@@ -360,32 +416,230 @@ public long doTailEdits() throws IOException, InterruptedException {
       if (LOG.isDebugEnabled()) {
         LOG.debug("edit streams to load from: " + streams.size());
       }
-      
-      // Once we have streams to load, errors encountered are legitimate cause
-      // for concern, so we don't catch them here. Simple errors reading from
-      // disk are ignored.
-      long editsLoaded = 0;
+      return loadEdits(image, lastTxnId, streams);
+    } finally {
+      namesystem.writeUnlock();
+    }
+  }
+
+  /**
+   * Load the edits of the selected streams. The caller holds the namesystem
+   * write lock.
+   */
+  private long loadEdits(FSImage image, long lastTxnId,
+      Collection<EditLogInputStream> streams) throws IOException {
+    // Once we have streams to load, errors encountered are legitimate cause
+    // for concern, so we don't catch them here. Simple errors reading from
+    // disk are ignored.
+    long editsLoaded = 0;
+    try {
+      editsLoaded = image.loadEdits(
+          streams, namesystem, maxTxnsPerLock, null, null);
+    } catch (EditLogInputException elie) {
+      editsLoaded = elie.getNumEditsLoaded();
+      throw elie;
+    } finally {
+      if (editsLoaded > 0 || LOG.isDebugEnabled()) {
+        LOG.debug(String.format("Loaded %d edits starting from txid %d ",
+            editsLoaded, lastTxnId));
+      }
+      NameNode.getNameNodeMetrics().addNumEditLogLoaded(editsLoaded);
+    }
+
+    if (editsLoaded > 0) {
+      lastLoadTimeMs = timer.monotonicNow();
+    }
+    lastLoadedTxnId = image.getLastAppliedTxId();
+    return editsLoaded;
+  }
+
+  /**
+   * Tail edits with decoding and applying overlapped. The streams are selected
+   * and decoded without holding the namesystem lock; the decoded ops are
+   * applied in batches of at most {@link #pipelinedBatchSize} transactions,
+   * each under its own acquisition of the write lock.
+   */
+  private long doTailEditsPipelined()
+      throws IOException, InterruptedException {
+    FSImage image = namesystem.getFSImage();
+    // Only this thread advances the last applied txid while the tailer runs.
+    long lastTxnId = image.getLastAppliedTxId();
+    LOG.debug("lastTxnId: {}", lastTxnId);
+    Collection<EditLogInputStream> streams;
+    long startTime = timer.monotonicNow();
+    try {
+      streams = editLog.selectInputStreams(lastTxnId + 1, 0,
+          null, inProgressOk, true);
+    } catch (IOException ioe) {
+      LOG.warn("Edits tailer failed to find any streams. Will try again " +
+          "later.", ioe);
+      return 0;
+    } finally {
+      NameNode.getNameNodeMetrics().addEditLogFetchTime(
+          timer.monotonicNow() - startTime);
+    }
+    LOG.debug("edit streams to load from: {}", streams.size());
+
+    // The decoded ops are handed to this thread, so they must not be re-used
+    // by the streams. Streams which cannot guarantee that are loaded as in
+    // the classic path.
+    boolean opCacheDisabled = true;
+    for (EditLogInputStream stream : streams) {
+      opCacheDisabled &= stream.disableOpCache();
+    }
+    if (!opCacheDisabled) {
+      LOG.debug("Not all edit streams can disable their op cache, loading " +
+          "them under the write lock");
+      namesystem.writeLockInterruptibly();
       try {
-        editsLoaded = image.loadEdits(
-            streams, namesystem, maxTxnsPerLock, null, null);
-      } catch (EditLogInputException elie) {
-        editsLoaded = elie.getNumEditsLoaded();
-        throw elie;
+        return loadEdits(image, lastTxnId, streams);
       } finally {
-        if (editsLoaded > 0 || LOG.isDebugEnabled()) {
-          LOG.debug(String.format("Loaded %d edits starting from txid %d ",
-              editsLoaded, lastTxnId));
-        }
-        NameNode.getNameNodeMetrics().addNumEditLogLoaded(editsLoaded);
+        namesystem.writeUnlock();
       }
+    }
 
+    EditLogDecoder decoder = new EditLogDecoder(streams);
+    Future<?> decoderFuture = editLogDecoderExecutor.submit(decoder);
+    long editsLoaded = 0;
+    try {
+      DecodedEditsInputStream batch;
+      while ((batch = decoder.take()) != END_OF_EDITS) {
+        long applyStartTime = timer.monotonicNow();
+        namesystem.writeLockInterruptibly();
+        try {
+          NameNode.getNameNodeMetrics().addEditLogTailLag(
+              decoder.getLastDecodedTxId() - image.getLastAppliedTxId());
+          editsLoaded += image.loadEdits(Collections.singletonList(batch),
+              namesystem, Long.MAX_VALUE, null, null);
+        } catch (EditLogInputException elie) {
+          editsLoaded += elie.getNumEditsLoaded();
+          throw new EditLogInputException(elie.getMessage(), elie,
+              editsLoaded);
+        } finally {
+          namesystem.writeUnlock();
+          NameNode.getNameNodeMetrics().addEditLogApplyTime(
+              timer.monotonicNow() - applyStartTime);
+        }
+      }
+      Throwable decodeError = decoder.getError();
+      if (decodeError != null) {
+        throw new EditLogInputException("Failed to decode edits after txid "
+            + image.getLastAppliedTxId(), decodeError, editsLoaded);
+      }
+    } finally {
+      decoder.cancel();
+      decoderFuture.cancel(true);
+      if (editsLoaded > 0 || LOG.isDebugEnabled()) {
+        LOG.debug("Loaded {} edits starting from txid {}",
+            editsLoaded, lastTxnId);
+      }
+      NameNode.getNameNodeMetrics().addNumEditLogLoaded(editsLoaded);
       if (editsLoaded > 0) {
         lastLoadTimeMs = timer.monotonicNow();
       }
       lastLoadedTxnId = image.getLastAppliedTxId();
-      return editsLoaded;
-    } finally {
-      namesystem.writeUnlock();
+    }
+    return editsLoaded;
+  }
+
+  /**
+   * Reads the ops of the selected streams into batches for the tailer thread.
+   * A batch never spans two streams, and the streams are closed once they
+   * have been read or decoding stops.
+   */
+  private class EditLogDecoder implements Runnable {
+    private final Collection<EditLogInputStream> streams;
+    private final BlockingQueue<DecodedEditsInputStream> batches =
+        new ArrayBlockingQueue<>(PIPELINED_QUEUE_CAPACITY);
+    private volatile long lastDecodedTxId = HdfsServerConstants.INVALID_TXID;
+    private volatile Throwable error;
+    private volatile boolean cancelled = false;
+
+    EditLogDecoder(Collection<EditLogInputStream> streams) {
+      this.streams = streams;
+    }
+
+    DecodedEditsInputStream take() throws InterruptedException {
+      return batches.take();
+    }
+
+    long getLastDecodedTxId() {
+      return lastDecodedTxId;
+    }
+
+    Throwable getError() {
+      return error;
+    }
+
+    /** Stop decoding; no more batches will be taken from the queue. */
+    void cancel() {
+      cancelled = true;
+    }
+
+    @Override
+    public void run() {
+      try {
+        SecurityUtil.doAsLoginUser(new PrivilegedExceptionAction<Void>() {
+          @Override
+          public Void run() throws Exception {
+            for (EditLogInputStream stream : streams) {
+              decode(stream);
+            }
+            return null;
+          }
+        });
+      } catch (Throwable t) {
+        if (!cancelled) {
+          error = t;
+        }
+      } finally {
+        IOUtils.cleanupWithLogger(LOG, streams.toArray(new Closeable[0]));
+        try {
+          put(END_OF_EDITS);
+        } catch (InterruptedException ie) {
+          // The tailer thread has given up on this decoder.
+        }
+      }
+    }
+
+    private void decode(EditLogInputStream stream)
+        throws IOException, InterruptedException {
+      List<FSEditLogOp> ops = new ArrayList<>(pipelinedBatchSize);
+      FSEditLogOp op;
+      while ((op = stream.readOp()) != null) {
+        ops.add(op);
+        if (op.hasTransactionId()) {
+          lastDecodedTxId = op.getTransactionId();
+        }
+        if (ops.size() >= pipelinedBatchSize) {
+          queue(stream, ops);
+          ops = new ArrayList<>(pipelinedBatchSize);
+        }
+      }
+      if (!ops.isEmpty()) {
+        queue(stream, ops);
+      }
+    }
+
+    private void queue(EditLogInputStream stream, List<FSEditLogOp> ops)
+        throws IOException, InterruptedException {
+      put(new DecodedEditsInputStream(stream.getName(),
+          stream.getVersion(true), stream.isInProgress(),
+          stream.isLocalLog(), ops));
+    }
+
+    /**
+     * Wait for room in the queue, giving up once the tailer thread has
+     * cancelled this decoder so that the decoder thread is never left
+     * blocked on a queue nobody drains.
+     */
+    private void put(DecodedEditsInputStream batch)
+        throws InterruptedException {
+      do {
+        if (cancelled) {
+          throw new InterruptedException("Edit log decoder was cancelled");
+        }
+      } while (!batches.offer(batch, 100, TimeUnit.MILLISECONDS));
     }
   }
 
@@ -81,6 +81,9 @@ public class StandbyCheckpointer {
   // Keep track of how many checkpoints were canceled.
   // This is for use in tests.
   private static int canceledCount = 0;
+  // Keep track of how many uploads were skipped because of the minimum
+  // upload interval. This is for use in tests.
+  private static int skippedUploadCount = 0;
 
   // A map from NN url to the most recent image upload time.
   private final HashMap<String, CheckpointReceiverEntry> checkpointReceivers;
@@ -259,6 +262,10 @@ private void doCheckpoint() throws InterruptedException, IOException {
       // Upload image if at least 1 of 2 following conditions met:
       // 1. has been quiet for long enough, try to contact the node.
       // 2. this standby IS the primary checkpointer of target NN.
+      // Other than rollback images, the image is also not uploaded before
+      // the minimum upload interval has passed since the last successful
+      // upload, so a failed or rejected upload is retried at the next
+      // checkpoint.
       String addressString = activeNNAddress.toString();
       assert checkpointReceivers.containsKey(addressString);
       CheckpointReceiverEntry receiverEntry =
@@ -266,8 +273,17 @@ private void doCheckpoint() throws InterruptedException, IOException {
       long secsSinceLastUpload =
           TimeUnit.MILLISECONDS.toSeconds(
               monotonicNow() - receiverEntry.getLastUploadTime());
-      boolean shouldUpload = receiverEntry.isPrimary() ||
-          secsSinceLastUpload >= checkpointConf.getQuietPeriod();
+      boolean uploadIntervalElapsed = imageType == NameNodeFile.IMAGE_ROLLBACK
+          || receiverEntry.getLastUploadTime() == 0L
+          || secsSinceLastUpload >= checkpointConf.getUploadMinInterval();
+      boolean shouldUpload = (receiverEntry.isPrimary() ||
+          secsSinceLastUpload >= checkpointConf.getQuietPeriod()) &&
+          uploadIntervalElapsed;
+      if (!uploadIntervalElapsed) {
+        LOG.info("Skipping upload of checkpoint at txid {} to {}, the last"
+            + " upload was {}s ago", txid, addressString, secsSinceLastUpload);
+        skippedUploadCount++;
+      }
       if (shouldUpload) {
         Future<TransferFsImage.TransferResult> upload =
             executor.submit(new Callable<TransferFsImage.TransferResult>() {
@@ -375,6 +391,11 @@ static int getCanceledCount() {
     return canceledCount;
   }
 
+  @VisibleForTesting
+  static int getSkippedUploadCount() {
+    return skippedUploadCount;
+  }
+
   private long countUncheckpointedTxns() {
     FSImage img = namesystem.getFSImage();
     return img.getCorrectLastAppliedOrWrittenTxId() -
@@ -59,6 +59,8 @@ public class NameNodeMetrics {
   @Metric MutableCounterLong createSymlinkOps;
   @Metric MutableCounterLong getLinkTargetOps;
   @Metric MutableCounterLong filesInGetListingOps;
+  @Metric("Number of operations run by batchMetadataOps calls")
+  MutableCounterLong batchedMetadataOps;
   @Metric ("Number of successful re-replications")
   MutableCounterLong successfulReReplications;
   @Metric ("Number of times we failed to schedule a block re-replication.")
@@ -116,7 +118,8 @@ public long totalFileOps(){
       listSnapshottableDirOps.value() +
       listSnapshotOps.value() +
       createSymlinkOps.value() +
-      snapshotDiffReportOps.value();
+      snapshotDiffReportOps.value() +
+      batchedMetadataOps.value();
   }
 
 
@@ -155,6 +158,13 @@ public long totalFileOps(){
   @Metric("Time between edit log tailing in msec")
   MutableRate editLogTailInterval;
   private final MutableQuantiles[] editLogTailIntervalQuantiles;
+  @Metric("Time applying one batch of pipelined edits in msec")
+  MutableRate editLogApplyTime;
+  private final MutableQuantiles[] editLogApplyTimeQuantiles;
+  @Metric(value = "Number of decoded edits waiting to be applied",
+      valueName = "Count")
+  MutableStat editLogTailLag;
+  private final MutableQuantiles[] editLogTailLagQuantiles;
 
   @Metric("GetImageServlet getEdit")
   MutableRate getEdit;
@@ -184,6 +194,8 @@ public long totalFileOps(){
     editLogFetchTimeQuantiles = new MutableQuantiles[len];
     numEditLogLoadedQuantiles = new MutableQuantiles[len];
     editLogTailIntervalQuantiles = new MutableQuantiles[len];
+    editLogApplyTimeQuantiles = new MutableQuantiles[len];
+    editLogTailLagQuantiles = new MutableQuantiles[len];
 
     for (int i = 0; i < len; i++) {
       int interval = intervals[i];
@@ -221,6 +233,12 @@ public long totalFileOps(){
       editLogTailIntervalQuantiles[i] = registry.newQuantiles(
           "editLogTailInterval" + interval + "s",
           "Edit log tailing interval", "ops", "latency", interval);
+      editLogApplyTimeQuantiles[i] = registry.newQuantiles(
+          "editLogApplyTime" + interval + "s",
+          "Edit log batch apply time", "ops", "latency", interval);
+      editLogTailLagQuantiles[i] = registry.newQuantiles(
+          "editLogTailLag" + interval + "s",
+          "Decoded edits waiting to be applied", "ops", "count", interval);
     }
   }
 
@@ -257,6 +275,10 @@ public void incrCreateFileOps() {
     createFileOps.incr();
   }
 
+  public void incrBatchedMetadataOps(int count) {
+    batchedMetadataOps.incr(count);
+  }
+
   public void incrFilesAppended() {
     filesAppended.incr();
   }
@@ -481,4 +503,18 @@ public void addEditLogTailInterval(long elapsed) {
       q.add(elapsed);
     }
   }
+
+  public void addEditLogApplyTime(long elapsed) {
+    editLogApplyTime.add(elapsed);
+    for (MutableQuantiles q : editLogApplyTimeQuantiles) {
+      q.add(elapsed);
+    }
+  }
+
+  public void addEditLogTailLag(long lag) {
+    editLogTailLag.add(lag);
+    for (MutableQuantiles q : editLogTailLagQuantiles) {
+      q.add(lag);
+    }
+  }
 }
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.util.LightWeightGSet;
+
+/**
+ * A {@link LightWeightGSet} whose internal array doubles in length when the
+ * number of elements exceeds the load factor.
+ * <p>
+ * Unlike {@link org.apache.hadoop.util.LightWeightResizableGSet} this class
+ * is not synchronized. It is meant for maps like the INodeMap and the
+ * BlocksMap which are only modified under an exclusive lock, such as the
+ * namesystem write lock, and read under the matching shared lock.
+ *
+ * @param <K> Key type for looking up the elements
+ * @param <E> Element type, which must be
+ *       (1) a subclass of K, and
+ *       (2) implementing {@link LinkedElement} interface.
+ */
+@InterfaceAudience.Private
+public class ResizableGSet<K, E extends K> extends LightWeightGSet<K, E> {
+  /** The load factor used when none specified in constructor. */
+  static final float DEFAULT_LOAD_FACTOR = 0.75f;
+  /** The largest length of the internal array. */
+  private static final int MAX_CAPACITY = actualArrayLength(Integer.MAX_VALUE);
+
+  private final float loadFactor;
+  private int threshold;
+
+  public ResizableGSet(int initCapacity, float loadFactor) {
+    if (initCapacity < 0) {
+      throw new HadoopIllegalArgumentException("Illegal initial capacity: " +
+          initCapacity);
+    }
+    if (loadFactor <= 0 || loadFactor > 1.0f) {
+      throw new HadoopIllegalArgumentException("Illegal load factor: " +
+          loadFactor);
+    }
+    this.loadFactor = loadFactor;
+    this.entries = new LinkedElement[actualArrayLength(initCapacity)];
+    this.hash_mask = entries.length - 1;
+    this.threshold = (int) (entries.length * loadFactor);
+  }
+
+  public ResizableGSet(int initCapacity) {
+    this(initCapacity, DEFAULT_LOAD_FACTOR);
+  }
+
+  @Override
+  public E put(final E element) {
+    final E existing = super.put(element);
+    if (size > threshold && entries.length < MAX_CAPACITY) {
+      resize(entries.length * 2);
+    }
+    return existing;
+  }
+
+  /** @return the length of the internal array. */
+  public int getCapacity() {
+    return entries.length;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void resize(int capacity) {
+    final LinkedElement[] oldEntries = entries;
+    entries = new LinkedElement[capacity];
+    hash_mask = capacity - 1;
+    threshold = (int) (capacity * loadFactor);
+    for (LinkedElement e : oldEntries) {
+      while (e != null) {
+        final LinkedElement next = e.getNext();
+        final int index = getIndex((E) e);
+        e.setNext(entries[index]);
+        entries[index] = e;
+        e = next;
+      }
+    }
+    modification++;
+  }
+}
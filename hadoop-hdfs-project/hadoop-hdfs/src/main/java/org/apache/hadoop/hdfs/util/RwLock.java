@@ -42,4 +42,34 @@ public interface RwLock {
 
   /** Check if the current thread holds write lock. */
   public boolean hasWriteLock();
+
+  /** Acquire read lock in the given mode. */
+  default void readLock(RwLockMode lockMode) {
+    readLock();
+  }
+
+  /** Release read lock acquired in the given mode. */
+  default void readUnlock(RwLockMode lockMode, String opName) {
+    readUnlock();
+  }
+
+  /** Check if the current thread holds read lock in the given mode. */
+  default boolean hasReadLock(RwLockMode lockMode) {
+    return hasReadLock();
+  }
+
+  /** Acquire write lock in the given mode. */
+  default void writeLock(RwLockMode lockMode) {
+    writeLock();
+  }
+
+  /** Release write lock acquired in the given mode. */
+  default void writeUnlock(RwLockMode lockMode, String opName) {
+    writeUnlock();
+  }
+
+  /** Check if the current thread holds write lock in the given mode. */
+  default boolean hasWriteLock(RwLockMode lockMode) {
+    return hasWriteLock();
+  }
 }
@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathIsNotEmptyDirectoryException;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DistributedFileSystem.MetadataBatchBuilder;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.MetadataOpResult;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.test.LambdaTestUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.security.PrivilegedExceptionAction;
+import java.util.List;
+
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for running a batch of metadata operations in a single call.
+ */
+public class TestBatchedMetadataOps {
+
+  private static final int BATCH_LIMIT = 50;
+
+  private static MiniDFSCluster cluster;
+  private static DistributedFileSystem dfs;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BATCHED_METADATA_OPS_LIMIT,
+        BATCH_LIMIT);
+    // Sync the edit log on the calling handler, so syncs can be counted
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING, false);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test
+  public void testMixedBatch() throws Exception {
+    Path dir = new Path("/mixed/dir");
+    Path file = new Path(dir, "file");
+    Path missing = new Path(dir, "missing");
+    List<MetadataOpResult> results = dfs.createMetadataBatch()
+        .mkdirs(dir, new FsPermission((short) 0755))
+        .createEmptyFile(file, null)
+        .createEmptyFile(file, null)
+        .setPermission(file, new FsPermission((short) 0600))
+        .setTimes(file, 1000L, 2000L)
+        .getFileStatus(file)
+        .getFileStatus(missing)
+        .delete(missing, false)
+        .execute();
+    assertEquals(8, results.size());
+
+    assertTrue(results.get(0).get());
+    HdfsFileStatus created = results.get(1).getFileStatus();
+    assertNotNull(created);
+    assertEquals(0, created.getLen());
+    LambdaTestUtils.intercept(FileAlreadyExistsException.class,
+        () -> results.get(2).get());
+    assertTrue(results.get(3).get());
+    assertTrue(results.get(4).get());
+    HdfsFileStatus stat = results.get(5).getFileStatus();
+    assertEquals((short) 0600, stat.getPermission().toShort());
+    assertEquals(1000L, stat.getModificationTime());
+    assertEquals(2000L, stat.getAccessTime());
+    assertFalse(results.get(6).get());
+    assertNull(results.get(6).getFileStatus());
+    assertFalse(results.get(7).get());
+
+    // The created file is closed and readable
+    assertTrue(dfs.isFileClosed(file));
+    FileStatus status = dfs.getFileStatus(file);
+    assertTrue(status.isFile());
+    assertEquals(0, status.getLen());
+    assertEquals(-1, dfs.open(file).read());
+  }
+
+  @Test
+  public void testSingleEditLogSync() throws Exception {
+    MetadataBatchBuilder batch = dfs.createMetadataBatch();
+    for (int i = 0; i < 20; i++) {
+      batch.createEmptyFile(new Path("/synced/file" + i), null);
+    }
+    long syncsBefore = getLongCounter("SyncsNumOps",
+        getMetrics("NameNodeActivity"));
+    for (MetadataOpResult result : batch.execute()) {
+      assertNotNull(result.getFileStatus());
+    }
+    long syncsAfter = getLongCounter("SyncsNumOps",
+        getMetrics("NameNodeActivity"));
+    assertEquals(1, syncsAfter - syncsBefore);
+    assertEquals(20, dfs.listStatus(new Path("/synced")).length);
+  }
+
+  @Test
+  public void testPartialFailure() throws Exception {
+    Path dir = new Path("/partial");
+    Path child = new Path(dir, "child");
+    Path shared = new Path("/shared");
+    dfs.mkdirs(child);
+    dfs.mkdirs(shared);
+    dfs.setPermission(shared, new FsPermission((short) 0777));
+
+    List<MetadataOpResult> results = dfs.createMetadataBatch()
+        .delete(dir, false)
+        .setTimes(new Path(dir, "missing"), 1L, 1L)
+        .delete(dir, true)
+        .execute();
+    LambdaTestUtils.intercept(PathIsNotEmptyDirectoryException.class,
+        () -> results.get(0).get());
+    LambdaTestUtils.intercept(FileNotFoundException.class,
+        () -> results.get(1).get());
+    assertTrue(results.get(2).get());
+    assertFalse(dfs.exists(dir));
+
+    // An operation which is denied does not stop the others
+    UserGroupInformation user = UserGroupInformation.createUserForTesting(
+        "batchUser", new String[] {"batchGroup"});
+    DistributedFileSystem userFs = user.doAs(
+        (PrivilegedExceptionAction<DistributedFileSystem>)
+            () -> (DistributedFileSystem) cluster.getNewFileSystemInstance(0));
+    List<MetadataOpResult> userResults = userFs.createMetadataBatch()
+        .mkdirs(new Path("/denied"), null)
+        .mkdirs(new Path(shared, "allowed"), null)
+        .execute();
+    LambdaTestUtils.intercept(AccessControlException.class,
+        () -> userResults.get(0).get());
+    assertTrue(userResults.get(1).get());
+    assertEquals("batchUser",
+        dfs.getFileStatus(new Path(shared, "allowed")).getOwner());
+  }
+
+  @Test
+  public void testBatchLimit() throws Exception {
+    MetadataBatchBuilder batch = dfs.createMetadataBatch();
+    for (int i = 0; i <= BATCH_LIMIT; i++) {
+      batch.getFileStatus(new Path("/limit" + i));
+    }
+    LambdaTestUtils.intercept(RemoteException.class,
+        "Too many metadata operations", batch::execute);
+  }
+}
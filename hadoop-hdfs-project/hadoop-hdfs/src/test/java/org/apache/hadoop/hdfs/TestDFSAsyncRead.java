@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
+import org.apache.hadoop.test.LambdaTestUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for asynchronous positioned reads of {@link HdfsDataInputStream}.
+ */
+public class TestDFSAsyncRead {
+
+  private static final int BLOCK_SIZE = 64 * 1024;
+  private static final int FILE_LEN = 3 * BLOCK_SIZE + 1000;
+  private static final Path FILE = new Path("/async");
+
+  private static MiniDFSCluster cluster;
+  private static DistributedFileSystem dfs;
+  private static byte[] data;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(HdfsClientConfigKeys.HedgedRead.THREADPOOL_SIZE_KEY, 2);
+    // fewer threads and queue slots than outstanding reads
+    conf.setInt(HdfsClientConfigKeys.AsyncRead.THREADPOOL_SIZE_KEY, 2);
+    conf.setInt(HdfsClientConfigKeys.AsyncRead.QUEUE_SIZE_KEY, 4);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(2).build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+    DFSTestUtil.createFile(dfs, FILE, FILE_LEN, (short) 2, 0xbeefL);
+    data = DFSTestUtil.readFileAsBytes(dfs, FILE);
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private static void assertData(long offset, ByteBuffer buffer) {
+    buffer.flip();
+    for (int i = 0; buffer.hasRemaining(); i++) {
+      assertEquals("byte " + i + " at " + offset,
+          data[(int) offset + i], buffer.get());
+    }
+  }
+
+  @Test
+  public void testManyOutstandingReads() throws Exception {
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    List<ByteBuffer> buffers = new ArrayList<>();
+    List<Long> offsets = new ArrayList<>();
+    try (HdfsDataInputStream in = (HdfsDataInputStream) dfs.open(FILE)) {
+      // crosses block boundaries, alternating heap and direct buffers
+      for (long offset = 0; offset + 3000 < FILE_LEN; offset += 7000) {
+        ByteBuffer buffer = offsets.size() % 2 == 0
+            ? ByteBuffer.allocate(3000) : ByteBuffer.allocateDirect(3000);
+        offsets.add(offset);
+        buffers.add(buffer);
+        futures.add(in.readFullyAsync(offset, buffer));
+      }
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+          .get(60, TimeUnit.SECONDS);
+    }
+    for (int i = 0; i < offsets.size(); i++) {
+      assertEquals(3000, buffers.get(i).position());
+      assertData(offsets.get(i), buffers.get(i));
+    }
+  }
+
+  @Test
+  public void testReadAsync() throws Exception {
+    try (HdfsDataInputStream in = (HdfsDataInputStream) dfs.open(FILE)) {
+      ByteBuffer buffer = ByteBuffer.allocate(500);
+      int n = in.readAsync(BLOCK_SIZE - 100, buffer).get(30, TimeUnit.SECONDS);
+      assertEquals(buffer.position(), n);
+      assertData(BLOCK_SIZE - 100, buffer);
+
+      assertEquals(-1, (int) in.readAsync(FILE_LEN, ByteBuffer.allocate(10))
+          .get(30, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testReadFullyAsyncPastEof() throws Exception {
+    try (HdfsDataInputStream in = (HdfsDataInputStream) dfs.open(FILE)) {
+      CompletableFuture<Void> future =
+          in.readFullyAsync(FILE_LEN - 50, ByteBuffer.allocate(100));
+      LambdaTestUtils.intercept(EOFException.class, () -> {
+        try {
+          return future.join();
+        } catch (CompletionException e) {
+          throw (Exception) e.getCause();
+        }
+      });
+    }
+  }
+
+  @Test
+  public void testReadAsyncAfterClose() throws Exception {
+    HdfsDataInputStream in = (HdfsDataInputStream) dfs.open(FILE);
+    in.close();
+    CompletableFuture<Integer> future =
+        in.readAsync(0, ByteBuffer.allocate(10));
+    LambdaTestUtils.intercept(IOException.class, () -> {
+      try {
+        return future.join();
+      } catch (CompletionException e) {
+        throw (Exception) e.getCause();
+      }
+    });
+  }
+}
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileRange;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.StreamCapabilities;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.test.LambdaTestUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for vectored reads on {@link DFSInputStream}.
+ */
+public class TestDFSVectoredRead {
+
+  private static final int BLOCK_SIZE = 64 * 1024;
+  private static final int FILE_LEN = 3 * BLOCK_SIZE + 1000;
+  private static final Path FILE = new Path("/vectored");
+
+  private static MiniDFSCluster cluster;
+  private static DistributedFileSystem dfs;
+  private static byte[] data;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(HdfsClientConfigKeys.HedgedRead.THREADPOOL_SIZE_KEY, 2);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(2).build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+    DFSTestUtil.createFile(dfs, FILE, FILE_LEN, (short) 2, 0xbeefL);
+    data = DFSTestUtil.readFileAsBytes(dfs, FILE);
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private static void assertData(FileRange range) throws Exception {
+    ByteBuffer buffer = range.getData().get(30, TimeUnit.SECONDS);
+    assertEquals(range.getLength(), buffer.remaining());
+    for (int i = 0; i < range.getLength(); i++) {
+      assertEquals("byte " + i + " of " + range,
+          data[(int) range.getOffset() + i], buffer.get());
+    }
+  }
+
+  private static List<FileRange> ranges() {
+    return Arrays.asList(
+        FileRange.createFileRange(BLOCK_SIZE * 2 + 100, 5000),
+        FileRange.createFileRange(0, 100),
+        FileRange.createFileRange(200, 300),
+        // crosses a block boundary
+        FileRange.createFileRange(BLOCK_SIZE - 1000, 2000),
+        FileRange.createFileRange(FILE_LEN - 10, 10));
+  }
+
+  @Test
+  public void testReadVectored() throws Exception {
+    try (FSDataInputStream in = dfs.open(FILE)) {
+      assertTrue(in.hasCapability(StreamCapabilities.VECTOREDIO));
+      List<FileRange> ranges = ranges();
+      in.readVectored(ranges, ByteBuffer::allocate);
+      for (FileRange range : ranges) {
+        assertData(range);
+      }
+
+      List<FileRange> direct = ranges();
+      in.readVectored(direct, ByteBuffer::allocateDirect);
+      for (FileRange range : direct) {
+        assertTrue(range.getData().get().isDirect());
+        assertData(range);
+      }
+    }
+  }
+
+  @Test
+  public void testReadVectoredPastEof() throws Exception {
+    try (FSDataInputStream in = dfs.open(FILE)) {
+      FileRange valid = FileRange.createFileRange(FILE_LEN - 200, 100);
+      FileRange pastEof = FileRange.createFileRange(FILE_LEN - 50, 100);
+      in.readVectored(Arrays.asList(valid, pastEof), ByteBuffer::allocate);
+      assertData(valid);
+      LambdaTestUtils.intercept(EOFException.class, () -> {
+        try {
+          return pastEof.getData().join();
+        } catch (CompletionException e) {
+          throw (Exception) e.getCause();
+        }
+      });
+    }
+  }
+
+  @Test
+  public void testReadVectoredManyRanges() throws Exception {
+    // more ranges than threads, far enough apart not to be merged
+    List<FileRange> ranges = new ArrayList<>();
+    for (long offset = 0; offset + 100 < FILE_LEN; offset += 8 * 1024) {
+      ranges.add(FileRange.createFileRange(offset, 100));
+    }
+    try (FSDataInputStream in = dfs.open(FILE)) {
+      in.readVectored(ranges, ByteBuffer::allocate);
+      for (FileRange range : ranges) {
+        assertData(range);
+      }
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.ListingProjection;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.test.LambdaTestUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for listing a directory with a name filter and projection applied
+ * by the NameNode.
+ */
+public class TestFilteredListing {
+
+  private static final int LS_LIMIT = 2;
+  private static final Path DIR = new Path("/filtered");
+
+  private static MiniDFSCluster cluster;
+  private static DistributedFileSystem dfs;
+  private static NamenodeProtocols nnRpc;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(DFSConfigKeys.DFS_LIST_LIMIT, LS_LIMIT);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+    nnRpc = cluster.getNameNodeRpc();
+
+    // A match at the start and the end, with more non-matching entries in
+    // between than a single call examines.
+    DFSTestUtil.createFile(dfs, new Path(DIR, "a.csv"), 3, (short) 1, 0L);
+    for (int i = 0; i < 3 * LS_LIMIT * 10; i++) {
+      dfs.mkdirs(new Path(DIR, String.format("b%03d", i)));
+    }
+    DFSTestUtil.createFile(dfs, new Path(DIR, "c.csv"), 7, (short) 1, 0L);
+    dfs.mkdirs(new Path(DIR, "d.csv"));
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private static List<FileStatus> list(String nameFilter,
+      ListingProjection projection) throws IOException {
+    List<FileStatus> result = new ArrayList<>();
+    RemoteIterator<FileStatus> it =
+        dfs.listStatusIterator(DIR, nameFilter, projection);
+    while (it.hasNext()) {
+      result.add(it.next());
+    }
+    return result;
+  }
+
+  @Test
+  public void testResumesPastEntriesThatDoNotMatch() throws Exception {
+    DirectoryListing first = nnRpc.getFilteredListing(DIR.toString(),
+        HdfsFileStatus.EMPTY_NAME, "*.csv", ListingProjection.FULL);
+    assertEquals(1, first.getPartialListing().length);
+    assertTrue(first.hasMore());
+    assertEquals("b018", DFSUtil.bytes2String(first.getLastName()));
+
+    DirectoryListing second = nnRpc.getFilteredListing(DIR.toString(),
+        first.getLastName(), "*.csv", ListingProjection.FULL);
+    assertEquals(0, second.getPartialListing().length);
+    assertTrue(second.hasMore());
+
+    List<FileStatus> matched = list("*.csv", ListingProjection.FULL);
+    assertEquals(3, matched.size());
+    assertEquals(new Path(dfs.getUri().toString() + DIR + "/a.csv"),
+        matched.get(0).getPath());
+    assertEquals("c.csv", matched.get(1).getPath().getName());
+    assertEquals("d.csv", matched.get(2).getPath().getName());
+    assertEquals(7, matched.get(1).getLen());
+    assertEquals(dfs.getFileStatus(new Path(DIR, "c.csv")).getOwner(),
+        matched.get(1).getOwner());
+  }
+
+  @Test
+  public void testNoFilter() throws Exception {
+    assertEquals(3 * LS_LIMIT * 10 + 3,
+        list(null, ListingProjection.NAME).size());
+    assertEquals(2, list("{a,d}.csv", ListingProjection.NAME).size());
+    assertEquals(0, list("x*", ListingProjection.NAME).size());
+  }
+
+  @Test
+  public void testProjection() throws Exception {
+    List<FileStatus> names = list("c.csv", ListingProjection.NAME);
+    assertEquals(1, names.size());
+    assertTrue(names.get(0).isFile());
+    assertEquals(0, names.get(0).getLen());
+    assertEquals("", names.get(0).getOwner());
+    assertEquals(0, names.get(0).getModificationTime());
+
+    List<FileStatus> lengths = list("?.csv",
+        ListingProjection.NAME_AND_LENGTH);
+    assertEquals(3, lengths.size());
+    assertEquals(3, lengths.get(0).getLen());
+    assertEquals(7, lengths.get(1).getLen());
+    assertEquals(1, lengths.get(1).getReplication());
+    assertTrue(lengths.get(2).isDirectory());
+    assertEquals("", lengths.get(1).getOwner());
+  }
+
+  @Test
+  public void testFileAndMissingTargets() throws Exception {
+    Path file = new Path(DIR, "a.csv");
+    assertEquals(1, list(file, "*.csv").size());
+    assertEquals(0, list(file, "*.txt").size());
+    LambdaTestUtils.intercept(FileNotFoundException.class,
+        () -> list(new Path("/missing"), "*"));
+    LambdaTestUtils.intercept(IOException.class, "Illegal name filter",
+        () -> list(DIR, "[a"));
+  }
+
+  private static List<FileStatus> list(Path path, String nameFilter)
+      throws IOException {
+    List<FileStatus> result = new ArrayList<>();
+    RemoteIterator<FileStatus> it = dfs.listStatusIterator(path, nameFilter,
+        ListingProjection.NAME);
+    while (it.hasNext()) {
+      result.add(it.next());
+    }
+    assertFalse(it.hasNext());
+    return result;
+  }
+}
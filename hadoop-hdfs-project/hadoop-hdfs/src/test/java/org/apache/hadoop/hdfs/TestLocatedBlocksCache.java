@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.test.LambdaTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for caching the block locations of files opened for read.
+ */
+public class TestLocatedBlocksCache {
+
+  private static final int BLOCK_SIZE = 1024;
+  private static final int NUM_BLOCKS = 4;
+
+  private MiniDFSCluster cluster;
+  private Configuration conf;
+  private DistributedFileSystem dfs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(DFSConfigKeys.DFS_BYTES_PER_CHECKSUM_KEY, BLOCK_SIZE / 2);
+    // only fetch the locations of one block at a time
+    conf.setLong(HdfsClientConfigKeys.Read.PREFETCH_SIZE_KEY, BLOCK_SIZE);
+    conf.setLong(HdfsClientConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_SIZE_KEY,
+        100);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private static long getBlockLocationsCalls() {
+    return getLongCounter("GetBlockLocations",
+        getMetrics("NameNodeActivity"));
+  }
+
+  private static void readFully(FileSystem fs, Path path, int len)
+      throws Exception {
+    byte[] buf = new byte[len];
+    try (FSDataInputStream in = fs.open(path)) {
+      IOUtils.readFully(in, buf, 0, len);
+    }
+  }
+
+  private LocatedBlocksCache getCache() {
+    return dfs.getClient().getLocatedBlocksCache();
+  }
+
+  @Test
+  public void testCacheNotSharedAcrossUsers() throws Exception {
+    final Path path = new Path("/private");
+    DFSTestUtil.createFile(dfs, path, BLOCK_SIZE, (short) 1, 0L);
+    dfs.setPermission(path, new FsPermission((short) 0600));
+    readFully(dfs, path, BLOCK_SIZE);
+    assertEquals(1, getCache().size());
+
+    // Another user in the same client context must still be checked by the
+    // NameNode
+    UserGroupInformation user = UserGroupInformation.createUserForTesting(
+        "otherUser", new String[] {"otherGroup"});
+    FileSystem otherFs = DFSTestUtil.getFileSystemAs(user, conf);
+    LambdaTestUtils.intercept(AccessControlException.class,
+        () -> readFully(otherFs, path, BLOCK_SIZE));
+  }
+
+  @Test
+  public void testReopenUsesCache() throws Exception {
+    final Path path = new Path("/file");
+    final int len = BLOCK_SIZE * NUM_BLOCKS;
+    DFSTestUtil.createFile(dfs, path, len, (short) 1, 0L);
+
+    long before = getBlockLocationsCalls();
+    readFully(dfs, path, len);
+    // one call per block, as only one block is prefetched
+    assertEquals(NUM_BLOCKS, getBlockLocationsCalls() - before);
+    assertEquals(1, getCache().size());
+
+    // Reading again from the same client needs no call
+    before = getBlockLocationsCalls();
+    readFully(dfs, path, len);
+    assertEquals(0, getBlockLocationsCalls() - before);
+
+    // Another client has a cache of its own
+    try (FileSystem other = FileSystem.newInstance(dfs.getUri(), conf)) {
+      readFully(other, path, len);
+    }
+    assertEquals(NUM_BLOCKS, getBlockLocationsCalls() - before);
+  }
+
+  @Test
+  public void testFilesBeingWrittenAreNotCached() throws Exception {
+    final Path path = new Path("/open");
+    try (FSDataOutputStream out = dfs.create(path)) {
+      out.write(new byte[BLOCK_SIZE + 1]);
+      out.hflush();
+      readFully(dfs, path, BLOCK_SIZE + 1);
+      assertNull(getCache().get(path.toString(), 0));
+    }
+  }
+
+  @Test
+  public void testModificationInvalidatesCache() throws Exception {
+    final Path path = new Path("/appended");
+    DFSTestUtil.createFile(dfs, path, BLOCK_SIZE, (short) 1, 0L);
+    readFully(dfs, path, BLOCK_SIZE);
+    assertEquals(1, getCache().size());
+
+    DFSTestUtil.appendFile(dfs, path, BLOCK_SIZE);
+    assertEquals(0, getCache().size());
+    try (FSDataInputStream in = dfs.open(path)) {
+      assertEquals(2 * BLOCK_SIZE,
+          ((HdfsDataInputStream) in).getVisibleLength());
+    }
+
+    dfs.delete(path, false);
+    assertEquals(0, getCache().size());
+  }
+
+  @Test
+  public void testRefetchInvalidatesCache() throws Exception {
+    final Path path = new Path("/refetched");
+    final int len = BLOCK_SIZE * NUM_BLOCKS;
+    DFSTestUtil.createFile(dfs, path, len, (short) 1, 0L);
+    readFully(dfs, path, len);
+    assertNotNull(getCache().get(path.toString(), len - 1));
+
+    // A reader refetching a block, as it does after a read error, drops
+    // what was cached and caches what the NameNode returns instead
+    long before = getBlockLocationsCalls();
+    try (DFSInputStream in = dfs.getClient().open(path.toString())) {
+      assertEquals(0, getBlockLocationsCalls() - before);
+      in.fetchBlockAt(0);
+      assertEquals(1, getBlockLocationsCalls() - before);
+    }
+    assertNotNull(getCache().get(path.toString(), 0));
+    assertNull(getCache().get(path.toString(), len - 1));
+  }
+}
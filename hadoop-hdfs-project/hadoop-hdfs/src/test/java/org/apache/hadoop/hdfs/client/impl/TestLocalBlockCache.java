@@ -0,0 +1,302 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.client.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.ReadStatistics;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.test.LambdaTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.apache.hadoop.test.PlatformAssumptions.assumeNotWindows;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LocalBlockCache} and {@link LocalCacheBlockReader}.
+ */
+public class TestLocalBlockCache {
+
+  private static final int CHUNK_SIZE = 16 * 1024;
+  private static final int BLOCK_SIZE = 64 * 1024;
+  private static final int FILE_LEN = 3 * BLOCK_SIZE + 1000;
+
+  private static int contextId = 0;
+
+  private File cacheDir;
+
+  @Before
+  public void setUp() {
+    cacheDir = GenericTestUtils.getRandomizedTestDir();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.fullyDelete(cacheDir);
+  }
+
+  private static ExtendedBlock block(long id) {
+    return new ExtendedBlock("bp-1", id, BLOCK_SIZE, 1001);
+  }
+
+  private static byte[] chunk(int seed, int length) {
+    byte[] data = new byte[length];
+    Arrays.fill(data, (byte) seed);
+    return data;
+  }
+
+  private static long entrySize(int length) {
+    // the header holds the length and the CRC of the data.
+    return length + 8;
+  }
+
+  @Test
+  public void testReadThroughCache() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.set(HdfsClientConfigKeys.DFS_CLIENT_CONTEXT,
+        "testLocalBlockCache-" + contextId++);
+    conf.set(HdfsClientConfigKeys.LocalCache.DIR_KEY,
+        cacheDir.getAbsolutePath());
+    conf.setInt(HdfsClientConfigKeys.LocalCache.CHUNK_SIZE_KEY, CHUNK_SIZE);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      Path file = new Path("/cached");
+      DFSTestUtil.createFile(fs, file, FILE_LEN, (short) 1, 0xbeefL);
+
+      byte[] expected = new byte[FILE_LEN];
+      try (HdfsDataInputStream in = (HdfsDataInputStream) fs.open(file)) {
+        in.readFully(0, expected);
+        ReadStatistics stats = in.getReadStatistics();
+        assertEquals(0, stats.getLocalCacheHits());
+        assertTrue(stats.getLocalCacheMisses() > 0);
+        assertEquals(0, stats.getTotalLocalCacheBytesRead());
+      }
+
+      byte[] actual = new byte[FILE_LEN];
+      try (HdfsDataInputStream in = (HdfsDataInputStream) fs.open(file)) {
+        IOUtils.readFully(in, actual, 0, FILE_LEN);
+        ReadStatistics stats = in.getReadStatistics();
+        assertTrue(stats.getLocalCacheHits() > 0);
+        assertEquals(0, stats.getLocalCacheMisses());
+        assertEquals(FILE_LEN, stats.getTotalLocalCacheBytesRead());
+        assertEquals(FILE_LEN, stats.getTotalLocalBytesRead());
+      }
+      assertArrayEquals(expected, actual);
+
+      // the cached chunks are read even without a datanode.
+      cluster.stopDataNode(0);
+      try (HdfsDataInputStream in = (HdfsDataInputStream) fs.open(file)) {
+        byte[] range = new byte[3000];
+        in.readFully(BLOCK_SIZE - 1000, range);
+        assertArrayEquals(Arrays.copyOfRange(expected,
+            BLOCK_SIZE - 1000, BLOCK_SIZE + 2000), range);
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  @Test
+  public void testGetAndPut() throws Exception {
+    LocalBlockCache cache =
+        new LocalBlockCache(cacheDir, 1024 * 1024, CHUNK_SIZE);
+    try {
+      assertNull(cache.get(block(1), 0, 1));
+      cache.put(block(1), 0, chunk(1, CHUNK_SIZE), CHUNK_SIZE);
+      // the last chunk of a block may be short.
+      cache.put(block(1), 3, chunk(2, 100), 100);
+      assertEquals(entrySize(CHUNK_SIZE) + entrySize(100), cache.getUsed());
+
+      ByteBuffer data = cache.get(block(1), 0, CHUNK_SIZE);
+      assertNotNull(data);
+      assertEquals(ByteBuffer.wrap(chunk(1, CHUNK_SIZE)), data);
+      assertTrue(cache.contains(block(1), 3, 100));
+      assertFalse(cache.contains(block(1), 3, 101));
+      assertNull(cache.get(block(1), 3, 200));
+      // another generation stamp is another replica.
+      assertNull(cache.get(new ExtendedBlock("bp-1", 1, BLOCK_SIZE, 1002),
+          0, 1));
+      assertEquals(1, cache.getHits());
+      assertEquals(3, cache.getMisses());
+    } finally {
+      cache.close();
+    }
+
+    // the chunks are reloaded by a new cache in the same directory.
+    cache = new LocalBlockCache(cacheDir, 1024 * 1024, CHUNK_SIZE);
+    try {
+      assertEquals(entrySize(CHUNK_SIZE) + entrySize(100), cache.getUsed());
+      assertEquals(ByteBuffer.wrap(chunk(2, 100)), cache.get(block(1), 3, 1));
+    } finally {
+      cache.close();
+    }
+  }
+
+  /**
+   * Chunks cached with another chunk size cover other ranges of the block,
+   * so they must not be served after the chunk size was changed.
+   */
+  @Test
+  public void testChunkSizeChange() throws Exception {
+    LocalBlockCache cache =
+        new LocalBlockCache(cacheDir, 1024 * 1024, CHUNK_SIZE);
+    try {
+      cache.put(block(1), 0, chunk(1, CHUNK_SIZE), CHUNK_SIZE);
+      cache.put(block(1), 1, chunk(2, CHUNK_SIZE), CHUNK_SIZE);
+    } finally {
+      cache.close();
+    }
+
+    final int newChunkSize = CHUNK_SIZE / 2;
+    cache = new LocalBlockCache(cacheDir, 1024 * 1024, newChunkSize);
+    try {
+      assertEquals(0, cache.getUsed());
+      assertEquals(0, new File(cacheDir, "bp-1").listFiles().length);
+      // chunk 1 now starts at newChunkSize, within the old chunk 0.
+      assertEquals(1, cache.getChunkIndex(newChunkSize));
+      assertFalse(cache.contains(block(1), 1, 1));
+      assertNull(cache.get(block(1), 1, 1));
+      cache.put(block(1), 1, chunk(3, newChunkSize), newChunkSize);
+      assertEquals(ByteBuffer.wrap(chunk(3, newChunkSize)),
+          cache.get(block(1), 1, newChunkSize));
+    } finally {
+      cache.close();
+    }
+
+    // and the chunks of the new size survive a restart with the same size.
+    cache = new LocalBlockCache(cacheDir, 1024 * 1024, newChunkSize);
+    try {
+      assertEquals(entrySize(newChunkSize), cache.getUsed());
+      assertEquals(ByteBuffer.wrap(chunk(3, newChunkSize)),
+          cache.get(block(1), 1, newChunkSize));
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void testSegmentedEviction() throws Exception {
+    LocalBlockCache cache = new LocalBlockCache(cacheDir,
+        4 * entrySize(CHUNK_SIZE), CHUNK_SIZE);
+    try {
+      cache.put(block(1), 0, chunk(1, CHUNK_SIZE), CHUNK_SIZE);
+      cache.put(block(2), 0, chunk(2, CHUNK_SIZE), CHUNK_SIZE);
+      // read again: protected from a scan.
+      assertNotNull(cache.get(block(1), 0, CHUNK_SIZE));
+      for (int i = 3; i <= 6; i++) {
+        cache.put(block(i), 0, chunk(i, CHUNK_SIZE), CHUNK_SIZE);
+      }
+      assertTrue(cache.contains(block(1), 0, CHUNK_SIZE));
+      assertFalse(cache.contains(block(2), 0, CHUNK_SIZE));
+      assertFalse(cache.contains(block(3), 0, CHUNK_SIZE));
+      assertTrue(cache.contains(block(6), 0, CHUNK_SIZE));
+      assertEquals(2, cache.getEvictions());
+      assertEquals(4 * entrySize(CHUNK_SIZE), cache.getUsed());
+      assertEquals(4, new File(cacheDir, "bp-1").list().length);
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void testCorruptChunkIsDropped() throws Exception {
+    LocalBlockCache cache =
+        new LocalBlockCache(cacheDir, 1024 * 1024, CHUNK_SIZE);
+    try {
+      cache.put(block(1), 0, chunk(1, CHUNK_SIZE), CHUNK_SIZE);
+      File[] files = new File(cacheDir, "bp-1").listFiles();
+      assertEquals(1, files.length);
+      try (RandomAccessFile raf = new RandomAccessFile(files[0], "rw")) {
+        raf.seek(100);
+        raf.write(7);
+      }
+      assertNull(cache.get(block(1), 0, CHUNK_SIZE));
+      assertFalse(cache.contains(block(1), 0, 1));
+      assertFalse(files[0].exists());
+      assertEquals(0, cache.getUsed());
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void testPermissions() throws Exception {
+    assumeNotWindows();
+    File dir = new File(cacheDir, "cache");
+    LocalBlockCache cache = new LocalBlockCache(dir, 1024 * 1024, CHUNK_SIZE);
+    try {
+      cache.put(block(1), 0, chunk(1, CHUNK_SIZE), CHUNK_SIZE);
+      File poolDir = new File(dir, "bp-1");
+      File[] files = poolDir.listFiles();
+      // no temporary file is left behind.
+      assertEquals(1, files.length);
+      assertEquals("rwx------", permissions(dir));
+      assertEquals("rwx------", permissions(poolDir));
+      assertEquals("rw-------", permissions(files[0]));
+    } finally {
+      cache.close();
+    }
+  }
+
+  private static String permissions(File file) throws IOException {
+    return PosixFilePermissions.toString(
+        Files.getPosixFilePermissions(file.toPath()));
+  }
+
+  @Test
+  public void testDirectoryInUse() throws Exception {
+    LocalBlockCache cache =
+        new LocalBlockCache(cacheDir, 1024 * 1024, CHUNK_SIZE);
+    try {
+      LambdaTestUtils.intercept(IOException.class, "in use",
+          () -> new LocalBlockCache(cacheDir, 1024 * 1024, CHUNK_SIZE));
+      assertNull(LocalBlockCache.create(cacheDir, 1024 * 1024, CHUNK_SIZE));
+    } finally {
+      cache.close();
+    }
+  }
+}
@@ -21,6 +21,8 @@
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -36,9 +38,12 @@
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.test.GenericTestUtils.DelayAnswer;
+import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.ListenableFuture;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
 
 import java.util.function.Supplier;
 
@@ -129,6 +134,62 @@ public Boolean get() {
     }, 10, 1000);
   }
   
+  /**
+   * Test that batches queued behind a slow call are sent together, up to
+   * the configured limit, and never across a segment boundary.
+   */
+  @Test
+  public void testCoalesceQueuedEdits() throws Exception {
+    conf.setInt(DFSConfigKeys.DFS_QJOURNAL_COALESCE_EDITS_LIMIT_BYTES_KEY,
+        2 * FAKE_DATA.length);
+    ch = new IPCLoggerChannel(conf, FAKE_NSINFO, JID, FAKE_ADDR) {
+      @Override
+      protected QJournalProtocol getProxy() throws IOException {
+        return mockProxy;
+      }
+    };
+    ch.setEpoch(1);
+
+    DelayAnswer delayer = new DelayAnswer(LOG) {
+      @Override
+      protected Object passThrough(InvocationOnMock invocation) {
+        return null;
+      }
+    };
+    Mockito.doAnswer(delayer).when(mockProxy).journal(
+        Mockito.<RequestInfo>any(),
+        Mockito.eq(1L), Mockito.eq(1L),
+        Mockito.eq(1), Mockito.same(FAKE_DATA));
+
+    List<ListenableFuture<Void>> futures = new ArrayList<>();
+    futures.add(ch.sendEdits(1L, 1L, 1, FAKE_DATA));
+    delayer.waitForCall();
+    // Queued while the first call is blocked: 2-3 fit in one call, 4 does
+    // not, and 5 starts a new segment.
+    futures.add(ch.sendEdits(1L, 2L, 1, FAKE_DATA));
+    futures.add(ch.sendEdits(1L, 3L, 1, FAKE_DATA));
+    futures.add(ch.sendEdits(1L, 4L, 1, FAKE_DATA));
+    futures.add(ch.sendEdits(5L, 5L, 1, FAKE_DATA));
+    delayer.proceed();
+    for (ListenableFuture<Void> f : futures) {
+      f.get(10, TimeUnit.SECONDS);
+    }
+
+    ArgumentCaptor<byte[]> data = ArgumentCaptor.forClass(byte[].class);
+    Mockito.verify(mockProxy).journal(Mockito.<RequestInfo>any(),
+        Mockito.eq(1L), Mockito.eq(2L), Mockito.eq(2), data.capture());
+    assertEquals(2 * FAKE_DATA.length, data.getValue().length);
+    Mockito.verify(mockProxy).journal(Mockito.<RequestInfo>any(),
+        Mockito.eq(1L), Mockito.eq(4L), Mockito.eq(1),
+        Mockito.same(FAKE_DATA));
+    Mockito.verify(mockProxy).journal(Mockito.<RequestInfo>any(),
+        Mockito.eq(5L), Mockito.eq(5L), Mockito.eq(1),
+        Mockito.same(FAKE_DATA));
+    Mockito.verify(mockProxy, Mockito.times(4)).journal(
+        Mockito.<RequestInfo>any(), Mockito.anyLong(), Mockito.anyLong(),
+        Mockito.anyInt(), Mockito.any(byte[].class));
+  }
+
   /**
    * Test that, if the remote node gets unsynchronized (eg some edits were
    * missed or the node rebooted), the client stops sending edits until
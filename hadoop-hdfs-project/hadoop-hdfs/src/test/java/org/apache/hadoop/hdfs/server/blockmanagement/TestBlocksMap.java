@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.junit.Test;
+
+/**
+ * Tests the resizable {@link BlocksMap}.
+ */
+public class TestBlocksMap {
+
+  private static BlockInfo newBlock(long id) {
+    return new BlockInfoContiguous(new Block(id, 0, 1000L), (short) 3);
+  }
+
+  private static BlockCollection newBlockCollection() {
+    BlockCollection bc =
+        mock(BlockCollection.class, withSettings().stubOnly());
+    when(bc.getId()).thenReturn(1000L);
+    return bc;
+  }
+
+  @Test
+  public void testResizableMap() {
+    BlocksMap map = new BlocksMap(16, true);
+    BlockCollection bc = newBlockCollection();
+    assertEquals(16, map.getCapacity());
+    for (long id = 0; id < 1000; id++) {
+      map.addBlockCollection(newBlock(id), bc);
+    }
+    assertEquals(1000, map.size());
+    assertEquals(2048, map.getCapacity());
+    for (long id = 0; id < 1000; id++) {
+      assertEquals(id, map.getStoredBlock(new Block(id)).getBlockId());
+    }
+    BlockInfo removed = map.getStoredBlock(new Block(7));
+    removed.delete();
+    map.removeBlock(removed);
+    assertNull(map.getStoredBlock(new Block(7)));
+    assertEquals(999, map.size());
+  }
+
+  /**
+   * An iteration which spans resizes of the map must return every block
+   * which was in the map when it started.
+   */
+  @Test(timeout = 60000)
+  public void testIteratorToleratesResize() {
+    BlocksMap map = new BlocksMap(16, true);
+    BlockCollection bc = newBlockCollection();
+    Set<BlockInfo> initial = new HashSet<>();
+    for (long id = 0; id < 12; id++) {
+      BlockInfo b = newBlock(id);
+      map.addBlockCollection(b, bc);
+      initial.add(b);
+    }
+
+    Set<BlockInfo> seen = new HashSet<>();
+    Iterator<BlockInfo> it = map.getBlocks().iterator();
+    long nextId = 1000;
+    while (it.hasNext()) {
+      seen.add(it.next());
+      // grow the map by several doublings during the first steps
+      if (seen.size() < initial.size()) {
+        for (int i = 0; i < 100; i++) {
+          map.addBlockCollection(newBlock(nextId++), bc);
+        }
+      }
+    }
+    assertTrue(map.getCapacity() > 16);
+    assertTrue(seen.containsAll(initial));
+  }
+
+  @Test
+  public void testFixedCapacityMap() {
+    BlocksMap map = new BlocksMap(64);
+    BlockInfo b = newBlock(1);
+    assertSame(b, map.addBlockCollection(b, newBlockCollection()));
+    assertEquals(64, map.getCapacity());
+  }
+}
@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.datatransfer.PacketReceiver;
+import org.apache.hadoop.net.SocketOutputStream;
+import org.apache.hadoop.test.LambdaTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests sending blocks with transferTo() from memory mapped replicas.
+ */
+public class TestBlockSenderMmap {
+  private static final int PACKET_SIZE = 256 * 1024;
+  private static final int FILE_LEN = 4 * PACKET_SIZE + 1000;
+  private static final Path FILE = new Path("/mapped");
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private DataNode dn;
+
+  @Before
+  public void setup() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_TRANSFERTO_MMAP_ENABLED_KEY,
+        true);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_TRANSFERTO_PACKET_SIZE_KEY,
+        PACKET_SIZE);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    dn = cluster.getDataNodes().get(0);
+    DFSTestUtil.createFile(fs, FILE, FILE_LEN, (short) 1, 0xbeefL);
+  }
+
+  @After
+  public void teardown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testClientRead() throws Exception {
+    byte[] data = DFSTestUtil.readFileBuffer(fs, FILE);
+    assertEquals(FILE_LEN, data.length);
+    byte[] range = new byte[5000];
+    fs.open(FILE).readFully(PACKET_SIZE - 100, range);
+    for (int i = 0; i < range.length; i++) {
+      assertEquals(data[PACKET_SIZE - 100 + i], range[i]);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testVerifiedTransferTo() throws Exception {
+    byte[] expected = DFSTestUtil.readFileBuffer(fs, FILE);
+    ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, FILE);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress("localhost", 0));
+      try (SocketChannel out = SocketChannel.open(server.getLocalAddress());
+           SocketChannel in = server.accept()) {
+        BlockSender sender = new BlockSender(block, 0, -1, false, true, true,
+            dn, null, CachingStrategy.newDefaultStrategy());
+        SocketOutputStream sockOut = new SocketOutputStream(out, 30000);
+        Future<Long> sent = executor.submit(() -> sender.sendBlock(
+            new DataOutputStream(sockOut), sockOut, null));
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        PacketReceiver receiver = new PacketReceiver(false);
+        int packets = 0;
+        do {
+          receiver.receiveNextPacket(in);
+          ByteBuffer packet = receiver.getDataSlice();
+          byte[] packetData = new byte[packet.remaining()];
+          packet.get(packetData);
+          received.write(packetData);
+          if (packets == 0) {
+            // packets are as large as configured
+            assertEquals(PACKET_SIZE, packetData.length);
+          }
+          packets++;
+        } while (receiver.getHeader().getDataLen() > 0);
+        receiver.close();
+
+        sent.get(30, TimeUnit.SECONDS);
+        assertEquals(6, packets);
+        assertArrayEquals(expected, received.toByteArray());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testVerifiedTransferToDetectsCorruption() throws Exception {
+    ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, FILE);
+    cluster.getMaterializedReplica(0, block).corruptData();
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress("localhost", 0));
+      try (SocketChannel out = SocketChannel.open(server.getLocalAddress());
+           SocketChannel in = server.accept()) {
+        BlockSender sender = new BlockSender(block, 0, -1, false, true, true,
+            dn, null, CachingStrategy.newDefaultStrategy());
+        SocketOutputStream sockOut = new SocketOutputStream(out, 30000);
+        LambdaTestUtils.intercept(ChecksumException.class,
+            () -> sender.sendBlock(new DataOutputStream(sockOut), sockOut,
+                null));
+      }
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testVerifiedTransferToOfTruncatedReplica() throws Exception {
+    ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, FILE);
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress("localhost", 0));
+      try (SocketChannel out = SocketChannel.open(server.getLocalAddress());
+           SocketChannel in = server.accept()) {
+        BlockSender sender = new BlockSender(block, 0, -1, false, true, true,
+            dn, null, CachingStrategy.newDefaultStrategy());
+        // the block file shrinks after the sender opened it.
+        cluster.getMaterializedReplica(0, block).truncateData(0);
+        SocketOutputStream sockOut = new SocketOutputStream(out, 30000);
+        LambdaTestUtils.intercept(EOFException.class,
+            () -> sender.sendBlock(new DataOutputStream(sockOut), sockOut,
+                null));
+      }
+    }
+  }
+}
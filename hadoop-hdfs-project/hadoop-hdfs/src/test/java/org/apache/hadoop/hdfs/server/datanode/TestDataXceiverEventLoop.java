@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.ClientContext;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.PeerCache;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.net.Peer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link DataXceiverEventLoop}.
+ */
+public class TestDataXceiverEventLoop {
+  private static final Path TEST_FILE = new Path("/test");
+  private static final int FILE_LEN = 100000;
+  private static final int KEEPALIVE_TIMEOUT = 2000;
+
+  private final Configuration conf = new HdfsConfiguration();
+  private MiniDFSCluster cluster;
+  private DataNode dn;
+
+  @Before
+  public void setup() throws Exception {
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_DATA_TRANSFER_EVENT_LOOP_ENABLED_KEY, true);
+    conf.setInt(
+        DFSConfigKeys.DFS_DATANODE_DATA_TRANSFER_EVENT_LOOP_SELECTOR_THREADS_KEY,
+        1);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY,
+        KEEPALIVE_TIMEOUT);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    dn = cluster.getDataNodes().get(0);
+  }
+
+  @After
+  public void teardown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private void waitForParked(int parked) throws Exception {
+    DataXceiverServer server = dn.getXferServer();
+    GenericTestUtils.waitFor(() -> server.getNumParkedPeers() == parked
+            && server.getEventLoop().getNumParked() == parked,
+        10, 10000);
+  }
+
+  @Test(timeout = 60000)
+  public void testReusedConnectionIsParked() throws Exception {
+    assertNotNull(dn.getXferServer().getEventLoop());
+    Configuration clientConf = new Configuration(conf);
+    clientConf.setLong(
+        HdfsClientConfigKeys.DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY, 60000L);
+    clientConf.set(HdfsClientConfigKeys.DFS_CLIENT_CONTEXT,
+        "testReusedConnectionIsParked");
+    DistributedFileSystem fs = (DistributedFileSystem) FileSystem.newInstance(
+        cluster.getURI(), clientConf);
+    PeerCache peerCache = ClientContext.getFromConf(clientConf).getPeerCache();
+    DFSTestUtil.createFile(fs, TEST_FILE, FILE_LEN, (short) 1, 0xbeefL);
+
+    byte[] expected = DFSTestUtil.readFileBuffer(fs, TEST_FILE);
+    assertEquals(FILE_LEN, expected.length);
+    assertEquals(1, peerCache.size());
+    // the idle connection holds no xceiver.
+    waitForParked(1);
+    assertEquals(0, dn.getXceiverCount());
+
+    // the next reads resume the parked connection.
+    for (int i = 0; i < 3; i++) {
+      assertArrayEquals(expected, DFSTestUtil.readFileBuffer(fs, TEST_FILE));
+      assertEquals(1, peerCache.size());
+      waitForParked(1);
+    }
+    assertEquals(0, dn.getXceiverCount());
+
+    // idle connections are closed after the keepalive timeout.
+    waitForParked(0);
+    assertEquals(0, dn.getXceiverCount());
+    assertArrayEquals(expected, DFSTestUtil.readFileBuffer(fs, TEST_FILE));
+  }
+
+  @Test(timeout = 60000)
+  public void testShutdownClosesParkedConnections() throws Exception {
+    DistributedFileSystem fs = cluster.getFileSystem();
+    DFSTestUtil.createFile(fs, TEST_FILE, FILE_LEN, (short) 1, 0xbeefL);
+    DFSTestUtil.readFileBuffer(fs, TEST_FILE);
+    waitForParked(1);
+
+    DataXceiverServer server = dn.getXferServer();
+    DataXceiverEventLoop eventLoop = server.getEventLoop();
+    cluster.shutdownDataNodes();
+    assertEquals(0, server.getNumParkedPeers());
+    assertEquals(0, eventLoop.getNumParked());
+  }
+
+  @Test(timeout = 60000)
+  public void testReparkRightAfterResume() throws Exception {
+    DataXceiverServer server = mock(DataXceiverServer.class);
+    DataXceiver xceiver = mock(DataXceiver.class);
+    Peer peer = mock(Peer.class);
+    DataXceiverEventLoop eventLoop = new DataXceiverEventLoop(server,
+        new ThreadGroup("testReparkRightAfterResume"), 1, 4, 60000);
+    ServerSocketChannel listener = ServerSocketChannel.open();
+    SocketChannel client = null;
+    SocketChannel accepted = null;
+    try {
+      listener.bind(new InetSocketAddress("localhost", 0));
+      client = SocketChannel.open(listener.getLocalAddress());
+      accepted = listener.accept();
+      accepted.configureBlocking(false);
+      when(peer.getInputStreamChannel()).thenReturn(accepted);
+      // the first resume parks the connection again before the selector
+      // thread selects, as a fast operation would.
+      AtomicInteger unparks = new AtomicInteger();
+      doAnswer(invocation -> {
+        if (unparks.getAndIncrement() == 0) {
+          eventLoop.park(peer, xceiver);
+        }
+        return null;
+      }).when(server).unparkPeer(peer);
+
+      eventLoop.park(peer, xceiver);
+      client.write(ByteBuffer.wrap(new byte[] {1}));
+      // the data is left unread, so the parked connection resumes again.
+      verify(xceiver, timeout(10000).times(2)).run();
+      verify(xceiver, never()).closeIdle();
+    } finally {
+      eventLoop.shutdown();
+      IOUtils.cleanupWithLogger(null, client, accepted, listener);
+    }
+  }
+}
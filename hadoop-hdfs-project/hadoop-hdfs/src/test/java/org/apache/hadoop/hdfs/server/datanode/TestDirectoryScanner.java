@@ -43,6 +43,7 @@
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.io.FileUtils;
@@ -408,6 +409,148 @@ public void testRetainBlockOnPersistentStorage() throws Exception {
     }
   }
 
+  /**
+   * Test that a scan only reconciles the finalized directories which changed
+   * since the previous scan when incremental scans are enabled.
+   */
+  @Test(timeout = 300000)
+  public void testIncrementalScan() throws Exception {
+    Configuration conf = getConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_KEY, true);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      bpid = cluster.getNamesystem().getBlockPoolId();
+      fds = DataNodeTestUtils.getFSDataset(cluster.getDataNodes().get(0));
+      client = cluster.getFileSystem().getClient();
+      scanner = new DirectoryScanner(fds, conf);
+      scanner.setRetainDiffs(true);
+
+      // Add blocks in more than one finalized subdirectory
+      final int numBlocks = 300;
+      List<LocatedBlock> blocks = createFile(GenericTestUtils.getMethodName(),
+          BLOCK_LENGTH * numBlocks, false);
+
+      // The first scan is a full scan
+      scan(numBlocks, 0, 0, 0, 0, 0);
+      assertEquals(1, scanner.numFullScans.get());
+
+      // Nothing is scanned when nothing changed
+      scanner.reconcile();
+      assertEquals(1, scanner.numIncrementalScans.get());
+      assertNull(scanner.stats.get(bpid));
+
+      // Only the directory of the deleted block file is scanned
+      long blockId = deleteBlockFile();
+      File blockDir = new File(
+          FsDatasetTestUtil.fetchReplicaInfo(fds, bpid, blockId).getBlockURI())
+          .getParentFile();
+      int dirBlocks = 0;
+      for (LocatedBlock block : blocks) {
+        File dir = new File(FsDatasetTestUtil.fetchReplicaInfo(fds, bpid,
+            block.getBlock().getBlockId()).getBlockURI()).getParentFile();
+        if (dir.equals(blockDir)) {
+          dirBlocks++;
+        }
+      }
+      assertTrue(dirBlocks < numBlocks);
+      waitForChangedBlocks();
+      scan(dirBlocks, 1, 0, 1, 0, 0);
+      verifyDeletion(blockId);
+
+      // The metadata file deleted by the scanner is in the next scan
+      waitForChangedBlocks();
+      scan(dirBlocks - 1, 0, 0, 0, 0, 0);
+      assertEquals(3, scanner.numIncrementalScans.get());
+      assertEquals(1, scanner.numFullScans.get());
+
+      // All the scans are full scans when the full scan interval is elapsed
+      scanner.shutdown();
+      conf.setTimeDuration(
+          DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_FULL_INTERVAL_KEY, 0,
+          TimeUnit.SECONDS);
+      scanner = new DirectoryScanner(fds, conf);
+      scanner.setRetainDiffs(true);
+      scan(numBlocks - 1, 0, 0, 0, 0, 0);
+      scan(numBlocks - 1, 0, 0, 0, 0, 0);
+      assertEquals(2, scanner.numFullScans.get());
+      assertEquals(0, scanner.numIncrementalScans.get());
+    } finally {
+      if (scanner != null) {
+        scanner.shutdown();
+        scanner = null;
+      }
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /**
+   * Test that a slice whose directories cannot be watched, e.g. because the
+   * inotify watch limit was reached, is not watched again by each scan, and
+   * that the scans fall back to full scans.
+   */
+  @Test(timeout = 300000)
+  public void testIncrementalScanWatchFailure() throws Exception {
+    Configuration conf = getConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_KEY, true);
+    final AtomicInteger watchAttempts = new AtomicInteger();
+    DataNodeFaultInjector oldInjector = DataNodeFaultInjector.get();
+    DataNodeFaultInjector.set(new DataNodeFaultInjector() {
+      @Override
+      public void watchFinalizedDir(File dir) throws IOException {
+        watchAttempts.incrementAndGet();
+        throw new IOException("User limit of inotify watches reached");
+      }
+    });
+    GenericTestUtils.LogCapturer logs = GenericTestUtils.LogCapturer
+        .captureLogs(LoggerFactory.getLogger(FinalizedDirWatcher.class));
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      bpid = cluster.getNamesystem().getBlockPoolId();
+      fds = DataNodeTestUtils.getFSDataset(cluster.getDataNodes().get(0));
+      client = cluster.getFileSystem().getClient();
+      scanner = new DirectoryScanner(fds, conf);
+      scanner.setRetainDiffs(true);
+      int numVolumes;
+      try (FsVolumeReferences volumes = fds.getFsVolumeReferences()) {
+        numVolumes = volumes.size();
+      }
+
+      final int numBlocks = 10;
+      createFile(GenericTestUtils.getMethodName(), BLOCK_LENGTH * numBlocks,
+          false);
+      scan(numBlocks, 0, 0, 0, 0, 0);
+      scan(numBlocks, 0, 0, 0, 0, 0);
+      scan(numBlocks, 0, 0, 0, 0, 0);
+      assertEquals(3, scanner.numFullScans.get());
+      assertEquals(0, scanner.numIncrementalScans.get());
+      // each slice was only tried once, and its failure logged once.
+      assertEquals(numVolumes, watchAttempts.get());
+      String output = logs.getOutput();
+      assertEquals(numVolumes, output.split("Failed to watch", -1).length - 1);
+      assertTrue(output.contains("fs/inotify/max_user_watches"));
+    } finally {
+      logs.stopCapturing();
+      DataNodeFaultInjector.set(oldInjector);
+      if (scanner != null) {
+        scanner.shutdown();
+        scanner = null;
+      }
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private void waitForChangedBlocks()
+      throws TimeoutException, InterruptedException {
+    GenericTestUtils.waitFor(
+        () -> scanner.getDirWatcher().getNumChangedBlocks() > 0, 10, 10000);
+  }
+
   /**
    * test scan only meta file NOT generate wrong folder structure warn log.
    */
@@ -1148,6 +1291,34 @@ public void TestScanInfo() throws Exception {
             "blk_567", "blk_567__1004.meta");
   }
 
+  @Test(timeout = 60000)
+  public void testCompileReportOfDirFallsBackToVolumeReport()
+      throws Exception {
+    final File finalizedDir = TEST_VOLUME.getFinalizedDir(BPID_1);
+    final File subdir0 = new File(finalizedDir, "subdir0");
+    final File subdir1 = new File(finalizedDir, "subdir1");
+    // a volume which only compiles the report of a whole block pool.
+    FsVolumeSpi volume = new TestFsVolumeSpi() {
+      @Override
+      public void compileReport(String bpid, Collection<ScanInfo> report,
+          ReportCompiler reportCompiler) {
+        report.add(new ScanInfo(1, subdir0, "blk_1", "blk_1_1001.meta",
+            this));
+        report.add(new ScanInfo(2, subdir1, "blk_2", "blk_2_1001.meta",
+            this));
+        report.add(new ScanInfo(3, new File(subdir0, "subdir2"), null,
+            "blk_3_1001.meta", this));
+        report.add(new ScanInfo(4, new File(finalizedDir, "subdir00"),
+            "blk_4", null, this));
+      }
+    };
+    List<FsVolumeSpi.ScanInfo> report = new ArrayList<>();
+    volume.compileReport(BPID_1, subdir0, report, null);
+    assertEquals(2, report.size());
+    assertEquals(1, report.get(0).getBlockId());
+    assertEquals(3, report.get(1).getBlockId());
+  }
+
   /**
    * Test the behavior of exception handling during directory scan operation.
    * Directory scanner shouldn't abort the scan on every directory just because
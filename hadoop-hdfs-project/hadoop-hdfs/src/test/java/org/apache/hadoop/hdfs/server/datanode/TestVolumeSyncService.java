@@ -0,0 +1,238 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.AppendTestUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.test.LambdaTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link VolumeSyncService}.
+ */
+public class TestVolumeSyncService {
+  private final FsVolumeSpi volume = mock(FsVolumeSpi.class);
+  private VolumeSyncService syncService;
+
+  /** Counts its syncs, the first one waiting to be released. */
+  private static class BlockingTarget extends VolumeSyncService.SyncTarget {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger syncs = new AtomicInteger();
+    private volatile IOException error;
+
+    @Override
+    void doSync() throws IOException {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      syncs.incrementAndGet();
+      if (error != null) {
+        throw error;
+      }
+    }
+  }
+
+  /** Tracks how many syncs of its group of targets run at the same time. */
+  private static class ParallelTarget extends VolumeSyncService.SyncTarget {
+    private final AtomicInteger running;
+    private final AtomicInteger maxRunning;
+    private final CountDownLatch release;
+
+    ParallelTarget(AtomicInteger running, AtomicInteger maxRunning,
+        CountDownLatch release) {
+      this.running = running;
+      this.maxRunning = maxRunning;
+      this.release = release;
+    }
+
+    @Override
+    void doSync() throws IOException {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      } finally {
+        running.decrementAndGet();
+      }
+    }
+  }
+
+  @Before
+  public void setup() {
+    syncService = new VolumeSyncService(
+        DFSConfigKeys.DFS_DATANODE_HSYNC_GROUP_COMMIT_MAX_PARALLEL_SYNCS_DEFAULT);
+  }
+
+  @After
+  public void teardown() {
+    syncService.shutdown();
+  }
+
+  @Test(timeout = 30000)
+  public void testRequestsDuringSyncAreBatched() throws Exception {
+    BlockingTarget target = new BlockingTarget();
+    BlockingTarget other = new BlockingTarget();
+    other.release.countDown();
+
+    syncService.requestSync(volume, target, 10);
+    assertTrue(target.started.await(10, TimeUnit.SECONDS));
+    syncService.requestSync(volume, target, 20);
+    syncService.requestSync(volume, target, 30);
+    // already requested
+    syncService.requestSync(volume, target, 25);
+    syncService.requestSync(volume, other, 5);
+    assertFalse(target.isSynced(10));
+
+    target.release.countDown();
+    target.awaitSynced(30);
+    other.awaitSynced(5);
+    // the requests made during the first sync are served by one sync.
+    assertEquals(2, target.syncs.get());
+    assertEquals(1, other.syncs.get());
+    assertEquals(5, syncService.getNumSyncRequests());
+    assertEquals(3, syncService.getNumSyncs());
+    target.awaitRequested();
+  }
+
+  @Test(timeout = 30000)
+  public void testSyncFailure() throws Exception {
+    BlockingTarget target = new BlockingTarget();
+    target.error = new IOException("injected");
+    target.release.countDown();
+
+    syncService.requestSync(volume, target, 10);
+    LambdaTestUtils.intercept(IOException.class, "injected",
+        () -> target.awaitSynced(10));
+    LambdaTestUtils.intercept(IOException.class, "injected",
+        () -> syncService.requestSync(volume, target, 20));
+    assertEquals(1, target.syncs.get());
+  }
+
+  @Test(timeout = 30000)
+  public void testBatchSyncedInParallel() throws Exception {
+    final int maxParallelSyncs = 3;
+    VolumeSyncService service = new VolumeSyncService(maxParallelSyncs);
+    try {
+      BlockingTarget blocker = new BlockingTarget();
+      service.requestSync(volume, blocker, 10);
+      assertTrue(blocker.started.await(10, TimeUnit.SECONDS));
+
+      AtomicInteger running = new AtomicInteger();
+      AtomicInteger maxRunning = new AtomicInteger();
+      CountDownLatch release = new CountDownLatch(1);
+      List<ParallelTarget> batch = new ArrayList<>();
+      for (int i = 0; i < 2 * maxParallelSyncs; i++) {
+        ParallelTarget target =
+            new ParallelTarget(running, maxRunning, release);
+        batch.add(target);
+        service.requestSync(volume, target, 10);
+      }
+      blocker.release.countDown();
+      GenericTestUtils.waitFor(() -> running.get() == maxParallelSyncs,
+          10, 10000);
+      release.countDown();
+      for (ParallelTarget target : batch) {
+        target.awaitSynced(10);
+      }
+      assertEquals(maxParallelSyncs, maxRunning.get());
+      assertEquals(1 + batch.size(), service.getNumSyncs());
+    } finally {
+      service.shutdown();
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testConcurrentHsync() throws Exception {
+    final int numWriters = 4;
+    final int numSyncs = 20;
+    final int syncSize = 1000;
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_HSYNC_GROUP_COMMIT_ENABLED_KEY, true);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    ExecutorService executor = Executors.newFixedThreadPool(numWriters);
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      byte[] data = AppendTestUtil.initBuffer(numSyncs * syncSize);
+      List<Future<Void>> writers = new ArrayList<>();
+      for (int i = 0; i < numWriters; i++) {
+        Path file = new Path("/hsync" + i);
+        writers.add(executor.submit(() -> {
+          try (FSDataOutputStream out = fs.create(file, (short) 3)) {
+            for (int j = 0; j < numSyncs; j++) {
+              out.write(data, j * syncSize, syncSize);
+              out.hsync();
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<Void> writer : writers) {
+        writer.get(60, TimeUnit.SECONDS);
+      }
+      for (int i = 0; i < numWriters; i++) {
+        assertArrayEquals(data,
+            DFSTestUtil.readFileBuffer(fs, new Path("/hsync" + i)));
+      }
+      for (DataNode dn : cluster.getDataNodes()) {
+        VolumeSyncService service = dn.getVolumeSyncService();
+        assertNotNull(service);
+        assertTrue(service.getNumSyncs() > 0);
+        assertTrue(service.getNumSyncs() <= service.getNumSyncRequests());
+      }
+    } finally {
+      executor.shutdownNow();
+      cluster.shutdown();
+    }
+  }
+}
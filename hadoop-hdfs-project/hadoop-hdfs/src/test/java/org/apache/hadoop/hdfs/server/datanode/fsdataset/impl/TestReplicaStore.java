@@ -0,0 +1,344 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSCluster.DataNodeProperties;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.test.GenericTestUtils.LogCapturer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests restarting a DataNode from the {@link ReplicaStore} of its volumes.
+ */
+public class TestReplicaStore {
+  private static final int FILE_LEN = 10000;
+  private static final int NUM_FILES = 3;
+
+  private final Configuration conf = new HdfsConfiguration();
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private final List<ExtendedBlock> blocks = new ArrayList<>();
+
+  @Before
+  public void setup() throws Exception {
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_REPLICA_STORE_ENABLED_KEY,
+        true);
+    // do not load the replicas from the cache file written at shutdown.
+    conf.setTimeDuration(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_EXPIRY_TIME_KEY, 0,
+        TimeUnit.MILLISECONDS);
+    conf.setLong(DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY, 1);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    for (int i = 0; i < NUM_FILES; i++) {
+      Path file = new Path("/file" + i);
+      DFSTestUtil.createFile(fs, file, FILE_LEN, (short) 1, i);
+      blocks.add(DFSTestUtil.getFirstBlock(fs, file));
+    }
+  }
+
+  @After
+  public void teardown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private ReplicaInfo getReplica(ExtendedBlock block) {
+    return DataNodeTestUtils.fetchReplicaInfo(cluster.getDataNodes().get(0),
+        block.getBlockPoolId(), block.getBlockId());
+  }
+
+  private List<File> getStoreDirs() {
+    List<File> dirs = new ArrayList<>();
+    String bpid = cluster.getNamesystem().getBlockPoolId();
+    for (int i = 0; i < 2; i++) {
+      File finalizedDir = MiniDFSCluster.getFinalizedDir(
+          cluster.getInstanceStorageDir(0, i), bpid);
+      dirs.add(new File(finalizedDir.getParentFile(), "replicas.db"));
+    }
+    return dirs;
+  }
+
+  @Test(timeout = 120000)
+  public void testRestartFromReplicaStore() throws Exception {
+    // the files of a replica removed behind the back of the DataNode.
+    ReplicaInfo removed = getReplica(blocks.get(0));
+    File removedBlockFile = new File(removed.getBlockURI());
+    File removedMetaFile = new File(removed.getMetadataURI());
+    DataNodeProperties dnProps = cluster.stopDataNode(0);
+    assertTrue(removedBlockFile.delete());
+    assertTrue(removedMetaFile.delete());
+
+    LogCapturer logs = GenericTestUtils.LogCapturer.captureLogs(
+        BlockPoolSlice.LOG);
+    try {
+      assertTrue(cluster.restartDataNode(dnProps, true));
+      cluster.waitActive();
+    } finally {
+      logs.stopCapturing();
+    }
+    assertTrue(logs.getOutput().contains("from the replica store"));
+    assertFalse(logs.getOutput().contains("Built the replica store"));
+    // the finalized directories were not scanned.
+    assertNotNull(getReplica(blocks.get(0)));
+    for (ExtendedBlock block : blocks) {
+      assertEquals(FILE_LEN, getReplica(block).getNumBytes());
+      assertEquals(block.getGenerationStamp(),
+          getReplica(block).getGenerationStamp());
+    }
+
+    // the directory scanner reconciles the replica map and the store.
+    DataNodeTestUtils.runDirectoryScanner(cluster.getDataNodes().get(0));
+    assertNull(getReplica(blocks.get(0)));
+
+    // deleted replicas are removed from the store.
+    File deletedBlockFile = new File(getReplica(blocks.get(1)).getBlockURI());
+    fs.delete(new Path("/file1"), false);
+    GenericTestUtils.waitFor(() -> getReplica(blocks.get(1)) == null
+        && !deletedBlockFile.exists(), 100, 30000);
+
+    dnProps = cluster.stopDataNode(0);
+    assertTrue(cluster.restartDataNode(dnProps, true));
+    cluster.waitActive();
+    assertNull(getReplica(blocks.get(0)));
+    assertNull(getReplica(blocks.get(1)));
+    assertNotNull(getReplica(blocks.get(2)));
+    assertEquals(FILE_LEN,
+        DFSTestUtil.readFileBuffer(fs, new Path("/file2")).length);
+  }
+
+  @Test(timeout = 120000)
+  public void testAppendedReplica() throws Exception {
+    Path file = new Path("/file2");
+    DFSTestUtil.appendFile(fs, file, 100);
+    ExtendedBlock appended = DFSTestUtil.getFirstBlock(fs, file);
+    assertTrue(appended.getGenerationStamp()
+        > blocks.get(2).getGenerationStamp());
+
+    DataNodeProperties dnProps = cluster.stopDataNode(0);
+    assertTrue(cluster.restartDataNode(dnProps, true));
+    cluster.waitActive();
+    ReplicaInfo replica = getReplica(appended);
+    assertEquals(appended.getGenerationStamp(),
+        replica.getGenerationStamp());
+    assertEquals(FILE_LEN + 100, replica.getNumBytes());
+    assertEquals(FILE_LEN + 100, DFSTestUtil.readFileBuffer(fs, file).length);
+  }
+
+  @Test(timeout = 120000)
+  public void testDisabledReplicaStoreIsDeleted() throws Exception {
+    for (File dir : getStoreDirs()) {
+      assertTrue(dir.isDirectory());
+    }
+    cluster.shutdown();
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_REPLICA_STORE_ENABLED_KEY,
+        false);
+    cluster = new MiniDFSCluster.Builder(conf).format(false)
+        .numDataNodes(1).build();
+    cluster.waitActive();
+    for (File dir : getStoreDirs()) {
+      assertFalse(dir.exists());
+    }
+    for (ExtendedBlock block : blocks) {
+      assertNotNull(getReplica(block));
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testIncompleteReplicaStoreIsRebuilt() throws Exception {
+    DataNodeProperties dnProps = cluster.stopDataNode(0);
+    for (File dir : getStoreDirs()) {
+      FileUtil.fullyDelete(dir);
+    }
+    LogCapturer logs = GenericTestUtils.LogCapturer.captureLogs(
+        BlockPoolSlice.LOG);
+    try {
+      assertTrue(cluster.restartDataNode(dnProps, true));
+      cluster.waitActive();
+    } finally {
+      logs.stopCapturing();
+    }
+    assertTrue(logs.getOutput().contains("Built the replica store"));
+    for (ExtendedBlock block : blocks) {
+      assertNotNull(getReplica(block));
+    }
+
+    List<Block> stored = new ArrayList<>();
+    dnProps = cluster.stopDataNode(0);
+    for (File dir : getStoreDirs()) {
+      try (ReplicaStore store = ReplicaStore.open(dir)) {
+        assertTrue(store.isComplete());
+        store.load(stored::add);
+      }
+    }
+    assertEquals(NUM_FILES, stored.size());
+  }
+
+  @Test(timeout = 120000)
+  public void testUncleanShutdownRebuildsReplicaStore() throws Exception {
+    ReplicaInfo removed = getReplica(blocks.get(0));
+    File removedBlockFile = new File(removed.getBlockURI());
+    File removedMetaFile = new File(removed.getMetadataURI());
+    DataNodeProperties dnProps = cluster.stopDataNode(0);
+    // opening the stores clears their clean shutdown, as after a crash.
+    for (File dir : getStoreDirs()) {
+      ReplicaStore.open(dir).close();
+    }
+    // files deleted before the crash, whose entries were not removed.
+    assertTrue(removedBlockFile.delete());
+    assertTrue(removedMetaFile.delete());
+
+    LogCapturer logs = GenericTestUtils.LogCapturer.captureLogs(
+        BlockPoolSlice.LOG);
+    try {
+      assertTrue(cluster.restartDataNode(dnProps, true));
+      cluster.waitActive();
+    } finally {
+      logs.stopCapturing();
+    }
+    assertFalse(logs.getOutput().contains("from the replica store"));
+    assertTrue(logs.getOutput().contains("Built the replica store"));
+    assertNull(getReplica(blocks.get(0)));
+    assertNotNull(getReplica(blocks.get(1)));
+    assertNotNull(getReplica(blocks.get(2)));
+  }
+
+  private FsDatasetImpl getDataset() {
+    return (FsDatasetImpl) DataNodeTestUtils.getFSDataset(
+        cluster.getDataNodes().get(0));
+  }
+
+  /**
+   * Delete the file of the given block while the async disk service of its
+   * volume is busy, so that the deletion is still pending.
+   * @return the latch releasing the async disk service.
+   */
+  private CountDownLatch deleteWithPendingDeletion(Path file,
+      ExtendedBlock block) throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    getDataset().asyncDiskService.execute(
+        (FsVolumeImpl) getReplica(block).getVolume(), () -> {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    fs.delete(file, false);
+    // the replica leaves the replica map before its files are deleted.
+    GenericTestUtils.waitFor(() -> getReplica(block) == null, 100, 30000);
+    return release;
+  }
+
+  @Test(timeout = 120000)
+  public void testDeletionInFlightAtShutdown() throws Exception {
+    File blockFile = new File(getReplica(blocks.get(1)).getBlockURI());
+    CountDownLatch release =
+        deleteWithPendingDeletion(new Path("/file1"), blocks.get(1));
+    assertTrue(blockFile.exists());
+
+    LogCapturer shutdownLogs = GenericTestUtils.LogCapturer.captureLogs(
+        FsDatasetAsyncDiskService.LOG);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    DataNodeProperties dnProps;
+    try {
+      Future<DataNodeProperties> stop =
+          executor.submit(() -> cluster.stopDataNode(0));
+      GenericTestUtils.waitFor(() -> shutdownLogs.getOutput().contains(
+          "Waiting for 1 pending deletions of block pool"), 100, 30000);
+      // the shutdown waits for the deletion before closing the stores.
+      release.countDown();
+      dnProps = stop.get(60, TimeUnit.SECONDS);
+    } finally {
+      shutdownLogs.stopCapturing();
+      executor.shutdownNow();
+    }
+    assertFalse(blockFile.exists());
+
+    LogCapturer logs = GenericTestUtils.LogCapturer.captureLogs(
+        BlockPoolSlice.LOG);
+    try {
+      assertTrue(cluster.restartDataNode(dnProps, true));
+      cluster.waitActive();
+    } finally {
+      logs.stopCapturing();
+    }
+    assertTrue(logs.getOutput().contains("from the replica store"));
+    assertNull(getReplica(blocks.get(1)));
+    assertNotNull(getReplica(blocks.get(0)));
+    assertNotNull(getReplica(blocks.get(2)));
+  }
+
+  @Test(timeout = 120000)
+  public void testDeletionUnfinishedAtShutdown() throws Exception {
+    File blockFile = new File(getReplica(blocks.get(1)).getBlockURI());
+    getDataset().asyncDiskService.setShutdownTimeoutMs(100);
+    CountDownLatch release =
+        deleteWithPendingDeletion(new Path("/file1"), blocks.get(1));
+    DataNodeProperties dnProps = cluster.stopDataNode(0);
+    // the deletion completes after the stores were closed.
+    release.countDown();
+    GenericTestUtils.waitFor(() -> !blockFile.exists(), 100, 30000);
+
+    LogCapturer logs = GenericTestUtils.LogCapturer.captureLogs(
+        BlockPoolSlice.LOG);
+    try {
+      assertTrue(cluster.restartDataNode(dnProps, true));
+      cluster.waitActive();
+    } finally {
+      logs.stopCapturing();
+    }
+    assertFalse(logs.getOutput().contains("from the replica store"));
+    assertTrue(logs.getOutput().contains("Built the replica store"));
+    assertNull(getReplica(blocks.get(1)));
+    assertNotNull(getReplica(blocks.get(0)));
+    assertNotNull(getReplica(blocks.get(2)));
+  }
+}
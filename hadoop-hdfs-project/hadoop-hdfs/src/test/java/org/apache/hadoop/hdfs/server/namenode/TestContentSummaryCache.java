@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.PrivilegedExceptionAction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the content summaries cached for directories with a quota.
+ */
+public class TestContentSummaryCache {
+  private static final short REPLICATION = 1;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem dfs;
+  private NamenodeProtocols nnRpc;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set(DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_MAX_AGE_KEY, "1h");
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION)
+        .build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+    nnRpc = cluster.getNameNodeRpc();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test
+  public void testCachedUntilUsageChanges() throws Exception {
+    final Path dir = new Path("/quotaDir");
+    dfs.mkdirs(new Path(dir, "sub"));
+    dfs.setQuota(dir, Long.MAX_VALUE - 1, HdfsConstants.QUOTA_DONT_SET);
+    DFSTestUtil.createFile(dfs, new Path(dir, "sub/f1"), 10, REPLICATION, 0L);
+
+    ContentSummary first = nnRpc.getContentSummary(dir.toString());
+    assertEquals(1, first.getFileCount());
+    assertEquals(2, first.getDirectoryCount());
+    assertEquals(10, first.getLength());
+    assertSame(first, nnRpc.getContentSummary(dir.toString()));
+
+    // A change anywhere below the directory updates its quota usage.
+    DFSTestUtil.createFile(dfs, new Path(dir, "sub/f2"), 5, REPLICATION, 0L);
+    ContentSummary second = nnRpc.getContentSummary(dir.toString());
+    assertEquals(2, second.getFileCount());
+    assertEquals(15, second.getLength());
+    assertSame(second, nnRpc.getContentSummary(dir.toString()));
+
+    // So does changing the quota itself.
+    dfs.setQuota(dir, 1000, HdfsConstants.QUOTA_DONT_SET);
+    ContentSummary third = nnRpc.getContentSummary(dir.toString());
+    assertEquals(1000, third.getQuota());
+
+    dfs.delete(new Path(dir, "sub/f1"), false);
+    assertEquals(1, nnRpc.getContentSummary(dir.toString()).getFileCount());
+  }
+
+  @Test
+  public void testNotCachedWithoutQuota() throws Exception {
+    final Path dir = new Path("/noQuotaDir");
+    DFSTestUtil.createFile(dfs, new Path(dir, "f"), 10, REPLICATION, 0L);
+    assertNotSame(nnRpc.getContentSummary(dir.toString()),
+        nnRpc.getContentSummary(dir.toString()));
+  }
+
+  @Test
+  public void testNotServedWhenSubtreeAccessIsChecked() throws Exception {
+    final Path dir = new Path("/quotaDirNonSuper");
+    DFSTestUtil.createFile(dfs, new Path(dir, "f"), 10, REPLICATION, 0L);
+    dfs.setQuota(dir, Long.MAX_VALUE - 1, HdfsConstants.QUOTA_DONT_SET);
+    final ContentSummary cached = nnRpc.getContentSummary(dir.toString());
+    assertSame(cached, nnRpc.getContentSummary(dir.toString()));
+
+    UserGroupInformation user = UserGroupInformation.createUserForTesting(
+        "randomUser", new String[]{"randomGroup"});
+    ContentSummary computed = user.doAs(
+        new PrivilegedExceptionAction<ContentSummary>() {
+          @Override
+          public ContentSummary run() throws Exception {
+            return nnRpc.getContentSummary(dir.toString());
+          }
+        });
+    assertNotSame(cached, computed);
+    assertEquals(cached.getFileCount(), computed.getFileCount());
+    assertEquals(cached.getLength(), computed.getLength());
+  }
+
+  @Test
+  public void testServedWhenPermissionsDisabled() throws Exception {
+    cluster.getConfiguration(0).setBoolean(
+        DFSConfigKeys.DFS_PERMISSIONS_ENABLED_KEY, false);
+    cluster.restartNameNode();
+    nnRpc = cluster.getNameNodeRpc();
+    dfs = cluster.getFileSystem();
+
+    final Path dir = new Path("/quotaDirNoPermissions");
+    DFSTestUtil.createFile(dfs, new Path(dir, "f"), 10, REPLICATION, 0L);
+    dfs.setQuota(dir, Long.MAX_VALUE - 1, HdfsConstants.QUOTA_DONT_SET);
+    final ContentSummary cached = nnRpc.getContentSummary(dir.toString());
+
+    UserGroupInformation user = UserGroupInformation.createUserForTesting(
+        "randomUser", new String[]{"randomGroup"});
+    ContentSummary served = user.doAs(
+        new PrivilegedExceptionAction<ContentSummary>() {
+          @Override
+          public ContentSummary run() throws Exception {
+            return nnRpc.getContentSummary(dir.toString());
+          }
+        });
+    assertSame(cached, served);
+  }
+}
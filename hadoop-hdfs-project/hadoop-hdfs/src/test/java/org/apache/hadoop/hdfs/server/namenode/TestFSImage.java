@@ -32,6 +32,7 @@
 import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.EnumSet;
 
@@ -1155,6 +1156,91 @@ public void testNoParallelSectionsWithCompressionEnabled()
     }
   }
 
+  /**
+   * Saving with the sub-sections serialized in parallel must write the same
+   * INode, INodeDirectory and INodeReference sections as saving serially.
+   */
+  @Test
+  public void testParallelSaveWritesSameSections() throws IOException {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, 4);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 4);
+
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      // snapshots and renames create the reference inodes
+      Path baseDir = new Path("/user/foo");
+      fs.mkdirs(baseDir);
+      fs.allowSnapshot(baseDir);
+      for (int i = 0; i < 5; i++) {
+        Path dir = new Path(baseDir, Integer.toString(i));
+        for (int j = 0; j < 5; j++) {
+          DFSTestUtil.createFile(fs, new Path(dir, Integer.toString(j)), 1,
+              (short) 1, 0L);
+        }
+        fs.createSnapshot(baseDir, "snap_" + i);
+        fs.rename(new Path(dir, "0"), new Path(dir, "renamed"));
+      }
+
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      Configuration nnConf = cluster.getNameNode().getConf();
+      nnConf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_KEY, false);
+      fs.saveNamespace();
+      File image = FSImageTestUtil.findLatestImageFile(FSImageTestUtil
+          .getFSImage(cluster.getNameNode()).getStorage().getStorageDir(0));
+      ArrayList<byte[]> serialSections = readSections(image);
+      nnConf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_KEY, true);
+      fs.saveNamespace();
+      image = FSImageTestUtil.findLatestImageFile(FSImageTestUtil
+          .getFSImage(cluster.getNameNode()).getStorage().getStorageDir(0));
+      ArrayList<byte[]> parallelSections = readSections(image);
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+
+      assertEquals(serialSections.size(), parallelSections.size());
+      for (int i = 0; i < serialSections.size(); i++) {
+        assertArrayEquals(serialSections.get(i), parallelSections.get(i));
+      }
+
+      // load the image saved in parallel
+      cluster.restartNameNode();
+      cluster.waitActive();
+      fs = cluster.getFileSystem();
+      for (int i = 0; i < 5; i++) {
+        Path dir = new Path(baseDir, Integer.toString(i));
+        assertTrue(fs.exists(new Path(dir, "renamed")));
+        assertTrue(fs.exists(new Path(baseDir,
+            ".snapshot/snap_" + i + "/" + i + "/0")));
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * @return the contents of the inode, directory and reference sections and
+   *         sub-sections of the given image, in the order of the summary.
+   */
+  private static ArrayList<byte[]> readSections(File image)
+      throws IOException {
+    ArrayList<byte[]> contents = new ArrayList<>();
+    try (RandomAccessFile raFile = new RandomAccessFile(image, "r")) {
+      FsImageProto.FileSummary summary = FSImageUtil.loadSummary(raFile);
+      for (Section s : summary.getSectionsList()) {
+        if (s.getName().startsWith(SectionName.INODE.toString())) {
+          byte[] data = new byte[(int) s.getLength()];
+          raFile.seek(s.getOffset());
+          raFile.readFully(data);
+          contents.add(data);
+        }
+      }
+    }
+    return contents;
+  }
+
   private void ensureSubSectionsAlignWithParent(ArrayList<Section> subSec,
       Section parent) {
     // For each sub-section, check its offset + length == the next section
@@ -20,7 +20,17 @@
 
 import java.util.function.Supplier;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManagerFaultInjector;
+import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeDescriptor;
+import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
+import org.apache.hadoop.hdfs.util.RwLockMode;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
@@ -35,13 +45,16 @@
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 import org.slf4j.LoggerFactory;
 import org.slf4j.event.Level;
 
 import static org.junit.Assert.*;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_BLOCKMANAGER_LOCK_SPLIT_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_FAIR_KEY;
 import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
 import static org.apache.hadoop.test.MetricsAsserts.assertGauge;
@@ -445,4 +458,260 @@ public void testFSWriteLockReportSuppressed() throws Exception {
         "Number of suppressed write-lock reports:"));
   }
 
-}
\ No newline at end of file
+  private static FSNamesystemLock newSplitLock(MutableRatesWithAggregation
+      rates, FakeTimer timer) {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFS_NAMENODE_BLOCKMANAGER_LOCK_SPLIT_ENABLED_KEY, true);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY,
+        rates != null);
+    return new FSNamesystemLock(conf, rates, timer);
+  }
+
+  /**
+   * @return true if the given lock operation completes in another thread
+   *         while the current thread holds its locks.
+   */
+  private static boolean canLock(ExecutorService executor,
+      Runnable lockAndUnlock) throws Exception {
+    Future<?> future = executor.submit(lockAndUnlock);
+    try {
+      future.get(500, TimeUnit.MILLISECONDS);
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    }
+  }
+
+  @Test(timeout = 45000)
+  public void testBMLockSplitCompatibility() throws Exception {
+    final FSNamesystemLock fsnLock = newSplitLock(null, new FakeTimer());
+    assertTrue(fsnLock.isBMLockSplit());
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      // BM write excludes namespace writers but not FS readers
+      fsnLock.writeLock(RwLockMode.BM);
+      assertTrue(fsnLock.isWriteLockedByCurrentThread(RwLockMode.BM));
+      assertFalse(fsnLock.isWriteLockedByCurrentThread(RwLockMode.FS));
+      assertTrue(fsnLock.hasReadLock(RwLockMode.FS));
+      assertTrue(canLock(executor, () -> {
+        fsnLock.readLock(RwLockMode.FS);
+        fsnLock.readUnlock(RwLockMode.FS, "fsRead", null);
+      }));
+      assertFalse(canLock(executor, () -> {
+        fsnLock.readLock(RwLockMode.GLOBAL);
+        fsnLock.readUnlock(RwLockMode.GLOBAL, "globalRead", null);
+      }));
+      assertFalse(canLock(executor, () -> {
+        fsnLock.writeLock(RwLockMode.FS);
+        fsnLock.writeUnlock(RwLockMode.FS, "fsWrite");
+      }));
+      // reentrant
+      fsnLock.writeLock(RwLockMode.BM);
+      fsnLock.writeUnlock(RwLockMode.BM, "bmWrite");
+      // upgrading the shared namespace lock would deadlock
+      try {
+        fsnLock.writeLock();
+        fail("Expected the lock upgrade to fail");
+      } catch (IllegalStateException e) {
+        GenericTestUtils.assertExceptionContains("while holding the read", e);
+      }
+      fsnLock.writeUnlock(RwLockMode.BM, "bmWrite");
+      assertFalse(fsnLock.hasReadLock(RwLockMode.GLOBAL));
+
+      // FS write excludes FS readers but not BM writers
+      fsnLock.writeLock(RwLockMode.FS);
+      assertFalse(fsnLock.hasReadLock(RwLockMode.BM));
+      // a BM write lock of a thread holding the FS write lock is GLOBAL
+      fsnLock.writeLock(RwLockMode.BM);
+      assertTrue(fsnLock.isWriteLockedByCurrentThread(RwLockMode.GLOBAL));
+      fsnLock.writeUnlock(RwLockMode.BM, "bmWrite");
+      assertFalse(fsnLock.isWriteLockedByCurrentThread(RwLockMode.BM));
+      fsnLock.writeUnlock(RwLockMode.FS, "fsWrite");
+      assertEquals(0, fsnLock.getWriteHoldCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 45000)
+  public void testBMLockSplitInactive() throws Exception {
+    final FSNamesystemLock fsnLock = newSplitLock(null, new FakeTimer());
+    fsnLock.setBMLockSplitActive(() -> false);
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      fsnLock.writeLock(RwLockMode.BM);
+      assertTrue(fsnLock.isWriteLockedByCurrentThread(RwLockMode.GLOBAL));
+      assertFalse(canLock(executor, () -> {
+        fsnLock.readLock(RwLockMode.FS);
+        fsnLock.readUnlock(RwLockMode.FS, "fsRead", null);
+      }));
+      fsnLock.writeUnlock(RwLockMode.BM, "bmWrite");
+      assertFalse(fsnLock.isWriteLockedByCurrentThread(RwLockMode.BM));
+      assertEquals(0, fsnLock.getWriteHoldCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testBMLockDisabled() {
+    FSNamesystemLock fsnLock = new FSNamesystemLock(new Configuration(), null);
+    assertFalse(fsnLock.isBMLockSplit());
+    fsnLock.writeLock(RwLockMode.BM);
+    assertTrue(fsnLock.isWriteLockedByCurrentThread());
+    assertTrue(fsnLock.isWriteLockedByCurrentThread(RwLockMode.FS));
+    fsnLock.writeUnlock(RwLockMode.BM, "bmWrite");
+    fsnLock.readLock(RwLockMode.FS);
+    assertTrue(fsnLock.hasReadLock(RwLockMode.BM));
+    fsnLock.readUnlock(RwLockMode.FS, "fsRead", null);
+    assertEquals(0, fsnLock.getReadHoldCount());
+  }
+
+  @Test
+  public void testBMLockDetailedHoldMetrics() {
+    FakeTimer timer = new FakeTimer();
+    MetricsRegistry registry = new MetricsRegistry("Test");
+    MutableRatesWithAggregation rates =
+        registry.newRatesWithAggregation("Test");
+    FSNamesystemLock fsnLock = newSplitLock(rates, timer);
+
+    fsnLock.writeLock(RwLockMode.BM);
+    timer.advanceNanos(1500000);
+    fsnLock.writeUnlock(RwLockMode.BM, "foo");
+    fsnLock.writeLock(RwLockMode.GLOBAL);
+    timer.advanceNanos(1000000);
+    fsnLock.writeUnlock(RwLockMode.GLOBAL, "bar");
+
+    MetricsRecordBuilder rb = MetricsAsserts.mockMetricsRecordBuilder();
+    rates.snapshot(rb, true);
+    assertGauge("FSNBMWriteLockFooNanosAvgTime", 1500000.0, rb);
+    assertCounter("FSNBMWriteLockFooNanosNumOps", 1L, rb);
+    assertGauge("FSNWriteLockBarNanosAvgTime", 1000000.0, rb);
+    assertCounter("FSNWriteLockBarNanosNumOps", 1L, rb);
+  }
+
+  @Test
+  public void testBMLockSplitWithCluster() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFS_NAMENODE_BLOCKMANAGER_LOCK_SPLIT_ENABLED_KEY, true);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(2).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      Path file = new Path("/split/file");
+      DFSTestUtil.createFile(fs, file, 4096, (short) 2, 0L);
+      DFSTestUtil.waitReplication(fs, file, (short) 2);
+      assertEquals(4096, fs.getFileStatus(file).getLen());
+      assertEquals(1, fs.listStatus(file.getParent()).length);
+      cluster.triggerBlockReports();
+      cluster.getNamesystem().getBlockManager().flushBlockOps();
+      assertEquals(4096, DFSTestUtil.readFileAsBytes(fs, file).length);
+      fs.delete(file, false);
+      assertEquals(0, fs.listStatus(file.getParent()).length);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Blocks completed by incremental block reports update the quota of their
+   * files, which is deferred until the reports released the block manager
+   * lock and then done under the namespace write lock.
+   */
+  @Test(timeout = 60000)
+  public void testBMLockSplitCompleteBlockByIBR() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFS_NAMENODE_BLOCKMANAGER_LOCK_SPLIT_ENABLED_KEY, true);
+    // let the file close while its last block is only committed, and delay
+    // the IBRs so that they complete the block.
+    conf.setInt(
+        DFSConfigKeys.DFS_NAMENODE_FILE_CLOSE_NUM_COMMITTED_ALLOWED_KEY, 1);
+    conf.setLong(
+        DFSConfigKeys.DFS_BLOCKREPORT_INCREMENTAL_INTERVAL_MSEC_KEY, 2000);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(2).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      Path dir = new Path("/split");
+      fs.mkdirs(dir);
+      fs.setQuota(dir, Long.MAX_VALUE - 1, Long.MAX_VALUE - 1);
+      Path file = new Path(dir, "file");
+      DFSTestUtil.createFile(fs, file, 4096, (short) 2, 0L);
+      BlockManager bm = cluster.getNamesystem().getBlockManager();
+      GenericTestUtils.waitFor(() -> {
+        try {
+          bm.flushBlockOps();
+          return fs.getQuotaUsage(dir).getSpaceConsumed() == 2 * 4096;
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }, 100, 30000);
+      assertTrue(bm.getStoredBlock(
+          DFSTestUtil.getFirstBlock(fs, file).getLocalBlock()).isComplete());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * A full block report is processed in BM mode, so namespace reads are not
+   * blocked while the report is being processed.
+   */
+  @Test(timeout = 120000)
+  public void testBMLockSplitReadDuringBlockReport() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFS_NAMENODE_BLOCKMANAGER_LOCK_SPLIT_ENABLED_KEY, true);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    BlockManagerFaultInjector oldInjector =
+        BlockManagerFaultInjector.getInstance();
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      Path file = new Path("/split/file");
+      DFSTestUtil.createFile(fs, file, 4096, (short) 1, 0L);
+
+      final CountDownLatch processing = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      final AtomicBoolean blockOnce = new AtomicBoolean(true);
+      BlockManagerFaultInjector.instance = new BlockManagerFaultInjector() {
+        @Override
+        public void processingBlockReport(DatanodeDescriptor node) {
+          if (blockOnce.getAndSet(false)) {
+            processing.countDown();
+            try {
+              release.await(60, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        }
+      };
+      // returns once the report was processed
+      Future<?> report = executor.submit(() -> {
+        DataNodeTestUtils.triggerBlockReport(cluster.getDataNodes().get(0));
+        return null;
+      });
+      assertTrue(processing.await(60, TimeUnit.SECONDS));
+      FSNamesystem fsn = cluster.getNamesystem();
+      // the report holds the block manager write lock
+      assertFalse(canLock(executor, () -> {
+        fsn.writeLock(RwLockMode.BM);
+        fsn.writeUnlock(RwLockMode.BM, "bmWrite");
+      }));
+      // would time out if the report held the namespace write lock
+      Future<Long> read = executor.submit(() -> fs.getFileStatus(file).getLen());
+      assertEquals(4096L, (long) read.get(30, TimeUnit.SECONDS));
+      release.countDown();
+      report.get(60, TimeUnit.SECONDS);
+      assertEquals(4096, DFSTestUtil.readFileAsBytes(fs, file).length);
+    } finally {
+      BlockManagerFaultInjector.instance = oldInjector;
+      executor.shutdownNow();
+      cluster.shutdown();
+    }
+  }
+}
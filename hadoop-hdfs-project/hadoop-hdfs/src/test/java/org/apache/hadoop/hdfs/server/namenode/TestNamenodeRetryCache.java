@@ -19,16 +19,20 @@
 
 
 
+import static org.apache.hadoop.hdfs.server.common.HdfsServerConstants.MAX_PATH_LENGTH;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CreateFlag;
 import org.apache.hadoop.fs.Options.Rename;
@@ -47,6 +51,8 @@
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
+import org.apache.hadoop.hdfs.protocol.MetadataOp;
+import org.apache.hadoop.hdfs.protocol.MetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.SystemErasureCodingPolicies;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
 import org.apache.hadoop.io.EnumSetWritable;
@@ -251,6 +257,57 @@ public void testCreate() throws Exception {
     }
   }
   
+  /**
+   * Test for batchMetadataOps, also once the retry cache entry of the batch
+   * was rebuilt from the edit log.
+   */
+  @Test
+  public void testBatchMetadataOps() throws Exception {
+    String dir = "/testNamenodeRetryCache/testBatchMetadataOps";
+    resetCall();
+    nnRpc.mkdirs(dir + "/deleted", perm, true);
+    List<MetadataOp> ops = Arrays.asList(
+        MetadataOp.createEmpty(dir + "/file", perm, true),
+        MetadataOp.mkdirs(dir + "/" + StringUtils.repeat('x', MAX_PATH_LENGTH),
+            perm, true),
+        MetadataOp.delete(dir + "/deleted", false),
+        MetadataOp.mkdirs(dir + "/dir", perm, true));
+
+    // Two retried calls get the results of the first one
+    newCall();
+    List<MetadataOpResult> results = nnRpc.batchMetadataOps("holder", ops);
+    Assert.assertSame(results, nnRpc.batchMetadataOps("holder", ops));
+    Assert.assertSame(results, nnRpc.batchMetadataOps("holder", ops));
+    // Only the operation with the too long path fails
+    assertEquals(ops.size(), results.size());
+    assertTrue(results.get(0).get());
+    GenericTestUtils.assertExceptionContains("Pathname too long",
+        results.get(1).getException());
+    assertTrue(results.get(2).get());
+    assertTrue(results.get(3).get());
+
+    // Once the entry is rebuilt from the edits, a retried call cannot tell
+    // whether the create and the delete were made by its earlier attempt
+    cluster.restartNameNode();
+    nnRpc = cluster.getNameNode().getRpcServer();
+    List<MetadataOpResult> rebuilt = nnRpc.batchMetadataOps("holder", ops);
+    assertEquals(ops.size(), rebuilt.size());
+    GenericTestUtils.assertExceptionContains("was not recorded",
+        rebuilt.get(0).getException());
+    GenericTestUtils.assertExceptionContains("Pathname too long",
+        rebuilt.get(1).getException());
+    GenericTestUtils.assertExceptionContains("was not recorded",
+        rebuilt.get(2).getException());
+    assertTrue(rebuilt.get(3).get());
+
+    // A non-retried call fails
+    newCall();
+    List<MetadataOpResult> failed = nnRpc.batchMetadataOps("holder", ops);
+    Assert.assertNotNull(failed.get(0).getException());
+    Assert.assertNull(failed.get(2).getException());
+    Assert.assertFalse(failed.get(2).get());
+  }
+
   /**
    * Test for rename1
    */
@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.test.MetricsAsserts;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * Tests that mkdirs of disjoint subtrees run concurrently under the
+ * SubtreeLockManager while mkdirs of the same subtree and operations which
+ * cannot be confined to a subtree are serialized.
+ */
+public class TestSubtreeLockManager {
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private FSNamesystem fsn;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_SUBTREE_LOCK_ENABLED_KEY, true);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    fsn = cluster.getNamesystem();
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Block the mkdirs of the given path while it is logging its edit, i.e.
+   * while it holds its lock, until the returned latch is counted down.
+   *
+   * @return the latches signalling that the mkdirs is blocked and releasing
+   *         it, in that order.
+   */
+  private CountDownLatch[] blockMkdir(FSEditLog spyEditLog, String path) {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      blocked.countDown();
+      assertTrue(release.await(60, TimeUnit.SECONDS));
+      return invocation.callRealMethod();
+    }).when(spyEditLog).logMkDir(eq(path), any(INode.class));
+    return new CountDownLatch[] {blocked, release};
+  }
+
+  private long getHoldCount(String metric) {
+    MetricsRecordBuilder rb = MetricsAsserts.mockMetricsRecordBuilder();
+    fsn.subtreeLockMetrics.snapshot(rb, true);
+    return MetricsAsserts.getLongCounter(metric, rb);
+  }
+
+  @Test(timeout = 120000)
+  public void testDisjointSubtreesMutateConcurrently() throws Exception {
+    fs.mkdirs(new Path("/a"));
+    fs.mkdirs(new Path("/b"));
+    FSEditLog spyEditLog = NameNodeAdapter.spyOnEditLog(cluster.getNameNode());
+    CountDownLatch[] latches = blockMkdir(spyEditLog, "/a/x");
+
+    Future<Boolean> blocked =
+        executor.submit(() -> fs.mkdirs(new Path("/a/x")));
+    assertTrue(latches[0].await(60, TimeUnit.SECONDS));
+    assertTrue(fsn.getSubtreeLockManager().isWriteLocked("/a"));
+    // would time out if the mkdirs of /b/y waited for the one of /a/x
+    Future<Boolean> disjoint =
+        executor.submit(() -> fs.mkdirs(new Path("/b/y/z")));
+    assertTrue(disjoint.get(30, TimeUnit.SECONDS));
+    // readers are still excluded while the subtree locks are held
+    Future<Boolean> reader =
+        executor.submit(() -> fs.exists(new Path("/b/y/z")));
+    try {
+      reader.get(1, TimeUnit.SECONDS);
+      fail("Read the namespace while a subtree lock was held");
+    } catch (TimeoutException e) {
+      // expected
+    }
+    assertFalse(blocked.isDone());
+
+    latches[1].countDown();
+    assertTrue(blocked.get(30, TimeUnit.SECONDS));
+    assertTrue(reader.get(30, TimeUnit.SECONDS));
+    assertFalse(fsn.getSubtreeLockManager().isWriteLocked("/a"));
+    assertEquals(0, fsn.getSubtreeLockManager().getNumMembers());
+    assertEquals(1L, getHoldCount("SubtreeWriteLockANanosNumOps"));
+    assertEquals(1L, getHoldCount("SubtreeWriteLockBNanosNumOps"));
+    assertEquals(1L, getHoldCount("SubtreeLockWaitBNanosNumOps"));
+  }
+
+  @Test(timeout = 120000)
+  public void testSameSubtreeSerialized() throws Exception {
+    fs.mkdirs(new Path("/a"));
+    FSEditLog spyEditLog = NameNodeAdapter.spyOnEditLog(cluster.getNameNode());
+    CountDownLatch[] latches = blockMkdir(spyEditLog, "/a/x");
+
+    Future<Boolean> blocked =
+        executor.submit(() -> fs.mkdirs(new Path("/a/x")));
+    assertTrue(latches[0].await(60, TimeUnit.SECONDS));
+    Future<Boolean> sameSubtree =
+        executor.submit(() -> fs.mkdirs(new Path("/a/y")));
+    try {
+      sameSubtree.get(1, TimeUnit.SECONDS);
+      fail("mkdirs in a subtree locked by another mkdirs completed");
+    } catch (TimeoutException e) {
+      // expected
+    }
+    latches[1].countDown();
+    assertTrue(blocked.get(30, TimeUnit.SECONDS));
+    assertTrue(sameSubtree.get(30, TimeUnit.SECONDS));
+    assertEquals(2L, getHoldCount("SubtreeWriteLockANanosNumOps"));
+  }
+
+  /**
+   * mkdirs which cannot be confined to an existing subtree, or in a
+   * namespace with snapshots, take the namesystem write lock.
+   */
+  @Test(timeout = 120000)
+  public void testUnconfinedMkdirsTakeNamesystemLock() throws Exception {
+    // the subtree root /c is created by the mkdirs itself
+    assertTrue(fs.mkdirs(new Path("/c/d")));
+    assertTrue(fs.mkdirs(new Path("/e")));
+    assertTrue(fs.mkdirs(new Path("/c/f")));
+    assertEquals(1L, getHoldCount("SubtreeWriteLockCNanosNumOps"));
+
+    fs.allowSnapshot(new Path("/e"));
+    assertTrue(fs.mkdirs(new Path("/c/g")));
+    assertEquals(1L, getHoldCount("SubtreeWriteLockCNanosNumOps"));
+    fs.disallowSnapshot(new Path("/e"));
+    assertTrue(fs.mkdirs(new Path("/c/h")));
+    assertEquals(2L, getHoldCount("SubtreeWriteLockCNanosNumOps"));
+    assertEquals(0, fsn.getSubtreeLockManager().getNumMembers());
+  }
+
+  /**
+   * Concurrent mkdirs in many subtrees keep the quota counts of their common
+   * ancestors and the edit log consistent.
+   */
+  @Test(timeout = 300000)
+  public void testConcurrentMkdirs() throws Exception {
+    final int numSubtrees = 8;
+    final int numDirs = 200;
+    for (int i = 0; i < numSubtrees; i++) {
+      fs.mkdirs(new Path("/s" + i));
+    }
+    fs.setQuota(new Path("/"), Long.MAX_VALUE - 1, Long.MAX_VALUE - 1);
+    long before = fs.getQuotaUsage(new Path("/")).getFileAndDirectoryCount();
+    List<Future<Void>> futures = new ArrayList<>();
+    for (int i = 0; i < numSubtrees; i++) {
+      final int subtree = i;
+      futures.add(executor.submit(() -> {
+        for (int j = 0; j < numDirs; j++) {
+          assertTrue(fs.mkdirs(new Path("/s" + subtree + "/d" + j)));
+        }
+        return null;
+      }));
+    }
+    for (Future<Void> future : futures) {
+      future.get(120, TimeUnit.SECONDS);
+    }
+    long expected = before + numSubtrees * numDirs;
+    assertEquals(expected,
+        fs.getQuotaUsage(new Path("/")).getFileAndDirectoryCount());
+    assertEquals(expected,
+        fs.getContentSummary(new Path("/")).getFileAndDirectoryCount());
+
+    cluster.restartNameNode();
+    fs = cluster.getFileSystem();
+    assertEquals(expected,
+        fs.getQuotaUsage(new Path("/")).getFileAndDirectoryCount());
+    for (int i = 0; i < numSubtrees; i++) {
+      assertEquals(numDirs, fs.listStatus(new Path("/s" + i)).length);
+    }
+  }
+}
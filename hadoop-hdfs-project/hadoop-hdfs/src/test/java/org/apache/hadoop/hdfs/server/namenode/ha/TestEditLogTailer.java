@@ -160,6 +160,51 @@ public void testTailer() throws IOException, InterruptedException,
     }
   }
 
+  @Test
+  public void testPipelinedTailer() throws Exception {
+    Configuration conf = getConf();
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 0);
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_PIPELINED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PIPELINED_BATCH_SIZE_KEY, 3);
+    HAUtil.setAllowStandbyReads(conf, true);
+
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .nnTopology(MiniDFSNNTopology.simpleHATopology())
+        .numDataNodes(0)
+        .build();
+    try {
+      cluster.waitActive();
+      cluster.transitionToActive(0);
+      NameNode nn1 = cluster.getNameNode(0);
+      NameNode nn2 = cluster.getNameNode(1);
+
+      for (int i = 0; i < DIRS_TO_MAKE; i++) {
+        NameNodeAdapter.mkdirs(nn1, getDirPath(i),
+            new PermissionStatus("test", "test",
+                new FsPermission((short)00755)), true);
+      }
+      HATestUtil.waitForStandbyToCatchUp(nn1, nn2);
+      assertEquals("Inconsistent number of applied txns on Standby",
+          nn1.getNamesystem().getEditLog().getLastWrittenTxId(),
+          nn2.getNamesystem().getFSImage().getLastAppliedTxId() + 1);
+      for (int i = 0; i < DIRS_TO_MAKE; i++) {
+        assertTrue(NameNodeAdapter.getFileInfo(nn2,
+            getDirPath(i), false, false, false).isDirectory());
+      }
+
+      // Failover catches up on the classic path after the decoder is stopped.
+      NameNodeAdapter.mkdirs(nn1, getDirPath(DIRS_TO_MAKE),
+          new PermissionStatus("test", "test",
+              new FsPermission((short)00755)), true);
+      cluster.transitionToStandby(0);
+      cluster.transitionToActive(1);
+      assertTrue(NameNodeAdapter.getFileInfo(nn2,
+          getDirPath(DIRS_TO_MAKE), false, false, false).isDirectory());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   @Test
   public void testTailerBackoff() throws Exception {
     Configuration conf = new Configuration();
@@ -28,6 +28,8 @@
 import java.net.URL;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 import org.apache.hadoop.conf.Configuration;
@@ -620,9 +622,6 @@ public void testNonPrimarySBNUploadFSImage() throws Exception {
 
     cluster.transitionToActive(0);
 
-    // Wait for 2 seconds to expire last upload time.
-    Thread.sleep(2000);
-
     doEdits(11, 20);
     nns[0].getRpcServer().rollEditLog();
 
@@ -630,6 +629,67 @@ public void testNonPrimarySBNUploadFSImage() throws Exception {
     HATestUtil.waitForCheckpoint(cluster, 0, ImmutableList.of(23));
   }
 
+  /**
+   * Test that a standby NN keeps checkpointing locally but does not upload
+   * the checkpoints to the active NN more often than
+   * dfs.namenode.checkpoint.upload.min-interval allows, and that a failed
+   * upload does not count towards the interval.
+   */
+  @Test(timeout=300000)
+  public void testCheckpointUploadMinInterval() throws Exception {
+    // A single standby, so that no upload is rejected for another's.
+    cluster.shutdownNameNode(2);
+    cluster.getConfiguration(1).setLong(
+        DFSConfigKeys.DFS_NAMENODE_CHECKPOINT_UPLOAD_MIN_INTERVAL_KEY, 3600);
+    cluster.restartNameNode(1);
+    setNNs();
+    final NNStorage activeStorage = nns[0].getFSImage().getStorage();
+    final NNStorage standbyStorage = nns[1].getFSImage().getStorage();
+
+    final long initialTxId = activeStorage.getMostRecentCheckpointTxId();
+
+    // Fail the uploads of the first checkpoint, to the active and to the
+    // stopped NN alike.
+    final AtomicBoolean failUploads = new AtomicBoolean(true);
+    final AtomicInteger failedUploads = new AtomicInteger();
+    CheckpointFaultInjector old = CheckpointFaultInjector.getInstance();
+    CheckpointFaultInjector.set(new CheckpointFaultInjector() {
+      @Override
+      public void duringUploadInProgess() throws IOException {
+        if (failUploads.get()) {
+          failedUploads.incrementAndGet();
+          throw new IOException("Injected upload failure");
+        }
+      }
+    });
+    try {
+      // The first upload fails, so the next checkpoint is uploaded.
+      doEdits(0, 10);
+      HATestUtil.waitForStandbyToCatchUp(nns[0], nns[1]);
+      GenericTestUtils.waitFor(() -> failedUploads.get() == 2, 100, 60000);
+      failUploads.set(false);
+      assertEquals(initialTxId, activeStorage.getMostRecentCheckpointTxId());
+      doEdits(10, 20);
+      HATestUtil.waitForStandbyToCatchUp(nns[0], nns[1]);
+      GenericTestUtils.waitFor(
+          () -> activeStorage.getMostRecentCheckpointTxId() > initialTxId,
+          100, 60000);
+      final long uploadedTxId = activeStorage.getMostRecentCheckpointTxId();
+
+      // The standby keeps checkpointing but skips the upload.
+      final int skipped = StandbyCheckpointer.getSkippedUploadCount();
+      doEdits(20, 30);
+      HATestUtil.waitForStandbyToCatchUp(nns[0], nns[1]);
+      GenericTestUtils.waitFor(
+          () -> standbyStorage.getMostRecentCheckpointTxId() > uploadedTxId
+              && StandbyCheckpointer.getSkippedUploadCount() > skipped,
+          100, 60000);
+      assertEquals(uploadedTxId, activeStorage.getMostRecentCheckpointTxId());
+    } finally {
+      CheckpointFaultInjector.set(old);
+    }
+  }
+
   /**
    * Test that checkpointing is still successful even if an issue
    * was encountered while writing the legacy OIV image.
@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoContiguous;
+import org.apache.hadoop.util.GSet;
+import org.apache.hadoop.util.LightWeightGSet;
+import org.apache.hadoop.util.LightWeightResizableGSet;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Compares the throughput of the GSets which can back the BlocksMap and the
+ * INodeMap: the fixed size {@link LightWeightGSet}, the synchronized
+ * {@link LightWeightResizableGSet} and the unsynchronized
+ * {@link ResizableGSet}. Every map is first filled from an initial capacity
+ * of 16, then looked up by concurrent readers, as under the namesystem read
+ * lock.
+ *
+ * Usage:
+ * <pre>
+ * GSetBenchmark [-blocks N] [-lookups N] [-threads N] [-rounds N]
+ * </pre>
+ */
+public class GSetBenchmark extends Configured implements Tool {
+  private int blocks = 1 << 20;
+  private int lookups = 1 << 22;
+  private int threads = 8;
+  private int rounds = 3;
+
+  @Override
+  public int run(String[] args) throws Exception {
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+      case "-blocks":
+        blocks = Integer.parseInt(args[++i]);
+        break;
+      case "-lookups":
+        lookups = Integer.parseInt(args[++i]);
+        break;
+      case "-threads":
+        threads = Integer.parseInt(args[++i]);
+        break;
+      case "-rounds":
+        rounds = Integer.parseInt(args[++i]);
+        break;
+      default:
+        System.err.println("Usage: GSetBenchmark [-blocks N] [-lookups N] " +
+            "[-threads N] [-rounds N]");
+        return -1;
+      }
+    }
+
+    BlockInfo[] infos = new BlockInfo[blocks];
+    for (int i = 0; i < blocks; i++) {
+      infos[i] = new BlockInfoContiguous(new Block(i, 0, 1000L), (short) 3);
+    }
+    System.out.printf("blocks=%d lookups=%d threads=%d%n", blocks, lookups,
+        threads);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      // the first round warms up the JIT.
+      for (int r = 0; r <= rounds; r++) {
+        boolean print = r > 0;
+        measure("LightWeightGSet", () -> new LightWeightGSet<>(blocks),
+            infos, executor, print);
+        measure("LightWeightResizableGSet",
+            () -> new LightWeightResizableGSet<>(16), infos, executor, print);
+        measure("ResizableGSet", () -> new ResizableGSet<>(16), infos,
+            executor, print);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    return 0;
+  }
+
+  private void measure(String name,
+      Supplier<GSet<Block, BlockInfo>> factory, BlockInfo[] infos,
+      ExecutorService executor, boolean print) throws Exception {
+    GSet<Block, BlockInfo> map = factory.get();
+    long start = Time.monotonicNowNanos();
+    for (BlockInfo info : infos) {
+      map.put(info);
+    }
+    long putNanos = Math.max(1, Time.monotonicNowNanos() - start);
+
+    Callable<Long> reader = () -> {
+      long found = 0;
+      Block key = new Block();
+      for (int i = 0; i < lookups; i++) {
+        key.setBlockId((i * 0x9E3779B97F4A7C15L >>> 1) % blocks);
+        if (map.get(key) != null) {
+          found++;
+        }
+      }
+      return found;
+    };
+    start = Time.monotonicNowNanos();
+    Future<?>[] futures = new Future<?>[threads];
+    for (int t = 0; t < threads; t++) {
+      futures[t] = executor.submit(reader);
+    }
+    for (Future<?> f : futures) {
+      f.get();
+    }
+    long getNanos = Math.max(1, Time.monotonicNowNanos() - start);
+
+    if (print) {
+      System.out.printf("%-25s put %7.2f Mops/s, get %7.2f Mops/s%n", name,
+          blocks * 1000.0 / putNanos,
+          (double) lookups * threads * 1000.0 / getNanos);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new HdfsConfiguration(), new GSetBenchmark(),
+        args));
+  }
+}
@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.apache.hadoop.test.LambdaTestUtils.intercept;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoContiguous;
+import org.junit.Test;
+
+/** Tests {@link ResizableGSet}. */
+public class TestResizableGSet {
+
+  private static BlockInfo newBlock(long id) {
+    return new BlockInfoContiguous(new Block(id, 0, 1000L), (short) 3);
+  }
+
+  @Test
+  public void testResize() {
+    ResizableGSet<Block, BlockInfo> set = new ResizableGSet<>(16);
+    assertEquals(16, set.getCapacity());
+    for (long id = 0; id < 1000; id++) {
+      assertNull(set.put(newBlock(id)));
+    }
+    assertEquals(1000, set.size());
+    assertEquals(2048, set.getCapacity());
+
+    Set<Long> ids = new HashSet<>();
+    for (BlockInfo b : set) {
+      ids.add(b.getBlockId());
+    }
+    assertEquals(1000, ids.size());
+    for (long id = 0; id < 1000; id++) {
+      assertEquals(id, set.get(new Block(id)).getBlockId());
+    }
+
+    BlockInfo replacement = newBlock(7);
+    assertEquals(7, set.put(replacement).getBlockId());
+    assertSame(replacement, set.get(new Block(7)));
+    assertSame(replacement, set.remove(new Block(7)));
+    assertNull(set.get(new Block(7)));
+    assertEquals(999, set.size());
+  }
+
+  @Test
+  public void testIllegalArguments() throws Exception {
+    intercept(HadoopIllegalArgumentException.class,
+        "Illegal initial capacity",
+        () -> new ResizableGSet<Block, BlockInfo>(-1));
+    intercept(HadoopIllegalArgumentException.class, "Illegal load factor",
+        () -> new ResizableGSet<Block, BlockInfo>(16, 0f));
+  }
+}